@@ -0,0 +1,132 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.order.create.CreateOrderBuilder;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+
+/**
+ * Orders and service responses used as input by the benchmarks.
+ */
+public final class BenchmarkData {
+
+	private static final double[] VAT_PERCENTS = { 25.0, 12.0, 6.0 };
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @return an invoice order with the given number of order rows, spread over three vat rates and alternating between
+	 * 		amount ex vat and amount inc vat, plus a shipping fee and a relative discount
+	 */
+	public static CreateOrderBuilder createOrder( ConfigurationProvider config, int rows ) {
+		CreateOrderBuilder order = WebPay.createOrder(config)
+			.setCountryCode(TestingTool.DefaultTestCountryCode)
+			.setCurrency(TestingTool.DefaultTestCurrency)
+			.setClientOrderNumber(TestingTool.DefaultTestClientOrderNumber)
+			.setCustomerReference(TestingTool.DefaultTestCustomerReferenceNumber)
+			.setOrderDate(TestingTool.DefaultTestDate)
+			.addCustomerDetails(TestingTool.createIndividualCustomer())
+		;
+		for( int i = 0; i < rows; i++ ) {
+			double vatPercent = VAT_PERCENTS[i % VAT_PERCENTS.length];
+			double amount = 10.00 + (i % 100);
+			if( i % 2 == 0 ) {
+				order.addOrderRow( WebPayItem.orderRow()
+					.setArticleNumber(String.valueOf(i))
+					.setName("Product " + i)
+					.setDescription("Description of product " + i)
+					.setAmountExVat(amount)
+					.setVatPercent(vatPercent)
+					.setQuantity(2.0)
+					.setUnit("st")
+				);
+			}
+			else {
+				order.addOrderRow( WebPayItem.orderRow()
+					.setArticleNumber(String.valueOf(i))
+					.setName("Product " + i)
+					.setDescription("Description of product " + i)
+					.setAmountIncVat(amount * (1 + vatPercent / 100))
+					.setVatPercent(vatPercent)
+					.setQuantity(1.0)
+					.setUnit("st")
+				);
+			}
+		}
+		order.addFee(TestingTool.createExVatBasedShippingFee());
+		order.addDiscount(TestingTool.createRelativeDiscount());
+		return order;
+	}
+
+	/**
+	 * @return a GetOrders SOAP response holding one invoice order with the given number of order rows, as returned by
+	 * 		the admin service
+	 */
+	public static String getOrdersResponse( long orderId, int rows ) {
+		StringBuilder xml = new StringBuilder(1024 + rows * 1024);
+		xml.append("<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>");
+		xml.append("<GetOrdersResponse xmlns=\"http://tempuri.org/\">");
+		xml.append("<GetOrdersResult xmlns:a=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">");
+		xml.append("<a:ErrorMessage i:nil=\"true\"/><a:ResultCode>0</a:ResultCode>");
+		xml.append("<a:Orders><a:Order>");
+		xml.append("<a:ChangedDate i:nil=\"true\"/>");
+		xml.append("<a:ClientId>79021</a:ClientId>");
+		xml.append("<a:ClientOrderId>").append(TestingTool.DefaultTestClientOrderNumber).append("</a:ClientOrderId>");
+		xml.append("<a:CreatedDate>2015-01-12T10:37:32.797</a:CreatedDate>");
+		xml.append("<a:CreditReportStatus><a:Accepted>true</a:Accepted><a:CreationDate>2015-01-12T10:37:32.873</a:CreationDate></a:CreditReportStatus>");
+		xml.append("<a:Currency>SEK</a:Currency>");
+		xml.append("<a:Customer xmlns:b=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\">");
+		xml.append("<b:CoAddress>c/o Eriksson, Erik</b:CoAddress>");
+		xml.append("<b:CompanyIdentity i:nil=\"true\"/>");
+		xml.append("<b:CountryCode>SE</b:CountryCode>");
+		xml.append("<b:CustomerType>Individual</b:CustomerType>");
+		xml.append("<b:Email i:nil=\"true\"/>");
+		xml.append("<b:FullName>Persson, Tess T</b:FullName>");
+		xml.append("<b:HouseNumber i:nil=\"true\"/>");
+		xml.append("<b:IndividualIdentity><b:BirthDate i:nil=\"true\"/><b:FirstName i:nil=\"true\"/><b:Initials i:nil=\"true\"/><b:LastName i:nil=\"true\"/></b:IndividualIdentity>");
+		xml.append("<b:Locality>Stan</b:Locality>");
+		xml.append("<b:NationalIdNumber>").append(TestingTool.DefaultTestIndividualNationalIdNumber).append("</b:NationalIdNumber>");
+		xml.append("<b:PhoneNumber i:nil=\"true\"/>");
+		xml.append("<b:PublicKey i:nil=\"true\"/>");
+		xml.append("<b:Street>Testgatan 1</b:Street>");
+		xml.append("<b:ZipCode>99999</b:ZipCode>");
+		xml.append("</a:Customer>");
+		xml.append("<a:CustomerId>1000117</a:CustomerId>");
+		xml.append("<a:CustomerReference/>");
+		xml.append("<a:DeliveryAddress i:nil=\"true\" xmlns:b=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\"/>");
+		xml.append("<a:IsPossibleToAdminister>false</a:IsPossibleToAdminister>");
+		xml.append("<a:IsPossibleToCancel>true</a:IsPossibleToCancel>");
+		xml.append("<a:Notes i:nil=\"true\"/>");
+		xml.append("<a:OrderDeliveryStatus>Created</a:OrderDeliveryStatus>");
+		xml.append("<a:OrderRows>");
+		String ns = " xmlns=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\"";
+		for( int i = 1; i <= rows; i++ ) {
+			xml.append("<a:NumberedOrderRow>");
+			xml.append("<ArticleNumber").append(ns).append(">").append(i).append("</ArticleNumber>");
+			xml.append("<Description").append(ns).append(">Product ").append(i).append(": Description of product ").append(i).append("</Description>");
+			xml.append("<DiscountPercent").append(ns).append(">0.00</DiscountPercent>");
+			xml.append("<NumberOfUnits").append(ns).append(">2.00</NumberOfUnits>");
+			xml.append("<PriceIncludingVat").append(ns).append(">false</PriceIncludingVat>");
+			xml.append("<PricePerUnit").append(ns).append(">").append(10 + (i % 100)).append(".00</PricePerUnit>");
+			xml.append("<Unit").append(ns).append(">st</Unit>");
+			xml.append("<VatPercent").append(ns).append(">25.00</VatPercent>");
+			xml.append("<a:CreditInvoiceId i:nil=\"true\"/>");
+			xml.append("<a:InvoiceId i:nil=\"true\"/>");
+			xml.append("<a:RowNumber>").append(i).append("</a:RowNumber>");
+			xml.append("<a:Status>NotDelivered</a:Status>");
+			xml.append("</a:NumberedOrderRow>");
+		}
+		xml.append("</a:OrderRows>");
+		xml.append("<a:OrderStatus>Active</a:OrderStatus>");
+		xml.append("<a:OrderType>Invoice</a:OrderType>");
+		xml.append("<a:PaymentPlanDetails i:nil=\"true\"/>");
+		xml.append("<a:PendingReasons/>");
+		xml.append("<a:SveaOrderId>").append(orderId).append("</a:SveaOrderId>");
+		xml.append("<a:SveaWillBuy>true</a:SveaWillBuy>");
+		xml.append("</a:Order></a:Orders>");
+		xml.append("</GetOrdersResult></GetOrdersResponse></s:Body></s:Envelope>");
+		return xml.toString();
+	}
+}
@@ -0,0 +1,107 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.adminservice.GetOrdersRequest;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaTestConfigurationProvider;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+
+/**
+ * Performs a GetOrdersRequest against an in-process stub admin service, i.e. builds and streams the request envelope,
+ * sends it over a pooled http connection on localhost, and parses the response. The stub returns a canned response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetOrdersDoRequestBenchmark {
+
+	private static final long ORDER_ID = 504354L;
+
+	@Param({"1", "10", "1000"})
+	public int rows;
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private GetOrdersRequest request;
+
+	@Setup
+	public void setUp() throws IOException {
+		final byte[] response = BenchmarkData.getOrdersResponse( ORDER_ID, rows ).getBytes("UTF-8");
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				byte[] buffer = new byte[8192];
+				while( in.read(buffer) != -1 ) {
+					// discard request
+				}
+				exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(200, response.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				out.close();
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		final URL adminServiceUrl = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/AdminService.svc/backward");
+		ConfigurationProvider config = new SveaTestConfigurationProvider() {
+			@Override
+			public URL getEndPoint(PAYMENTTYPE type) {
+				return (type == PAYMENTTYPE.ADMIN_TYPE) ? adminServiceUrl : super.getEndPoint(type);
+			}
+		};
+
+		request = WebPayAdmin.queryOrder(config)
+			.setOrderId(ORDER_ID)
+			.setCountryCode(TestingTool.DefaultTestCountryCode)
+			.queryInvoiceOrder()
+		;
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdown();
+	}
+
+	@Benchmark
+	public GetOrdersResponse doRequest() {
+		return request.doRequest();
+	}
+}
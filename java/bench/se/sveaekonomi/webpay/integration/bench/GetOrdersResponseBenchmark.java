@@ -0,0 +1,69 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.NodeList;
+
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+
+/**
+ * Parses an admin service GetOrders SOAP response, from the response bytes, into GetOrdersResponse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetOrdersResponseBenchmark {
+
+	private static final Long ORDER_ID = 504354L;
+
+	@Param({"1", "10", "1000"})
+	public int rows;
+
+	private byte[] response;
+	private MessageFactory messageFactory;
+
+	@Setup
+	public void setUp() throws IOException, SOAPException {
+		response = BenchmarkData.getOrdersResponse( ORDER_ID, rows ).getBytes("UTF-8");
+		messageFactory = MessageFactory.newInstance();
+	}
+
+	@Benchmark
+	public GetOrdersResponse parseResponse() throws IOException, SOAPException {
+		return new GetOrdersResponse( getResponseNodes() );
+	}
+
+	@Benchmark
+	public List<GetOrdersResponse> parseMultipleOrdersResponse() throws IOException, SOAPException {
+		return GetOrdersResponse.getOrdersResponses( getResponseNodes(), Collections.singletonList(ORDER_ID) );
+	}
+
+	// as GetOrdersRequest.sendRequest(), all elements in the response body
+	private NodeList getResponseNodes() throws IOException, SOAPException {
+		SOAPMessage message = messageFactory.createMessage( new MimeHeaders(), new ByteArrayInputStream(response) );
+		return message.getSOAPPart().getEnvelope().getBody().getElementsByTagName("*");
+	}
+}
@@ -0,0 +1,82 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.response.hosted.HostedPaymentResponseVerifier;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.security.Base64Util;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+
+/**
+ * Verifies and parses a batch of stored card payment responses using HostedPaymentResponseVerifier. The score is in
+ * messages per second, divide it by the parallelism for messages per second per core. One in ten messages has a bad mac.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostedPaymentResponseVerifierBenchmark {
+
+	private static final int MESSAGES = 10000;
+
+	@Param({"1", "2", "4"})
+	public int parallelism;
+
+	private List<HostedPaymentResponseVerifier.Message> messages;
+	private HostedPaymentResponseVerifier verifier;
+
+	@Setup
+	public void setUp() {
+		ConfigurationProvider config = SveaConfig.getDefaultConfig();
+		String merchantId = config.getMerchantId(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE);
+		String secretWord = config.getSecretWord(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE);
+
+		messages = new ArrayList<HostedPaymentResponseVerifier.Message>(MESSAGES);
+		for( int i = 0; i < MESSAGES; i++ ) {
+			String message = Base64Util.encodeBase64String(
+				"<?xml version='1.0' encoding='UTF-8'?><response><transaction id=\"" + (581380 + i) + "\"><paymentmethod>KORTCERT</paymentmethod>" +
+				"<merchantid>" + merchantId + "</merchantid><customerrefno>" + i + "</customerrefno><amount>18578</amount><currency>SEK</currency>" +
+				"<cardtype>VISA</cardtype><maskedcardno>444433xxxxxx1100</maskedcardno><expirymonth>01</expirymonth><expiryyear>15</expiryyear>" +
+				"<authcode>453626</authcode></transaction><statuscode>0</statuscode></response>"
+			);
+			String mac = (i % 10 == 9) ? "foobar" : MacUtil.createMac(message, secretWord);
+			messages.add( new HostedPaymentResponseVerifier.Message(message, mac, merchantId) );
+		}
+		verifier = new HostedPaymentResponseVerifier(config).setParallelism(parallelism);
+	}
+
+	@TearDown
+	public void tearDown() {
+		verifier.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void verify( Blackhole blackhole ) {
+		for( HostedPaymentResponseVerifier.Result result : verifier.verify(messages) ) {
+			blackhole.consume(result);
+		}
+	}
+}
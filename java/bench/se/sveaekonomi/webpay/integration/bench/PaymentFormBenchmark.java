@@ -0,0 +1,70 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.hosted.helper.HostedXmlBuilder;
+import se.sveaekonomi.webpay.integration.hosted.helper.PaymentForm;
+import se.sveaekonomi.webpay.integration.hosted.payment.HostedPayment;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTMETHOD;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * Builds the hosted service payment form from the payment xml, i.e. Base64 encodes the xml and calculates the SHA-512 mac.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentFormBenchmark {
+
+	@Param({"1", "10", "1000"})
+	public int rows;
+
+	private String xml;
+	private String merchantId;
+	private String secretWord;
+	private URL payPageUrl;
+
+	@Setup
+	public void setUp() {
+		ConfigurationProvider config = SveaConfig.getDefaultConfig();
+		HostedPayment<?> payment = BenchmarkData.createOrder( config, rows )
+			.usePaymentMethod(PAYMENTMETHOD.KORTCERT)
+				.setReturnUrl("http://myurl.se")
+		;
+		payment.calculateRequestValues();
+		xml = new HostedXmlBuilder().getXml(payment);
+		merchantId = config.getMerchantId(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE);
+		secretWord = config.getSecretWord(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE);
+		payPageUrl = config.getEndPoint(PAYMENTTYPE.HOSTED);
+	}
+
+	@Benchmark
+	public PaymentForm setForm() {
+		PaymentForm form = new PaymentForm();
+		form.setXmlMessage(xml);
+		form.setMerchantId(merchantId);
+		form.setSecretWord(secretWord);
+		form.setSubmitMessage(COUNTRYCODE.SE);
+		form.setPayPageUrl(payPageUrl);
+		return form.setForm();
+	}
+}
@@ -0,0 +1,60 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.hosted.HostedOrderRowBuilder;
+import se.sveaekonomi.webpay.integration.hosted.helper.HostedRowFormatter;
+import se.sveaekonomi.webpay.integration.order.create.CreateOrderBuilder;
+import se.sveaekonomi.webpay.integration.webservice.helper.WebserviceRowFormatter;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaOrderRow;
+
+/**
+ * Formats the order rows of an order for the webservice and hosted service requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowFormatterBenchmark {
+
+	@Param({"1", "10", "1000"})
+	public int rows;
+
+	private CreateOrderBuilder order;
+
+	@Setup
+	public void setUp() {
+		order = BenchmarkData.createOrder( SveaConfig.getDefaultConfig(), rows );
+	}
+
+	@Benchmark
+	public ArrayList<SveaOrderRow> webserviceFormatRows() {
+		return new WebserviceRowFormatter(order).formatRows();
+	}
+
+	@Benchmark
+	public ArrayList<SveaOrderRow> webserviceFormatRowsPriceIncludingVat() {
+		return new WebserviceRowFormatter(order).formatRows(true);
+	}
+
+	@Benchmark
+	public ArrayList<HostedOrderRowBuilder> hostedFormatRows() {
+		return new HostedRowFormatter().formatRows(order);
+	}
+}
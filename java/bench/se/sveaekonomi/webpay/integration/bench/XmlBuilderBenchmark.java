@@ -0,0 +1,63 @@
+package se.sveaekonomi.webpay.integration.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.hosted.helper.HostedXmlBuilder;
+import se.sveaekonomi.webpay.integration.hosted.payment.HostedPayment;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTMETHOD;
+import se.sveaekonomi.webpay.integration.webservice.helper.WebServiceXmlBuilder;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaCreateOrder;
+
+/**
+ * Serializes a prepared order to the webservice CreateOrderEu request xml and to the hosted service payment xml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlBuilderBenchmark {
+
+	@Param({"1", "10", "1000"})
+	public int rows;
+
+	private SveaCreateOrder createOrderEu;
+	private HostedPayment<?> hostedPayment;
+
+	@Setup
+	public void setUp() {
+		createOrderEu = BenchmarkData.createOrder( SveaConfig.getDefaultConfig(), rows )
+			.useInvoicePayment()
+				.prepareRequest().request
+		;
+		hostedPayment = BenchmarkData.createOrder( SveaConfig.getDefaultConfig(), rows )
+			.usePaymentMethod(PAYMENTMETHOD.KORTCERT)
+				.setReturnUrl("http://myurl.se")
+		;
+		hostedPayment.calculateRequestValues();
+	}
+
+	@Benchmark
+	public String getCreateOrderEuXml() {
+		return new WebServiceXmlBuilder().getCreateOrderEuXml(createOrderEu);
+	}
+
+	@Benchmark
+	public String getHostedXml() {
+		return new HostedXmlBuilder().getXml(hostedPayment);
+	}
+}
@@ -1,5 +1,7 @@
 package se.sveaekonomi.webpay.integration;
 
+import java.util.concurrent.Future;
+
 import se.sveaekonomi.webpay.integration.Respondable;
 
 /**
@@ -20,4 +22,9 @@ public interface Requestable {
 	 * doRequest() performs a soap request and returns the corresponding response class
 	 */
 	public <T extends Respondable> T doRequest();
+
+	/**
+	 * doRequestAsync() performs doRequest() on the SveaRequestExecutor, and returns a Future of the response class
+	 */
+	public Future<? extends Respondable> doRequestAsync();
 }
@@ -140,6 +140,18 @@ public class WebPay {
      *      response = request.deliverCardOrder().doRequest();          // returns ConfirmTransactionResponse
      * ...
      * 
+     * To deliver many invoice or payment plan orders in full, use setOrderIds() instead of setOrderId(). The orders
+     * are then delivered in chunks, using one DeliverOrders request per chunk:
+     * 
+     * ...
+     *      responses = WebPay.deliverOrder(config)
+     *          .setOrderIds()                 // required, collection of order ids
+     *          .setCountryCode()              // required
+     *          .setInvoiceDistributionType()  // required
+     *          .deliverInvoiceOrders()        // or deliverPaymentPlanOrders()
+     *          .doRequest();                  // returns List<DeliverOrdersResponse>, one per order id
+     * ...
+     * 
      * @return DeliverOrderBuilder
      */
     public static DeliverOrderBuilder deliverOrder(ConfigurationProvider config) {
@@ -223,6 +235,7 @@ public class WebPay {
      * 	// set countrycode and supply client credentials
      * 	GetPaymentPlanParams request = WebPay.getPaymentPlanParams(config)
      * 		.setCountryCode()				// required
+     * 		.useCache()						// optional, serve response from PaymentPlanParamsCache.getDefault()
      * 	;
      * 
      * 	// receive response and get CampaignCodes from response
@@ -63,7 +63,18 @@ public class WebPayAdmin {
      *     response = request.queryCardOrder().doRequest();        	// returns QueryTransactionResponse
      *     response = request.queryDirectBankOrder().doRequest();  	// returns QueryTransactionResponse
      * ...
-     * 
+     *
+     * To get information about many invoice or payment plan orders, use setOrderIds() instead of setOrderId(). The orders
+     * are then retrieved in chunks, using one request per chunk:
+     *
+     * ...
+     *     responses = WebPayAdmin.queryOrder(config)
+     *          .setOrderIds()         // required, collection of order ids
+     *          .setCountryCode()      // required
+     *          .queryInvoiceOrders()  // or queryPaymentPlanOrders()
+     *          .doRequest();          // returns List<GetOrdersResponse>, one per order id
+     * ...
+     *
 	 */
 	public static QueryOrderBuilder queryOrder(ConfigurationProvider config) {
     	verifyConfig( config ); 	
@@ -1,26 +1,24 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPElement;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.AddOrderRowsBuilder;
 import se.sveaekonomi.webpay.integration.order.row.OrderRowBuilder;
 import se.sveaekonomi.webpay.integration.response.adminservice.AddOrderRowsResponse;
 import se.sveaekonomi.webpay.integration.util.calculation.MathUtil;
-import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 
 public class AddOrderRowsRequest extends AdminServiceRequest {
 
@@ -68,6 +66,14 @@ public class AddOrderRowsRequest extends AdminServiceRequest {
     }    
     
 	public SOAPMessage prepareRequest( boolean resendOrderWithFlippedPriceIncludingVat ) throws SOAPException {	
+		// build and return inspectable request object
+		return createSoapMessage( prepareContent( resendOrderWithFlippedPriceIncludingVat ), this.action, this.builder.getConfig() );
+	}
+
+	/**
+	 * validates the builder and returns the request envelope content, throws runtime exception on validation error
+	 */
+	private SoapEnvelopeWriter.Content prepareContent( boolean resendOrderWithFlippedPriceIncludingVat ) {	
 
 		// validate builder, throw runtime exception on error
 		try {
@@ -78,12 +84,7 @@ public class AddOrderRowsRequest extends AdminServiceRequest {
         }
 
 		// determine if we can send the order as incvat, by using the priceIncludingVat = true flag in request
-		boolean usePriceIncludingVatFlag = determinePriceIncludingVat(this.builder.getOrderRows(), resendOrderWithFlippedPriceIncludingVat);		
-		
-		// build and return inspectable request object
-		MessageFactory messageFactory = MessageFactory.newInstance();
-		SOAPMessage soapMessage = messageFactory.createMessage();
-		SOAPPart soapPart = soapMessage.getSOAPPart();
+		final boolean usePriceIncludingVatFlag = determinePriceIncludingVat(this.builder.getOrderRows(), resendOrderWithFlippedPriceIncludingVat);		
 		
 		//<soapenv:Envelope 
 		//xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" 
@@ -118,75 +119,49 @@ public class AddOrderRowsRequest extends AdminServiceRequest {
 		//   </soapenv:Body>
 		//</soapenv:Envelope>
 
-		// SOAP Envelope
-		SOAPEnvelope envelope = soapPart.getEnvelope(); // adds namespace SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/
-	    envelope.addNamespaceDeclaration("dat", "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service");
-		envelope.addNamespaceDeclaration("dat1", "http://schemas.datacontract.org/2004/07/DataObjects.Webservice");	    
-	    envelope.addNamespaceDeclaration("tem", "http://tempuri.org/");
-
-	    // SOAP Headers
-		String soapActionPrefix = "http://tempuri.org/IAdminService/";		    	
-		MimeHeaders headers = soapMessage.getMimeHeaders();
-		headers.addHeader("SOAPAction", soapActionPrefix + this.action);
-		
-    	setHeaderRequestProperties(headers, this.builder.getConfig());		
-			    
-	    // SOAP Body
-	    SOAPBody body = envelope.getBody();
-	    SOAPElement updateOrderRows = body.addChildElement("AddOrderRows", "tem");
-	    SOAPElement request = updateOrderRows.addChildElement("request", "tem");
-	    	SOAPElement authentication = request.addChildElement("Authentication", "dat");
-	    		SOAPElement password = authentication.addChildElement("Password", "dat");	    			
-	    			password.addTextNode(this.builder.getConfig().getPassword( this.builder.getOrderType(), this.builder.getCountryCode()));
-	    		SOAPElement username = authentication.addChildElement("Username", "dat");
-	    			username.addTextNode(this.builder.getConfig().getUsername( this.builder.getOrderType(), this.builder.getCountryCode()));
-	        // Settings -- optional, not sent by package
-			SOAPElement clientId = request.addChildElement("ClientId", "dat");
-				clientId.addTextNode(String.valueOf(this.builder.getConfig().getClientNumber( this.builder.getOrderType(), this.builder.getCountryCode() )));
-		    	
-		    SOAPElement orderRows = request.addChildElement("OrderRows", "dat");
-		    for( OrderRowBuilder row : this.builder.getOrderRows() ) {
-		    	SOAPElement orderRow = orderRows.addChildElement("OrderRow", "dat1");
-		    		SOAPElement articleNumber = orderRow.addChildElement("ArticleNumber", "dat1");
-		    			articleNumber.addTextNode( (row.getArticleNumber() == null ) ? "" : row.getArticleNumber() );
-	    			SOAPElement description = orderRow.addChildElement("Description", "dat1");	    			
-	    				description.addTextNode( formatRowAndDescription(row.getName(), row.getDescription()) );
-    				SOAPElement discountPercent = orderRow.addChildElement("DiscountPercent", "dat1");
-						discountPercent.addTextNode( String.valueOf(row.getDiscountPercent()) );
-    				SOAPElement numberOfUnits = orderRow.addChildElement("NumberOfUnits", "dat1");
-    					numberOfUnits.addTextNode( String.valueOf(row.getQuantity()) );
-					SOAPElement priceIncludingVat = orderRow.addChildElement("PriceIncludingVat", "dat1");
-						priceIncludingVat.addTextNode( usePriceIncludingVatFlag ? "true" : "false" );
-					SOAPElement pricePerUnit = orderRow.addChildElement("PricePerUnit", "dat1");
-						pricePerUnit.addTextNode( String.valueOf( 
-	    					// calculate the correct amount to send based on the builder order row and usePriceIncludingVat flag
-							getPricePerUnitFromBuilderOrderRowAndPriceIncludingVatFlag( row, usePriceIncludingVatFlag) ) 
-						);
-    				SOAPElement unit = orderRow.addChildElement("Unit", "dat1");
-    					unit.addTextNode( String.valueOf(row.getUnit()) ); 
-    				SOAPElement vatPercent = orderRow.addChildElement("VatPercent", "dat1");
-    					vatPercent.addTextNode( String.valueOf( 
-	    					// get vat percent to send based on the builder order row (i.e. if specified exvat + incvat)
-							getVatPercentFromBuilderOrderRow(row) ) 
-						); 
-			}		    
-		    SOAPElement orderType = request.addChildElement("OrderType", "dat");
-		    	orderType.addTextNode( this.builder.getOrderType().toString() );				
-		    SOAPElement sveaOrderId = request.addChildElement("SveaOrderId", "dat");
-		    	sveaOrderId.addTextNode(String.valueOf(this.builder.getOrderId()));	
-	    	
-    	soapMessage.saveChanges();
-    	
-        // DEBUG: Print SOAP request 
-//		System.out.print("Request SOAP Message:");
-//		try {
-//			soapMessage.writeTo(System.out);
-//		} catch (IOException e) {
-//			e.printStackTrace();
-//		}
-//		System.out.println();
-		    	
-		return soapMessage;
+		return new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				Credentials credentials = Credentials.resolve( builder.getConfig(), builder.getOrderType(), builder.getCountryCode() );
+				
+				// SOAP Envelope
+				writer.startEnvelope( SOAP_ENVELOPE_PREFIX, "dat", NAMESPACE_DAT, "dat1", NAMESPACE_DAT1, "tem", NAMESPACE_TEM );
+				
+				// SOAP Body
+				writer.startElement("tem", "AddOrderRows");
+				writer.startElement("tem", "request");
+					writeAuthentication( writer, 
+						credentials.getPassword(),
+						credentials.getUsername()
+					);
+					// Settings -- optional, not sent by package
+					writer.element("dat", "ClientId", String.valueOf(credentials.getClientNumber()));
+					
+					writer.startElement("dat", "OrderRows");
+					for( OrderRowBuilder row : builder.getOrderRows() ) {
+						writer.startElement("dat1", "OrderRow");
+							writer.element("dat1", "ArticleNumber", (row.getArticleNumber() == null ) ? "" : row.getArticleNumber());
+							writer.element("dat1", "Description", formatRowAndDescription(row.getName(), row.getDescription()));
+							writer.element("dat1", "DiscountPercent", String.valueOf(row.getDiscountPercent()));
+							writer.element("dat1", "NumberOfUnits", String.valueOf(row.getQuantity()));
+							writer.element("dat1", "PriceIncludingVat", usePriceIncludingVatFlag ? "true" : "false");
+							writer.element("dat1", "PricePerUnit", String.valueOf( 
+								// calculate the correct amount to send based on the builder order row and usePriceIncludingVat flag
+								getPricePerUnitFromBuilderOrderRowAndPriceIncludingVatFlag( row, usePriceIncludingVatFlag) ) 
+							);
+							writer.element("dat1", "Unit", String.valueOf(row.getUnit()));
+							writer.element("dat1", "VatPercent", String.valueOf( 
+								// get vat percent to send based on the builder order row (i.e. if specified exvat + incvat)
+								getVatPercentFromBuilderOrderRow(row) ) 
+							);
+						writer.endElement();
+					}
+					writer.endElement();
+					writer.element("dat", "OrderType", builder.getOrderType().toString());
+					writer.element("dat", "SveaOrderId", String.valueOf(builder.getOrderId()));
+				writer.endEnvelope();
+			}
+		};
 	}
 
 	protected Double getPricePerUnitFromBuilderOrderRowAndPriceIncludingVatFlag( OrderRowBuilder row, boolean usePriceIncludingVatFlag) {
@@ -241,28 +216,24 @@ public class AddOrderRowsRequest extends AdminServiceRequest {
 	}	
 
 	public AddOrderRowsResponse doRequest() {
-		return doRequest( false );
+		RequestTimer timer = RequestMetrics.start( this.action, builder.getOrderType(), builder.getCountryCode() );
+		try {
+			return timer.finish( doRequest( false, timer ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
 	}
-	private AddOrderRowsResponse doRequest( boolean resendOrderWithFlippedPriceIncludingVat ) {	
+	private AddOrderRowsResponse doRequest( boolean resendOrderWithFlippedPriceIncludingVat, RequestTimer timer ) {	
 		
         // validate and prepare request, throw runtime exception on error
-		SOAPMessage soapRequest;
-		try {
-        	soapRequest = prepareRequest( resendOrderWithFlippedPriceIncludingVat );		
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "AddOrderRowsRequest: prepareRequest failed.", e );
-		}
+		SoapEnvelopeWriter.Content soapRequest = prepareContent(resendOrderWithFlippedPriceIncludingVat);		
 		
 		// send request and receive response
 		SOAPMessage soapResponse;
 		try {
-			// Create SOAP Connection
-			SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-			SOAPConnection soapConnection = soapConnectionFactory.createConnection();
-			
-			// Send SOAP Message to SOAP Server
-	        URL url = builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE);		
-			soapResponse = soapConnection.call( soapRequest, url.toString() );
+			// Stream SOAP Message to SOAP Server using shared SOAP Connection
+			soapResponse = sendSoapRequest( soapRequest, this.action, builder.getConfig(), timer );
 			
 			// DEBUG: print SOAP Response
 //			System.out.print("Response SOAP Message:");
@@ -273,7 +244,6 @@ public class AddOrderRowsRequest extends AdminServiceRequest {
 //			}
 //			System.out.println();
 //			
-//			soapConnection.close();			
 		}
 		catch( SOAPException e) {
 			throw new SveaWebPayException( "AddOrderRowsRequest: doRequest send request failed.", e );
@@ -290,9 +260,23 @@ public class AddOrderRowsRequest extends AdminServiceRequest {
 		
         // if we received error 50036 from webservice , resend request with flipPriceIncludingVat set to true
 		if( response.getResultCode().equals("50036") ) {         				
-			response = this.doRequest( true ); 
+			timer.flipped();
+			response = this.doRequest( true, timer ); 
         }
 
 		return response;
 	};	
+
+	/**
+	 * Adds the order rows on the SveaRequestExecutor, without waiting for Svea to answer.
+	 * @return a Future of the AddOrderRowsResponse
+	 */
+	public Future<AddOrderRowsResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<AddOrderRowsResponse>() {
+			@Override
+			public AddOrderRowsResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
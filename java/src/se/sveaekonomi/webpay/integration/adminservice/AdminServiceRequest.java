@@ -1,31 +1,109 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
 
+import javax.xml.soap.MessageFactory;
 import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
 
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.EndpointIsolation;
 import se.sveaekonomi.webpay.integration.util.request.GetRequestProperties;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebserviceRowFormatter;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaSoapConnection;
 
 public class AdminServiceRequest {
 
+	protected static final String SOAP_ACTION_PREFIX = "http://tempuri.org/IAdminService/";
+
+	// namespaces used by the admin service requests, written by SoapEnvelopeWriter.startEnvelope()
+	protected static final String NAMESPACE_ARR = "http://schemas.microsoft.com/2003/10/Serialization/Arrays";
+	protected static final String NAMESPACE_DAT = "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service";
+	protected static final String NAMESPACE_DAT1 = "http://schemas.datacontract.org/2004/07/DataObjects.Webservice";
+	protected static final String NAMESPACE_TEM = "http://tempuri.org/";
+
+	/** Envelope prefix used by SAAJ, kept so that the requests are identical to those built using SOAPElement */
+	protected static final String SOAP_ENVELOPE_PREFIX = "SOAP-ENV";
+
+	/** Returns the shared, pooled SOAP connection used to send admin service requests */
+	protected SveaSoapConnection getSoapConnection() {
+		return SveaSoapConnection.getDefault();
+	}
+
 	protected void setHeaderRequestProperties(MimeHeaders headers, ConfigurationProvider config) {
-		HashMap<String,String> libraryproperties = GetRequestProperties.getSveaLibraryProperties();            
-        
-        headers.addHeader("X-Svea-Library-Name", libraryproperties.get("library_name") );
-        headers.addHeader("X-Svea-Library-Version", libraryproperties.get("library_version") );
-        
-    	HashMap<String,String> integrationproperties = GetRequestProperties.getSveaIntegrationProperties( config );            
-
-        headers.addHeader("X-Svea-Integration-Platform", integrationproperties.get("integrationplatform") );
-        headers.addHeader("X-Svea-Integration-Company", integrationproperties.get("integrationcompany") );
-        headers.addHeader("X-Svea-Integration-Version", integrationproperties.get("integrationversion") );
-	}
-	
+		GetRequestProperties.getRequestProperties( config ).addHeaders( headers );
+	}
+
+	/** @return the SOAPAction and X-Svea-* headers to send with the given admin service action */
+	protected MimeHeaders createMimeHeaders( String action, ConfigurationProvider config ) {
+		return addMimeHeaders( new MimeHeaders(), action, config );
+	}
+
+	private MimeHeaders addMimeHeaders( MimeHeaders headers, String action, ConfigurationProvider config ) {
+		headers.addHeader("SOAPAction", SOAP_ACTION_PREFIX + action);
+		setHeaderRequestProperties(headers, config);
+		return headers;
+	}
+
+	/**
+	 * Builds an inspectable SOAPMessage holding the envelope written by the content, as returned by prepareRequest().
+	 */
+	protected SOAPMessage createSoapMessage( SoapEnvelopeWriter.Content content, String action, ConfigurationProvider config ) throws SOAPException {
+		try {
+			byte[] envelope = SoapEnvelopeWriter.toByteArray( content );
+			MimeHeaders headers = new MimeHeaders();
+			headers.addHeader("Accept", SveaSoapConnection.ACCEPT);
+			addMimeHeaders( headers, action, config );
+			SOAPMessage soapMessage = MessageFactory.newInstance().createMessage( headers, new ByteArrayInputStream(envelope) );
+			soapMessage.saveChanges();
+			return soapMessage;
+		}
+		catch( IOException e ) {
+			throw new SOAPException( "Error writing SOAP envelope", e );
+		}
+	}
+
+	/**
+	 * Streams the envelope written by the content to the admin service endpoint, and returns the response.
+	 */
+	protected SOAPMessage sendSoapRequest( SoapEnvelopeWriter.Content content, String action, ConfigurationProvider config ) throws SOAPException {
+		return sendSoapRequest( content, action, config, null );
+	}
+
+	/**
+	 * Streams the envelope written by the content to the admin service endpoint, and returns the response. The timer, if
+	 * not null, is passed on to the connection to time the request phases.
+	 */
+	protected SOAPMessage sendSoapRequest( SoapEnvelopeWriter.Content content, String action, ConfigurationProvider config, RequestTimer timer ) throws SOAPException {
+		URL endpoint = config.getEndPoint(PAYMENTTYPE.ADMIN_TYPE);
+		return getSoapConnection().call( content, createMimeHeaders(action, config), endpoint, timer, EndpointIsolation.getGuard(config, endpoint) );
+	}
+
+	/**
+	 * As sendSoapRequest(content, action, config, timer), but returns the response body unparsed, to be read using a streaming parser.
+	 */
+	protected byte[] sendSoapRequestForBody( SoapEnvelopeWriter.Content content, String action, ConfigurationProvider config, RequestTimer timer ) throws SOAPException {
+		URL endpoint = config.getEndPoint(PAYMENTTYPE.ADMIN_TYPE);
+		return getSoapConnection().callForBody( content, createMimeHeaders(action, config), endpoint, timer, EndpointIsolation.getGuard(config, endpoint) );
+	}
+
+	/** Writes the dat:Authentication element */
+	protected void writeAuthentication( SoapEnvelopeWriter writer, String password, String username ) throws IOException {
+		writer.startElement("dat", "Authentication");
+			writer.element("dat", "Password", password);
+			writer.element("dat", "Username", username);
+		writer.endElement();
+	}
+
 	protected String formatRowAndDescription( String name, String description ) {
-		WebserviceRowFormatter wsrf = new WebserviceRowFormatter( null );		
+		WebserviceRowFormatter wsrf = new WebserviceRowFormatter( null );
 		return wsrf.formatRowAndDescription( name, description );
 	}
-	
+
 }
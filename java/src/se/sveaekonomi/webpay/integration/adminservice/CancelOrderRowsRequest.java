@@ -1,23 +1,21 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
-import java.net.URL;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPElement;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.CancelOrderRowsBuilder;
 import se.sveaekonomi.webpay.integration.response.adminservice.CancelOrderRowsResponse;
-import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 
 public class CancelOrderRowsRequest extends AdminServiceRequest {
 
@@ -50,6 +48,14 @@ public class CancelOrderRowsRequest extends AdminServiceRequest {
 	}	
 	
 	public SOAPMessage prepareRequest() throws SOAPException {	
+		// build and return inspectable request object
+		return createSoapMessage( prepareContent(), this.action, this.builder.getConfig() );
+	}
+
+	/**
+	 * validates the builder and returns the request envelope content, throws runtime exception on validation error
+	 */
+	private SoapEnvelopeWriter.Content prepareContent() {
 
 		// validate builder, throw runtime exception on error
 		try {
@@ -58,11 +64,6 @@ public class CancelOrderRowsRequest extends AdminServiceRequest {
         catch (ValidationException e) {
             throw new SveaWebPayException( "CancelOrderRowsRequest: validateRequest failed.", e );
         }
-				
-		// build and return inspectable request object
-		MessageFactory messageFactory = MessageFactory.newInstance();
-		SOAPMessage soapMessage = messageFactory.createMessage();
-		SOAPPart soapPart = soapMessage.getSOAPPart();
 		
 		//<soapenv:Envelope 
 		//	xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" 
@@ -88,76 +89,57 @@ public class CancelOrderRowsRequest extends AdminServiceRequest {
 		//   </soapenv:Body>
 		//</soapenv:Envelope>
 		
-		// SOAP Envelope
-		SOAPEnvelope envelope = soapPart.getEnvelope(); // adds namespace SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/
-	    envelope.addNamespaceDeclaration("dat", "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service");
-	    envelope.addNamespaceDeclaration("arr", "http://schemas.microsoft.com/2003/10/Serialization/Arrays");
-	    envelope.addNamespaceDeclaration("tem", "http://tempuri.org/");	    
-
-	    // SOAP Headers
-		String soapActionPrefix = "http://tempuri.org/IAdminService/";		    	
-		MimeHeaders headers = soapMessage.getMimeHeaders();
-		headers.addHeader("SOAPAction", soapActionPrefix + this.action);
-
-    	setHeaderRequestProperties(headers, this.builder.getConfig());				
-		
-	    // SOAP Body
-	    SOAPBody body = envelope.getBody();
-	    SOAPElement deliverPartial = body.addChildElement("CancelOrderRows", "tem");
-		    SOAPElement request = deliverPartial.addChildElement("request", "tem");
-		    	SOAPElement authentication = request.addChildElement("Authentication", "dat");
-					SOAPElement password = authentication.addChildElement("Password", "dat");	    			
-						password.addTextNode(this.builder.getConfig().getPassword( this.builder.getOrderType(), this.builder.getCountryCode()));
-					SOAPElement username = authentication.addChildElement("Username", "dat");
-						username.addTextNode(this.builder.getConfig().getUsername( this.builder.getOrderType(), this.builder.getCountryCode()));
-		        // Settings -- optional, not sent by package
-				SOAPElement clientId = request.addChildElement("ClientId", "dat");
-					clientId.addTextNode(String.valueOf(this.builder.getConfig().getClientNumber( this.builder.getOrderType(), this.builder.getCountryCode() )));
-		  
-				SOAPElement orderRowNumbers = request.addChildElement("OrderRowNumbers", "dat");
-		    		for( Integer rowIndex : this.builder.getRowsToCancel() ) {
-		    			orderRowNumbers.addChildElement("long","arr").addTextNode( Integer.toString( rowIndex ) );
-		    		}
-	    		
-			    SOAPElement orderType = request.addChildElement("OrderType", "dat");
-		    		orderType.addTextNode( this.builder.getOrderType().toString() );
-			    SOAPElement sveaOrderId = request.addChildElement("SveaOrderId", "dat");
-			    	sveaOrderId.addTextNode(String.valueOf(this.builder.getOrderId()));
-	    	
-    	soapMessage.saveChanges();
-    	
-        // DEBUG: Print SOAP request 
-//		System.out.print("Request SOAP Message:");
-//		try {
-//			soapMessage.writeTo(System.out);
-//		} catch (IOException e) {
-//			e.printStackTrace();
-//		}
-//		System.out.println();
-		    	
-		return soapMessage;
+		return new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				Credentials credentials = Credentials.resolve( builder.getConfig(), builder.getOrderType(), builder.getCountryCode() );
+				
+				// SOAP Envelope
+				writer.startEnvelope( SOAP_ENVELOPE_PREFIX, "arr", NAMESPACE_ARR, "dat", NAMESPACE_DAT, "tem", NAMESPACE_TEM );
+				
+				// SOAP Body
+				writer.startElement("tem", "CancelOrderRows");
+				writer.startElement("tem", "request");
+					writeAuthentication( writer, 
+						credentials.getPassword(),
+						credentials.getUsername()
+					);
+					// Settings -- optional, not sent by package
+					writer.element("dat", "ClientId", String.valueOf(credentials.getClientNumber()));
+					
+					writer.startElement("dat", "OrderRowNumbers");
+					for( Integer rowIndex : builder.getRowsToCancel() ) {
+						writer.element("arr", "long", Integer.toString( rowIndex ));
+					}
+					writer.endElement();
+					
+					writer.element("dat", "OrderType", builder.getOrderType().toString());
+					writer.element("dat", "SveaOrderId", String.valueOf(builder.getOrderId()));
+				writer.endEnvelope();
+			}
+		};
 	}
 	
-	public CancelOrderRowsResponse doRequest() {	
-		
-        // validate and prepare request, throw runtime exception on error
-		SOAPMessage soapRequest;
+	public CancelOrderRowsResponse doRequest() {
+		RequestTimer timer = RequestMetrics.start( this.action, builder.getOrderType(), builder.getCountryCode() );
 		try {
-        	soapRequest = prepareRequest();		
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "CancelOrderRowsRequest: prepareRequest failed.", e );
+			return timer.finish( doRequest( timer ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
 		}
+	}
+
+	private CancelOrderRowsResponse doRequest( RequestTimer timer ) {	
+		
+        // validate and prepare request, throw runtime exception on error
+		SoapEnvelopeWriter.Content soapRequest = prepareContent();		
 		
 		// send request and receive response
 		SOAPMessage soapResponse;
 		try {
-			// Create SOAP Connection
-			SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-			SOAPConnection soapConnection = soapConnectionFactory.createConnection();
-			
-			// Send SOAP Message to SOAP Server
-	        URL url = builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE);		
-			soapResponse = soapConnection.call( soapRequest, url.toString() );
+			// Stream SOAP Message to SOAP Server using shared SOAP Connection
+			soapResponse = sendSoapRequest( soapRequest, this.action, builder.getConfig(), timer );
 			
 			// DEBUG: print SOAP Response
 //			System.out.print("Response SOAP Message:");
@@ -167,8 +149,6 @@ public class CancelOrderRowsRequest extends AdminServiceRequest {
 //				e.printStackTrace();
 //			}
 //			System.out.println();
-			
-			soapConnection.close();			
 		}
 		catch( SOAPException e) {
 			throw new SveaWebPayException( "CancelOrderRowsRequest: doRequest send request failed.", e );
@@ -186,4 +166,16 @@ public class CancelOrderRowsRequest extends AdminServiceRequest {
 	};	
 	
 	
+	/**
+	 * Cancels the order rows in the background.
+	 * @return a Future of the CancelOrderRowsResponse
+	 */
+	public Future<CancelOrderRowsResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<CancelOrderRowsResponse>() {
+			@Override
+			public CancelOrderRowsResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
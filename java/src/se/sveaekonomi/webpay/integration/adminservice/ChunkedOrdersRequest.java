@@ -0,0 +1,110 @@
+package se.sveaekonomi.webpay.integration.adminservice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.ValidationException;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+
+/**
+ * Splits the order ids of a bulk request into chunks of at most chunkSize orders, sends one request per chunk, and
+ * collects one response per order id, in the order given. A chunk failing with a SveaWebPayException is answered with
+ * one not accepted response per order id in the chunk, and does not abort the remaining chunks.
+ *
+ * @param <Q> the request sent for each chunk
+ * @param <R> the response returned for each order id
+ */
+abstract class ChunkedOrdersRequest<Q, R> {
+
+	private final String name;
+	private int chunkSize;
+
+	ChunkedOrdersRequest( String name, int chunkSize ) {
+		this.name = name;
+		this.chunkSize = chunkSize;
+	}
+
+	int getChunkSizeValue() {
+		return chunkSize;
+	}
+
+	void setChunkSizeValue( int chunkSize ) {
+		if( chunkSize < 1 ) {
+			throw new SveaWebPayException( name + ": chunkSize must be at least 1, was " + chunkSize + "." );
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/** @return the order ids given to the builder using setOrderIds(), or null */
+	abstract List<Long> getBuilderOrderIds();
+
+	/** @return the order id given to the builder using setOrderId(), or null */
+	abstract Long getBuilderOrderId();
+
+	/** @return the errors for the required attributes other than the order ids that are missing, or empty String if none */
+	abstract String validateAttributes();
+
+	abstract Q createChunkRequest( List<Long> orderIds );
+
+	abstract List<Long> getChunkOrderIds( Q request );
+
+	abstract List<R> doChunkRequest( Q request );
+
+	abstract List<R> getFailedResponses( List<Long> orderIds, String errorMessage );
+
+	/**
+	 * validates that the order ids, and all other required attributes, are present in the builder object
+	 * @throws ValidationException
+	 */
+	void validate() throws ValidationException {
+		String errors = "";
+		if( getBuilderOrderIds() == null || getBuilderOrderIds().isEmpty() ) {
+			errors += "MISSING VALUE - OrderIds are required, use setOrderIds().\n";
+		}
+		if( getBuilderOrderId() != null && getBuilderOrderIds() != null ) {
+			errors += "NOT VALID - Use either setOrderId() or setOrderIds(), not both.\n";
+		}
+		errors += validateAttributes();
+		if( !errors.equals("") ) {
+			throw new ValidationException(errors);
+		}
+	}
+
+	/**
+	 * @return one request per chunk of order ids, throws runtime exception on validation error
+	 */
+	List<Q> createChunkRequests() {
+		try {
+			validate();
+		}
+		catch( ValidationException e ) {
+			throw new SveaWebPayException( name + ": validateRequest failed.", e );
+		}
+
+		List<Long> orderIds = getBuilderOrderIds();
+		List<Q> requests = new ArrayList<Q>( (orderIds.size() + chunkSize - 1) / chunkSize );
+		for( int start = 0; start < orderIds.size(); start += chunkSize ) {
+			requests.add( createChunkRequest( new ArrayList<Long>( orderIds.subList(start, Math.min(start + chunkSize, orderIds.size())) ) ) );
+		}
+		return requests;
+	}
+
+	/**
+	 * @return one response per order id, in the order given
+	 */
+	List<R> doChunkRequests() {
+		List<Q> requests = createChunkRequests();
+		List<R> responses = new ArrayList<R>( getBuilderOrderIds().size() );
+		for( Q request : requests ) {
+			try {
+				responses.addAll( doChunkRequest(request) );
+			}
+			catch( SveaWebPayException e ) {
+				String errorMessage = (e.getCause() != null) ? e.getMessage() + " " + e.getCause().getMessage() : e.getMessage();
+				responses.addAll( getFailedResponses( getChunkOrderIds(request), errorMessage ) );
+			}
+		}
+		return responses;
+	}
+}
@@ -1,23 +1,21 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
-import java.net.URL;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPElement;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.DeliverOrderRowsBuilder;
 import se.sveaekonomi.webpay.integration.response.adminservice.DeliverOrderRowsResponse;
-import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 
 /**
  * Handles Admin Webservice DeliverPartial method
@@ -58,6 +56,14 @@ public class DeliverOrderRowsRequest extends AdminServiceRequest  {
 	}
 
 	public SOAPMessage prepareRequest() throws SOAPException {	
+		// build and return inspectable request object
+		return createSoapMessage( prepareContent(), this.action, this.builder.getConfig() );
+	}
+
+	/**
+	 * validates the builder and returns the request envelope content, throws runtime exception on validation error
+	 */
+	private SoapEnvelopeWriter.Content prepareContent() {
 
 		// validate builder, throw runtime exception on error
 		try {
@@ -66,11 +72,6 @@ public class DeliverOrderRowsRequest extends AdminServiceRequest  {
         catch (ValidationException e) {
             throw new SveaWebPayException( "DeliverPartialRequest: validateRequest failed.", e );
         }
-				
-		// build and return inspectable request object
-		MessageFactory messageFactory = MessageFactory.newInstance();
-		SOAPMessage soapMessage = messageFactory.createMessage();
-		SOAPPart soapPart = soapMessage.getSOAPPart();
 		
 		//<soapenv:Envelope 
 		//	xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" 
@@ -99,79 +100,58 @@ public class DeliverOrderRowsRequest extends AdminServiceRequest  {
 		//   </soapenv:Body>
 		//</soapenv:Envelope>  	
 		
-		// SOAP Envelope
-		SOAPEnvelope envelope = soapPart.getEnvelope(); // adds namespace SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/
-	    envelope.addNamespaceDeclaration("dat", "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service");
-	    envelope.addNamespaceDeclaration("arr", "http://schemas.microsoft.com/2003/10/Serialization/Arrays");
-	    envelope.addNamespaceDeclaration("tem", "http://tempuri.org/");	    
-
-	    // SOAP Headers
-		String soapActionPrefix = "http://tempuri.org/IAdminService/";		    	
-		MimeHeaders headers = soapMessage.getMimeHeaders();
-		headers.addHeader("SOAPAction", soapActionPrefix + this.action);
-			    
-    	setHeaderRequestProperties(headers, this.builder.getConfig());		
-
-    	// SOAP Body
-	    SOAPBody body = envelope.getBody();
-	    SOAPElement deliverPartial = body.addChildElement("DeliverPartial", "tem");
-	    SOAPElement request = deliverPartial.addChildElement("request", "tem");
-	    	SOAPElement authentication = request.addChildElement("Authentication", "dat");
-	    		SOAPElement password = authentication.addChildElement("Password", "dat");
-	    			password.addTextNode(this.builder.getConfig().getPassword( this.builder.getOrderType(), this.builder.getCountryCode()));
-	    		SOAPElement username = authentication.addChildElement("Username", "dat");
-	    			username.addTextNode(this.builder.getConfig().getUsername( this.builder.getOrderType(), this.builder.getCountryCode()));
-	        // Settings -- optional, not sent by package
-	    	SOAPElement invoiceDistributionType = request.addChildElement("InvoiceDistributionType", "dat");
-	    		invoiceDistributionType.addTextNode(this.builder.getInvoiceDistributionType().toString());    		
-			SOAPElement orderToDeliver = request.addChildElement("OrderToDeliver", "dat");
-				SOAPElement clientId = orderToDeliver.addChildElement("ClientId", "dat");
-					clientId.addTextNode(String.valueOf(this.builder.getConfig().getClientNumber(this.builder.getOrderType(), this.builder.getCountryCode())));
-				// OrderType -- optional, should ignored for EU clients (which is all that the integration package supports)
-				SOAPElement orderType = orderToDeliver.addChildElement("OrderType", "dat");
-			    	orderType.addTextNode("Invoice"); // deliverPartial only applies to Invoice orders
-			    SOAPElement sveaOrderId = orderToDeliver.addChildElement("SveaOrderId", "dat");
-			    	sveaOrderId.addTextNode(String.valueOf(this.builder.getOrderId()));
-	    	SOAPElement rowNumbers = request.addChildElement("RowNumbers", "dat");
-	    		for( Integer rowIndex : this.builder.getRowsToDeliver() ) {
-	    			rowNumbers.addChildElement("long","arr").addTextNode( Integer.toString( rowIndex ) );
-	    		}
-	    	
-    	soapMessage.saveChanges();
-    	
-        // DEBUG: Print SOAP request 
-		//System.out.print("Request SOAP Message:");
-		//try {
-		//	soapMessage.writeTo(System.out);
-		//} catch (IOException e) {
-		//	e.printStackTrace();
-		//}
-		//System.out.println();
-		    	
-		return soapMessage;
-
+		return new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				Credentials credentials = Credentials.resolve( builder.getConfig(), builder.getOrderType(), builder.getCountryCode() );
+				
+				// SOAP Envelope
+				writer.startEnvelope( SOAP_ENVELOPE_PREFIX, "arr", NAMESPACE_ARR, "dat", NAMESPACE_DAT, "tem", NAMESPACE_TEM );
+				
+				// SOAP Body
+				writer.startElement("tem", "DeliverPartial");
+				writer.startElement("tem", "request");
+					writeAuthentication( writer, 
+						credentials.getPassword(),
+						credentials.getUsername()
+					);
+					// Settings -- optional, not sent by package
+					writer.element("dat", "InvoiceDistributionType", builder.getInvoiceDistributionType().toString());
+					writer.startElement("dat", "OrderToDeliver");
+						writer.element("dat", "ClientId", String.valueOf(credentials.getClientNumber()));
+						// OrderType -- optional, should ignored for EU clients (which is all that the integration package supports)
+						writer.element("dat", "OrderType", "Invoice"); // deliverPartial only applies to Invoice orders
+						writer.element("dat", "SveaOrderId", String.valueOf(builder.getOrderId()));
+					writer.endElement();
+					writer.startElement("dat", "RowNumbers");
+					for( Integer rowIndex : builder.getRowsToDeliver() ) {
+						writer.element("arr", "long", Integer.toString( rowIndex ));
+					}
+				writer.endEnvelope();
+			}
+		};
 	};    	
 	
-	public DeliverOrderRowsResponse doRequest() {	
-		
-        // validate and prepare request, throw runtime exception on error
-		SOAPMessage soapRequest;
+	public DeliverOrderRowsResponse doRequest() {
+		RequestTimer timer = RequestMetrics.start( this.action, builder.getOrderType(), builder.getCountryCode() );
 		try {
-        	soapRequest = prepareRequest();		
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "DeliverPartialRequest: prepareRequest failed.", e );
+			return timer.finish( doRequest( timer ) );
 		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+
+	private DeliverOrderRowsResponse doRequest( RequestTimer timer ) {	
+		
+        // validate and prepare request, throw runtime exception on error
+		SoapEnvelopeWriter.Content soapRequest = prepareContent();		
 		
 		// send request and receive response
 		SOAPMessage soapResponse;
 		try {
-			// Create SOAP Connection
-			SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-			SOAPConnection soapConnection = soapConnectionFactory.createConnection();
-			
-			// Send SOAP Message to SOAP Server
-	        URL url = builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE);		
-			soapResponse = soapConnection.call( soapRequest, url.toString() );
+			// Stream SOAP Message to SOAP Server using shared SOAP Connection
+			soapResponse = sendSoapRequest( soapRequest, this.action, builder.getConfig(), timer );
 			
 			// DEBUG: print SOAP Response
 			//System.out.print("Response SOAP Message:");
@@ -181,8 +161,6 @@ public class DeliverOrderRowsRequest extends AdminServiceRequest  {
 			//	e.printStackTrace();
 			//}
 			//System.out.println();
-			
-			soapConnection.close();			
 		}
 		catch( SOAPException e) {
 			throw new SveaWebPayException( "DeliverPartialRequest: doRequest send request failed.", e );
@@ -198,4 +176,17 @@ public class DeliverOrderRowsRequest extends AdminServiceRequest  {
 		return response;
 
 	};
+
+	/**
+	 * Delivers the given rows on the SveaRequestExecutor.
+	 * @return a Future of the DeliverOrderRowsResponse, whose get() throws an ExecutionException wrapping any exception thrown by doRequest()
+	 */
+	public Future<DeliverOrderRowsResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<DeliverOrderRowsResponse>() {
+			@Override
+			public DeliverOrderRowsResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
@@ -0,0 +1,135 @@
+package se.sveaekonomi.webpay.integration.adminservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.ValidationException;
+import javax.xml.soap.SOAPMessage;
+
+import se.sveaekonomi.webpay.integration.order.handle.DeliverOrderBuilder;
+import se.sveaekonomi.webpay.integration.response.adminservice.DeliverOrdersResponse;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+
+/**
+ * Handles Admin Webservice DeliverOrders requests for many orders. The order ids given in DeliverOrderBuilder.setOrderIds()
+ * are split into chunks of at most chunkSize orders, and each chunk is delivered in full using a single DeliverOrders request.
+ *
+ * The result holds one DeliverOrdersResponse per order id, in the order given, with the invoice id (or contract number)
+ * and delivered amount for delivered orders. Orders that were not delivered have isOrderAccepted() false, and the reason in
+ * getResultCode() and getErrorMessage(). A failed chunk does not abort the remaining chunks.
+ *
+ * Note that an order in a chunk which failed with a transport error may still have been delivered by Svea, use
+ * WebPayAdmin.queryOrder() to check the order status before resending it.
+ */
+public class DeliverOrdersBulkRequest extends ChunkedOrdersRequest<DeliverOrdersRequest,DeliverOrdersResponse> {
+
+	/** Default number of orders to deliver per DeliverOrders request */
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
+	private DeliverOrderBuilder builder;
+
+	public DeliverOrdersBulkRequest( DeliverOrderBuilder builder ) {
+		super( "DeliverOrdersBulkRequest", DEFAULT_CHUNK_SIZE );
+		this.builder = builder;
+	}
+
+	public int getChunkSize() {
+		return getChunkSizeValue();
+	}
+
+	/** Optional, maximum number of orders to deliver per DeliverOrders request, defaults to DEFAULT_CHUNK_SIZE */
+	public DeliverOrdersBulkRequest setChunkSize( int chunkSize ) {
+		setChunkSizeValue( chunkSize );
+		return this;
+	}
+
+	/**
+	 * validates that all required attributes needed for the request are present in the builder object
+	 * @throws ValidationException
+	 */
+	public void validateOrder() throws ValidationException {
+		validate();
+	}
+
+	/**
+	 * @return one DeliverOrdersRequest per chunk of order ids
+	 */
+	public List<DeliverOrdersRequest> getChunkRequests() {
+		return createChunkRequests();
+	}
+
+	/**
+	 * @return the inspectable SOAP request for each chunk
+	 */
+	public List<SOAPMessage> prepareRequest() {
+		List<SOAPMessage> soapMessages = new ArrayList<SOAPMessage>();
+		for( DeliverOrdersRequest request : getChunkRequests() ) {
+			soapMessages.add( request.prepareRequest() );
+		}
+		return soapMessages;
+	}
+
+	/**
+	 * Performs one DeliverOrders request per chunk and returns one DeliverOrdersResponse per order id, in the order given
+	 */
+	public List<DeliverOrdersResponse> doRequest() {
+		return doChunkRequests();
+	}
+
+	@Override
+	List<Long> getBuilderOrderIds() {
+		return builder.getOrderIds();
+	}
+
+	@Override
+	Long getBuilderOrderId() {
+		return builder.getOrderId();
+	}
+
+	@Override
+	String validateAttributes() {
+		String errors = "";
+        if (builder.getInvoiceDistributionType() == null) {
+            errors += "MISSING VALUE - distributionType is required, use setInvoiceDistributionType().\n";
+    	}
+        if (builder.getCountryCode() == null) {
+            errors += "MISSING VALUE - CountryCode is required, use setCountryCode().\n";
+        }
+		return errors;
+	}
+
+	@Override
+	DeliverOrdersRequest createChunkRequest( List<Long> orderIds ) {
+		return new DeliverOrdersRequest( builder, orderIds );
+	}
+
+	@Override
+	List<Long> getChunkOrderIds( DeliverOrdersRequest request ) {
+		return request.getOrderIds();
+	}
+
+	@Override
+	List<DeliverOrdersResponse> doChunkRequest( DeliverOrdersRequest request ) {
+		return request.doMultipleOrdersRequest();
+	}
+
+	@Override
+	List<DeliverOrdersResponse> getFailedResponses( List<Long> orderIds, String errorMessage ) {
+		return DeliverOrdersResponse.getFailedResponses( orderIds, null, errorMessage );
+	}
+
+	/**
+	 * Sends the chunks on the SveaRequestExecutor and returns at once.
+	 * @return a Future of one DeliverOrdersResponse per order id, as returned by doRequest()
+	 */
+	public Future<List<DeliverOrdersResponse>> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<List<DeliverOrdersResponse>>() {
+			@Override
+			public List<DeliverOrdersResponse> call() {
+				return doRequest();
+			}
+		});
+	}
+}
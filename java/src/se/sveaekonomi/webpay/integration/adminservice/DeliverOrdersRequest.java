@@ -1,25 +1,27 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
 import java.io.IOException;
-import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPElement;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
+
+import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.Requestable;
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.DeliverOrderBuilder;
 import se.sveaekonomi.webpay.integration.response.adminservice.DeliverOrdersResponse;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 
 /**
  * DeliverOrdersRequest handles requests to Svea Admin WebService DeliverOrders method
@@ -30,11 +32,30 @@ public class DeliverOrdersRequest extends AdminServiceRequest implements Request
 	
 	private String action;
 	public DeliverOrderBuilder builder;
+	private List<Long> orderIds;
 
     public DeliverOrdersRequest(DeliverOrderBuilder orderBuilder) {
 		this.action = "DeliverOrders";
 		this.builder = orderBuilder;
     }
+
+	/**
+	 * Request for the given orders, which all must have the builder order type and country code. Used by DeliverOrdersBulkRequest.
+	 */
+    public DeliverOrdersRequest(DeliverOrderBuilder orderBuilder, List<Long> orderIds) {
+    	this(orderBuilder);
+    	this.orderIds = orderIds;
+    }
+
+	/**
+	 * @return the order ids to deliver, i.e. the ids given in the constructor, or else the builder orderId
+	 */
+	public List<Long> getOrderIds() {
+		if( this.orderIds != null ) {
+			return this.orderIds;
+		}
+		return (builder.getOrderId() == null) ? Collections.<Long>emptyList() : Collections.singletonList(builder.getOrderId());
+	}
     
 	/**
 	 * validates that all required attributes needed for the request are present in the builder object
@@ -42,7 +63,10 @@ public class DeliverOrdersRequest extends AdminServiceRequest implements Request
 	 */
 	public void validateOrder() throws ValidationException {
 		String errors = "";		
-        if (builder.getOrderId() == null) {
+        if (this.orderIds == null && builder.getOrderIds() != null) {
+            errors += "NOT VALID - OrderIds are only used by deliverInvoiceOrders() and deliverPaymentPlanOrders(), use setOrderId().\n";
+        }
+        else if (getOrderIds().isEmpty()) {
             errors += "MISSING VALUE - OrderId is required, use setOrderId().\n";
     	}   
         
@@ -60,10 +84,20 @@ public class DeliverOrdersRequest extends AdminServiceRequest implements Request
 
 	/**
 	 * prepares the soap request to send to admin webservice
-	 * @throws SOAPException 
-	 * @throws IOException 
 	 */
 	public SOAPMessage prepareRequest() { 
+        // build inspectable request object and return
+		try {
+			return createSoapMessage( prepareContent(), this.action, this.builder.getConfig() );
+		} catch (SOAPException e) {
+            throw new SveaWebPayException( "GetOrdersRequest: soap creation failed.", e );
+		}
+	};    
+
+	/**
+	 * validates the builder and returns the request envelope content, throws runtime exception on validation error
+	 */
+	private SoapEnvelopeWriter.Content prepareContent() { 
 		// validate builder, throw runtime exception on error
 		try {
 			validateOrder(); 
@@ -72,108 +106,129 @@ public class DeliverOrdersRequest extends AdminServiceRequest implements Request
             throw new SveaWebPayException( "GetOrdersRequest: validateRequest failed.", e );
         }
 		
-        // build inspectable request object and return
-        MessageFactory messageFactory;
-        SOAPMessage soapMessage;
-        SOAPPart soapPart;
-		try {
-			messageFactory = MessageFactory.newInstance();
-			soapMessage = messageFactory.createMessage();
-			soapPart = soapMessage.getSOAPPart();
-    
-			//<soapenv:Envelope 
-			//	xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" 
-			//	xmlns:tem="http://tempuri.org/" 
-			//	xmlns:dat="http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service">
-			//   <soapenv:Header/>
-			//   <soapenv:Body>
-			//      <tem:DeliverOrders>
-			//         <tem:request>
-			//            <dat:Authentication>
-			//               <dat:Password>sverigetest</dat:Password>
-			//               <dat:Username>sverigetest</dat:Username>
-			//            </dat:Authentication>
-			//            <dat:InvoiceDistributionType>Post</dat:InvoiceDistributionType>
-			//            <dat:OrdersToDeliver>
-			//               <dat:DeliverOrderInformation>
-			//                  <dat:ClientId>79021</dat:ClientId>
-			//                  <dat:OrderType>Invoice</dat:OrderType>
-			//                  <dat:SveaOrderId>478232</dat:SveaOrderId>
-			//               </dat:DeliverOrderInformation>
-			//            </dat:OrdersToDeliver>
-			//         </tem:request>
-			//      </tem:DeliverOrders>
-			//   </soapenv:Body>
-			//</soapenv:Envelope>    	    
+		//<soapenv:Envelope 
+		//	xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" 
+		//	xmlns:tem="http://tempuri.org/" 
+		//	xmlns:dat="http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service">
+		//   <soapenv:Header/>
+		//   <soapenv:Body>
+		//      <tem:DeliverOrders>
+		//         <tem:request>
+		//            <dat:Authentication>
+		//               <dat:Password>sverigetest</dat:Password>
+		//               <dat:Username>sverigetest</dat:Username>
+		//            </dat:Authentication>
+		//            <dat:InvoiceDistributionType>Post</dat:InvoiceDistributionType>
+		//            <dat:OrdersToDeliver>
+		//               <dat:DeliverOrderInformation>
+		//                  <dat:ClientId>79021</dat:ClientId>
+		//                  <dat:OrderType>Invoice</dat:OrderType>
+		//                  <dat:SveaOrderId>478232</dat:SveaOrderId>
+		//               </dat:DeliverOrderInformation>
+		//            </dat:OrdersToDeliver>
+		//         </tem:request>
+		//      </tem:DeliverOrders>
+		//   </soapenv:Body>
+		//</soapenv:Envelope>    	    
 	          	
-	        // SOAP Envelope
-	        SOAPEnvelope envelope = soapPart.getEnvelope(); // adds namespace SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/
-		    envelope.addNamespaceDeclaration("dat", "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service");
-		    envelope.addNamespaceDeclaration("tem", "http://tempuri.org/");	    
-	
-		    // SOAP Body
-		    SOAPBody start = envelope.getBody();
-		    SOAPElement soapBody = start.addChildElement("DeliverOrders", "tem");
-			    SOAPElement request = soapBody.addChildElement("request", "tem");
-			    	SOAPElement soapBodyElem1 = request.addChildElement("Authentication", "dat");
-			    		SOAPElement soapBodyElem2 = soapBodyElem1.addChildElement("Password", "dat");
-			    			soapBodyElem2.addTextNode(this.builder.getConfig().getPassword( PAYMENTTYPE.fromOrderType(this.builder.getOrderType()), this.builder.getCountryCode()));
-			    		SOAPElement soapBodyElem3 = soapBodyElem1.addChildElement("Username", "dat");
-			    			soapBodyElem3.addTextNode(this.builder.getConfig().getUsername( PAYMENTTYPE.fromOrderType(this.builder.getOrderType()), this.builder.getCountryCode()));
-	    	        // Settings -- optional, not sent by package
-	    	    	SOAPElement invoiceDistributionType = request.addChildElement("InvoiceDistributionType", "dat");
-			    		invoiceDistributionType.addTextNode(this.builder.getInvoiceDistributionType().toString());   
-		    		SOAPElement soapBodyElem4 = request.addChildElement("OrdersToDeliver", "dat");
-		    			SOAPElement soapBodyElem5 = soapBodyElem4.addChildElement("DeliverOrderInformation", "dat");
-		    				SOAPElement soapBodyElem6 = soapBodyElem5.addChildElement("ClientId", "dat");
-						    	soapBodyElem6.addTextNode(String.valueOf(this.builder.getConfig().getClientNumber(PAYMENTTYPE.fromOrderType(this.builder.getOrderType()), this.builder.getCountryCode())));
+		return new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				PAYMENTTYPE paymentType = PAYMENTTYPE.fromOrderType(builder.getOrderType());
+				Credentials credentials = Credentials.resolve( builder.getConfig(), paymentType, builder.getCountryCode() );
+				
+				// SOAP Envelope
+				writer.startEnvelope( SOAP_ENVELOPE_PREFIX, "dat", NAMESPACE_DAT, "tem", NAMESPACE_TEM );
+				
+				// SOAP Body
+				writer.startElement("tem", "DeliverOrders");
+				writer.startElement("tem", "request");
+					writeAuthentication( writer, 
+						credentials.getPassword(),
+						credentials.getUsername()
+					);
+					// Settings -- optional, not sent by package
+					writer.element("dat", "InvoiceDistributionType", builder.getInvoiceDistributionType().toString());
+					writer.startElement("dat", "OrdersToDeliver");
+					for( Long orderId : getOrderIds() ) {
+						writer.startElement("dat", "DeliverOrderInformation");
+							writer.element("dat", "ClientId", String.valueOf(credentials.getClientNumber()));
 							// OrderType -- optional, should ignored for EU clients (which is all that the integration package supports)
-						    SOAPElement soapBodyElem7 = soapBodyElem5.addChildElement("OrderType", "dat");
-					    		soapBodyElem7.addTextNode(this.builder.getOrderType().toString());							    	
-						    SOAPElement soapBodyElem8 = soapBodyElem5.addChildElement("SveaOrderId", "dat");
-						    	soapBodyElem8.addTextNode(String.valueOf(this.builder.getOrderId()));
-							    	
-	        String soapActionPrefix = "http://tempuri.org/IAdminService/";
-							    	
-	        MimeHeaders headers = soapMessage.getMimeHeaders();
-	        headers.addHeader("SOAPAction", soapActionPrefix + this.action);
-			        
-	    	setHeaderRequestProperties(headers, this.builder.getConfig());		
-	        
-	        soapMessage.saveChanges();
-        
-		} catch (SOAPException e) {
-            throw new SveaWebPayException( "GetOrdersRequest: soap creation failed.", e );
-
-		}
-        
-        // DEBUG: Print SOAP request 
-		//System.out.print("Request SOAP Message:");
-		//try {
-		//	soapMessage.writeTo(System.out);
-		//} catch (IOException e) {
-		//	e.printStackTrace();
-		//}
-		//System.out.println();
-
-        return soapMessage; 
-	};    
+							writer.element("dat", "OrderType", builder.getOrderType().toString());
+							writer.element("dat", "SveaOrderId", String.valueOf(orderId));
+						writer.endElement();
+					}
+				writer.endEnvelope();
+			}
+		};
+	}
     
 	public DeliverOrdersResponse doRequest() {
+		RequestTimer timer = startTimer();
+		try {
+			return timer.finish( doRequest( timer ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+	
+	private DeliverOrdersResponse doRequest( RequestTimer timer ) {
+		
+		SOAPMessage soapResponse = sendRequest( timer );
+		
+		// parse response
+		DeliverOrdersResponse response;
+		try {
+			response = new DeliverOrdersResponse(soapResponse);
+		} catch (SOAPException e) {
+			throw new SveaWebPayException( "DeliverOrdersRequest: doRequest parse response failed.", e );
+		}
+		return response;
+	};
+	
+	/**
+	 * Performs the request and returns one DeliverOrdersResponse per order id, in the order given
+	 */
+	public List<DeliverOrdersResponse> doMultipleOrdersRequest() {
+		RequestTimer timer = startTimer();
+		try {
+			return timer.finishAll( doMultipleOrdersRequest( timer ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+	
+	private List<DeliverOrdersResponse> doMultipleOrdersRequest( RequestTimer timer ) {
+		
+		SOAPMessage soapResponse = sendRequest( timer );
+		
+		// parse response
+		NodeList xmlResponse;
+		try {
+			xmlResponse = soapResponse.getSOAPPart().getEnvelope().getBody().getElementsByTagName("*");
+		} catch (SOAPException e) {
+			throw new SveaWebPayException( "DeliverOrdersRequest: doRequest parse response failed.", e );
+		}
+		return DeliverOrdersResponse.getDeliverOrdersResponses( xmlResponse, getOrderIds() );
+	}
+	
+	private RequestTimer startTimer() {
+		PAYMENTTYPE paymentType = (builder.getOrderType() == null) ? null : PAYMENTTYPE.fromOrderType( builder.getOrderType() );
+		return RequestMetrics.start( this.action, paymentType, builder.getCountryCode() );
+	}
+	
+	private SOAPMessage sendRequest( RequestTimer timer ) {
 				
         // validate and prepare request, throw runtime exception on error
-		SOAPMessage soapRequest = prepareRequest();		
+		SoapEnvelopeWriter.Content soapRequest = prepareContent();		
 		
 		// send request and receive response
 		SOAPMessage soapResponse;
 		try {
-			// Create SOAP Connection
-			SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-			SOAPConnection soapConnection = soapConnectionFactory.createConnection();
-			
-			// Send SOAP Message to SOAP Server
-	        URL url = builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE);		
-			soapResponse = soapConnection.call( soapRequest, url.toString() );
+			// Stream SOAP Message to SOAP Server using shared SOAP Connection
+			soapResponse = sendSoapRequest( soapRequest, this.action, builder.getConfig(), timer );
 			
 			// DEBUG: print SOAP Response
 			//System.out.print("Response SOAP Message:");
@@ -183,21 +238,24 @@ public class DeliverOrdersRequest extends AdminServiceRequest implements Request
 			//	e.printStackTrace();
 			//}
 			//System.out.println();
-			
-			soapConnection.close();			
 		}
 		catch( SOAPException e) {
 			throw new SveaWebPayException( "DeliverOrdersRequest: doRequest send request failed.", e );
 		}
-		
-		// parse response
-		DeliverOrdersResponse response;
-		try {
-			response = new DeliverOrdersResponse(soapResponse);
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "DeliverOrdersRequest: doRequest parse response failed.", e );
-		}
-		return response;
-
-	};
+		return soapResponse;
+	}
+	
+	/**
+	 * Sends the DeliverOrders request on the SveaRequestExecutor.
+	 * @return a Future of the DeliverOrdersResponse, whose get() throws an ExecutionException if the request can not be validated or sent
+	 */
+	@Override
+	public Future<DeliverOrdersResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<DeliverOrdersResponse>() {
+			@Override
+			public DeliverOrdersResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
@@ -0,0 +1,126 @@
+package se.sveaekonomi.webpay.integration.adminservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.ValidationException;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import se.sveaekonomi.webpay.integration.order.handle.QueryOrderBuilder;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+
+/**
+ * Handles Admin Webservice GetOrders requests for many orders. The order ids given in QueryOrderBuilder.setOrderIds() are
+ * split into chunks of at most chunkSize orders, and each chunk is retrieved using a single GetOrders request.
+ *
+ * The result holds one GetOrdersResponse per requested order id, in the order requested. Orders that could not be
+ * retrieved have isOrderAccepted() false, and the reason in getResultCode() and getErrorMessage(). A failed chunk does not
+ * abort the remaining chunks.
+ */
+public class GetOrdersBulkRequest extends ChunkedOrdersRequest<GetOrdersRequest,GetOrdersResponse> {
+
+	/** Default number of orders to retrieve per GetOrders request */
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
+	private QueryOrderBuilder builder;
+
+	public GetOrdersBulkRequest( QueryOrderBuilder builder ) {
+		super( "GetOrdersBulkRequest", DEFAULT_CHUNK_SIZE );
+		this.builder = builder;
+	}
+
+	public int getChunkSize() {
+		return getChunkSizeValue();
+	}
+
+	/** Optional, maximum number of orders to retrieve per GetOrders request, defaults to DEFAULT_CHUNK_SIZE */
+	public GetOrdersBulkRequest setChunkSize( int chunkSize ) {
+		setChunkSizeValue( chunkSize );
+		return this;
+	}
+
+	/**
+	 * validates that all required attributes needed for the request are present in the builder object
+	 * @throws ValidationException
+	 */
+	public void validateOrder() throws ValidationException {
+		validate();
+	}
+
+	/**
+	 * @return one GetOrdersRequest per chunk of order ids
+	 */
+	public List<GetOrdersRequest> getChunkRequests() {
+		return createChunkRequests();
+	}
+
+	/**
+	 * @return the inspectable SOAP request for each chunk
+	 */
+	public List<SOAPMessage> prepareRequest() throws SOAPException {
+		List<SOAPMessage> soapMessages = new ArrayList<SOAPMessage>();
+		for( GetOrdersRequest request : getChunkRequests() ) {
+			soapMessages.add( request.prepareRequest() );
+		}
+		return soapMessages;
+	}
+
+	/**
+	 * Performs one GetOrders request per chunk and returns one GetOrdersResponse per requested order id, in the order requested
+	 */
+	public List<GetOrdersResponse> doRequest() {
+		return doChunkRequests();
+	}
+
+	@Override
+	List<Long> getBuilderOrderIds() {
+		return builder.getOrderIds();
+	}
+
+	@Override
+	Long getBuilderOrderId() {
+		return builder.getOrderId();
+	}
+
+	@Override
+	String validateAttributes() {
+		return (builder.getCountryCode() == null) ? "MISSING VALUE - CountryCode is required, use setCountryCode().\n" : "";
+	}
+
+	@Override
+	GetOrdersRequest createChunkRequest( List<Long> orderIds ) {
+		return new GetOrdersRequest( builder, orderIds );
+	}
+
+	@Override
+	List<Long> getChunkOrderIds( GetOrdersRequest request ) {
+		return request.getOrderIds();
+	}
+
+	@Override
+	List<GetOrdersResponse> doChunkRequest( GetOrdersRequest request ) {
+		return request.doMultipleOrdersRequest();
+	}
+
+	@Override
+	List<GetOrdersResponse> getFailedResponses( List<Long> orderIds, String errorMessage ) {
+		return GetOrdersResponse.getFailedResponses( orderIds, null, errorMessage );
+	}
+
+	/**
+	 * Queries all chunks on the SveaRequestExecutor.
+	 * @return a Future of one GetOrdersResponse per requested order id, in the order requested
+	 */
+	public Future<List<GetOrdersResponse>> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<List<GetOrdersResponse>>() {
+			@Override
+			public List<GetOrdersResponse> call() {
+				return doRequest();
+			}
+		});
+	}
+}
@@ -1,24 +1,28 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
 import java.io.IOException;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPElement;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.QueryOrderBuilder;
 import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponseReader;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.RequestCoalescer;
+import se.sveaekonomi.webpay.integration.util.request.ResiliencePolicy;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 
 /**
  * Handles Admin Webservice GetOrders request
@@ -28,11 +32,69 @@ public class GetOrdersRequest extends AdminServiceRequest {
 
 	private String action;
 	private QueryOrderBuilder builder;
+	private List<Long> orderIds;
+	private ResiliencePolicy policy;
+	private RequestCoalescer coalescer;
 		
 	public GetOrdersRequest( QueryOrderBuilder builder) {
 		this.action = "GetOrders";
 		this.builder = builder;
 	}
+
+	/**
+	 * Request for the given orders, which all must have the builder order type and country code. Used by GetOrdersBulkRequest.
+	 */
+	public GetOrdersRequest( QueryOrderBuilder builder, List<Long> orderIds ) {
+		this( builder );
+		this.orderIds = orderIds;
+	}
+
+	/**
+	 * @return the order ids to retrieve, i.e. the ids given in the constructor, or else the builder orderId
+	 */
+	public List<Long> getOrderIds() {
+		if( this.orderIds != null ) {
+			return this.orderIds;
+		}
+		return (builder.getOrderId() == null) ? Collections.<Long>emptyList() : Collections.singletonList(builder.getOrderId());
+	}
+
+	/**
+	 * Retries, hedges and bounds the request using the given policy instead of ResiliencePolicy.getDefault()
+	 */
+	public GetOrdersRequest useResiliencePolicy( ResiliencePolicy policy ) {
+		this.policy = policy;
+		return this;
+	}
+
+	private ResiliencePolicy getResiliencePolicy() {
+		return (this.policy != null) ? this.policy : ResiliencePolicy.getDefault();
+	}
+
+	/**
+	 * Shares the response with concurrent identical requests using the default RequestCoalescer
+	 */
+	public GetOrdersRequest useCoalescing() {
+		return useCoalescing( RequestCoalescer.getDefault() );
+	}
+
+	/**
+	 * Shares the response with concurrent identical requests using the given RequestCoalescer, or null to not coalesce
+	 */
+	public GetOrdersRequest useCoalescing( RequestCoalescer coalescer ) {
+		this.coalescer = coalescer;
+		return this;
+	}
+
+	/**
+	 * @return the key of the request, i.e. the action, admin service endpoint, credentials and order ids; built once the request has validated
+	 */
+	private Object getCoalescingKey( boolean multiple ) {
+		validateRequest();
+		Credentials credentials = Credentials.resolve( builder.getConfig(), builder.getOrderType(), builder.getCountryCode() );
+		return Arrays.asList( this.action, multiple, builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE).toString(),
+				builder.getOrderType(), builder.getCountryCode(), credentials.getUsername(), credentials.getClientNumber(), getOrderIds() );
+	}
 	
 	/**
 	 * validates that all required attributes needed for the request are present in the builder object
@@ -40,7 +102,10 @@ public class GetOrdersRequest extends AdminServiceRequest {
 	 */
 	public void validateOrder() throws ValidationException {
 		String errors = "";		
-        if (builder.getOrderId() == null) {
+        if (this.orderIds == null && builder.getOrderIds() != null) {
+            errors += "NOT VALID - OrderIds are only used by queryInvoiceOrders() and queryPaymentPlanOrders(), use setOrderId().\n";
+        }
+        else if (getOrderIds().isEmpty()) {
             errors += "MISSING VALUE - OrderId is required, use setOrderId().\n";
     	}   
         if (builder.getCountryCode() == null) {
@@ -51,21 +116,28 @@ public class GetOrdersRequest extends AdminServiceRequest {
         }
 	}
 	
-	public SOAPMessage prepareRequest() throws SOAPException {
-		
-		// validate builder, throw runtime exception on error
+	private void validateRequest() {
 		try {
 			validateOrder(); 
 		}
         catch (ValidationException e) {
             throw new SveaWebPayException( "GetOrdersRequest: validateRequest failed.", e );
         }
+	}
+	
+	public SOAPMessage prepareRequest() throws SOAPException {
+		// build inspectable request object and return
+		return createSoapMessage( prepareContent(), this.action, this.builder.getConfig() );
+	}
+
+	/**
+	 * validates the builder and returns the request envelope content, throws runtime exception on validation error
+	 */
+	private SoapEnvelopeWriter.Content prepareContent() {
+		
+		// validate builder, throw runtime exception on error
+		validateRequest();
 		
-        // build inspectable request object and return
-        MessageFactory messageFactory = MessageFactory.newInstance();
-        SOAPMessage soapMessage = messageFactory.createMessage();
-        SOAPPart soapPart = soapMessage.getSOAPPart();
-    
 		//<soapenv:Envelope xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" xmlns:tem="http://tempuri.org/" xmlns:dat="http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service">
 		//   <soapenv:Header/>
 		//   <soapenv:Body>
@@ -87,102 +159,134 @@ public class GetOrdersRequest extends AdminServiceRequest {
 		//      </tem:GetOrders>
 		//   </soapenv:Body>
 		//</soapenv:Envelope>    	    
-	                	
-        // SOAP Envelope
-        SOAPEnvelope envelope = soapPart.getEnvelope(); // adds namespace SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/
-	    envelope.addNamespaceDeclaration("dat", "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service");
-	    envelope.addNamespaceDeclaration("tem", "http://tempuri.org/");	    
-        
-	    // SOAP Body
-	    SOAPBody start = envelope.getBody();
-	    SOAPElement soapBody = start.addChildElement("GetOrders", "tem");
-		    SOAPElement soapBodyElem = soapBody.addChildElement("request", "tem");
-		    	SOAPElement soapBodyElem1 = soapBodyElem.addChildElement("Authentication", "dat");
-		    		SOAPElement soapBodyElem2 = soapBodyElem1.addChildElement("Password", "dat");
-		    			soapBodyElem2.addTextNode(this.builder.getConfig().getPassword( this.builder.getOrderType(), this.builder.getCountryCode()));
-		    		SOAPElement soapBodyElem3 = soapBodyElem1.addChildElement("Username", "dat");
-		    			soapBodyElem3.addTextNode(this.builder.getConfig().getUsername( this.builder.getOrderType(), this.builder.getCountryCode()));
-    	        // Settings -- optional, not sent by package	    		
-	    		SOAPElement soapBodyElem4 = soapBodyElem.addChildElement("OrdersToRetrieve", "dat");
-	    			SOAPElement soapBodyElem5 = soapBodyElem4.addChildElement("GetOrderInformation", "dat");
-	    				SOAPElement soapBodyElem6 = soapBodyElem5.addChildElement("ClientId", "dat");
-					    	soapBodyElem6.addTextNode(String.valueOf(this.builder.getConfig().getClientNumber(this.builder.getOrderType(), this.builder.getCountryCode())));
-					    SOAPElement soapBodyElem7 = soapBodyElem5.addChildElement("OrderType", "dat");
-					    	if( this.builder.getOrderType() == PAYMENTTYPE.INVOICE ) {
-					    		soapBodyElem7.addTextNode("Invoice");
-					    	}
-					    	if( this.builder.getOrderType() == PAYMENTTYPE.PAYMENTPLAN ) {
-					    		soapBodyElem7.addTextNode("PaymentPlan");
-					    	}						    	
-					    SOAPElement soapBodyElem8 = soapBodyElem5.addChildElement("SveaOrderId", "dat");
-					    	soapBodyElem8.addTextNode(String.valueOf(this.builder.getOrderId()));
-						    	
-        String soapActionPrefix = "http://tempuri.org/IAdminService/";
-						    	
-        MimeHeaders headers = soapMessage.getMimeHeaders();
-        headers.addHeader("SOAPAction", soapActionPrefix + this.action);
-        
-    	setHeaderRequestProperties(headers, this.builder.getConfig());		        
-					   
-        soapMessage.saveChanges();
-
-		// DEBUG: print SOAP Request
-		//System.out.print("Request SOAP Message:");
-		//try {
-		//	soapMessage.writeTo(System.out);
-		//} catch (IOException e) {
-		//	// TODO Auto-generated catch block
-		//	e.printStackTrace();
-		//}
-		//System.out.println();
-
-        return soapMessage;
+		
+		return new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				Credentials credentials = Credentials.resolve( builder.getConfig(), builder.getOrderType(), builder.getCountryCode() );
+				
+				// SOAP Envelope
+				writer.startEnvelope( SOAP_ENVELOPE_PREFIX, "dat", NAMESPACE_DAT, "tem", NAMESPACE_TEM );
+				
+				// SOAP Body
+				writer.startElement("tem", "GetOrders");
+				writer.startElement("tem", "request");
+					writeAuthentication( writer, 
+						credentials.getPassword(),
+						credentials.getUsername()
+					);
+					// Settings -- optional, not sent by package
+					writer.startElement("dat", "OrdersToRetrieve");
+					for( Long orderId : getOrderIds() ) {
+						writer.startElement("dat", "GetOrderInformation");
+							writer.element("dat", "ClientId", String.valueOf(credentials.getClientNumber()));
+							writer.startElement("dat", "OrderType");
+							if( builder.getOrderType() == PAYMENTTYPE.INVOICE ) {
+								writer.text("Invoice");
+							}
+							if( builder.getOrderType() == PAYMENTTYPE.PAYMENTPLAN ) {
+								writer.text("PaymentPlan");
+							}
+							writer.endElement();
+							writer.element("dat", "SveaOrderId", String.valueOf(orderId));
+						writer.endElement();
+					}
+				writer.endEnvelope();
+			}
+		};
 	}
 
 	public GetOrdersResponse doRequest() {
+		if( this.coalescer == null ) {
+			return retryRequest();
+		}
+		return this.coalescer.execute( getCoalescingKey(false), new Callable<GetOrdersResponse>() {
+			@Override
+			public GetOrdersResponse call() {
+				return retryRequest();
+			}
+		});
+	}
+
+	/**
+	 * Performs the request and returns one GetOrdersResponse per requested order id, in the order requested
+	 */
+	public List<GetOrdersResponse> doMultipleOrdersRequest() {
+		if( this.coalescer == null ) {
+			return retryMultipleOrdersRequest();
+		}
+		return this.coalescer.execute( getCoalescingKey(true), new Callable<List<GetOrdersResponse>>() {
+			@Override
+			public List<GetOrdersResponse> call() {
+				return retryMultipleOrdersRequest();
+			}
+		});
+	}
+
+	private GetOrdersResponse retryRequest() {
+		return getResiliencePolicy().execute( this.action, new Callable<GetOrdersResponse>() {
+			@Override
+			public GetOrdersResponse call() {
+				return attemptRequest();
+			}
+		});
+	}
+
+	private List<GetOrdersResponse> retryMultipleOrdersRequest() {
+		return getResiliencePolicy().execute( this.action, new Callable<List<GetOrdersResponse>>() {
+			@Override
+			public List<GetOrdersResponse> call() {
+				return attemptMultipleOrdersRequest();
+			}
+		});
+	}
+
+	private GetOrdersResponse attemptRequest() {
+		RequestTimer timer = RequestMetrics.start( this.action, builder.getOrderType(), builder.getCountryCode() );
+		try {
+			return timer.finish( GetOrdersResponseReader.readResponse( sendRequest(timer) ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+
+	private List<GetOrdersResponse> attemptMultipleOrdersRequest() {
+		RequestTimer timer = RequestMetrics.start( this.action, builder.getOrderType(), builder.getCountryCode() );
+		try {
+			return timer.finishAll( GetOrdersResponseReader.readResponses( sendRequest(timer), getOrderIds() ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+	
+	/** @return the response body, read by GetOrdersResponseReader */
+	private byte[] sendRequest( RequestTimer timer ) {
 		
 		// validate and prepare request, throw runtime exception on error
-		SOAPMessage soapRequest;
-    	try {
-			soapRequest = prepareRequest();
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "GetOrdersRequest: prepareRequest failed.", e );
-		}		
+		SoapEnvelopeWriter.Content soapRequest = prepareContent();
 
 		// send request and receive response
-		SOAPMessage soapResponse;
 		try {
-			// Create SOAP Connection
-	        SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-	        SOAPConnection soapConnection = soapConnectionFactory.createConnection();
-
-	        // Send SOAP Message to SOAP Server
-	        URL url = builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE);		
-	    	soapResponse = soapConnection.call( soapRequest, url.toString() );
-        
-			// DEBUG: print SOAP Response
-			//System.out.print("Response SOAP Message:");
-			//try {
-			//	soapResponse.writeTo(System.out);
-			//} catch (IOException e) {
-			//	e.printStackTrace();
-			//}
-			//System.out.println();
-        
-	    	soapConnection.close();
+	        // Stream SOAP Message to SOAP Server using shared SOAP Connection
+	    	return sendSoapRequestForBody( soapRequest, this.action, builder.getConfig(), timer );
 		}
 		catch( SOAPException e) {
 			throw new SveaWebPayException( "GetOrdersRequest: doRequest send request failed.", e );
 		}
-        
-		// parse response
-		GetOrdersResponse response;
-		try {
-			response = new GetOrdersResponse(soapResponse.getSOAPPart().getEnvelope().getBody().getElementsByTagName("*"));
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "GetOrdersRequest: doRequest parse response failed.", e );
-		}
-        return response;
 	}	
 	
+	/**
+	 * Queries the order on the SveaRequestExecutor, so that several orders may be queried concurrently.
+	 * @return a Future of the GetOrdersResponse, coalesced and retried as by doRequest()
+	 */
+	public Future<GetOrdersResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<GetOrdersResponse>() {
+			@Override
+			public GetOrdersResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
@@ -1,26 +1,24 @@
 package se.sveaekonomi.webpay.integration.adminservice;
 
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPBody;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPElement;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.UpdateOrderRowsBuilder;
 import se.sveaekonomi.webpay.integration.order.row.NumberedOrderRowBuilder;
 import se.sveaekonomi.webpay.integration.order.row.OrderRowBuilder;
 import se.sveaekonomi.webpay.integration.response.adminservice.UpdateOrderRowsResponse;
-import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 
 public class UpdateOrderRowsRequest extends AdminServiceRequest {
 
@@ -68,6 +66,14 @@ public class UpdateOrderRowsRequest extends AdminServiceRequest {
     }    
     
 	public SOAPMessage prepareRequest( boolean resendOrderWithFlippedPriceIncludingVat ) throws SOAPException {	
+		// build and return inspectable request object
+		return createSoapMessage( prepareContent( resendOrderWithFlippedPriceIncludingVat ), this.action, this.builder.getConfig() );
+	}
+
+	/**
+	 * validates the builder and returns the request envelope content, throws runtime exception on validation error
+	 */
+	private SoapEnvelopeWriter.Content prepareContent( boolean resendOrderWithFlippedPriceIncludingVat ) {	
 
 		// validate builder, throw runtime exception on error
 		try {
@@ -78,12 +84,7 @@ public class UpdateOrderRowsRequest extends AdminServiceRequest {
         }
 
 		// determine if we can send the order as incvat, by using the priceIncludingVat = true flag in request
-		boolean usePriceIncludingVatFlag = determinePriceIncludingVat(this.builder.getUpdateOrderRows(), resendOrderWithFlippedPriceIncludingVat);		
-		
-		// build and return inspectable request object
-		MessageFactory messageFactory = MessageFactory.newInstance();
-		SOAPMessage soapMessage = messageFactory.createMessage();
-		SOAPPart soapPart = soapMessage.getSOAPPart();
+		final boolean usePriceIncludingVatFlag = determinePriceIncludingVat(this.builder.getUpdateOrderRows(), resendOrderWithFlippedPriceIncludingVat);		
 		
 		//<soapenv:Envelope 
 		//xmlns:soapenv="http://schemas.xmlsoap.org/soap/envelope/" 
@@ -121,83 +122,52 @@ public class UpdateOrderRowsRequest extends AdminServiceRequest {
 		//   </soapenv:Body>
 		//</soapenv:Envelope>
 		
-		// SOAP Envelope
-		SOAPEnvelope envelope = soapPart.getEnvelope(); // adds namespace SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/
-	    envelope.addNamespaceDeclaration("dat", "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service");
-		envelope.addNamespaceDeclaration("dat1", "http://schemas.datacontract.org/2004/07/DataObjects.Webservice");	    
-	    envelope.addNamespaceDeclaration("tem", "http://tempuri.org/");	    
-
-	    // SOAP Headers
-		String soapActionPrefix = "http://tempuri.org/IAdminService/";		    	
-		MimeHeaders headers = soapMessage.getMimeHeaders();
-		headers.addHeader("SOAPAction", soapActionPrefix + this.action);
-		
-    	setHeaderRequestProperties(headers, this.builder.getConfig());		
-			    
-	    // SOAP Body
-	    SOAPBody body = envelope.getBody();
-	    SOAPElement updateOrderRows = body.addChildElement("UpdateOrderRows", "tem");
-	    SOAPElement request = updateOrderRows.addChildElement("request", "tem");
-	    	SOAPElement authentication = request.addChildElement("Authentication", "dat");
-	    		SOAPElement password = authentication.addChildElement("Password", "dat");
-	    			password.addTextNode(this.builder.getConfig().getPassword( this.builder.getOrderType(), this.builder.getCountryCode()));
-	    		SOAPElement username = authentication.addChildElement("Username", "dat");
-	    			username.addTextNode(this.builder.getConfig().getUsername( this.builder.getOrderType(), this.builder.getCountryCode()));
-	        // Settings -- optional, not sent by package
-			SOAPElement clientId = request.addChildElement("ClientId", "dat");
-				clientId.addTextNode(String.valueOf(this.builder.getConfig().getClientNumber(this.builder.getOrderType(), this.builder.getCountryCode())));
-		    SOAPElement orderType = request.addChildElement("OrderType", "dat");
-		    	orderType.addTextNode( this.builder.getOrderType().toString() );				
-		    SOAPElement sveaOrderId = request.addChildElement("SveaOrderId", "dat");
-		    	sveaOrderId.addTextNode(String.valueOf(this.builder.getOrderId()));	
-		    	
-		    SOAPElement updatedOrderRows = request.addChildElement("UpdatedOrderRows", "dat");
-		    for( NumberedOrderRowBuilder row : this.builder.getUpdateOrderRows() ) {
-		    	SOAPElement orderRow = updatedOrderRows.addChildElement("NumberedOrderRow", "dat");
-		    		SOAPElement articleNumber = orderRow.addChildElement("ArticleNumber", "dat1");
-		    			articleNumber.addTextNode( (row.getArticleNumber() == null ) ? "" : row.getArticleNumber() );
-	    			SOAPElement description = orderRow.addChildElement("Description", "dat1");
-	    				description.addTextNode( formatRowAndDescription(row.getName(), row.getDescription()) );
-    				SOAPElement discountPercent = orderRow.addChildElement("DiscountPercent", "dat1");
-						discountPercent.addTextNode( String.valueOf(row.getDiscountPercent()) );
-    				SOAPElement numberOfUnits = orderRow.addChildElement("NumberOfUnits", "dat1");
-    					numberOfUnits.addTextNode( String.valueOf(row.getQuantity()) );
-					SOAPElement priceIncludingVat = orderRow.addChildElement("PriceIncludingVat", "dat1");
-						priceIncludingVat.addTextNode( usePriceIncludingVatFlag ? "true" : "false" );
-					SOAPElement pricePerUnit = orderRow.addChildElement("PricePerUnit", "dat1");
-						pricePerUnit.addTextNode( String.valueOf( 
-	    					// calculate the correct amount to send based on the builder order row and usePriceIncludingVat flag
-							getPricePerUnitFromBuilderOrderRowAndPriceIncludingVatFlag( row, usePriceIncludingVatFlag) ) 
-						);
-    				SOAPElement unit = orderRow.addChildElement("Unit", "dat1");
-    					unit.addTextNode( String.valueOf(row.getUnit()) ); 
-    				SOAPElement vatPercent = orderRow.addChildElement("VatPercent", "dat1");
-    					vatPercent.addTextNode( String.valueOf( 
-	    					// get vat percent to send based on the builder order row (i.e. if specified exvat + incvat)
-							getVatPercentFromBuilderOrderRow( row) ) 
-						); 
-					SOAPElement creditInvoiceId = orderRow.addChildElement("CreditInvoiceId","dat");
-						creditInvoiceId.addTextNode( row.getCreditInvoiceId() == null ? "" : String.valueOf(row.getCreditInvoiceId()) );
-					SOAPElement invoiceId = orderRow.addChildElement("InvoiceId","dat");
-						invoiceId.addTextNode( row.getInvoiceId() == null ? "" : String.valueOf(row.getInvoiceId()) );
-    				SOAPElement rowNumber = orderRow.addChildElement("RowNumber", "dat");
-    					rowNumber.addTextNode( String.valueOf(row.getRowNumber()) );  
-    				SOAPElement status = orderRow.addChildElement("Status", "dat");
-    					status.addTextNode( String.valueOf(row.getStatus().toString()) );  
-    		}
-	    	
-    	soapMessage.saveChanges();
-    	
-        // DEBUG: Print SOAP request 
-		//System.out.print("Request SOAP Message:");
-		//try {
-		//	soapMessage.writeTo(System.out);
-		//} catch (IOException e) {
-		//	e.printStackTrace();
-		//}
-		//System.out.println();
-		    	
-		return soapMessage;
+		return new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				Credentials credentials = Credentials.resolve( builder.getConfig(), builder.getOrderType(), builder.getCountryCode() );
+				
+				// SOAP Envelope
+				writer.startEnvelope( SOAP_ENVELOPE_PREFIX, "dat", NAMESPACE_DAT, "dat1", NAMESPACE_DAT1, "tem", NAMESPACE_TEM );
+				
+				// SOAP Body
+				writer.startElement("tem", "UpdateOrderRows");
+				writer.startElement("tem", "request");
+					writeAuthentication( writer, 
+						credentials.getPassword(),
+						credentials.getUsername()
+					);
+					// Settings -- optional, not sent by package
+					writer.element("dat", "ClientId", String.valueOf(credentials.getClientNumber()));
+					writer.element("dat", "OrderType", builder.getOrderType().toString());
+					writer.element("dat", "SveaOrderId", String.valueOf(builder.getOrderId()));
+					
+					writer.startElement("dat", "UpdatedOrderRows");
+					for( NumberedOrderRowBuilder row : builder.getUpdateOrderRows() ) {
+						writer.startElement("dat", "NumberedOrderRow");
+							writer.element("dat1", "ArticleNumber", (row.getArticleNumber() == null ) ? "" : row.getArticleNumber());
+							writer.element("dat1", "Description", formatRowAndDescription(row.getName(), row.getDescription()));
+							writer.element("dat1", "DiscountPercent", String.valueOf(row.getDiscountPercent()));
+							writer.element("dat1", "NumberOfUnits", String.valueOf(row.getQuantity()));
+							writer.element("dat1", "PriceIncludingVat", usePriceIncludingVatFlag ? "true" : "false");
+							writer.element("dat1", "PricePerUnit", String.valueOf( 
+								// calculate the correct amount to send based on the builder order row and usePriceIncludingVat flag
+								getPricePerUnitFromBuilderOrderRowAndPriceIncludingVatFlag( row, usePriceIncludingVatFlag) ) 
+							);
+							writer.element("dat1", "Unit", String.valueOf(row.getUnit()));
+							writer.element("dat1", "VatPercent", String.valueOf( 
+								// get vat percent to send based on the builder order row (i.e. if specified exvat + incvat)
+								getVatPercentFromBuilderOrderRow( row) ) 
+							);
+							writer.element("dat", "CreditInvoiceId", row.getCreditInvoiceId() == null ? "" : String.valueOf(row.getCreditInvoiceId()));
+							writer.element("dat", "InvoiceId", row.getInvoiceId() == null ? "" : String.valueOf(row.getInvoiceId()));
+							writer.element("dat", "RowNumber", String.valueOf(row.getRowNumber()));
+							writer.element("dat", "Status", String.valueOf(row.getStatus().toString()));
+						writer.endElement();
+					}
+				writer.endEnvelope();
+			}
+		};
 	}
 
 	protected Double getPricePerUnitFromBuilderOrderRowAndPriceIncludingVatFlag( OrderRowBuilder row, boolean usePriceIncludingVatFlag) {
@@ -252,28 +222,24 @@ public class UpdateOrderRowsRequest extends AdminServiceRequest {
 	}	
 
 	public UpdateOrderRowsResponse doRequest() {
-		return doRequest( false );
+		RequestTimer timer = RequestMetrics.start( this.action, builder.getOrderType(), builder.getCountryCode() );
+		try {
+			return timer.finish( doRequest( false, timer ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
 	}
-	private UpdateOrderRowsResponse doRequest( boolean resendOrderWithFlippedPriceIncludingVat ) {	
+	private UpdateOrderRowsResponse doRequest( boolean resendOrderWithFlippedPriceIncludingVat, RequestTimer timer ) {	
 		
         // validate and prepare request, throw runtime exception on error
-		SOAPMessage soapRequest;
-		try {
-        	soapRequest = prepareRequest( resendOrderWithFlippedPriceIncludingVat );		
-		} catch (SOAPException e) {
-			throw new SveaWebPayException( "UpdateOrderRowsRequest: prepareRequest failed.", e );
-		}
+		SoapEnvelopeWriter.Content soapRequest = prepareContent(resendOrderWithFlippedPriceIncludingVat);		
 		
 		// send request and receive response
 		SOAPMessage soapResponse;
 		try {
-			// Create SOAP Connection
-			SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-			SOAPConnection soapConnection = soapConnectionFactory.createConnection();
-			
-			// Send SOAP Message to SOAP Server
-	        URL url = builder.getConfig().getEndPoint(PAYMENTTYPE.ADMIN_TYPE);		
-			soapResponse = soapConnection.call( soapRequest, url.toString() );
+			// Stream SOAP Message to SOAP Server using shared SOAP Connection
+			soapResponse = sendSoapRequest( soapRequest, this.action, builder.getConfig(), timer );
 			
 			// DEBUG: print SOAP Response
 			//System.out.print("Response SOAP Message:");
@@ -283,8 +249,6 @@ public class UpdateOrderRowsRequest extends AdminServiceRequest {
 			//	e.printStackTrace();
 			//}
 			//System.out.println();
-			
-			soapConnection.close();			
 		}
 		catch( SOAPException e) {
 			throw new SveaWebPayException( "UpdateOrderRowsRequest: doRequest send request failed.", e );
@@ -301,9 +265,23 @@ public class UpdateOrderRowsRequest extends AdminServiceRequest {
 		
         // if we received error 50036 from webservice , resend request with flipPriceIncludingVat set to true
 		if( response.getResultCode().equals("50036") ) {         				
-			response = this.doRequest( true ); 
+			timer.flipped();
+			response = this.doRequest( true, timer ); 
         }
 
 		return response;
 	};	
+
+	/**
+	 * Updates the order rows without waiting for the response.
+	 * @return a Future of the UpdateOrderRowsResponse
+	 */
+	public Future<UpdateOrderRowsResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<UpdateOrderRowsResponse>() {
+			@Override
+			public UpdateOrderRowsResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
@@ -0,0 +1,189 @@
+package se.sveaekonomi.webpay.integration.config;
+
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * Wraps a ConfigurationProvider and remembers the credentials it returns for each payment type and country, so that
+ * implementations that look up credentials in a database or secret store are asked once per payment type and country
+ * instead of several times for each request:
+ *
+ *     ConfigurationProvider config = new CachingConfigurationProvider( new MyConfigurationProvider() );
+ *     WebPay.createOrder(config)...
+ *
+ * Cached credentials are asked for again when the time to live has passed, or after invalidate() has been called, i.e.
+ * when credentials have been changed. End points are not cached. All methods are thread-safe.
+ */
+public class CachingConfigurationProvider implements ConfigurationProvider {
+
+    /** Default time to live for cached credentials, in minutes */
+    public static final long DEFAULT_TIME_TO_LIVE_MINUTES = 15;
+
+    private final ConfigurationProvider delegate;
+    private final long timeToLiveNanos;
+
+    /** cached credentials, indexed by payment type and country code ordinal */
+    private final EnumMap<PAYMENTTYPE,AtomicReferenceArray<Entry>> entries;
+
+    /**
+     * incremented by invalidate(), and per payment type and country code ordinal by invalidate(type, country). An entry
+     * keeps the generations read before its credentials were fetched, and is a miss once either has moved on, so that
+     * credentials fetched while being invalidated are never returned from the cache
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private final EnumMap<PAYMENTTYPE,AtomicLongArray> slotGenerations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingConfigurationProvider( ConfigurationProvider delegate ) {
+        this(delegate, DEFAULT_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param delegate -- the ConfigurationProvider to ask for credentials
+     * @param timeToLive -- how long to keep credentials, use 0 to keep them until invalidated
+     * @param unit -- the unit of timeToLive
+     */
+    public CachingConfigurationProvider( ConfigurationProvider delegate, long timeToLive, TimeUnit unit ) {
+        if( delegate == null ) {
+            throw new SveaWebPayException("A configuration must be provided. For testing purposes use SveaConfig.GetDefaultConfig()");
+        }
+        if( timeToLive < 0 ) {
+            throw new SveaWebPayException("Time to live must not be negative.");
+        }
+        this.delegate = delegate;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+
+        // filled in here and never modified, so that it may be read concurrently
+        this.entries = new EnumMap<PAYMENTTYPE,AtomicReferenceArray<Entry>>(PAYMENTTYPE.class);
+        this.slotGenerations = new EnumMap<PAYMENTTYPE,AtomicLongArray>(PAYMENTTYPE.class);
+        for( PAYMENTTYPE type : PAYMENTTYPE.values() ) {
+            this.entries.put( type, new AtomicReferenceArray<Entry>(COUNTRYCODE.values().length) );
+            this.slotGenerations.put( type, new AtomicLongArray(COUNTRYCODE.values().length) );
+        }
+    }
+
+    /**
+     * @return the wrapped ConfigurationProvider
+     */
+    public ConfigurationProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the cached credentials for the payment type and country, asking the wrapped ConfigurationProvider if
+     * they are not cached or have expired.
+     */
+    public Credentials getCredentials( PAYMENTTYPE type, COUNTRYCODE country ) {
+        if( type == null || country == null ) {
+            return Credentials.fetch(delegate, type, country);
+        }
+        AtomicReferenceArray<Entry> slots = entries.get(type);
+        AtomicLongArray slotGeneration = slotGenerations.get(type);
+        int index = country.ordinal();
+        long now = System.nanoTime();
+        long currentGeneration = generation.get();
+        long currentSlotGeneration = slotGeneration.get(index);
+
+        Entry entry = slots.get(index);
+        if( entry != null && entry.isCurrent(currentGeneration, currentSlotGeneration) && !entry.isExpired(now, timeToLiveNanos) ) {
+            hits.incrementAndGet();
+            return entry.credentials;
+        }
+        misses.incrementAndGet();
+        Credentials credentials = Credentials.fetch(delegate, type, country);
+        slots.set( index, new Entry(credentials, now, currentGeneration, currentSlotGeneration) );
+        return credentials;
+    }
+
+    /**
+     * Forgets all cached credentials, they are asked for again on the next request.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        for( AtomicReferenceArray<Entry> slots : entries.values() ) {
+            for( int i = 0; i < slots.length(); i++ ) {
+                slots.set(i, null);
+            }
+        }
+    }
+
+    /**
+     * Forgets the cached credentials for the payment type and country, they are asked for again on the next request.
+     */
+    public void invalidate( PAYMENTTYPE type, COUNTRYCODE country ) {
+        slotGenerations.get(type).incrementAndGet(country.ordinal());
+        entries.get(type).set(country.ordinal(), null);
+    }
+
+    /** @return the number of credential lookups answered from the cache */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return the number of credential lookups that asked the wrapped ConfigurationProvider */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String getUsername( PAYMENTTYPE type, COUNTRYCODE country ) {
+        return Credentials.isHosted(type) ? delegate.getUsername(type, country) : getCredentials(type, country).getUsername();
+    }
+
+    @Override
+    public String getPassword( PAYMENTTYPE type, COUNTRYCODE country ) {
+        return Credentials.isHosted(type) ? delegate.getPassword(type, country) : getCredentials(type, country).getPassword();
+    }
+
+    @Override
+    public int getClientNumber( PAYMENTTYPE type, COUNTRYCODE country ) {
+        return Credentials.isHosted(type) ? delegate.getClientNumber(type, country) : getCredentials(type, country).getClientNumber();
+    }
+
+    @Override
+    public String getMerchantId( PAYMENTTYPE type, COUNTRYCODE country ) {
+        return Credentials.isHosted(type) ? getCredentials(type, country).getMerchantId() : delegate.getMerchantId(type, country);
+    }
+
+    @Override
+    public String getSecretWord( PAYMENTTYPE type, COUNTRYCODE country ) {
+        return Credentials.isHosted(type) ? getCredentials(type, country).getSecretWord() : delegate.getSecretWord(type, country);
+    }
+
+    @Override
+    public URL getEndPoint( PAYMENTTYPE type ) {
+        return delegate.getEndPoint(type);
+    }
+
+    private static final class Entry {
+        private final Credentials credentials;
+        private final long fetchedAt;
+        private final long generation;
+        private final long slotGeneration;
+
+        private Entry( Credentials credentials, long fetchedAt, long generation, long slotGeneration ) {
+            this.credentials = credentials;
+            this.fetchedAt = fetchedAt;
+            this.generation = generation;
+            this.slotGeneration = slotGeneration;
+        }
+
+        private boolean isCurrent( long generation, long slotGeneration ) {
+            return this.generation == generation && this.slotGeneration == slotGeneration;
+        }
+
+        private boolean isExpired( long now, long timeToLiveNanos ) {
+            return timeToLiveNanos > 0 && now - fetchedAt >= timeToLiveNanos;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package se.sveaekonomi.webpay.integration.config;
+
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * The credentials resolved from a ConfigurationProvider for a payment type and country.
+ *
+ * For the webservice and admin service payment types (INVOICE, PAYMENTPLAN and ADMIN_TYPE) the username, password
+ * and client number are resolved, for the hosted payment types (HOSTED and HOSTED_ADMIN) the merchant id and secret
+ * word. The other values are left unset, i.e. null or 0.
+ *
+ * Request classes use Credentials.resolve() to look up all values for a request at once, which returns the cached
+ * credentials if the ConfigurationProvider is a CachingConfigurationProvider.
+ */
+public final class Credentials {
+
+    private final PAYMENTTYPE type;
+    private final COUNTRYCODE country;
+    private final String username;
+    private final String password;
+    private final int clientNumber;
+    private final String merchantId;
+    private final String secretWord;
+
+    private Credentials( PAYMENTTYPE type, COUNTRYCODE country, String username, String password, int clientNumber, String merchantId, String secretWord ) {
+        this.type = type;
+        this.country = country;
+        this.username = username;
+        this.password = password;
+        this.clientNumber = clientNumber;
+        this.merchantId = merchantId;
+        this.secretWord = secretWord;
+    }
+
+    /**
+     * Returns the credentials for the payment type and country, from the cache if config is a CachingConfigurationProvider.
+     */
+    public static Credentials resolve( ConfigurationProvider config, PAYMENTTYPE type, COUNTRYCODE country ) {
+        if( config instanceof CachingConfigurationProvider ) {
+            return ((CachingConfigurationProvider) config).getCredentials(type, country);
+        }
+        return fetch(config, type, country);
+    }
+
+    /**
+     * Asks the ConfigurationProvider for the credentials used with the payment type.
+     */
+    static Credentials fetch( ConfigurationProvider config, PAYMENTTYPE type, COUNTRYCODE country ) {
+        if( isHosted(type) ) {
+            return new Credentials( type, country, null, null, 0,
+                    config.getMerchantId(type, country),
+                    config.getSecretWord(type, country)
+            );
+        }
+        return new Credentials( type, country,
+                config.getUsername(type, country),
+                config.getPassword(type, country),
+                config.getClientNumber(type, country),
+                null, null
+        );
+    }
+
+    /**
+     * @return true if the payment type is authorized using merchant id and secret word, false if using username and password
+     */
+    public static boolean isHosted( PAYMENTTYPE type ) {
+        return type == PAYMENTTYPE.HOSTED || type == PAYMENTTYPE.HOSTED_ADMIN;
+    }
+
+    public PAYMENTTYPE getType() {
+        return type;
+    }
+
+    public COUNTRYCODE getCountry() {
+        return country;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getClientNumber() {
+        return clientNumber;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public String getSecretWord() {
+        return secretWord;
+    }
+}
@@ -6,8 +6,7 @@ import java.util.Map;
 
 import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
 import se.sveaekonomi.webpay.integration.util.security.Base64Util;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
 
 public class PaymentForm {
 
@@ -87,7 +86,7 @@ public class PaymentForm {
     }
     
     public PaymentForm setForm() {
-        macSha512 = HashUtil.createHash(xmlMessageBase64 + secretWord, HASHALGORITHM.SHA_512);
+        macSha512 = MacUtil.createMac(xmlMessageBase64, secretWord);
         
         completeHtmlFormWithSubmitButton = "<form name=\"paymentForm\" id=\"paymentForm\" method=\"post\" action=\""
                 + url.toString()
@@ -103,7 +102,7 @@ public class PaymentForm {
     }
     
     public PaymentForm setHtmlFields() {
-        macSha512 = HashUtil.createHash(xmlMessageBase64 + secretWord, HASHALGORITHM.SHA_512);
+        macSha512 = MacUtil.createMac(xmlMessageBase64, secretWord);
         
         formHtmlFields.put("form_start_tag", "<form name=\"paymentForm\" id=\"paymentForm\" method=\"post\" action=\"" + url.toString() + "\">");
         formHtmlFields.put("input_merchantId", "<input type=\"hidden\" name=\"merchantid\" value=\"" + merchantid + "\" />");
@@ -4,6 +4,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Hashtable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
 import javax.xml.stream.XMLOutputFactory;
@@ -11,13 +13,16 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.CreditTransactionResponse;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
 import se.sveaekonomi.webpay.integration.util.request.GetRequestProperties;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.util.security.Base64Util;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 /**
  * creditTransaction can be used to credit transactions. Only transactions that
@@ -108,12 +113,13 @@ public class CreditTransactionRequest extends HostedAdminRequest<CreditTransacti
         // build inspectable request object and return
 		Hashtable<String,String> requestFields = new Hashtable<>();
 
-		String merchantId = this.config.getMerchantId(PAYMENTTYPE.HOSTED, this.getCountryCode());
-		String secretWord = this.config.getSecretWord(PAYMENTTYPE.HOSTED, this.getCountryCode());		
+		Credentials credentials = this.getCredentials();
+		String merchantId = credentials.getMerchantId();
+		String secretWord = credentials.getSecretWord();		
 		
     	String xmlMessage = getRequestMessageXml(this.config);
     	String xmlMessageBase64 = Base64Util.encodeBase64String(xmlMessage);
-    	String macSha512 =  HashUtil.createHash(xmlMessageBase64 + secretWord, HASHALGORITHM.SHA_512);			
+    	String macSha512 =  MacUtil.createMac(xmlMessageBase64, secretWord);			
 
     	requestFields.put("message", xmlMessageBase64);
     	requestFields.put("mac", macSha512);
@@ -123,16 +129,27 @@ public class CreditTransactionRequest extends HostedAdminRequest<CreditTransacti
 	}	
 	
 	public CreditTransactionResponse doRequest() throws SveaWebPayException {
+		RequestTimer timer = startTimer();
+		try {
+			return timer.finish( doRequest( timer ) );
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+
+	private CreditTransactionResponse doRequest( RequestTimer timer ) {
 
 		try {
 			// prepare request fields
 	    	Hashtable<String, String> requestFields = this.prepareRequest();
 
 	    	// send request 
-	    	String xmlResponse = sendHostedAdminRequest(requestFields);
+	    	String xmlResponse = sendHostedAdminRequest(requestFields, timer);
 	
 	    	// parse response	
-			return new CreditTransactionResponse( getResponseMessageFromXml(xmlResponse), getResponseMacFromXml(xmlResponse), this.config.getSecretWord(PAYMENTTYPE.HOSTED, this.getCountryCode()) );
+			XMLValueReader envelope = getResponseEnvelopeFromXml(xmlResponse);
+			return new CreditTransactionResponse( envelope.getValue("message"), envelope.getValue("mac"), this.getCredentials().getSecretWord() );
 			
 	    } catch (IllegalStateException ex) {
 	        throw new SveaWebPayException("IllegalStateException", ex);
@@ -143,4 +160,17 @@ public class CreditTransactionRequest extends HostedAdminRequest<CreditTransacti
 	        throw new SveaWebPayException("IOException", ex);
 	    }		
 	} 
+
+	/**
+	 * Credits the card transaction on the SveaRequestExecutor.
+	 * @return a Future of the CreditTransactionResponse
+	 */
+	public Future<CreditTransactionResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<CreditTransactionResponse>() {
+			@Override
+			public CreditTransactionResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
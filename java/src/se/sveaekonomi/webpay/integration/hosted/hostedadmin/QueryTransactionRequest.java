@@ -3,7 +3,10 @@ package se.sveaekonomi.webpay.integration.hosted.hostedadmin;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
 import javax.xml.stream.XMLOutputFactory;
@@ -11,18 +14,26 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.QueryTransactionResponse;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
 import se.sveaekonomi.webpay.integration.util.request.GetRequestProperties;
+import se.sveaekonomi.webpay.integration.util.request.RequestCoalescer;
+import se.sveaekonomi.webpay.integration.util.request.ResiliencePolicy;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.util.security.Base64Util;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 public class QueryTransactionRequest extends HostedAdminRequest<QueryTransactionRequest> {
 
 	/** Required. */
 	public String transactionId;
+
+	private ResiliencePolicy policy;
+	private RequestCoalescer coalescer;
 	
 	public String getTransactionId() {
 		return transactionId;
@@ -37,6 +48,29 @@ public class QueryTransactionRequest extends HostedAdminRequest<QueryTransaction
 		super(config, "querytransactionid");
 	}
 
+	/**
+	 * Optional, retry, hedge and bound the request using the given policy instead of ResiliencePolicy.getDefault()
+	 */
+	public QueryTransactionRequest useResiliencePolicy( ResiliencePolicy policy ) {
+		this.policy = policy;
+		return this;
+	}
+
+	/**
+	 * Optional, share the response with concurrent identical requests using the default RequestCoalescer
+	 */
+	public QueryTransactionRequest useCoalescing() {
+		return useCoalescing( RequestCoalescer.getDefault() );
+	}
+
+	/**
+	 * Optional, share the response with concurrent identical requests using the given RequestCoalescer, or null to not coalesce
+	 */
+	public QueryTransactionRequest useCoalescing( RequestCoalescer coalescer ) {
+		this.coalescer = coalescer;
+		return this;
+	}
+
 	/**
 	 * validates that all required attributes needed for the request are present in the builder object
 	 * @return indicating which methods are missing, or empty String if no problems found
@@ -58,6 +92,15 @@ public class QueryTransactionRequest extends HostedAdminRequest<QueryTransaction
     }	
     
 
+    private void assertValid() {
+        String errors = validateRequest();
+        
+        if (!errors.equals("")) {
+        	System.out.println(errors);
+            throw new SveaWebPayException("Validation failed", new ValidationException(errors));
+        }
+    }
+
     /**
 	 * returns xml for hosted webservice "query" request
 	 */
@@ -95,22 +138,18 @@ public class QueryTransactionRequest extends HostedAdminRequest<QueryTransaction
 	public Hashtable<String,String> prepareRequest() {
 
     	// validate request and throw exception if validation fails
-        String errors = validateRequest();
-        
-        if (!errors.equals("")) {
-        	System.out.println(errors);
-            throw new SveaWebPayException("Validation failed", new ValidationException(errors));
-        }
+        assertValid();
         
         // build inspectable request object and return
 		Hashtable<String,String> requestFields = new Hashtable<>();
 
-		String merchantId = this.config.getMerchantId(PAYMENTTYPE.HOSTED, this.getCountryCode());
-		String secretWord = this.config.getSecretWord(PAYMENTTYPE.HOSTED, this.getCountryCode());		
+		Credentials credentials = this.getCredentials();
+		String merchantId = credentials.getMerchantId();
+		String secretWord = credentials.getSecretWord();		
 		
     	String xmlMessage = getRequestMessageXml(this.config);
     	String xmlMessageBase64 = Base64Util.encodeBase64String(xmlMessage);
-    	String macSha512 =  HashUtil.createHash(xmlMessageBase64 + secretWord, HASHALGORITHM.SHA_512);			
+    	String macSha512 =  MacUtil.createMac(xmlMessageBase64, secretWord);			
 
     	requestFields.put("message", xmlMessageBase64);
     	requestFields.put("mac", macSha512);
@@ -125,16 +164,49 @@ public class QueryTransactionRequest extends HostedAdminRequest<QueryTransaction
 	 * @throws SveaWebPayException
 	 */
 	public QueryTransactionResponse doRequest() throws SveaWebPayException {
+		if( this.coalescer == null ) {
+			return retryRequest();
+		}
+		// keyed by hosted admin endpoint, merchant id and transaction id, once the request has validated
+		assertValid();
+		Object key = Arrays.asList( this.method, this.config.getEndPoint(PAYMENTTYPE.HOSTED_ADMIN).toString(),
+				this.getCredentials().getMerchantId(), this.transactionId );
+		return this.coalescer.execute( key, new Callable<QueryTransactionResponse>() {
+			@Override
+			public QueryTransactionResponse call() {
+				return retryRequest();
+			}
+		});
+	}
+
+	private QueryTransactionResponse retryRequest() {
+		ResiliencePolicy policy = (this.policy != null) ? this.policy : ResiliencePolicy.getDefault();
+		return policy.execute( "querytransactionid", new Callable<QueryTransactionResponse>() {
+			@Override
+			public QueryTransactionResponse call() {
+				RequestTimer timer = startTimer();
+				try {
+					return timer.finish( doRequest( timer ) );
+				}
+				catch( RuntimeException e ) {
+					throw timer.fail(e);
+				}
+			}
+		});
+	}
+
+	private QueryTransactionResponse doRequest( RequestTimer timer ) {
 
 		try {
 			// prepare request fields
 	    	Hashtable<String, String> requestFields = this.prepareRequest();
 
 	    	// send request 
-	    	String xmlResponse = sendHostedAdminRequest(requestFields);
+	    	String xmlResponse = sendHostedAdminRequest(requestFields, timer);
 	
 	    	// parse response	
-			return new QueryTransactionResponse( getResponseMessageFromXml(xmlResponse), getResponseMacFromXml(xmlResponse), this.config.getSecretWord(PAYMENTTYPE.HOSTED, this.getCountryCode()) );
+			XMLValueReader envelope = getResponseEnvelopeFromXml(xmlResponse);
+			return new QueryTransactionResponse( envelope.getValue("message"), envelope.getValue("mac"), this.getCredentials().getSecretWord() );
 			
 	    } catch (IllegalStateException ex) {
 	        throw new SveaWebPayException("IllegalStateException", ex);
@@ -145,4 +217,17 @@ public class QueryTransactionRequest extends HostedAdminRequest<QueryTransaction
 	        throw new SveaWebPayException("IOException", ex);
 	    }		
 	}
+
+	/**
+	 * Queries the transaction on the SveaRequestExecutor, retried and coalesced as by doRequest().
+	 * @return a Future of the QueryTransactionResponse
+	 */
+	public Future<QueryTransactionResponse> doRequestAsync() {
+		return SveaRequestExecutor.submit( new Callable<QueryTransactionResponse>() {
+			@Override
+			public QueryTransactionResponse call() {
+				return doRequest();
+			}
+		});
+	}
 }
@@ -1,37 +1,20 @@
 package se.sveaekonomi.webpay.integration.hosted.payment;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.bind.ValidationException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.StatusLine;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.hosted.HostedOrderRowBuilder;
 import se.sveaekonomi.webpay.integration.hosted.helper.ExcludePayments;
@@ -50,6 +33,11 @@ import se.sveaekonomi.webpay.integration.util.constant.LANGUAGECODE;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTMETHOD;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
 import se.sveaekonomi.webpay.integration.util.constant.SUBSCRIPTIONTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.EndpointIsolation;
+import se.sveaekonomi.webpay.integration.util.request.SveaHttpClient;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 /*******************************************************************************
  * Description of HostedPayment: Parent to CardPayment, DirectPayment,
@@ -224,8 +212,9 @@ public abstract class HostedPayment<T extends HostedPayment<T>> {
 		PaymentForm form = new PaymentForm();
 		form.setXmlMessage(xml);
 
-		form.setMerchantId(createOrderBuilder.getConfig().getMerchantId(PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode()));
-		form.setSecretWord(createOrderBuilder.getConfig().getSecretWord(PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode()));
+		Credentials credentials = Credentials.resolve(createOrderBuilder.getConfig(), PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode());
+		form.setMerchantId(credentials.getMerchantId());
+		form.setSecretWord(credentials.getSecretWord());
 
 		if (this.createOrderBuilder.getCountryCode() != null) {
 			form.setSubmitMessage(this.createOrderBuilder.getCountryCode());
@@ -252,6 +241,19 @@ public abstract class HostedPayment<T extends HostedPayment<T>> {
 	 * @throws IllegalStateException 
      */
 	public PaymentUrl getPaymentUrl() throws IllegalStateException, IOException {
+		RequestTimer timer = RequestMetrics.start( "preparepayment", PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode() );
+		try {
+			return timer.finish( getPaymentUrl( timer ) );
+		}
+		catch( IOException e ) {
+			throw timer.fail(e);
+		}
+		catch( RuntimeException e ) {
+			throw timer.fail(e);
+		}
+	}
+
+	private PaymentUrl getPaymentUrl( RequestTimer timer ) throws IOException {
 		calculateRequestValues();
 		HostedXmlBuilder xmlBuilder = new HostedXmlBuilder();
 
@@ -261,8 +263,9 @@ public abstract class HostedPayment<T extends HostedPayment<T>> {
 		PaymentForm form = new PaymentForm();
 		form.setXmlMessage(xml);
 
-		form.setMerchantId(createOrderBuilder.getConfig().getMerchantId(PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode()));
-		form.setSecretWord(createOrderBuilder.getConfig().getSecretWord(PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode()));
+		Credentials credentials = Credentials.resolve(createOrderBuilder.getConfig(), PAYMENTTYPE.HOSTED, createOrderBuilder.getCountryCode());
+		form.setMerchantId(credentials.getMerchantId());
+		form.setSecretWord(credentials.getSecretWord());
 
 		if (this.createOrderBuilder.getCountryCode() != null) {
 			form.setSubmitMessage(this.createOrderBuilder.getCountryCode());
@@ -276,56 +279,25 @@ public abstract class HostedPayment<T extends HostedPayment<T>> {
 		form.setHtmlFields();
 
 		// send form
-		String endpoint = createOrderBuilder.getConfig().getEndPoint(PAYMENTTYPE.HOSTED_ADMIN).toString().concat("preparepayment");		// TODO get from config - använd URIBuilder-klassen
+		URL hostedAdmin = createOrderBuilder.getConfig().getEndPoint(PAYMENTTYPE.HOSTED_ADMIN);
+		String endpoint = hostedAdmin.toString().concat("preparepayment");		// TODO get from config - använd URIBuilder-klassen
 		
-		CloseableHttpClient client = HttpClients.createDefault();
-		HttpPost post = new HttpPost(endpoint);				
-
 		List<NameValuePair> params = new ArrayList<NameValuePair>();
 		params.add(new BasicNameValuePair("message", form.getXmlMessageBase64()));
 		params.add(new BasicNameValuePair("mac", form.getMacSha512()));
 		params.add(new BasicNameValuePair("merchantid", form.getMerchantId()));
 		
-		post.setEntity( new UrlEncodedFormEntity(params) );
-				
-		// receive response
-		/**
-		 * Used by getPaymentUrl() to parse the HttpClient request response from Svea, returning service the xml response as a string 
-		 */
-		ResponseHandler<String> rh = new ResponseHandler<String>() {
-		
-			@Override
-			public String handleResponse( final HttpResponse response ) throws IOException {
-				StatusLine statusLine = response.getStatusLine();
-				HttpEntity entity = response.getEntity();
-		
-				if( statusLine.getStatusCode() >= 300 ) {
-					throw new HttpResponseException( statusLine.getStatusCode(), statusLine.getReasonPhrase() );
-				}
-				if( entity == null ) {
-					throw new ClientProtocolException("Response contains no centent");
-				}
-				
-				BufferedReader br = new BufferedReader( new InputStreamReader(entity.getContent()) );
-		 
-				StringBuffer sb = new StringBuffer();
-				String line = "";
-				while ((line = br.readLine()) != null) {
-					sb.append(line);
-				}	    
-				return sb.toString();
-			};	
-		};	
-		
-		String xmlResponse = client.execute(post, rh);
+		// send using the shared pooled client, and receive response
+		String xmlResponse = SveaHttpClient.getDefault().postForm(endpoint, params, timer, EndpointIsolation.getGuard(createOrderBuilder.getConfig(), hostedAdmin));
 
 				
 		// parse response message into paymentUrl
+		XMLValueReader envelope = XMLValueReader.parse( xmlResponse );
 		PreparePaymentResponse parsedResponse = 
 			new PreparePaymentResponse(
-				getResponseMessageFromXml( xmlResponse ),
-				getResponseMacFromXml( xmlResponse ),
-				createOrderBuilder.getConfig().getSecretWord(PAYMENTTYPE.HOSTED,createOrderBuilder.getCountryCode())
+				envelope.getValue("message"),
+				envelope.getValue("mac"),
+				credentials.getSecretWord()
 			)
 		;
 	
@@ -335,64 +307,6 @@ public abstract class HostedPayment<T extends HostedPayment<T>> {
 		return paymentUrl;		
 	}	
 
-	/** extracts <message> node contents from xml string */	
-	private String getResponseMessageFromXml(String xml) {
-	    
-	    String message = null;
-		
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document d1 = builder.parse(new InputSource(new StringReader(xml)));
-			NodeList nodeList = d1.getElementsByTagName("response");
-			int size = nodeList.getLength();
-
-			for (int i = 0; i < size; i++) {
-				Element element = (Element) nodeList.item(i);
-							
-				message = getTagValue(element, "message");								
-			}
-		} catch (ParserConfigurationException e) {
-			throw new SveaWebPayException("ParserConfigurationException", e);
-		} catch (SAXException e) {
-			throw new SveaWebPayException("SAXException", e);
-		} catch (IOException e) {
-			throw new SveaWebPayException("IOException", e);
-		}		
-		
-		return message;
-	}
-	
-	/** extracts <message> node contents from xml string */	
-	private String getResponseMacFromXml(String xml) {
-	    
-	    String mac = null;
-		
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document d1 = builder.parse(new InputSource(new StringReader(xml)));
-			NodeList nodeList = d1.getElementsByTagName("response");
-			int size = nodeList.getLength();
-
-			for (int i = 0; i < size; i++) {
-				Element element = (Element) nodeList.item(i);
-							
-				mac = getTagValue(element, "mac");								
-			}
-		} catch (ParserConfigurationException e) {
-			throw new SveaWebPayException("ParserConfigurationException", e);
-		} catch (SAXException e) {
-			throw new SveaWebPayException("SAXException", e);
-		} catch (IOException e) {
-			throw new SveaWebPayException("IOException", e);
-		}		
-		
-		return mac;
-	}
-	
     protected String getTagValue(Element elementNode, String tagName) {
         NodeList nodeList = elementNode.getElementsByTagName(tagName);
         Element element = (Element) nodeList.item(0);
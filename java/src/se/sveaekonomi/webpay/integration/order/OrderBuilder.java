@@ -31,6 +31,48 @@ public abstract class OrderBuilder<T extends OrderBuilder<T>> {
         return this.config;
     }
     
+    /**
+     * Returns the current contents of the order, i.e. its settings and the values of its rows, fees and discounts, as a list
+     * which is equal to a later fingerprint only if the order has not been changed in between. Unlike a modification count,
+     * this also catches rows changed after being added, or changed in the lists returned by the getters.
+     * Used to tell whether a request prepared from the order is still current.
+     */
+    public List<Object> getFingerprint() {
+        List<Object> fingerprint = new ArrayList<Object>();
+        fingerprint.add(getConfig());
+        fingerprint.add(getCountryCode());
+        addRows(fingerprint, getOrderRows());
+        addRows(fingerprint, getInvoiceFeeRows());
+        addRows(fingerprint, getShippingFeeRows());
+        addRows(fingerprint, getFixedDiscountRows());
+        addRows(fingerprint, getRelativeDiscountRows());
+        return fingerprint;
+    }
+    
+    private static void addRows(List<Object> fingerprint, List<? extends RowBuilder> rows) {
+        if (rows == null) {
+            fingerprint.add(null);
+            return;
+        }
+        fingerprint.add(rows.size());
+        for (RowBuilder row : rows) {
+            if (row == null) {
+                fingerprint.add(null);
+                continue;
+            }
+            fingerprint.add(row.getClass());
+            fingerprint.add(row.getArticleNumber());
+            fingerprint.add(row.getName());
+            fingerprint.add(row.getDescription());
+            fingerprint.add(row.getUnit());
+            fingerprint.add(row.getQuantity());
+            fingerprint.add(row.getAmountExVat());
+            fingerprint.add(row.getAmountIncVat());
+            fingerprint.add(row.getVatPercent());
+            fingerprint.add(row.getDiscountPercent());
+        }
+    }
+    
     public List<OrderRowBuilder> getOrderRows() {
         return orderRows;
     }  
@@ -1,6 +1,7 @@
 package se.sveaekonomi.webpay.integration.order.create;
 
 import java.sql.Date;
+import java.util.List;
 
 import javax.xml.bind.ValidationException;
 
@@ -231,6 +232,52 @@ public class CreateOrderBuilder extends OrderBuilder<CreateOrderBuilder> {
         return this.customerIdentity;
     }
     
+    /**
+     * Adds the order settings and customer details to the fingerprint of the order rows, see OrderBuilder.getFingerprint()
+     */
+    @Override
+    public List<Object> getFingerprint() {
+        List<Object> fingerprint = super.getFingerprint();
+        fingerprint.add(validator);
+        fingerprint.add(clientOrderNumber);
+        fingerprint.add(customerReference);
+        fingerprint.add((orderDate != null) ? orderDate.getTime() : null);    // Date is mutable
+        fingerprint.add(currency);
+        fingerprint.add(campaignCode);
+        fingerprint.add(sendAutomaticGiroPaymentForm);
+        
+        CustomerIdentity<?> customer = this.customerIdentity;
+        if (customer == null) {
+            fingerprint.add(null);
+            return fingerprint;
+        }
+        fingerprint.add(customer.getClass());
+        fingerprint.add(customer.getNationalIdNumber());
+        fingerprint.add(customer.getPhoneNumber());
+        fingerprint.add(customer.getEmail());
+        fingerprint.add(customer.getIpAddress());
+        fingerprint.add(customer.getStreetAddress());
+        fingerprint.add(customer.getCoAddress());
+        fingerprint.add(customer.getHouseNumber());
+        fingerprint.add(customer.getZipCode());
+        fingerprint.add(customer.getLocality());
+        if (customer instanceof IndividualCustomer) {
+            IndividualCustomer individual = (IndividualCustomer) customer;
+            fingerprint.add(individual.getBirthDate());
+            fingerprint.add(individual.getName());
+            fingerprint.add(individual.getFirstName());
+            fingerprint.add(individual.getLastName());
+            fingerprint.add(individual.getInitials());
+        }
+        if (customer instanceof CompanyCustomer) {
+            CompanyCustomer company = (CompanyCustomer) customer;
+            fingerprint.add(company.getCompanyName());
+            fingerprint.add(company.getVatNumber());
+            fingerprint.add(company.getAddressSelector());
+        }
+        return fingerprint;
+    }
+    
     public CreateOrderBuilder build() {
         validator.validate(this);
         return this;
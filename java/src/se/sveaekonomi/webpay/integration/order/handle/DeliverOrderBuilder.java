@@ -1,10 +1,14 @@
 package se.sveaekonomi.webpay.integration.order.handle;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.xml.bind.ValidationException;
 
 import se.sveaekonomi.webpay.integration.Requestable;
+import se.sveaekonomi.webpay.integration.adminservice.DeliverOrdersBulkRequest;
 import se.sveaekonomi.webpay.integration.adminservice.DeliverOrdersRequest;
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
@@ -24,6 +28,7 @@ public class DeliverOrderBuilder extends OrderBuilder<DeliverOrderBuilder> {
     private HandleOrderValidator validator;
     
     private Long orderId;
+    private List<Long> orderIds;
     private ORDERTYPE orderType;
     private DISTRIBUTIONTYPE distributionType;
     private Long invoiceIdToCredit;
@@ -55,6 +60,18 @@ public class DeliverOrderBuilder extends OrderBuilder<DeliverOrderBuilder> {
         return this;
     }
     
+    public List<Long> getOrderIds() {
+        return orderIds;
+    }
+    
+    /**
+     * required for deliverInvoiceOrders, deliverPaymentPlanOrders -- orders to deliver, all with the same country code, not combined with setOrderId
+     */
+    public DeliverOrderBuilder setOrderIds(Collection<Long> orderIds) {
+        this.orderIds = new ArrayList<Long>(orderIds);
+        return this;
+    }
+    
     public ORDERTYPE getOrderType() {
         return orderType;
     }
@@ -163,6 +180,24 @@ public class DeliverOrderBuilder extends OrderBuilder<DeliverOrderBuilder> {
 		return (T) new HandleOrder(this);
     }
     
+    /**
+     * Delivers the invoice orders given in setOrderIds() in full, using as few DeliverOrders requests as possible.
+     * @return DeliverOrdersBulkRequest
+     */
+    public DeliverOrdersBulkRequest deliverInvoiceOrders() {
+    	this.setOrderType(ORDERTYPE.Invoice);
+    	return new DeliverOrdersBulkRequest(this);
+    }
+    
+    /**
+     * Delivers the payment plan orders given in setOrderIds() in full, using as few DeliverOrders requests as possible.
+     * @return DeliverOrdersBulkRequest
+     */
+    public DeliverOrdersBulkRequest deliverPaymentPlanOrders() {
+    	this.setOrderType(ORDERTYPE.PaymentPlan);
+    	return new DeliverOrdersBulkRequest(this);
+    }
+    
     /**
      * deliverCardOrder() is used to set the status of a card order to CONFIRMED
      * 
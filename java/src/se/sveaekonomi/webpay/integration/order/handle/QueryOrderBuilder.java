@@ -1,7 +1,12 @@
 package se.sveaekonomi.webpay.integration.order.handle;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import javax.xml.bind.ValidationException;
 
+import se.sveaekonomi.webpay.integration.adminservice.GetOrdersBulkRequest;
 import se.sveaekonomi.webpay.integration.adminservice.GetOrdersRequest;
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
@@ -16,6 +21,7 @@ public class QueryOrderBuilder extends OrderBuilder<QueryOrderBuilder>{
 	
     protected PAYMENTTYPE orderType;
     private Long orderId;
+    private List<Long> orderIds;
 
     public Long getOrderId() {
         return orderId;
@@ -25,6 +31,15 @@ public class QueryOrderBuilder extends OrderBuilder<QueryOrderBuilder>{
         this.orderId = orderId;
         return this;
     }
+    
+    public List<Long> getOrderIds() {
+    	return orderIds;
+    }
+    /** Required for queryInvoiceOrders, queryPaymentPlanOrders -- orders to get details for, all with the same country code, not combined with setOrderId */
+    public QueryOrderBuilder setOrderIds( Collection<Long> orderIds ) {
+    	this.orderIds = new ArrayList<Long>(orderIds);
+    	return this;
+    }
 	/** Optional, card or direct bank only -- alias for setOrderId */
 	public QueryOrderBuilder setTransactionId( Long transactionId) {        
 	  return setOrderId( transactionId );
@@ -101,4 +116,22 @@ public class QueryOrderBuilder extends OrderBuilder<QueryOrderBuilder>{
 		GetOrdersRequest request = new GetOrdersRequest( this );
 		return request;        
     } 
+    
+    /**
+     * Query the invoice orders given in setOrderIds() using as few GetOrders requests as possible
+     */
+    public GetOrdersBulkRequest queryInvoiceOrders() {
+    	this.orderType = PAYMENTTYPE.INVOICE;
+		// validation is done in GetOrdersBulkRequest
+    	return new GetOrdersBulkRequest( this );
+    }
+    
+    /**
+     * Query the payment plan orders given in setOrderIds() using as few GetOrders requests as possible
+     */
+    public GetOrdersBulkRequest queryPaymentPlanOrders() {
+    	this.orderType = PAYMENTTYPE.PAYMENTPLAN;
+		// validation is done in GetOrdersBulkRequest
+    	return new GetOrdersBulkRequest( this );
+    }
 }
@@ -235,7 +235,7 @@ public class OrderRowBuilder<T extends OrderRowBuilder<T>> extends RowBuilder {
 	
 	/** Converts an amount including vat to amount excluding vat, given a vat rate in percent. */
 	public static Double convertIncVatToExVat( Double amountIncVat, Double vatPercent ) {
-		Double reverseVatPercent = (1-(1/(1+vatPercent/100))); // calculate "reverse vat", i.e. 25% => 20%
+		double reverseVatPercent = (1-(1/(1+vatPercent/100))); // calculate "reverse vat", i.e. 25% => 20%
 		return  amountIncVat - amountIncVat*reverseVatPercent;
 	}
 
@@ -35,6 +35,9 @@ public class HandleOrderValidator {
         if (order.getOrderId() == null) {
             this.errors += "MISSING VALUE - setOrderId is required.\n";
         }
+        if (order.getOrderIds() != null) {
+            this.errors += "NOT VALID - setOrderIds is only used by deliverInvoiceOrders() and deliverPaymentPlanOrders(), use setOrderId.\n";
+        }
     }
     
     private void validateInvoiceDetails(DeliverOrderBuilder order) {
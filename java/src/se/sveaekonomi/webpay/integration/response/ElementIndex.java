@@ -0,0 +1,92 @@
+package se.sveaekonomi.webpay.integration.response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Indexes the descendant elements of a response element by tag name in a single pass, so that reading a response with
+ * many fields walks the element tree once, instead of once per field as getElementsByTagName() does.
+ *
+ * For each tag name the first element in document order is kept, which matches getElementsByTagName(tagName).item(0),
+ * and the values are read as ResponseHelper.getTagValue() does.
+ */
+public final class ElementIndex {
+
+	private final Element root;
+	private final Map<String,Element> elements = new HashMap<String,Element>();
+
+	private ElementIndex( Element root ) {
+		this.root = root;
+	}
+
+	/**
+	 * @return an index of the descendant elements of the given element, not including the element itself
+	 */
+	public static ElementIndex of( Element root ) {
+		ElementIndex index = new ElementIndex(root);
+		index.read();
+		return index;
+	}
+
+	/** @return the indexed element */
+	public Element getRoot() {
+		return root;
+	}
+
+	/** @return true if the element has a descendant element with the given tag name */
+	public boolean hasElement( String tagName ) {
+		return elements.containsKey(tagName);
+	}
+
+	/** @return the first descendant element with the given tag name, or null if not found */
+	public Element getElement( String tagName ) {
+		return elements.get(tagName);
+	}
+
+	/** @return the trimmed value of the first child node of the first element with the given tag name, or null if not found or empty */
+	public String getValue( String tagName ) {
+		Element element = elements.get(tagName);
+		if( element == null || !element.hasChildNodes() ) {
+			return null;
+		}
+		String value = element.getFirstChild().getNodeValue();
+		return (value == null) ? null : value.trim();
+	}
+
+	/** @return the child nodes of the first element with the given tag name, or null if not found or empty */
+	public NodeList getChildNodes( String tagName ) {
+		Element element = elements.get(tagName);
+		return (element != null && element.hasChildNodes()) ? element.getChildNodes() : null;
+	}
+
+	/** @return the attribute value of the first element with the given tag name, or null if the element or attribute is not found */
+	public String getAttribute( String tagName, String attributeName ) {
+		Element element = elements.get(tagName);
+		return (element != null && element.hasAttribute(attributeName)) ? element.getAttribute(attributeName) : null;
+	}
+
+	// walks the tree in document order without recursion, using the sibling and parent links
+	private void read() {
+		Node node = root.getFirstChild();
+		while( node != null ) {
+			if( node.getNodeType() == Node.ELEMENT_NODE ) {
+				String tagName = node.getNodeName();
+				if( !elements.containsKey(tagName) ) {
+					elements.put( tagName, (Element) node );
+				}
+				if( node.getFirstChild() != null ) {
+					node = node.getFirstChild();
+					continue;
+				}
+			}
+			while( node != root && node.getNextSibling() == null ) {
+				node = node.getParentNode();
+			}
+			node = (node == root) ? null : node.getNextSibling();
+		}
+	}
+}
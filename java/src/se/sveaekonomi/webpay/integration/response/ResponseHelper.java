@@ -1,11 +1,12 @@
 package se.sveaekonomi.webpay.integration.response;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 public class ResponseHelper {
+
+    private ElementIndex elementIndex;
 	
 	   // get child nodes from a node with name "tag" , or null if not found
     protected NodeList getTagNodes( Element elementNode, String tagName ) {
@@ -37,13 +38,19 @@ public class ResponseHelper {
 
     // get attribute value from a node with name "tag", or null if not found
 	protected String getTagAttribute(Element elementNode, String tagName, String attributeName) {
-		String[] temp;
-		Node trans = elementNode.getElementsByTagName(tagName).item(0);
-		NamedNodeMap attr = trans.getAttributes();
-		Node nodeAttr = attr.getNamedItem("id");
-		String node = nodeAttr.toString();
-		temp = node.split("=");
-		return temp[1].substring(1, temp[1].length() - 1);
+		Element element = (Element) elementNode.getElementsByTagName(tagName).item(0);
+		if (element == null || !element.hasAttribute(attributeName)) {
+			return null;
+		}
+		return element.getAttribute(attributeName);
+	}
+
+	// get the index of the elements below a node, reusing the index when the same node is read again, i.e. by a subclass
+	protected ElementIndex getElementIndex(Element elementNode) {
+		if (elementIndex == null || elementIndex.getRoot() != elementNode) {
+			elementIndex = ElementIndex.of(elementNode);
+		}
+		return elementIndex;
 	}
 	
 }
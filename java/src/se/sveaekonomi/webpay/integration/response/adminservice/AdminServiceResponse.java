@@ -39,6 +39,10 @@ public class AdminServiceResponse implements Response {
 		setCommonResponseAttributes(nodes);
 	}
 
+	/** used by subclasses that set ResultCode and ErrorMessage themselves, i.e. per-order results of a multi-order request */
+	protected AdminServiceResponse() {
+	}
+
 	private void setCommonResponseAttributes(NodeList xmlResponse) {
 		Element node = (Element) xmlResponse.item(0);
 
@@ -1,5 +1,10 @@
 package se.sveaekonomi.webpay.integration.response.adminservice;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 
@@ -72,6 +77,86 @@ public class DeliverOrdersResponse extends AdminServiceResponse implements Respo
     	}
     }
 
+	/**
+	 * Result for a single delivered order of a multi-order DeliverOrders response
+	 */
+	protected DeliverOrdersResponse(Element deliverOrderResult) {
+		super();
+		this.setResultCode("0");
+		this.setOrderAccepted(true);
+		this.setErrorMessage("");
+		setDeliverOrderResultAttributes(deliverOrderResult);
+	}
+
+	/**
+	 * Result for an order that was not delivered, with the reason given in resultCode and errorMessage
+	 */
+	protected DeliverOrdersResponse(Long orderId, String resultCode, String errorMessage) {
+		super();
+		this.setResultCode(resultCode);
+		this.setOrderAccepted(false);
+		this.setErrorMessage(errorMessage);
+		this.setOrderId(orderId);
+	}
+
+	/**
+	 * Parses a DeliverOrders response holding any number of delivered orders into one DeliverOrdersResponse per order id, 
+	 * in the order given. If the request failed as a whole, all orders get the request ResultCode and ErrorMessage. Orders
+	 * missing from an otherwise successful response get a null ResultCode and an explanatory ErrorMessage.
+	 * 
+	 * @param xmlResponse -- all elements in the response body
+	 * @param orderIds -- the order ids sent in the request
+	 */
+	public static List<DeliverOrdersResponse> getDeliverOrdersResponses(NodeList xmlResponse, List<Long> orderIds) {
+		AdminServiceResponse result = new AdminServiceResponse(xmlResponse);
+		if( !result.isOrderAccepted() ) {
+			return getFailedResponses(orderIds, result.getResultCode(), result.getErrorMessage());
+		}
+
+		Map<Long,Element> resultsById = new HashMap<Long,Element>();
+		Node ordersDelivered = ((Element) xmlResponse.item(0)).getElementsByTagName("a:OrdersDelivered").item(0);
+		if( ordersDelivered != null ) {
+			NodeList children = ordersDelivered.getChildNodes();
+			for( int i=0; i < children.getLength(); i++ ) {
+				if( children.item(i).getNodeType() != Node.ELEMENT_NODE ) {
+					continue;
+				}
+				Element dor = (Element) children.item(i);
+				Node sveaOrderId = dor.getElementsByTagName("a:SveaOrderId").item(0);
+				if( sveaOrderId != null ) {
+					resultsById.put( Long.valueOf(sveaOrderId.getTextContent()), dor );
+				}
+			}
+		}
+
+		List<DeliverOrdersResponse> responses = new ArrayList<DeliverOrdersResponse>(orderIds.size());
+		for( Long orderId : orderIds ) {
+			Element dor = resultsById.get(orderId);
+			if( dor == null ) {
+				responses.add( new DeliverOrdersResponse(orderId, null, "Order " + orderId + " was not returned by DeliverOrders.") );
+				continue;
+			}
+			try {
+				responses.add( new DeliverOrdersResponse(dor) );
+			}
+			catch( RuntimeException e ) {
+				responses.add( new DeliverOrdersResponse(orderId, null, "Order " + orderId + " could not be parsed: " + e.toString()) );
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * @return one not accepted DeliverOrdersResponse per order id, all with the given resultCode and errorMessage
+	 */
+	public static List<DeliverOrdersResponse> getFailedResponses(List<Long> orderIds, String resultCode, String errorMessage) {
+		List<DeliverOrdersResponse> responses = new ArrayList<DeliverOrdersResponse>(orderIds.size());
+		for( Long orderId : orderIds ) {
+			responses.add( new DeliverOrdersResponse(orderId, resultCode, errorMessage) );
+		}
+		return responses;
+	}
+
 	private void setDeliverOrdersResponseAttributes(NodeList xmlResponse) {
 		
 		//<s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/">
@@ -97,6 +182,10 @@ public class DeliverOrdersResponse extends AdminServiceResponse implements Respo
 		Node deliverOrdersResult=xmlResponse.item(1);
 		Node ordersDelivered = deliverOrdersResult.getChildNodes().item(2);
 		Element dor = (Element) ordersDelivered.getChildNodes().item(0);		
+		setDeliverOrderResultAttributes(dor);
+	}
+	
+	private void setDeliverOrderResultAttributes(Element dor) {
 		String clientId = dor.getElementsByTagName("a:ClientId").item(0).getTextContent();
 		this.setClientId( Long.valueOf(clientId) );
 		String deliveredAmount = dor.getElementsByTagName("a:DeliveredAmount").item(0).getTextContent();
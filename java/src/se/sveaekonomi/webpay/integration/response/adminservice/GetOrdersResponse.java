@@ -1,6 +1,9 @@
 package se.sveaekonomi.webpay.integration.response.adminservice;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -27,7 +30,7 @@ public class GetOrdersResponse extends AdminServiceResponse {
     public ORDERSTATUS orderStatus;															// OrderStatus    
     /** Date when order was first created. */
     public String createdDate;																// CreatedDate    
-    /** @var CompanyCustomer|IndividualCustomer $customer -- customer identity as associated with the order by Svea, also Shipping address. */
+    /** @var CompanyCustomer|IndividualCustomer $customer -- customer identity as associated with the order by Svea, also Shipping address. Set on first call to getIndividualCustomer() or getCompanyCustomer() when read by GetOrdersResponseReader. */
     public CustomerIdentity<?> customer;													// Customer
     /** Customer id that is created by SveaWebPay system. */
     public Long customerId;    																// CustomerId
@@ -52,13 +55,80 @@ public class GetOrdersResponse extends AdminServiceResponse {
     public String creditReportStatusCreationDate;											// CreditReportStatus.CreationDate
     /** Tells if credit decision is accepted or not */
     public Boolean creditReportStatusAccepted;												// CreditReportStatus.Accepted
-    /** @var Svea\OrderRow[] $numberedOrderRows  array of OrderRow objects, note that invoice and payment plan order rows name attribute will be null */
+    /** @var Svea\OrderRow[] $numberedOrderRows  array of OrderRow objects, note that invoice and payment plan order rows name attribute will be null. Set on first call to getNumberedOrderRows() when read by GetOrdersResponseReader. */
     public ArrayList<NumberedOrderRowBuilder> numberedOrderRows;							// OrderRows
     /** Tells if order can be cancelled or not */
     public Boolean isPossibleToCancel;														// IsPossibleToCancel
     public PENDINGTYPE pendingReasonsPendingType; 											// PendingReasons.PendingType
     public String pendingReasonsCreatedDate;												// PendingReasons.CreatedDate
 
+	/** order values read from a:Order, by local name, as parent/name for values of a:CreditReportStatus, a:PaymentPlanDetails and a:PendingReasons */
+	static final String[] ORDER_ELEMENTS = {
+		"ChangedDate", "ClientId", "ClientOrderId", "CreatedDate", "CreditReportStatus/Accepted", "CreditReportStatus/CreationDate", "Currency", "CustomerId", "CustomerReference", "IsPossibleToAdminister", "IsPossibleToCancel", "Notes", "OrderDeliveryStatus", "OrderStatus", "OrderType", "PaymentPlanDetails/ContractLengthMonths", "PaymentPlanDetails/ContractNumber", "PendingReasons/PendingType", "PendingReasons/CreatedDate", "SveaOrderId", "SveaWillBuy"
+	};
+	static final int ORDER_CHANGED_DATE = 0;
+	static final int ORDER_CLIENT_ID = 1;
+	static final int ORDER_CLIENT_ORDER_ID = 2;
+	static final int ORDER_CREATED_DATE = 3;
+	static final int ORDER_CREDIT_REPORT_STATUS_ACCEPTED = 4;
+	static final int ORDER_CREDIT_REPORT_STATUS_CREATION_DATE = 5;
+	static final int ORDER_CURRENCY = 6;
+	static final int ORDER_CUSTOMER_ID = 7;
+	static final int ORDER_CUSTOMER_REFERENCE = 8;
+	static final int ORDER_IS_POSSIBLE_TO_ADMINISTER = 9;
+	static final int ORDER_IS_POSSIBLE_TO_CANCEL = 10;
+	static final int ORDER_NOTES = 11;
+	static final int ORDER_ORDER_DELIVERY_STATUS = 12;
+	static final int ORDER_ORDER_STATUS = 13;
+	static final int ORDER_ORDER_TYPE = 14;
+	static final int ORDER_CONTRACT_LENGTH_MONTHS = 15;
+	static final int ORDER_CONTRACT_NUMBER = 16;
+	static final int ORDER_PENDING_TYPE = 17;
+	static final int ORDER_PENDING_CREATED_DATE = 18;
+	static final int ORDER_SVEA_ORDER_ID = 19;
+	static final int ORDER_SVEA_WILL_BUY = 20;
+
+	/** customer values read from a:Customer, by local name, including those of b:CompanyIdentity and b:IndividualIdentity */
+	static final String[] CUSTOMER_ELEMENTS = {
+		"CoAddress", "CompanyVatNumber", "CustomerType", "Email", "FullName", "HouseNumber", "BirthDate", "FirstName", "Initials", "LastName", "Locality", "NationalIdNumber", "PhoneNumber", "Street", "ZipCode"
+	};
+	static final int CUSTOMER_CO_ADDRESS = 0;
+	static final int CUSTOMER_COMPANY_VAT_NUMBER = 1;
+	static final int CUSTOMER_CUSTOMER_TYPE = 2;
+	static final int CUSTOMER_EMAIL = 3;
+	static final int CUSTOMER_FULL_NAME = 4;
+	static final int CUSTOMER_HOUSE_NUMBER = 5;
+	static final int CUSTOMER_BIRTH_DATE = 6;
+	static final int CUSTOMER_FIRST_NAME = 7;
+	static final int CUSTOMER_INITIALS = 8;
+	static final int CUSTOMER_LAST_NAME = 9;
+	static final int CUSTOMER_LOCALITY = 10;
+	static final int CUSTOMER_NATIONAL_ID_NUMBER = 11;
+	static final int CUSTOMER_PHONE_NUMBER = 12;
+	static final int CUSTOMER_STREET = 13;
+	static final int CUSTOMER_ZIP_CODE = 14;
+
+	/** order row values read from a:NumberedOrderRow, by local name */
+	static final String[] ORDER_ROW_ELEMENTS = {
+		"ArticleNumber", "Description", "DiscountPercent", "NumberOfUnits", "PriceIncludingVat", "PricePerUnit", "Unit", "VatPercent", "CreditInvoiceId", "InvoiceId", "RowNumber", "Status"
+	};
+	static final int ROW_ARTICLE_NUMBER = 0;
+	static final int ROW_DESCRIPTION = 1;
+	static final int ROW_DISCOUNT_PERCENT = 2;
+	static final int ROW_NUMBER_OF_UNITS = 3;
+	static final int ROW_PRICE_INCLUDING_VAT = 4;
+	static final int ROW_PRICE_PER_UNIT = 5;
+	static final int ROW_UNIT = 6;
+	static final int ROW_VAT_PERCENT = 7;
+	static final int ROW_CREDIT_INVOICE_ID = 8;
+	static final int ROW_INVOICE_ID = 9;
+	static final int ROW_ROW_NUMBER = 10;
+	static final int ROW_STATUS = 11;
+
+	/** customer and order row values of a response read by GetOrdersResponseReader, made into customer and numberedOrderRows on first access */
+	private String[] customerValues;
+	private List<String[]> orderRowValues;
+
 	public String getClientOrderId() {
 		return clientOrderId;
 	}
@@ -95,11 +165,16 @@ public class GetOrdersResponse extends AdminServiceResponse {
 	public void setCreatedDate(String createdDate) {
 		this.createdDate = createdDate;
 	}	
-	private CustomerIdentity getCustomer() {
+	private synchronized CustomerIdentity getCustomer() {
+		if( customerValues != null ) {
+			this.customer = createCustomer(customerValues);
+			this.customerValues = null;
+		}
 		return customer;
 	}	
-	public void setCustomer( CustomerIdentity customer ) {
+	public synchronized void setCustomer( CustomerIdentity customer ) {
 		this.customer = customer;
+		this.customerValues = null;
 	}	
 	public IndividualCustomer getIndividualCustomer() {
 		return (IndividualCustomer) getCustomer();
@@ -181,11 +256,20 @@ public class GetOrdersResponse extends AdminServiceResponse {
 	public void setCreditReportStatusCreationDate(String creditReportStatusCreationDate) {
 		this.creditReportStatusCreationDate = creditReportStatusCreationDate;
 	}
-	public ArrayList<NumberedOrderRowBuilder> getNumberedOrderRows() {
+	public synchronized ArrayList<NumberedOrderRowBuilder> getNumberedOrderRows() {
+		if( orderRowValues != null ) {
+			ArrayList<NumberedOrderRowBuilder> rows = new ArrayList<NumberedOrderRowBuilder>(orderRowValues.size());
+			for( String[] rowValues : orderRowValues ) {
+				rows.add( createNumberedOrderRow(rowValues) );
+			}
+			this.numberedOrderRows = rows;
+			this.orderRowValues = null;
+		}
 		return this.numberedOrderRows;
 	}	
-	public void setNumberedOrderRows( ArrayList<NumberedOrderRowBuilder> numberedOrderRows) {
+	public synchronized void setNumberedOrderRows( ArrayList<NumberedOrderRowBuilder> numberedOrderRows) {
 		this.numberedOrderRows = numberedOrderRows;
+		this.orderRowValues = null;
 	}
 	public Boolean getIsPossibleToCancel() {
 		return isPossibleToCancel;
@@ -214,47 +298,231 @@ public class GetOrdersResponse extends AdminServiceResponse {
     	}
     }
     
+    /**
+     * Result for a single order of a multi-order GetOrders response
+     */
+    protected GetOrdersResponse(Element order) {
+    	super();
+    	this.setResultCode("0");
+    	this.setOrderAccepted(true);
+    	this.setErrorMessage("");
+    	setOrderAttributes(order);
+    }
+
+    /**
+     * Result read by GetOrdersResponseReader, the order attributes are set by the reader
+     */
+    GetOrdersResponse(String resultCode, String errorMessage) {
+    	super();
+    	this.setResultCode(resultCode);
+    	this.setOrderAccepted("0".equals(resultCode));
+    	this.setErrorMessage(errorMessage);
+    }
+
+    /**
+     * Result for an order that could not be retrieved, with the reason given in resultCode and errorMessage
+     */
+    protected GetOrdersResponse(Long orderId, String resultCode, String errorMessage) {
+    	super();
+    	this.setResultCode(resultCode);
+    	this.setOrderAccepted(false);
+    	this.setErrorMessage(errorMessage);
+    	this.setOrderId(orderId);
+    }
+
+    /**
+     * Parses a GetOrders response holding any number of orders into one GetOrdersResponse per requested order id, in the 
+     * order they were requested. If the request failed as a whole, all orders get the request ResultCode and ErrorMessage.
+     * Orders missing from an otherwise successful response get a null ResultCode and an explanatory ErrorMessage.
+     * 
+     * @param xmlResponse -- all elements in the response body, as passed to GetOrdersResponse(NodeList)
+     * @param orderIds -- the requested order ids 
+     */
+    public static List<GetOrdersResponse> getOrdersResponses(NodeList xmlResponse, List<Long> orderIds) {
+    	List<GetOrdersResponse> responses = new ArrayList<GetOrdersResponse>(orderIds.size());
+    	
+    	AdminServiceResponse result = new AdminServiceResponse(xmlResponse);
+    	if( !result.isOrderAccepted() ) {
+    		return getFailedResponses(orderIds, result.getResultCode(), result.getErrorMessage());
+    	}
+    	
+    	Map<Long,Element> ordersById = new HashMap<Long,Element>();
+		Node orders = ((Element) xmlResponse.item(0)).getElementsByTagName("a:Orders").item(0);
+		if( orders != null ) {
+			NodeList children = orders.getChildNodes();
+			for( int i=0; i < children.getLength(); i++ ) {
+				if( children.item(i).getNodeType() != Node.ELEMENT_NODE ) {
+					continue;
+				}
+				Element o = (Element) children.item(i);
+				Node sveaOrderId = o.getElementsByTagName("a:SveaOrderId").item(0);
+				if( sveaOrderId != null ) {
+					ordersById.put( Long.valueOf(sveaOrderId.getTextContent()), o );
+				}
+			}
+		}
+		
+    	for( Long orderId : orderIds ) {
+    		Element o = ordersById.get(orderId);
+    		if( o == null ) {
+    			responses.add( new GetOrdersResponse(orderId, null, "Order " + orderId + " was not returned by GetOrders.") );
+    			continue;
+    		}
+    		try {
+    			responses.add( new GetOrdersResponse(o) );
+    		}
+    		catch( RuntimeException e ) {
+    			responses.add( new GetOrdersResponse(orderId, null, "Order " + orderId + " could not be parsed: " + e.toString()) );
+    		}
+    	}
+    	return responses;
+    }
+    
+    /**
+     * @return one not accepted GetOrdersResponse per order id, all with the given resultCode and errorMessage
+     */
+    public static List<GetOrdersResponse> getFailedResponses(List<Long> orderIds, String resultCode, String errorMessage) {
+    	List<GetOrdersResponse> responses = new ArrayList<GetOrdersResponse>(orderIds.size());
+		for( Long orderId : orderIds ) {
+			responses.add( new GetOrdersResponse(orderId, resultCode, errorMessage) );
+		}
+		return responses;
+    }
+    
 	private void setGetOrdersResponseAttributes(NodeList xmlResponse) {
     	Node getOrdersResponse=xmlResponse.item(0);
 		Node getOrdersResult=xmlResponse.item(1);
 		Node orders = getOrdersResult.getChildNodes().item(2);
 		Element o = (Element) orders.getChildNodes().item(0);
-		String changedDate = o.getElementsByTagName("a:ChangedDate").item(0).getTextContent(); // getTextContent() of <a:ChangedDate i:nil="true" /> is ""
-		this.setChangeDate( changedDate.equals("") ? null : changedDate );
-		String clientId = o.getElementsByTagName("a:ClientId").item(0).getTextContent();
-		this.setClientId( clientId.equals("") ? null : Long.valueOf(clientId) );
-		String clientOrderId = o.getElementsByTagName("a:ClientOrderId").item(0).getTextContent();
-		this.setClientOrderId( clientOrderId) ;
-		String createdDate = o.getElementsByTagName("a:CreatedDate").item(0).getTextContent();
-		this.setCreatedDate(createdDate);
-		Node creditReportStatus = o.getElementsByTagName("a:CreditReportStatus").item(0);
-		Boolean creditReportStatusAccepted = Boolean.parseBoolean((creditReportStatus.getChildNodes().item(0).getTextContent())); 
-		this.setCreditReportStatusAccepted(creditReportStatusAccepted);		
-		this.setCreditReportStatusCreationDate(creditReportStatus.getChildNodes().item(1).getTextContent());			
-		String currency = o.getElementsByTagName("a:Currency").item(0).getTextContent();
-		this.setCurrency(currency);		
-		
+		setOrderAttributes(o);
+	}
+	
+	private void setOrderAttributes(Element o) {
+		String[] orderValues = new String[ORDER_ELEMENTS.length];
+		for( int i = 0; i < ORDER_ELEMENTS.length; i++ ) {
+			if( ORDER_ELEMENTS[i].indexOf('/') < 0 ) {
+				orderValues[i] = o.getElementsByTagName("a:" + ORDER_ELEMENTS[i]).item(0).getTextContent(); // getTextContent() of <a:ChangedDate i:nil="true" /> is ""
+			}
+		}
+		Element creditReportStatus = (Element) o.getElementsByTagName("a:CreditReportStatus").item(0);
+		orderValues[ORDER_CREDIT_REPORT_STATUS_ACCEPTED] = creditReportStatus.getElementsByTagName("a:Accepted").item(0).getTextContent();
+		orderValues[ORDER_CREDIT_REPORT_STATUS_CREATION_DATE] = creditReportStatus.getElementsByTagName("a:CreationDate").item(0).getTextContent();
+		Element ppd = (Element) o.getElementsByTagName("a:PaymentPlanDetails").item(0);		
+		if( ppd.getChildNodes().getLength() > 0 ) {
+			// NOT SUPPORTED     <a:CampaignCode>213060</a:CampaignCode>
+			orderValues[ORDER_CONTRACT_LENGTH_MONTHS] = ppd.getElementsByTagName("a:ContractLengthMonths").item(0).getTextContent();
+			orderValues[ORDER_CONTRACT_NUMBER] = ppd.getElementsByTagName("a:ContractNumber").item(0).getTextContent();
+		}
+		Element pr = (Element) o.getElementsByTagName("a:PendingReasons").item(0);
+		if( pr.getChildNodes().getLength() > 0 ) {
+			orderValues[ORDER_PENDING_TYPE] = pr.getElementsByTagName("a:PendingType").item(0).getTextContent();
+			orderValues[ORDER_PENDING_CREATED_DATE] = pr.getElementsByTagName("a:CreatedDate").item(0).getTextContent();
+		}
+		setOrderValues(orderValues);
+
 		Element c = (Element) o.getElementsByTagName("a:Customer").item(0);
-		String cCoAddress = c.getElementsByTagName("b:CoAddress").item(0).getTextContent();
-		String cCompanyIdentity = c.getElementsByTagName("b:CompanyIdentity").item(0).getTextContent();
 		// NOT IN USE					<b:CompanyIdentification i:nil="true"/>
-		String ciCompanyVatNumber = cCompanyIdentity.equals("") ? null : c.getElementsByTagName("b:CompanyVatNumber").item(0).getTextContent();
-		String cCountryCode = c.getElementsByTagName("b:CountryCode").item(0).getTextContent();
-		String cCustomerType = c.getElementsByTagName("b:CustomerType").item(0).getTextContent();
-		String cEmail = c.getElementsByTagName("b:Email").item(0).getTextContent();
-		String cFullName = c.getElementsByTagName("b:FullName").item(0).getTextContent();
-		String cHouseNumber = c.getElementsByTagName("b:HouseNumber").item(0).getTextContent().equals("") ? null : c.getElementsByTagName("b:HouseNumber").item(0).getTextContent();
-		String cIndividualIdentity = c.getElementsByTagName("b:IndividualIdentity").item(0).getTextContent();
-		String iiBirthDate = cIndividualIdentity.equals("") ? null : c.getElementsByTagName("b:BirthDate").item(0).getTextContent();
-		String iiFirstName = cIndividualIdentity.equals("") ? null : c.getElementsByTagName("b:FirstName").item(0).getTextContent();
-		String iiInitials = cIndividualIdentity.equals("") ? null : c.getElementsByTagName("b:Initials").item(0).getTextContent();
-		String iiLastName = cIndividualIdentity.equals("") ? null : c.getElementsByTagName("b:LastName").item(0).getTextContent();
-		String cLocality = c.getElementsByTagName("b:Locality").item(0).getTextContent();
-		String cNationalIdNumber = c.getElementsByTagName("b:NationalIdNumber").item(0).getTextContent();
-		String cPhoneNumber = c.getElementsByTagName("b:PhoneNumber").item(0).getTextContent();
 		// NOT SUPPORTED			<b:PublicKey i:nil="true" />
-		String cStreet = c.getElementsByTagName("b:Street").item(0).getTextContent();
-		String cZipCode = c.getElementsByTagName("b:ZipCode").item(0).getTextContent();
+		String cCompanyIdentity = c.getElementsByTagName("b:CompanyIdentity").item(0).getTextContent();
+		String cIndividualIdentity = c.getElementsByTagName("b:IndividualIdentity").item(0).getTextContent();
+		String[] customerValues = new String[CUSTOMER_ELEMENTS.length];
+		for( int i = 0; i < CUSTOMER_ELEMENTS.length; i++ ) {
+			boolean isCompanyIdentityValue = (i == CUSTOMER_COMPANY_VAT_NUMBER);
+			boolean isIndividualIdentityValue = (i >= CUSTOMER_BIRTH_DATE && i <= CUSTOMER_LAST_NAME);
+			if( (isCompanyIdentityValue && cCompanyIdentity.equals("")) || (isIndividualIdentityValue && cIndividualIdentity.equals("")) ) {
+				continue;
+			}
+			customerValues[i] = c.getElementsByTagName("b:" + CUSTOMER_ELEMENTS[i]).item(0).getTextContent();
+		}
+		this.setCustomer( createCustomer(customerValues) );
+
+		// all order rows
+		NodeList orderRows = o.getElementsByTagName("a:NumberedOrderRow");
+		ArrayList<NumberedOrderRowBuilder> numberedOrderRows = new ArrayList<NumberedOrderRowBuilder>(orderRows.getLength());
+		for( int i=0; i < orderRows.getLength(); i++ ) {
+			Element row = (Element) orderRows.item(i);	
+			String[] rowValues = new String[ORDER_ROW_ELEMENTS.length];
+			for( int j = 0; j < ORDER_ROW_ELEMENTS.length; j++ ) {
+				rowValues[j] = row.getElementsByTagNameNS("*", ORDER_ROW_ELEMENTS[j]).item(0).getTextContent();	// ArticleNumber et al. are unprefixed, CreditInvoiceId et al. are a:
+			}
+			numberedOrderRows.add( createNumberedOrderRow(rowValues) );
+		}
+		this.setNumberedOrderRows( numberedOrderRows );
+	}
+
+	/**
+	 * Sets the order attributes from the order element values, indexed as ORDER_ELEMENTS. Values are "" for empty
+	 * elements, i.e. <a:Notes i:nil="true" />, and null for elements not present.
+	 */
+	void setOrderValues( String[] v ) {
+		String changedDate = v[ORDER_CHANGED_DATE];
+		this.setChangeDate( isEmpty(changedDate) ? null : changedDate );
+		String clientId = v[ORDER_CLIENT_ID];
+		this.setClientId( isEmpty(clientId) ? null : Long.valueOf(clientId) );
+		this.setClientOrderId( v[ORDER_CLIENT_ORDER_ID] );
+		this.setCreatedDate( v[ORDER_CREATED_DATE] );
+		this.setCreditReportStatusAccepted( Boolean.parseBoolean(v[ORDER_CREDIT_REPORT_STATUS_ACCEPTED]) );
+		this.setCreditReportStatusCreationDate( v[ORDER_CREDIT_REPORT_STATUS_CREATION_DATE] );
+		this.setCurrency( v[ORDER_CURRENCY] );
+		this.setCustomerId( Long.valueOf(v[ORDER_CUSTOMER_ID]) );
+		String customerReference = v[ORDER_CUSTOMER_REFERENCE];
+		this.setCustomerReference( isEmpty(customerReference) ? null : customerReference );
+		//NOT SUPPORTED			<a:DeliveryAddress i:nil="true" xmlns:b="http://schemas.datacontract.org/2004/07/DataObjects.Webservice" />
+		this.setIsPossibleToAdminister( "true".equals(v[ORDER_IS_POSSIBLE_TO_ADMINISTER]) );
+		this.setIsPossibleToCancel( "true".equals(v[ORDER_IS_POSSIBLE_TO_CANCEL]) );
+		String notes = v[ORDER_NOTES];
+		this.setNotes( isEmpty(notes) ? null : notes );
+		this.setOrderDeliveryStatus( ORDERDELIVERYSTATUS.fromString(v[ORDER_ORDER_DELIVERY_STATUS]) );
+		this.setOrderStatus( ORDERSTATUS.fromString(v[ORDER_ORDER_STATUS]) );
+		this.setOrderType( ORDERTYPE.fromString(v[ORDER_ORDER_TYPE]) );
+		String contractLengthMonths = v[ORDER_CONTRACT_LENGTH_MONTHS];
+		this.setPaymentPlanDetailsContractLengthMonths( isEmpty(contractLengthMonths) ? null : Integer.valueOf(contractLengthMonths) );
+		String contractNumber = v[ORDER_CONTRACT_NUMBER];
+		this.setPaymentPlanDetailsContractNumber( isEmpty(contractNumber) ? null : Long.valueOf(contractNumber) );
+		String pendingType = v[ORDER_PENDING_TYPE];
+		this.setPendingReasonsPendingType( isEmpty(pendingType) ? null : PENDINGTYPE.fromString(pendingType) );
+		String pendingCreatedDate = v[ORDER_PENDING_CREATED_DATE];
+		this.setPendingReasonsCreatedDate( isEmpty(pendingCreatedDate) ? null : pendingCreatedDate );
+		this.setOrderId( Long.valueOf(v[ORDER_SVEA_ORDER_ID]) );
+		this.setSveaWillBuy( "true".equals(v[ORDER_SVEA_WILL_BUY]) );
+	}
+
+	/**
+	 * Keeps the customer values, indexed as CUSTOMER_ELEMENTS, to be made into the customer on first access.
+	 */
+	synchronized void setCustomerValues( String[] customerValues ) {
+		this.customer = null;
+		this.customerValues = customerValues;
+	}
+
+	/**
+	 * Keeps the order row values, indexed as ORDER_ROW_ELEMENTS, to be made into numbered order rows on first access.
+	 */
+	synchronized void setOrderRowValues( List<String[]> orderRowValues ) {
+		this.numberedOrderRows = null;
+		this.orderRowValues = orderRowValues;
+	}
+
+	/**
+	 * @param c -- the customer values, indexed as CUSTOMER_ELEMENTS, where identity values are null if the identity is empty
+	 * @return the IndividualCustomer or CompanyCustomer, or null if the customer type is not known
+	 */
+	static CustomerIdentity<?> createCustomer( String[] c ) {
+		String cCoAddress = c[CUSTOMER_CO_ADDRESS];
+		String ciCompanyVatNumber = c[CUSTOMER_COMPANY_VAT_NUMBER];
+		String cCustomerType = c[CUSTOMER_CUSTOMER_TYPE];
+		String cEmail = c[CUSTOMER_EMAIL];
+		String cFullName = c[CUSTOMER_FULL_NAME];
+		String cHouseNumber = isEmpty(c[CUSTOMER_HOUSE_NUMBER]) ? null : c[CUSTOMER_HOUSE_NUMBER];
+		String iiBirthDate = c[CUSTOMER_BIRTH_DATE];
+		String iiFirstName = c[CUSTOMER_FIRST_NAME];
+		String iiInitials = c[CUSTOMER_INITIALS];
+		String iiLastName = c[CUSTOMER_LAST_NAME];
+		String cLocality = c[CUSTOMER_LOCALITY];
+		String cNationalIdNumber = c[CUSTOMER_NATIONAL_ID_NUMBER];
+		String cPhoneNumber = c[CUSTOMER_PHONE_NUMBER];
+		String cStreet = c[CUSTOMER_STREET];
+		String cZipCode = c[CUSTOMER_ZIP_CODE];
 
 		if( cCustomerType.endsWith("Individual") ) {
 			
@@ -312,7 +580,7 @@ public class GetOrdersResponse extends AdminServiceResponse {
 			individualCustomer.setInitials( iiInitials );
 			individualCustomer.setName( cFullName ); // FullName
 
-			this.setCustomer(individualCustomer);
+			return individualCustomer;
 		}
 		
 		if( cCustomerType.endsWith("Company") ) {
@@ -367,89 +635,55 @@ public class GetOrdersResponse extends AdminServiceResponse {
 			companyCustomer.setAddressSelector( null );
 			
 			
-			this.setCustomer(companyCustomer);
+			return companyCustomer;
 		}		
-		String customerId = o.getElementsByTagName("a:CustomerId").item(0).getTextContent();
-		this.setCustomerId( Long.valueOf(customerId) );
-		String customerReference = o.getElementsByTagName("a:CustomerReference").item(0).getTextContent();
-		this.setCustomerReference(customerReference.equals("") ? null : customerReference);	
-		//NOT SUPPORTED			<a:DeliveryAddress i:nil="true" xmlns:b="http://schemas.datacontract.org/2004/07/DataObjects.Webservice" />
-		String isPossibleToAdminister = o.getElementsByTagName("a:IsPossibleToAdminister").item(0).getTextContent();	
-		this.setIsPossibleToAdminister(isPossibleToAdminister.equals("true") ? true : false);
-		String isPossibleToCancel = o.getElementsByTagName("a:IsPossibleToCancel").item(0).getTextContent();	
-		this.setIsPossibleToCancel(isPossibleToCancel.equals("true") ? true : false);
-		String notes = o.getElementsByTagName("a:Notes").item(0).getTextContent();	
-		this.setNotes(notes.equals("") ? null : notes); // for <a:Notes i:nil="true" /> getTextContent() returns ""
-		String cOrderDeliveryStatus = o.getElementsByTagName("a:OrderDeliveryStatus").item(0).getTextContent();	
-		this.setOrderDeliveryStatus(ORDERDELIVERYSTATUS.fromString(cOrderDeliveryStatus));
+		return null;
+	}
 
-		// all order rows
-		ArrayList<NumberedOrderRowBuilder> numberedOrderRows = new ArrayList<NumberedOrderRowBuilder>();
-		NodeList orderRows = o.getElementsByTagName("a:NumberedOrderRow");
-		for( int i=0; i < orderRows.getLength(); i++ ) {
-			Element row = (Element) orderRows.item(i);	
-			String rArticleNumber = row.getElementsByTagName("ArticleNumber").item(0).getTextContent();
-			String rDescription = row.getElementsByTagName("Description").item(0).getTextContent();
-			String rDiscountPercent = row.getElementsByTagName("DiscountPercent").item(0).getTextContent();
-			String rNumberOfUnits = row.getElementsByTagName("NumberOfUnits").item(0).getTextContent();
-			String rPriceIncludingVat = row.getElementsByTagName("PriceIncludingVat").item(0).getTextContent();
-			String rPricePerUnit = row.getElementsByTagName("PricePerUnit").item(0).getTextContent();
-			String rUnit = row.getElementsByTagName("Unit").item(0).getTextContent();
-			String rVatPercent = row.getElementsByTagName("VatPercent").item(0).getTextContent();
-			String rCreditInvoiceId = row.getElementsByTagName("a:CreditInvoiceId").item(0).getTextContent();
-			String rInvoiceId = row.getElementsByTagName("a:InvoiceId").item(0).getTextContent();
-			String rRowNumber = row.getElementsByTagName("a:RowNumber").item(0).getTextContent();
-			String rStatus = row.getElementsByTagName("a:Status").item(0).getTextContent();	
-			
-			NumberedOrderRowBuilder numberedOrderRow = new NumberedOrderRowBuilder();
-			numberedOrderRow.setArticleNumber(rArticleNumber.equals("") ? null : rArticleNumber);
-			numberedOrderRow.setDescription(rDescription);
-			numberedOrderRow.setDiscountPercent(Double.valueOf(rDiscountPercent));
-			numberedOrderRow.setQuantity(Double.valueOf(rNumberOfUnits));
-			if( rPriceIncludingVat.equals("true") ) {
-				numberedOrderRow.setAmountIncVat(Double.valueOf(rPricePerUnit));
-				numberedOrderRow.setAmountExVat( Double.NaN );
-			}
-			if( rPriceIncludingVat.equals("false") ) {
-				numberedOrderRow.setAmountIncVat(Double.NaN);
-				numberedOrderRow.setAmountExVat(Double.valueOf(rPricePerUnit));
-			}
-			numberedOrderRow.setUnit(rUnit.equals("") ? null : rUnit);
-			numberedOrderRow.setVatPercent(Double.valueOf(rVatPercent));
-			numberedOrderRow.setCreditInvoiceId(rCreditInvoiceId.equals("") ? null : Long.valueOf(rCreditInvoiceId));
-			numberedOrderRow.setInvoiceId(rInvoiceId.equals("") ? null : Long.valueOf(rInvoiceId));
-			numberedOrderRow.setRowNumber(Integer.valueOf(rRowNumber));
-			try {
-				numberedOrderRow.setStatus( ORDERROWSTATUS.fromString(rStatus) );
-			} catch (Exception e) {
-				//ignore unknown status
-			}
-			
-			numberedOrderRows.add(numberedOrderRow);
+	/**
+	 * @param r -- the a:NumberedOrderRow values, indexed as ORDER_ROW_ELEMENTS
+	 */
+	static NumberedOrderRowBuilder createNumberedOrderRow( String[] r ) {
+		String rArticleNumber = r[ROW_ARTICLE_NUMBER];
+		String rDescription = r[ROW_DESCRIPTION];
+		String rDiscountPercent = r[ROW_DISCOUNT_PERCENT];
+		String rNumberOfUnits = r[ROW_NUMBER_OF_UNITS];
+		String rPriceIncludingVat = r[ROW_PRICE_INCLUDING_VAT];
+		String rPricePerUnit = r[ROW_PRICE_PER_UNIT];
+		String rUnit = r[ROW_UNIT];
+		String rVatPercent = r[ROW_VAT_PERCENT];
+		String rCreditInvoiceId = r[ROW_CREDIT_INVOICE_ID];
+		String rInvoiceId = r[ROW_INVOICE_ID];
+		String rRowNumber = r[ROW_ROW_NUMBER];
+		String rStatus = r[ROW_STATUS];	
+
+		NumberedOrderRowBuilder numberedOrderRow = new NumberedOrderRowBuilder();
+		numberedOrderRow.setArticleNumber(rArticleNumber.equals("") ? null : rArticleNumber);
+		numberedOrderRow.setDescription(rDescription);
+		numberedOrderRow.setDiscountPercent(Double.valueOf(rDiscountPercent));
+		numberedOrderRow.setQuantity(Double.valueOf(rNumberOfUnits));
+		if( rPriceIncludingVat.equals("true") ) {
+			numberedOrderRow.setAmountIncVat(Double.valueOf(rPricePerUnit));
+			numberedOrderRow.setAmountExVat( Double.NaN );
 		}
-		this.setNumberedOrderRows( numberedOrderRows );
-		String orderStatus = o.getElementsByTagName("a:OrderStatus").item(0).getTextContent();
-		this.setOrderStatus(ORDERSTATUS.fromString(orderStatus));	
-		String orderType = o.getElementsByTagName("a:OrderType").item(0).getTextContent();
-		this.setOrderType( ORDERTYPE.fromString(orderType) );
-		Element ppd = (Element) o.getElementsByTagName("a:PaymentPlanDetails").item(0);		
-		if( ppd.getChildNodes().getLength() > 0 ) {
-			// NOT SUPPORTED     <a:CampaignCode>213060</a:CampaignCode>
-			String ppdPaymentPlanDetailsContractLengthMonths = ppd.getElementsByTagName("a:ContractLengthMonths").item(0).getTextContent();
-			this.setPaymentPlanDetailsContractLengthMonths(ppdPaymentPlanDetailsContractLengthMonths.equals("") ? null : Integer.valueOf(ppdPaymentPlanDetailsContractLengthMonths));
-			String ppdPaymentPlanDetailsContractNumber = ppd.getElementsByTagName("a:ContractNumber").item(0).getTextContent();
-			this.setPaymentPlanDetailsContractNumber(ppdPaymentPlanDetailsContractNumber.equals("") ? null : Long.valueOf(ppdPaymentPlanDetailsContractNumber));
+		if( rPriceIncludingVat.equals("false") ) {
+			numberedOrderRow.setAmountIncVat(Double.NaN);
+			numberedOrderRow.setAmountExVat(Double.valueOf(rPricePerUnit));
 		}
-		Element pr = (Element) o.getElementsByTagName("a:PendingReasons").item(0);
-		if( pr.getChildNodes().getLength() > 0 ) {
-			String prPendingReasonsPendingType = pr.getElementsByTagName("a:PendingType").item(0).getTextContent();
-			this.setPendingReasonsPendingType(prPendingReasonsPendingType.equals("") ? null : PENDINGTYPE.fromString(prPendingReasonsPendingType));
-			String prPendingReasonsCreatedDate = pr.getElementsByTagName("a:CreatedDate").item(0).getTextContent();
-			this.setPendingReasonsCreatedDate(prPendingReasonsCreatedDate.equals("") ? null : prPendingReasonsCreatedDate);
+		numberedOrderRow.setUnit(rUnit.equals("") ? null : rUnit);
+		numberedOrderRow.setVatPercent(Double.valueOf(rVatPercent));
+		numberedOrderRow.setCreditInvoiceId(rCreditInvoiceId.equals("") ? null : Long.valueOf(rCreditInvoiceId));
+		numberedOrderRow.setInvoiceId(rInvoiceId.equals("") ? null : Long.valueOf(rInvoiceId));
+		numberedOrderRow.setRowNumber(Integer.valueOf(rRowNumber));
+		try {
+			numberedOrderRow.setStatus( ORDERROWSTATUS.fromString(rStatus) );
+		} catch (Exception e) {
+			//ignore unknown status
 		}
-		String orderId = o.getElementsByTagName("a:SveaOrderId").item(0).getTextContent();
-		this.setOrderId( Long.valueOf(orderId) );
-		String sveaWillBuy = o.getElementsByTagName("a:SveaWillBuy").item(0).getTextContent();	
-		this.setSveaWillBuy(sveaWillBuy.equals("true") ? true : false);
+		return numberedOrderRow;
+	}
+
+	private static boolean isEmpty( String value ) {
+		return value == null || value.equals("");
 	}
 }
@@ -0,0 +1,298 @@
+package se.sveaekonomi.webpay.integration.response.adminservice;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
+
+/**
+ * Reads a GetOrders response body in a single StAX pass, without building a SOAPMessage or DOM.
+ *
+ * The order attributes are set as the response is read, while the customer and numbered order row values are kept as
+ * strings and made into the CustomerIdentity and NumberedOrderRowBuilder objects on first access, as reconciliation
+ * typically only needs the order status, delivery status and amounts. The resulting GetOrdersResponse objects hold the
+ * same values as those parsed by GetOrdersResponse(NodeList) and GetOrdersResponse.getOrdersResponses(NodeList, List).
+ */
+public final class GetOrdersResponseReader {
+
+	private static final Map<String,Integer> orderIndex = new HashMap<String,Integer>();
+	private static final Map<String,Map<String,Integer>> orderSectionIndex = new HashMap<String,Map<String,Integer>>();
+	private static final Map<String,Integer> customerIndex = index( GetOrdersResponse.CUSTOMER_ELEMENTS );
+	private static final Map<String,Integer> orderRowIndex = index( GetOrdersResponse.ORDER_ROW_ELEMENTS );
+
+	static {
+		for( int i = 0; i < GetOrdersResponse.ORDER_ELEMENTS.length; i++ ) {
+			String name = GetOrdersResponse.ORDER_ELEMENTS[i];
+			int slash = name.indexOf('/');
+			if( slash < 0 ) {
+				orderIndex.put( name, i );
+				continue;
+			}
+			String section = name.substring(0, slash);
+			if( !orderSectionIndex.containsKey(section) ) {
+				orderSectionIndex.put( section, new HashMap<String,Integer>() );
+			}
+			orderSectionIndex.get(section).put( name.substring(slash + 1), i );
+		}
+	}
+
+	private static final String CUSTOMER = "Customer";
+	private static final String ORDER_ROWS = "OrderRows";
+	private static final String COMPANY_IDENTITY = "CompanyIdentity";
+	private static final String INDIVIDUAL_IDENTITY = "IndividualIdentity";
+
+	private String resultCode;
+	private String errorMessage;
+	private String faultString;
+	private final List<OrderValues> orders = new ArrayList<OrderValues>();
+
+	private GetOrdersResponseReader() {
+	}
+
+	/**
+	 * Reads a GetOrders response as GetOrdersResponse(NodeList), i.e. using the first order of the response.
+	 * @throws SveaWebPayException if the response can not be read, or is a SOAP fault
+	 */
+	public static GetOrdersResponse readResponse( byte[] body ) {
+		GetOrdersResponseReader reader = read(body);
+		GetOrdersResponse response = new GetOrdersResponse( reader.resultCode, reader.errorMessage );
+		if( response.isOrderAccepted() && !reader.orders.isEmpty() ) {
+			reader.orders.get(0).setTo(response);
+		}
+		return response;
+	}
+
+	/**
+	 * Reads a GetOrders response holding any number of orders as GetOrdersResponse.getOrdersResponses(NodeList, List),
+	 * i.e. into one GetOrdersResponse per requested order id, in the order they were requested.
+	 * @throws SveaWebPayException if the response can not be read, or is a SOAP fault
+	 */
+	public static List<GetOrdersResponse> readResponses( byte[] body, List<Long> orderIds ) {
+		GetOrdersResponseReader reader = read(body);
+		if( !"0".equals(reader.resultCode) ) {
+			return GetOrdersResponse.getFailedResponses(orderIds, reader.resultCode, reader.errorMessage);
+		}
+
+		Map<Long,OrderValues> ordersById = new HashMap<Long,OrderValues>();
+		for( OrderValues order : reader.orders ) {
+			String sveaOrderId = order.values[GetOrdersResponse.ORDER_SVEA_ORDER_ID];
+			if( sveaOrderId != null ) {
+				ordersById.put( Long.valueOf(sveaOrderId), order );
+			}
+		}
+
+		List<GetOrdersResponse> responses = new ArrayList<GetOrdersResponse>(orderIds.size());
+		for( Long orderId : orderIds ) {
+			OrderValues order = ordersById.get(orderId);
+			if( order == null ) {
+				responses.add( new GetOrdersResponse(orderId, null, "Order " + orderId + " was not returned by GetOrders.") );
+				continue;
+			}
+			try {
+				GetOrdersResponse response = new GetOrdersResponse( "0", "" );
+				order.setTo(response);
+				responses.add(response);
+			}
+			catch( RuntimeException e ) {
+				responses.add( new GetOrdersResponse(orderId, null, "Order " + orderId + " could not be parsed: " + e.toString()) );
+			}
+		}
+		return responses;
+	}
+
+	private static GetOrdersResponseReader read( byte[] body ) {
+		GetOrdersResponseReader reader = new GetOrdersResponseReader();
+		try {
+			XMLStreamReader xmlr = XMLValueReader.createStreamReader( new ByteArrayInputStream(body) );
+			try {
+				reader.read(xmlr);
+			}
+			finally {
+				xmlr.close();
+			}
+		}
+		catch( XMLStreamException e ) {
+			throw new SveaWebPayException( "GetOrdersRequest: doRequest parse response failed.", e );
+		}
+		if( reader.resultCode == null ) {
+			throw new SveaWebPayException( "GetOrdersRequest: response holds no ResultCode" + (reader.faultString == null ? "." : ", SOAP fault: " + reader.faultString) );
+		}
+		return reader;
+	}
+
+	private void read( XMLStreamReader xmlr ) throws XMLStreamException {
+		int depth = 0;
+		int ordersDepth = -1;			// depth of the first a:Orders element, while reading it
+		boolean ordersDone = false;
+		OrderValues order = null;
+		String section = null;			// local name of the order child element being read, i.e. Customer
+		String identity = null;			// local name of the customer identity element being read
+		String[] row = null;
+
+		while( xmlr.hasNext() ) {
+			int event = xmlr.next();
+			if( event == XMLStreamConstants.END_ELEMENT ) {
+				if( depth == ordersDepth ) {
+					ordersDepth = -1;
+					ordersDone = true;
+				}
+				else if( order != null ) {
+					int level = depth - ordersDepth - 1;
+					if( level == 0 ) {
+						order.done();
+						orders.add(order);
+						order = null;
+					}
+					else if( level == 1 ) {
+						section = null;
+					}
+					else if( level == 2 ) {
+						identity = null;
+						row = null;
+					}
+				}
+				depth--;
+				continue;
+			}
+			if( event != XMLStreamConstants.START_ELEMENT ) {
+				continue;
+			}
+			depth++;
+			String name = xmlr.getLocalName();
+
+			// leaf elements are read using getElementText(), which moves to the end element, so depth is restored for these
+			if( order == null ) {
+				if( ordersDepth >= 0 && depth == ordersDepth + 1 ) {
+					order = new OrderValues();
+				}
+				else if( ordersDepth < 0 && !ordersDone && name.equals("Orders") ) {
+					ordersDepth = depth;
+				}
+				else if( resultCode == null && name.equals("ResultCode") ) {
+					resultCode = xmlr.getElementText();
+					depth--;
+				}
+				else if( errorMessage == null && name.equals("ErrorMessage") ) {
+					errorMessage = xmlr.getElementText();
+					depth--;
+				}
+				else if( faultString == null && name.equals("faultstring") ) {
+					faultString = xmlr.getElementText();
+					depth--;
+				}
+				continue;
+			}
+
+			int level = depth - ordersDepth - 1;
+			if( level == 1 ) {
+				Integer index = orderIndex.get(name);
+				if( index != null ) {
+					order.values[index] = xmlr.getElementText();
+					depth--;
+				}
+				else {
+					section = name;
+					if( section.equals(CUSTOMER) ) {
+						order.customer = new String[GetOrdersResponse.CUSTOMER_ELEMENTS.length];
+					}
+				}
+			}
+			else if( level == 2 ) {
+				if( ORDER_ROWS.equals(section) ) {
+					row = new String[GetOrdersResponse.ORDER_ROW_ELEMENTS.length];
+					order.rows.add(row);
+				}
+				else if( CUSTOMER.equals(section) ) {
+					Integer index = customerIndex.get(name);
+					if( index != null ) {
+						order.customer[index] = xmlr.getElementText();
+						depth--;
+					}
+					else {
+						identity = name;
+					}
+				}
+				else if( orderSectionIndex.containsKey(section) ) {
+					Integer index = orderSectionIndex.get(section).get(name);
+					if( index != null ) {
+						order.values[index] = xmlr.getElementText();
+						depth--;
+					}
+				}
+			}
+			else if( level == 3 ) {
+				if( row != null ) {
+					Integer index = orderRowIndex.get(name);
+					if( index != null ) {
+						row[index] = xmlr.getElementText();
+						depth--;
+					}
+				}
+				else if( COMPANY_IDENTITY.equals(identity) || INDIVIDUAL_IDENTITY.equals(identity) ) {
+					String value = xmlr.getElementText();
+					depth--;
+					Integer index = customerIndex.get(name);
+					if( index != null ) {
+						order.customer[index] = value;
+					}
+					if( !value.equals("") ) {
+						if( identity.equals(COMPANY_IDENTITY) ) {
+							order.hasCompanyIdentity = true;
+						}
+						else {
+							order.hasIndividualIdentity = true;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static Map<String,Integer> index( String[] names ) {
+		Map<String,Integer> index = new HashMap<String,Integer>();
+		for( int i = 0; i < names.length; i++ ) {
+			index.put( names[i], i );
+		}
+		return index;
+	}
+
+	/** The values read for an order */
+	private static final class OrderValues {
+		private final String[] values = new String[GetOrdersResponse.ORDER_ELEMENTS.length];
+		private String[] customer;
+		private boolean hasCompanyIdentity;
+		private boolean hasIndividualIdentity;
+		private final List<String[]> rows = new ArrayList<String[]>();
+
+		/** identity values are null unless the identity has a value, as GetOrdersResponse(NodeList) */
+		private void done() {
+			if( customer == null ) {
+				return;
+			}
+			if( !hasCompanyIdentity ) {
+				customer[GetOrdersResponse.CUSTOMER_COMPANY_VAT_NUMBER] = null;
+			}
+			if( !hasIndividualIdentity ) {
+				for( int i = GetOrdersResponse.CUSTOMER_BIRTH_DATE; i <= GetOrdersResponse.CUSTOMER_LAST_NAME; i++ ) {
+					customer[i] = null;
+				}
+			}
+		}
+
+		private void setTo( GetOrdersResponse response ) {
+			response.setOrderValues(values);
+			if( customer != null ) {
+				response.setCustomerValues(customer);
+			}
+			response.setOrderRowValues(rows);
+		}
+	}
+}
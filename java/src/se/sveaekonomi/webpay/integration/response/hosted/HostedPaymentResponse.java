@@ -1,26 +1,12 @@
 package se.sveaekonomi.webpay.integration.response.hosted;
 
-import java.io.IOException;
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
 import se.sveaekonomi.webpay.integration.config.SveaConfig;
-import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.response.Response;
 import se.sveaekonomi.webpay.integration.response.ResponseHelper;
 import se.sveaekonomi.webpay.integration.util.constant.CURRENCY;
 import se.sveaekonomi.webpay.integration.util.security.Base64Util;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 /**
  * Handles the asynchronous response from the hosted payment solution 
@@ -75,8 +61,7 @@ public class HostedPaymentResponse extends ResponseHelper implements Response {
     
     
     public boolean validateMac( String message, String expectedMac, String secret ) {
-    	String actualMac = HashUtil.createHash(message + secret, HASHALGORITHM.SHA_512);    	
-    	return actualMac.equals(expectedMac);
+    	return MacUtil.validateMac( message, expectedMac, secret );
     }
     
     public HostedPaymentResponse( String message, String mac, String secret ) {    	
@@ -89,6 +74,11 @@ public class HostedPaymentResponse extends ResponseHelper implements Response {
     	}
     }
     
+    /** Parses a message whose mac has already been validated, used by HostedPaymentResponseVerifier */
+    HostedPaymentResponse( String message ) {
+        this.setValues( message );
+    }
+    
     @Deprecated
     public HostedPaymentResponse(String responseXmlBase64, String secretWord) {
         this.setValues(responseXmlBase64);
@@ -97,46 +87,32 @@ public class HostedPaymentResponse extends ResponseHelper implements Response {
     private void setValues(String xmlBase64) {
         String xml = Base64Util.decodeBase64String(xmlBase64);
         this.setXml(xml);
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        XMLValueReader values = XMLValueReader.parse(xml);
         
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document d1 = builder.parse(new InputSource(new StringReader(xml)));
-            NodeList nodeList = d1.getElementsByTagName("response");
-            int size = nodeList.getLength();
+        if (values.hasElement("response")) {
+            int status = Integer.parseInt(values.getValue("statuscode"));
             
-            for (int i = 0; i < size; i++) {
-                Element element = (Element)nodeList.item(i);
-                int status = Integer.parseInt(getTagValue(element, "statuscode"));
-                
-                if (status == 0) {
-                    this.setOrderAccepted(true);
-                    this.setResultCode("0 (ORDER_ACCEPTED)");
-                } else {
-                    this.setOrderAccepted(false);
-                    setErrorParams(status);
-                }
-                
-                this.transactionId = getTagAttribute(element, "transaction", "id");
-                this.paymentMethod = getTagValue(element, "paymentmethod");
-                this.merchantId = getTagValue(element, "merchantid");
-                this.clientOrderNumber = getTagValue(element, "customerrefno");
-                int minorAmount = Integer.parseInt(getTagValue(element, "amount"));
-                this.amount = minorAmount * 0.01;
-                this.currency = getTagValue(element, "currency");
-                this.setSubscriptionId(getTagValue(element, "subscriptionid"));
-                this.setCardType(getTagValue(element, "cardtype"));
-                this.setMaskedCardNumber(getTagValue(element, "maskedcardno"));
-                this.setExpiryMonth(getTagValue(element, "expirymonth"));
-                this.setExpiryYear(getTagValue(element, "expiryyear"));
-                this.setAuthCode(getTagValue(element, "authcode"));
+            if (status == 0) {
+                this.setOrderAccepted(true);
+                this.setResultCode("0 (ORDER_ACCEPTED)");
+            } else {
+                this.setOrderAccepted(false);
+                setErrorParams(status);
             }
-        } catch (ParserConfigurationException e) {
-            throw new SveaWebPayException("ParserConfigurationException", e);
-        } catch (SAXException e) {
-            throw new SveaWebPayException("SAXException", e);
-        } catch (IOException e) {
-            throw new SveaWebPayException("IOException", e);
+            
+            this.transactionId = values.getAttribute("transaction", "id");
+            this.paymentMethod = values.getValue("paymentmethod");
+            this.merchantId = values.getValue("merchantid");
+            this.clientOrderNumber = values.getValue("customerrefno");
+            int minorAmount = Integer.parseInt(values.getValue("amount"));
+            this.amount = minorAmount * 0.01;
+            this.currency = values.getValue("currency");
+            this.setSubscriptionId(values.getValue("subscriptionid"));
+            this.setCardType(values.getValue("cardtype"));
+            this.setMaskedCardNumber(values.getValue("maskedcardno"));
+            this.setExpiryMonth(values.getValue("expirymonth"));
+            this.setExpiryYear(values.getValue("expiryyear"));
+            this.setAuthCode(values.getValue("authcode"));
         }
     } 
     
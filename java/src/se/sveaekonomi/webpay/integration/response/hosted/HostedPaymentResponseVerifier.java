@@ -0,0 +1,348 @@
+package se.sveaekonomi.webpay.integration.response.hosted;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.Credentials;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+
+/**
+ * Verifies and parses stored hosted service responses in bulk. Use it when many responses that were posted to the
+ * return url or callback url, and saved as is, need to be processed again:
+ *
+ *     HostedPaymentResponseVerifier verifier = new HostedPaymentResponseVerifier(config);
+ *     for( HostedPaymentResponseVerifier.Result result : verifier.verify(storedMessages) ) {
+ *         if( result.getStatus() == HostedPaymentResponseVerifier.STATUS.VERIFIED ) {
+ *             HostedPaymentResponse response = result.getResponse();
+ *             ...
+ *
+ * Each message is verified using the secret word of the merchant id it was sent to, looked up using the hosted
+ * credentials of the ConfigurationProvider for each country. Messages are verified and parsed on a pool of threads,
+ * while the results are returned in the order of the messages. At most maxPending messages are read ahead of the
+ * result being returned, so the messages may be streamed from i.e. a database cursor.
+ */
+public class HostedPaymentResponseVerifier {
+
+	public enum STATUS {
+		/** the mac is valid, and the message has been parsed */
+		VERIFIED,
+		/** the mac is not valid for the message and the secret word of the merchant */
+		BAD_MAC,
+		/** the ConfigurationProvider holds no secret word for the merchant */
+		UNKNOWN_MERCHANT,
+		/** the mac is valid, but the message could not be parsed */
+		FAILED
+	}
+
+	/**
+	 * A stored hosted service response, as posted to the return url or callback url. Subclass to keep i.e. the key
+	 * of the stored response with the message.
+	 */
+	public static class Message {
+		private final String message;
+		private final String mac;
+		private final String merchantId;
+
+		/**
+		 * @param message -- the base64 encoded response message
+		 * @param mac -- the mac posted with the message
+		 * @param merchantId -- the merchant id posted with the message
+		 */
+		public Message( String message, String mac, String merchantId ) {
+			this.message = message;
+			this.mac = mac;
+			this.merchantId = merchantId;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public String getMac() {
+			return mac;
+		}
+
+		public String getMerchantId() {
+			return merchantId;
+		}
+	}
+
+	/** The outcome of verifying a Message */
+	public static class Result {
+		private final Message message;
+		private final STATUS status;
+		private final HostedPaymentResponse response;
+		private final RuntimeException exception;
+
+		private Result( Message message, STATUS status, HostedPaymentResponse response, RuntimeException exception ) {
+			this.message = message;
+			this.status = status;
+			this.response = response;
+			this.exception = exception;
+		}
+
+		public Message getMessage() {
+			return message;
+		}
+
+		public STATUS getStatus() {
+			return status;
+		}
+
+		/** @return the parsed response if the status is VERIFIED, else null */
+		public HostedPaymentResponse getResponse() {
+			return response;
+		}
+
+		/** @return the exception thrown parsing the message if the status is FAILED, else null */
+		public RuntimeException getException() {
+			return exception;
+		}
+	}
+
+	/** Number of messages read ahead per thread by default, enough to keep the threads busy without holding many messages */
+	public static final int DEFAULT_PENDING_PER_THREAD = 16;
+
+	private final ConfigurationProvider config;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int maxPending = -1;
+	private ExecutorService executor;
+	private boolean ownsExecutor;
+
+	// secret words by merchant id, read from the ConfigurationProvider on first use and not modified after
+	private volatile Map<String,List<String>> secretWords;
+
+	public HostedPaymentResponseVerifier( ConfigurationProvider config ) {
+		if( config == null ) {
+			throw new SveaWebPayException("A configuration must be provided. For testing purposes use SveaConfig.GetDefaultConfig()");
+		}
+		this.config = config;
+	}
+
+	/**
+	 * Sets the number of threads used to verify messages, defaults to the number of processors. Use 1 to verify the
+	 * messages on the thread reading the results.
+	 */
+	public synchronized HostedPaymentResponseVerifier setParallelism( int parallelism ) {
+		if( parallelism < 1 ) {
+			throw new SveaWebPayException("Parallelism must be at least 1.");
+		}
+		if( ownsExecutor ) {
+			shutdown();	// resized on next use
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of messages read ahead of the result being returned, defaults to DEFAULT_PENDING_PER_THREAD
+	 * times the parallelism.
+	 */
+	public synchronized HostedPaymentResponseVerifier setMaxPending( int maxPending ) {
+		if( maxPending < 1 ) {
+			throw new SveaWebPayException("Max pending must be at least 1.");
+		}
+		this.maxPending = maxPending;
+		return this;
+	}
+
+	/**
+	 * Verifies messages on the given executor instead of a pool owned by the verifier. The caller owns the executor and
+	 * is responsible for shutting it down.
+	 */
+	public synchronized HostedPaymentResponseVerifier setExecutor( ExecutorService executor ) {
+		shutdown();
+		this.executor = executor;
+		this.ownsExecutor = false;
+		return this;
+	}
+
+	/**
+	 * Stops the threads of the pool owned by the verifier, if any. Idle threads also stop by themselves after a minute.
+	 */
+	public synchronized void shutdown() {
+		if( ownsExecutor && executor != null ) {
+			executor.shutdown();
+		}
+		executor = null;
+		ownsExecutor = false;
+	}
+
+	/**
+	 * Verifies and parses the messages. The messages are read as the results are iterated over, and the results are
+	 * returned in the same order as the messages.
+	 */
+	public Iterable<Result> verify( final Iterable<? extends Message> messages ) {
+		return new Iterable<Result>() {
+			@Override
+			public Iterator<Result> iterator() {
+				return new ResultIterator( messages.iterator() );
+			}
+		};
+	}
+
+	/**
+	 * Verifies and parses a single message on the calling thread.
+	 */
+	public Result verify( Message message ) {
+		List<String> secrets = getSecretWords().get( message.getMerchantId() );
+		if( secrets == null ) {
+			return new Result( message, STATUS.UNKNOWN_MERCHANT, null, null );
+		}
+		for( String secret : secrets ) {
+			if( MacUtil.validateMac(message.getMessage(), message.getMac(), secret) ) {
+				try {
+					return new Result( message, STATUS.VERIFIED, new HostedPaymentResponse(message.getMessage()), null );
+				}
+				catch( RuntimeException e ) {
+					return new Result( message, STATUS.FAILED, null, e );
+				}
+			}
+		}
+		return new Result( message, STATUS.BAD_MAC, null, null );
+	}
+
+	private Map<String,List<String>> getSecretWords() {
+		Map<String,List<String>> current = secretWords;
+		return (current != null) ? current : readSecretWords();
+	}
+
+	private synchronized Map<String,List<String>> readSecretWords() {
+		if( secretWords == null ) {
+			Map<String,List<String>> merchants = new HashMap<String,List<String>>();
+			for( COUNTRYCODE country : COUNTRYCODE.values() ) {
+				Credentials credentials;
+				try {
+					credentials = Credentials.resolve( config, PAYMENTTYPE.HOSTED, country );
+				}
+				catch( RuntimeException e ) {
+					continue;	// no hosted credentials for the country
+				}
+				String merchantId = credentials.getMerchantId();
+				String secret = credentials.getSecretWord();
+				if( merchantId == null || merchantId.equals("") || secret == null || secret.equals("") ) {
+					continue;
+				}
+				List<String> secrets = merchants.get(merchantId);
+				if( secrets == null ) {
+					secrets = new ArrayList<String>(1);
+					merchants.put( merchantId, secrets );
+				}
+				if( !secrets.contains(secret) ) {
+					secrets.add(secret);
+				}
+			}
+			secretWords = merchants;
+		}
+		return secretWords;
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if( executor != null && !ownsExecutor ) {
+			return executor;
+		}
+		if( parallelism == 1 ) {
+			return null;
+		}
+		if( executor == null || executor.isShutdown() ) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				parallelism, parallelism, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					@Override
+					public Thread newThread( Runnable r ) {
+						Thread t = new Thread(r, "sveawebpay-verifier-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}
+			);
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+			ownsExecutor = true;
+		}
+		return executor;
+	}
+
+	private synchronized int getMaxPending() {
+		return (maxPending > 0) ? maxPending : DEFAULT_PENDING_PER_THREAD * parallelism;
+	}
+
+	private final class ResultIterator implements Iterator<Result> {
+		private final Iterator<? extends Message> messages;
+		private final ExecutorService executor;
+		private final int maxPending;
+		private final ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+
+		private ResultIterator( Iterator<? extends Message> messages ) {
+			this.messages = messages;
+			this.executor = getExecutor();
+			this.maxPending = getMaxPending();
+			getSecretWords();	// read before the threads start
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !pending.isEmpty() || messages.hasNext();
+		}
+
+		@Override
+		public Result next() {
+			if( executor == null ) {
+				return verify( messages.next() );
+			}
+			fill();
+			Future<Result> result = pending.poll();
+			if( result == null ) {
+				throw new NoSuchElementException();
+			}
+			fill();	// keep the threads busy while the caller handles the result
+			try {
+				return result.get();
+			}
+			catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new SveaWebPayException( "Interrupted while verifying hosted responses", e );
+			}
+			catch( ExecutionException e ) {
+				throw new SveaWebPayException( "Verifying hosted response failed", e.getCause() );
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void fill() {
+			while( pending.size() < maxPending && messages.hasNext() ) {
+				final Message message = messages.next();
+				pending.add( executor.submit( new Callable<Result>() {
+					@Override
+					public Result call() {
+						return verify(message);
+					}
+				}));
+			}
+		}
+	}
+}
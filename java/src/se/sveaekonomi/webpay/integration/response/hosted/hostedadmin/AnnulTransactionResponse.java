@@ -1,20 +1,7 @@
 package se.sveaekonomi.webpay.integration.response.hosted.hostedadmin;
 
-import java.io.IOException;
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
 import se.sveaekonomi.webpay.integration.Respondable;
-import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 /**
  * Handles annul request response from hosted admin webservice
@@ -56,38 +43,27 @@ public class AnnulTransactionResponse extends HostedAdminResponse implements Res
 
 	void setValues() {		
 				
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document d1 = builder.parse(new InputSource(new StringReader(xml)));
-			NodeList nodeList = d1.getElementsByTagName("response");
-			int size = nodeList.getLength();
+		if (xml == null) {	// bad mac, error params already set
+			return;
+		}
 
-			for (int i = 0; i < size; i++) {
-				Element element = (Element) nodeList.item(i);
+		XMLValueReader values = XMLValueReader.parse(xml);
 
-				int status = Integer.parseInt(getTagValue(element, "statuscode"));
-				if (status == 0) {
-					this.setOrderAccepted(true);
-					this.setResultCode("0 (ORDER_ACCEPTED)");
-				} else {
-					this.setOrderAccepted(false);
-					setErrorParams(status);
-				}
-				
-				if( this.isOrderAccepted() ) {	// don't attempt to parse a bad response
+		if (values.hasElement("response")) {
+			int status = Integer.parseInt(values.getValue("statuscode"));
+			if (status == 0) {
+				this.setOrderAccepted(true);
+				this.setResultCode("0 (ORDER_ACCEPTED)");
+			} else {
+				this.setOrderAccepted(false);
+				setErrorParams(status);
+			}
+			
+			if( this.isOrderAccepted() ) {	// don't attempt to parse a bad response
 
-					this.transactionid = Long.valueOf( getTagAttribute(element, "transaction", "id") );
-					this.clientOrderNumber = getTagValue(element, "customerrefno");
-				}
+				this.transactionid = Long.valueOf( values.getAttribute("transaction", "id") );
+				this.clientOrderNumber = values.getValue("customerrefno");
 			}
-		} catch (ParserConfigurationException e) {
-			throw new SveaWebPayException("ParserConfigurationException", e);
-		} catch (SAXException e) {
-			throw new SveaWebPayException("SAXException", e);
-		} catch (IOException e) {
-			throw new SveaWebPayException("IOException", e);
 		}
 	}
 }
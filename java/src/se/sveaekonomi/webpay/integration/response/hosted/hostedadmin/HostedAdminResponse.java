@@ -4,8 +4,7 @@ import se.sveaekonomi.webpay.integration.config.SveaConfig;
 import se.sveaekonomi.webpay.integration.response.Response;
 import se.sveaekonomi.webpay.integration.response.ResponseHelper;
 import se.sveaekonomi.webpay.integration.util.security.Base64Util;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil;
-import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
 
 /**
  * Handles synchronous responses from hosted admin webservice requests
@@ -56,8 +55,7 @@ public abstract class HostedAdminResponse extends ResponseHelper implements Resp
 	}
 	
     public boolean validateMac( String message, String expectedMac, String secret ) {
-    	String actualMac = HashUtil.createHash(message + secret, HASHALGORITHM.SHA_512);    	
-    	return actualMac.equals(expectedMac);
+    	return MacUtil.validateMac( message, expectedMac, secret );
     }
 	
 	/**
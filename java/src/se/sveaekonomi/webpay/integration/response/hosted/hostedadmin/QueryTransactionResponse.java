@@ -1,22 +1,12 @@
 package se.sveaekonomi.webpay.integration.response.hosted.hostedadmin;
 
-import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import java.util.List;
+import java.util.Map;
 
 import se.sveaekonomi.webpay.integration.Respondable;
-import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.row.NumberedOrderRowBuilder;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 public class QueryTransactionResponse extends HostedAdminResponse implements Respondable {
 																						// see HostedService/query response:
@@ -104,104 +94,93 @@ public class QueryTransactionResponse extends HostedAdminResponse implements Res
 	 */
 	void setValues() {
 
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document d1 = builder.parse(new InputSource(new StringReader(xml)));
-			NodeList nodeList = d1.getElementsByTagName("response");
-			int size = nodeList.getLength();
-
-			for (int i = 0; i < size; i++) {
-				Element element = (Element) nodeList.item(i);
+		if (xml == null) {	// bad mac, error params already set
+			return;
+		}
 
-				int status = Integer.parseInt(getTagValue(element, "statuscode"));
-				if (status == 0) {
-					this.setOrderAccepted(true);
-					this.setResultCode("0 (ORDER_ACCEPTED)");
-				} else {
-					this.setOrderAccepted(false);
-					setErrorParams(status);
-				}
+		XMLValueReader values = XMLValueReader.parse(xml, "orderrows");
 
-				if (this.isOrderAccepted()) { // don't attempt to parse a bad response
+		if (values.hasElement("response")) {
+			int status = Integer.parseInt(values.getValue("statuscode"));
+			if (status == 0) {
+				this.setOrderAccepted(true);
+				this.setResultCode("0 (ORDER_ACCEPTED)");
+			} else {
+				this.setOrderAccepted(false);
+				setErrorParams(status);
+			}
 
-					this.setTransactionId( Long.valueOf( getTagAttribute(element,"transaction", "id")) );
-					this.setClientOrderNumber(getTagValue(element,"customerrefno"));
-					this.setMerchantId(getTagValue(element, "merchantid"));
-					this.setStatus(getTagValue(element, "status"));
-					
-					String strAmount = getTagValue(element, "amount");					
-					this.setAmount(minorAmountToDouble(strAmount));
-					this.setCurrency(getTagValue(element, "currency"));
-					
-					String strVat = getTagValue(element, "vat");
-					this.setVat(minorAmountToDouble(strVat));
+			if (this.isOrderAccepted()) { // don't attempt to parse a bad response
+
+				this.setTransactionId( Long.valueOf( values.getAttribute("transaction", "id")) );
+				this.setClientOrderNumber(values.getValue("customerrefno"));
+				this.setMerchantId(values.getValue("merchantid"));
+				this.setStatus(values.getValue("status"));
+				
+				String strAmount = values.getValue("amount");					
+				this.setAmount(minorAmountToDouble(strAmount));
+				this.setCurrency(values.getValue("currency"));
+				
+				String strVat = values.getValue("vat");
+				this.setVat(minorAmountToDouble(strVat));
+				
+				String strCapturedAmount = values.getValue("capturedamount");
+				this.setCapturedamount(minorAmountToDouble(strCapturedAmount));
+				
+				String strAuthorizedAmount = values.getValue("authorizedamount");
+				this.setAuthorizedamount(minorAmountToDouble(strAuthorizedAmount));
+				this.setCreated(values.getValue("created"));
+				this.setCreditstatus(values.getValue("creditstatus"));
+				
+				String strCreditedAmount = values.getValue("creditedamount");
+				this.setCreditedamount(minorAmountToDouble(strCreditedAmount));
+				this.setMerchantresponsecode(values.getValue("merchantresponsecode"));
+				this.setPaymentMethod(values.getValue("paymentmethod"));
+				this.setCallbackUrl(values.getValue("callbackurl"));
+				this.setCapturedate(values.getValue("capturedate"));
+				this.setSubscriptionId(values.getValue("subscriptionid")==null ? null : Long.valueOf(values.getValue("subscriptionid")));
+				this.setSubscriptiontype(values.getValue("subscriptiontype"));
+				this.setCardType(values.getValue("cardType"));
+				this.setMaskedCardNumber(values.getValue("maskedcardno"));
+				this.setEci(values.getValue("eci"));
+				this.setMdstatus(values.getValue("mdstatus"));
+				this.setExpiryYear(values.getValue("expiryyear"));
+				this.setExpiryMonth(values.getValue("expirymonth"));
+				this.setChname(values.getValue("chname"));
+				this.setAuthCode(values.getValue("authCode"));
+
+				List<Map<String,String>> orderrows = values.getRows();
+				try {
+				for (int r = 0; r < orderrows.size(); r++) {
+					Map<String,String> row = orderrows.get(r);
+					NumberedOrderRowBuilder nrow = new NumberedOrderRowBuilder();
+
+					nrow.setName(row.get("name"));
 					
-					String strCapturedAmount = getTagValue(element, "capturedamount");
-					this.setCapturedamount(minorAmountToDouble(strCapturedAmount));
+					float row_amount = Float.valueOf( row.get("amount") );	// centessimal
+					float row_vat = Float.valueOf( row.get("vat") ); // centessimal
+					float row_amountExVat = (row_amount-row_vat);
+					float row_vatPercent = (row_vat/(row_amountExVat));
 					
-					String strAuthorizedAmount = getTagValue(element, "authorizedamount");
-					this.setAuthorizedamount(minorAmountToDouble(strAuthorizedAmount));
-					this.setCreated(getTagValue(element, "created"));
-					this.setCreditstatus(getTagValue(element, "creditstatus"));
+					nrow.setAmountExVat( row_amountExVat /100f ); 
+					nrow.setVatPercent( row_vatPercent *100f);
+					nrow.setDescription(row.get("description"));
+					nrow.setQuantity( Double.valueOf( row.get("quantity") ) );
+					nrow.setArticleNumber(row.get("sku"));
+					nrow.setUnit(row.get("unit"));
+
+					nrow.setCreditInvoiceId(null);
+					nrow.setInvoiceId(null);
+					nrow.setRowNumber(r+1);
+					nrow.setStatus(null);
 					
-					String strCreditedAmount = getTagValue(element, "creditedamount");
-					this.setCreditedamount(minorAmountToDouble(strCreditedAmount));
-					this.setMerchantresponsecode(getTagValue(element,"merchantresponsecode"));
-					this.setPaymentMethod(getTagValue(element, "paymentmethod"));
-					this.setCallbackUrl(getTagValue(element, "callbackurl"));
-					this.setCapturedate(getTagValue(element, "capturedate"));
-					this.setSubscriptionId(getTagValue(element,"subscriptionid")==null ? null : Long.valueOf(getTagValue(element,"subscriptionid")));
-					this.setSubscriptiontype(getTagValue(element,"subscriptiontype"));
-					this.setCardType(getTagValue(element, "cardType"));
-					this.setMaskedCardNumber(getTagValue(element,"maskedcardno"));
-					this.setEci(getTagValue(element, "eci"));
-					this.setMdstatus(getTagValue(element, "mdstatus"));
-					this.setExpiryYear(getTagValue(element, "expiryyear"));
-					this.setExpiryMonth(getTagValue(element, "expirymonth"));
-					this.setChname(getTagValue(element, "chname"));
-					this.setAuthCode(getTagValue(element, "authCode"));
-
-					NodeList orderrows = getTagNodes(element, "orderrows");
-					try {
-					for (int r = 0; r < orderrows.getLength(); r++) {
-						Element row = (Element) orderrows.item(r);
-						NumberedOrderRowBuilder nrow = new NumberedOrderRowBuilder();
-
-						nrow.setName(getTagValue(row,"name"));
-						
-						float row_amount = Float.valueOf( getTagValue(row,"amount") );	// centessimal
-						float row_vat = Float.valueOf( getTagValue(row,"vat") ); // centessimal
-						float row_amountExVat = (row_amount-row_vat);
-						float row_vatPercent = (row_vat/(row_amountExVat));
-						
-						nrow.setAmountExVat( row_amountExVat /100f ); 
-						nrow.setVatPercent( row_vatPercent *100f);
-						nrow.setDescription(getTagValue(row,"description"));
-						nrow.setQuantity( Double.valueOf( getTagValue(row,"quantity") ) );
-						nrow.setArticleNumber(getTagValue(row,"sku"));
-						nrow.setUnit(getTagValue(row,"unit"));
-
-						nrow.setCreditInvoiceId(null);
-						nrow.setInvoiceId(null);
-						nrow.setRowNumber(r+1);
-						nrow.setStatus(null);
-						
-						this.numberedOrderRows.add(nrow);
-					}
-					}
-					catch ( NullPointerException e ) {
-						// no order rows in queried order
-					}
+					this.numberedOrderRows.add(nrow);
+				}
+				}
+				catch ( NullPointerException e ) {
+					// missing row amount, vat or quantity in queried order
 				}
 			}
-		} catch (ParserConfigurationException e) {
-			throw new SveaWebPayException("ParserConfigurationException", e);
-		} catch (SAXException e) {
-			throw new SveaWebPayException("SAXException", e);
-		} catch (IOException e) {
-			throw new SveaWebPayException("IOException", e);
 		}
 	}
 
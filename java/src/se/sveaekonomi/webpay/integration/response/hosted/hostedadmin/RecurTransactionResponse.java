@@ -1,20 +1,7 @@
 package se.sveaekonomi.webpay.integration.response.hosted.hostedadmin;
 
-import java.io.IOException;
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
 import se.sveaekonomi.webpay.integration.Respondable;
-import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.xml.XMLValueReader;
 
 /**
  * RecurTransactionResponse handles the recur transaction response
@@ -166,7 +153,11 @@ public class RecurTransactionResponse extends HostedAdminResponse implements Res
 
 	void setValues() {		
 				
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		if (xml == null) {	// bad mac, error params already set
+			return;
+		}
+
+		XMLValueReader values = XMLValueReader.parse(xml);
 
 		//<?xml version='1.0' encoding='UTF-8'?>
 		//<response>
@@ -186,45 +177,30 @@ public class RecurTransactionResponse extends HostedAdminResponse implements Res
 		//	<statuscode>0</statuscode>
 		//</response>
 				
-		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document d1 = builder.parse(new InputSource(new StringReader(xml)));
-			NodeList nodeList = d1.getElementsByTagName("response");
-			int size = nodeList.getLength();
-
-			for (int i = 0; i < size; i++) {
-				Element element = (Element) nodeList.item(i);
-
-				int status = Integer.parseInt(getTagValue(element, "statuscode"));
-				if (status == 0) {
-					this.setOrderAccepted(true);
-					this.setResultCode("0 (ORDER_ACCEPTED)");
-				} else {
-					this.setOrderAccepted(false);
-					setErrorParams(status);
-				}
-				
-				if( this.isOrderAccepted() ) {	// don't attempt to parse a bad response
-					this.transactionId = Long.valueOf(getTagAttribute(element, "transaction", "id"));
-					this.clientOrderNumber = getTagValue(element, "customerrefno");
-					this.paymentMethod = getTagValue(element, "paymentmethod");
-					this.merchantId = getTagValue(element, "merchantid");
-					this.amount = Double.valueOf(getTagValue(element, "amount"))/100.00;
-					this.currency = getTagValue(element, "currency");
-					this.cardType = getTagValue(element, "cardtype");
-					this.maskedCardNumber = getTagValue(element, "maskedcardno");
-					this.expiryMonth = getTagValue(element, "expirymonth");
-					this.expiryYear = getTagValue(element, "expiryyear");
-					this.authCode = getTagValue(element, "authcode");
-					this.subscriptionId = Long.valueOf(getTagValue(element, "subscriptionid"));
-				}
+		if (values.hasElement("response")) {
+			int status = Integer.parseInt(values.getValue("statuscode"));
+			if (status == 0) {
+				this.setOrderAccepted(true);
+				this.setResultCode("0 (ORDER_ACCEPTED)");
+			} else {
+				this.setOrderAccepted(false);
+				setErrorParams(status);
+			}
+			
+			if( this.isOrderAccepted() ) {	// don't attempt to parse a bad response
+				this.transactionId = Long.valueOf(values.getAttribute("transaction", "id"));
+				this.clientOrderNumber = values.getValue("customerrefno");
+				this.paymentMethod = values.getValue("paymentmethod");
+				this.merchantId = values.getValue("merchantid");
+				this.amount = Double.valueOf(values.getValue("amount"))/100.00;
+				this.currency = values.getValue("currency");
+				this.cardType = values.getValue("cardtype");
+				this.maskedCardNumber = values.getValue("maskedcardno");
+				this.expiryMonth = values.getValue("expirymonth");
+				this.expiryYear = values.getValue("expiryyear");
+				this.authCode = values.getValue("authcode");
+				this.subscriptionId = Long.valueOf(values.getValue("subscriptionid"));
 			}
-		} catch (ParserConfigurationException e) {
-			throw new SveaWebPayException("ParserConfigurationException", e);
-		} catch (SAXException e) {
-			throw new SveaWebPayException("SAXException", e);
-		} catch (IOException e) {
-			throw new SveaWebPayException("IOException", e);
 		}
 	}
 }
@@ -3,6 +3,8 @@ package se.sveaekonomi.webpay.integration.response.webservice;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import se.sveaekonomi.webpay.integration.response.ElementIndex;
+
 public class CloseOrderResponse extends WebServiceResponse{
     
     public String orderType;
@@ -16,11 +18,11 @@ public class CloseOrderResponse extends WebServiceResponse{
         int size = soapMessage.getLength();
         
         for (int i = 0; i < size; i++) {
-            Element node = (Element) soapMessage.item(i);
+            ElementIndex elements = getElementIndex((Element) soapMessage.item(i));
             // mandatory
-            this.setOrderAccepted(Boolean.parseBoolean(getTagValue(node, "Accepted")));
-            this.setResultCode(getTagValue(node, "ResultCode"));
-            this.setErrorMessage(getTagValue(node, "ErrorMessage"));
+            this.setOrderAccepted(Boolean.parseBoolean(elements.getValue("Accepted")));
+            this.setResultCode(elements.getValue("ResultCode"));
+            this.setErrorMessage(elements.getValue("ErrorMessage"));
         }
     }
 }
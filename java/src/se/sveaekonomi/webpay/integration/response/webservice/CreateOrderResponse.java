@@ -5,12 +5,12 @@ import static org.junit.Assert.assertEquals;
 import java.util.ArrayList;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.order.identity.CompanyCustomer;
 import se.sveaekonomi.webpay.integration.order.identity.CustomerIdentity;
 import se.sveaekonomi.webpay.integration.order.identity.IndividualCustomer;
+import se.sveaekonomi.webpay.integration.response.ElementIndex;
 import se.sveaekonomi.webpay.integration.util.constant.ORDERTYPE;
 
 public class CreateOrderResponse extends WebServiceResponse {
@@ -140,46 +140,33 @@ public class CreateOrderResponse extends WebServiceResponse {
         int size = soapMessage.getLength();
         
         for (int i = 0; i < size; i++) {
-            Element node = (Element) soapMessage.item(i);
+            ElementIndex elements = getElementIndex((Element) soapMessage.item(i));
 
-            this.sveaWillBuyOrder = Boolean.parseBoolean(getTagValue(node, "SveaWillBuyOrder"));
+            this.sveaWillBuyOrder = Boolean.parseBoolean(elements.getValue("SveaWillBuyOrder"));
             
-            this.amount = Double.parseDouble(getTagValue(node, "Amount"));
-            this.orderId = Long.parseLong(getTagValue(node, "SveaOrderId"));
-            this.expirationDate = getTagValue(node, "ExpirationDate");
+            this.amount = Double.parseDouble(elements.getValue("Amount"));
+            this.orderId = Long.parseLong(elements.getValue("SveaOrderId"));
+            this.expirationDate = elements.getValue("ExpirationDate");
             
             // Optional values
-            String value = getTagValue(node, "OrderType");
+            String value = elements.getValue("OrderType");
             if (value != null) {
                 this.orderType = value;
             }
             
-            value = getTagValue(node, "ClientOrderNumber");
+            value = elements.getValue("ClientOrderNumber");
             if (value != null)
                 this.clientOrderNumber = value;
             
-            setCustomerIdentityType(node);
-            setCustomerIdentityResponse( node );             
-            setCustomer( node );
+            setCustomerIdentityType(elements);
+            setCustomerIdentityResponse( elements );             
+            setCustomer( elements );
         }
     }
 
-    private void setCustomerIdentityType(Node n) {
-        if (n.hasChildNodes()) {
-            NodeList nl = n.getChildNodes();
-            int length = nl.getLength();
-            
-            for (int j = 0; j < length; j++) {
-                Node childNode = nl.item(j);
-                String nodeName = childNode.getNodeName();
-                
-                if (nodeName.equals("CustomerType")) {
-                    this.isIndividualIdentity = getTagValue((Element) n, "CustomerType").equals("Individual") ? true : false;
-                    return;
-                }
-                
-                setCustomerIdentityType(childNode);
-            }
+    private void setCustomerIdentityType(ElementIndex elements) {
+        if (elements.hasElement("CustomerType")) {
+            this.isIndividualIdentity = "Individual".equals(elements.getValue("CustomerType"));
         }
     }
     
@@ -192,7 +179,7 @@ public class CreateOrderResponse extends WebServiceResponse {
 	// HS/queryTransactionResponse
 	// => all return CustomerIdentity<?> => IndividualCustomer/CompanyCustomer w/different attributes set -- annotate in matrix!
     
-    private void setCustomer( Node node ) {
+    private void setCustomer( ElementIndex elements ) {
     	if( isIndividualIdentity() == true ) {
 			
     		IndividualCustomer individualCustomer = new IndividualCustomer();
@@ -230,12 +217,12 @@ public class CreateOrderResponse extends WebServiceResponse {
 			individualCustomer.setPhoneNumber( null );
 			individualCustomer.setEmail( null );
 			individualCustomer.setIpAddress( null );	// not returned
-			individualCustomer.setStreetAddress( returnChildNodeValue(node, "Street") );	// one argument version sets HouseNumber to null
-			individualCustomer.setCoAddress( returnChildNodeValue(node, "CoAddress") );
-			individualCustomer.setZipCode( returnChildNodeValue(node, "ZipCode") );
-			individualCustomer.setLocality( returnChildNodeValue(node, "Locality") );
-			individualCustomer.setName( returnChildNodeValue(node, "FullName") ); // one argument version sets name field
-			individualCustomer.setNationalIdNumber( returnChildNodeValue(node, "NationalIdNumber") );
+			individualCustomer.setStreetAddress( elements.getValue("Street") );	// one argument version sets HouseNumber to null
+			individualCustomer.setCoAddress( elements.getValue("CoAddress") );
+			individualCustomer.setZipCode( elements.getValue("ZipCode") );
+			individualCustomer.setLocality( elements.getValue("Locality") );
+			individualCustomer.setName( elements.getValue("FullName") ); // one argument version sets name field
+			individualCustomer.setNationalIdNumber( elements.getValue("NationalIdNumber") );
 			individualCustomer.setBirthDate( null );
 			individualCustomer.setName( null, null ); // two argument version sets firstName, lastName
 			individualCustomer.setInitials( null );
@@ -278,13 +265,13 @@ public class CreateOrderResponse extends WebServiceResponse {
     		companyCustomer.setPhoneNumber( null );
     		companyCustomer.setEmail( null );
     		companyCustomer.setIpAddress( null );
-    		companyCustomer.setStreetAddress( returnChildNodeValue(node, "Street") );	// one argument version sets HouseNumber to null
-    		companyCustomer.setCoAddress( returnChildNodeValue(node, "CoAddress") );
-    		companyCustomer.setZipCode( returnChildNodeValue(node, "ZipCode") );
-    		companyCustomer.setLocality( returnChildNodeValue(node, "Locality") );
-	    	// this.customer.setCountryCode( returnChildNodeValue(node, "Street") ); // TODO not implemented...
-    		companyCustomer.setCompanyName( returnChildNodeValue(node, "FullName") );
-    		companyCustomer.setNationalIdNumber( returnChildNodeValue(node, "NationalIdNumber") );
+    		companyCustomer.setStreetAddress( elements.getValue("Street") );	// one argument version sets HouseNumber to null
+    		companyCustomer.setCoAddress( elements.getValue("CoAddress") );
+    		companyCustomer.setZipCode( elements.getValue("ZipCode") );
+    		companyCustomer.setLocality( elements.getValue("Locality") );
+	    	// this.customer.setCountryCode( elements.getValue("Street") ); // TODO not implemented...
+    		companyCustomer.setCompanyName( elements.getValue("FullName") );
+    		companyCustomer.setNationalIdNumber( elements.getValue("NationalIdNumber") );
     		companyCustomer.setVatNumber( null );
     		companyCustomer.setAddressSelector( null );
 
@@ -293,67 +280,26 @@ public class CreateOrderResponse extends WebServiceResponse {
     	
     }
     
-    private void setCustomerIdentityResponse( Node node ) {
+    private void setCustomerIdentityResponse( ElementIndex elements ) {
         // Set child nodes from CustomerIdentityResponse
-        setChildNodeValue(node, "NationalIdNumber");
-        setChildNodeValue(node, "Email");
-        setChildNodeValue(node, "PhoneNumber");
-        setChildNodeValue(node, "FullName");
-        setChildNodeValue(node, "Street");
-        setChildNodeValue(node, "CoAddress");
-        setChildNodeValue(node, "ZipCode");
-        setChildNodeValue(node, "HouseNumber");
-        setChildNodeValue(node, "Locality");
-        setChildNodeValue(node, "CountryCode");
-        setChildNodeValue(node, "CustomerType");
+        setChildNodeValue(elements, "NationalIdNumber");
+        setChildNodeValue(elements, "Email");
+        setChildNodeValue(elements, "PhoneNumber");
+        setChildNodeValue(elements, "FullName");
+        setChildNodeValue(elements, "Street");
+        setChildNodeValue(elements, "CoAddress");
+        setChildNodeValue(elements, "ZipCode");
+        setChildNodeValue(elements, "HouseNumber");
+        setChildNodeValue(elements, "Locality");
+        setChildNodeValue(elements, "CountryCode");
+        setChildNodeValue(elements, "CustomerType");
     }
     
-    
-    // sets customerIdentity attribue "tagName" to tagValue via triggered side effect
-    private void setChildNodeValue(Node n, String tagName) {
-        String tagValue = "";
-        
-        if (n.hasChildNodes()) {
-            NodeList nl = n.getChildNodes();
-            int length = nl.getLength();
-            
-            for (int j = 0; j < length; j++) {
-                Node childNode = nl.item(j);
-                String nodeName = childNode.getNodeName();
-                
-                if (nodeName.equals(tagName)) {
-                    tagValue = getTagValue((Element) n, tagName);
-                    
-                    if (tagValue != null) {
-                        this.customerIdentity.setValue(tagName, tagValue);
-                    }
-                }
-                
-                setChildNodeValue(childNode, tagName);
-            }
-        }
-    }
-    
-    // hack to return tagName value by recursing over nodes, bubbling up found values
-    private String returnChildNodeValue(Node n, String tagName) {
-    	String tagValue = null;
-        if (n.hasChildNodes()) {
-            NodeList nl = n.getChildNodes();
-            int length = nl.getLength();
-            
-            for (int j = 0; j < length; j++) {
-                Node childNode = nl.item(j);
-                String nodeName = childNode.getNodeName();
-                
-                if (nodeName.equals(tagName)) {
-                    tagValue = getTagValue((Element) n, tagName);                    
-                }
-                // if not found, go deeper
-                if( tagValue == null ) {
-                	tagValue = returnChildNodeValue(childNode, tagName);
-                }
-            }
+    // sets customerIdentity attribute "tagName" to tagValue, if returned
+    private void setChildNodeValue(ElementIndex elements, String tagName) {
+        String tagValue = elements.getValue(tagName);
+        if (tagValue != null) {
+            this.customerIdentity.setValue(tagName, tagValue);
         }
-        return tagValue;
     }
 }
@@ -1,10 +1,10 @@
 package se.sveaekonomi.webpay.integration.response.webservice;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.Respondable;
+import se.sveaekonomi.webpay.integration.response.ElementIndex;
 import se.sveaekonomi.webpay.integration.util.constant.DISTRIBUTIONTYPE;
 import se.sveaekonomi.webpay.integration.util.constant.ORDERTYPE;
 
@@ -90,48 +90,31 @@ public class DeliverOrderResponse extends WebServiceResponse implements Responda
         int size = soapResponse.getLength();
         
         for (int i = 0; i < size; i++) {
-            Element node = (Element) soapResponse.item(i);
+            ElementIndex elements = getElementIndex((Element) soapResponse.item(i));
             
             if (this.getErrorMessage() == null) {
-                this.setAmount(Double.parseDouble(getTagValue(node, "Amount")));
-                tmpOrderType = getTagValue(node, "OrderType");
+                this.setAmount(Double.parseDouble(elements.getValue("Amount")));
+                tmpOrderType = elements.getValue("OrderType");
                 
                 if (tmpOrderType.equals(ORDERTYPE.Invoice.toString())) {
                     // Set child nodes from InvoiceResultDetails
-                    setChildNodeValue(node, "InvoiceId");
-                    setChildNodeValue(node, "DueDate");
-                    setChildNodeValue(node, "InvoiceDate");
-                    setChildNodeValue(node, "InvoiceDistributionType");
-                    setChildNodeValue(node, "Ocr");
-                    setChildNodeValue(node, "LowestAmountToPay");
+                    setChildNodeValue(elements, "InvoiceId");
+                    setChildNodeValue(elements, "DueDate");
+                    setChildNodeValue(elements, "InvoiceDate");
+                    setChildNodeValue(elements, "InvoiceDistributionType");
+                    setChildNodeValue(elements, "Ocr");
+                    setChildNodeValue(elements, "LowestAmountToPay");
                 } else {
-                    setChildNodeValue(node, "ContractNumber");
+                    setChildNodeValue(elements, "ContractNumber");
                 }
             }
         }
     }
     
-    private void setChildNodeValue(Node n, String tagName) {
-        String tagValue = "";
-        
-        if (n.hasChildNodes()) {
-            NodeList nl = n.getChildNodes();
-            int length = nl.getLength();
-            
-            for (int j = 0; j < length; j++) {
-                Node childNode = nl.item(j);
-                String nodeName = childNode.getNodeName();
-                
-                if (nodeName.equals(tagName)) {
-                    tagValue = getTagValue((Element) n, tagName);
-                    
-                    if (tagValue != null) {
-                        this.setValue(tagName, tagValue);
-                    }
-                }
-                
-                setChildNodeValue(childNode, tagName);
-            }
+    private void setChildNodeValue(ElementIndex elements, String tagName) {
+        String tagValue = elements.getValue(tagName);
+        if (tagValue != null) {
+            this.setValue(tagName, tagValue);
         }
     }
     
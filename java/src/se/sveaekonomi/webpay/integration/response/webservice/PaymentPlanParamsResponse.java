@@ -6,6 +6,8 @@ import java.util.List;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import se.sveaekonomi.webpay.integration.response.ElementIndex;
+
 public class PaymentPlanParamsResponse extends WebServiceResponse {
     
     private List<CampaignCode> campaignCodes;
@@ -36,21 +38,21 @@ public class PaymentPlanParamsResponse extends WebServiceResponse {
                 int numberOfCampaigns = campaigns.getLength();
                 
                 for (int j = 0; j < numberOfCampaigns; j++) {
-                    Element campaignNode = (Element)campaigns.item(j);
+                    ElementIndex campaignNode = ElementIndex.of((Element)campaigns.item(j));
                     
                     CampaignCode campaign = new CampaignCode();
-                    campaign.setCampaignCode(getTagValue(campaignNode, "CampaignCode"));
-                    campaign.setDescription(getTagValue(campaignNode, "Description"));
-                    campaign.setPaymentPlanType(getTagValue(campaignNode, "PaymentPlanType"));
-                    campaign.setContractLengthInMonths(getTagValue(campaignNode, "ContractLengthInMonths"));
-                    campaign.setMonthlyAnnuityFactor(getTagValue(campaignNode, "MonthlyAnnuityFactor"));
-                    campaign.setInitialFee(getTagValue(campaignNode, "InitialFee"));
-                    campaign.setNotificationFee(getTagValue(campaignNode, "NotificationFee"));
-                    campaign.setInterestRatePercent(getTagValue(campaignNode, "InterestRatePercent"));
-                    campaign.setNumberOfInterestFreeMonths(getTagValue(campaignNode, "NumberOfInterestFreeMonths"));
-                    campaign.setNumberOfPaymentFreeMonths(getTagValue(campaignNode, "NumberOfPaymentFreeMonths"));
-                    campaign.setFromAmount(getTagValue(campaignNode, "FromAmount"));
-                    campaign.setToAmount(getTagValue(campaignNode, "ToAmount"));
+                    campaign.setCampaignCode(campaignNode.getValue("CampaignCode"));
+                    campaign.setDescription(campaignNode.getValue("Description"));
+                    campaign.setPaymentPlanType(campaignNode.getValue("PaymentPlanType"));
+                    campaign.setContractLengthInMonths(campaignNode.getValue("ContractLengthInMonths"));
+                    campaign.setMonthlyAnnuityFactor(campaignNode.getValue("MonthlyAnnuityFactor"));
+                    campaign.setInitialFee(campaignNode.getValue("InitialFee"));
+                    campaign.setNotificationFee(campaignNode.getValue("NotificationFee"));
+                    campaign.setInterestRatePercent(campaignNode.getValue("InterestRatePercent"));
+                    campaign.setNumberOfInterestFreeMonths(campaignNode.getValue("NumberOfInterestFreeMonths"));
+                    campaign.setNumberOfPaymentFreeMonths(campaignNode.getValue("NumberOfPaymentFreeMonths"));
+                    campaign.setFromAmount(campaignNode.getValue("FromAmount"));
+                    campaign.setToAmount(campaignNode.getValue("ToAmount"));
                     campaignCodes.add(campaign);
                 }
             }
@@ -3,6 +3,7 @@ package se.sveaekonomi.webpay.integration.response.webservice;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import se.sveaekonomi.webpay.integration.response.ElementIndex;
 import se.sveaekonomi.webpay.integration.response.Response;
 import se.sveaekonomi.webpay.integration.response.ResponseHelper;
 
@@ -41,10 +42,10 @@ public class WebServiceResponse extends ResponseHelper implements Response {
         int size = soapMessage.getLength();
         
         for (int i = 0; i < size; i++) {
-            Element node = (Element) soapMessage.item(i);
-            this.setOrderAccepted(Boolean.parseBoolean(getTagValue(node, "Accepted")));
-            this.setResultCode(getTagValue(node, "ResultCode"));
-            this.setErrorMessage(getTagValue(node, "ErrorMessage"));
+            ElementIndex elements = getElementIndex((Element) soapMessage.item(i));
+            this.setOrderAccepted(Boolean.parseBoolean(elements.getValue("Accepted")));
+            this.setResultCode(elements.getValue("ResultCode"));
+            this.setErrorMessage(elements.getValue("ErrorMessage"));
         }
     }        
 }
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 
 import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
+import se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams.PaymentPlanCampaignIndex;
 import se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams.PaymentPlanPricePerMonth;
 
 
@@ -27,4 +28,16 @@ public class Helper {
     public static List<Map<String, String>> paymentPlanPricePerMonth(Double amount, PaymentPlanParamsResponse params) {
         return new PaymentPlanPricePerMonth().calculate(amount, params, false);
     }
+
+    /**
+     * As paymentPlanPricePerMonth(amount, params, ignoreMaxAndMinFlag), using campaigns precompiled with PaymentPlanCampaignIndex.compile(params).
+     * Use this when calculating the price per month for many amounts using the same PaymentPlanParamsResponse.
+     */
+    public static List<Map<String, String>> paymentPlanPricePerMonth(Double amount, PaymentPlanCampaignIndex campaigns, Boolean ignoreMaxAndMinFlag) {
+        return new PaymentPlanPricePerMonth().calculate(amount, campaigns, ignoreMaxAndMinFlag);
+    }
+
+    public static List<Map<String, String>> paymentPlanPricePerMonth(Double amount, PaymentPlanCampaignIndex campaigns) {
+        return new PaymentPlanPricePerMonth().calculate(amount, campaigns, false);
+    }
 }
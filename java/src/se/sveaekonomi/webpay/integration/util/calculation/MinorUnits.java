@@ -0,0 +1,90 @@
+package se.sveaekonomi.webpay.integration.util.calculation;
+
+/**
+ * Fixed-point amounts, held as a long number of minor units at a given scale, i.e. 12345 at scale 2 for 123.45 SEK.
+ *
+ * Rounding a double to a scale gives the same result as new BigDecimal(String.valueOf(value)).setScale(scale, HALF_EVEN),
+ * i.e. as MathUtil.bankersRound has always rounded, but without allocating. This holds for finite values where the
+ * scaled magnitude is less than MAX_SCALED_MAGNITUDE, and scales from 0 to MAX_SCALE; use isRoundable() to check.
+ */
+public final class MinorUnits {
+
+    /** the number of minor units in a major currency unit, i.e. öre per krona */
+    public static final int CURRENCY_SCALE = 2;
+
+    public static final int MAX_SCALE = 15;
+
+    /** 2^40, well below 2^53 so that the scaled double is accurate to a few thousandths of a minor unit */
+    public static final double MAX_SCALED_MAGNITUDE = 1099511627776.0;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private MinorUnits() {
+    }
+
+    /**
+     * @return true iff roundHalfEven(value, scale) is defined for the value and scale
+     */
+    public static boolean isRoundable( double value, int scale ) {
+        return scale >= 0 && scale <= MAX_SCALE && Math.abs(value) * POWERS_OF_TEN[scale] < MAX_SCALED_MAGNITUDE;  // false for NaN and infinity
+    }
+
+    /**
+     * Rounds the value to the given number of decimals using banker's rounding, i.e. RoundingMode.HALF_EVEN, as applied
+     * to the decimal representation of the value given by String.valueOf(value).
+     *
+     * @return the rounded value as a number of minor units at the scale, i.e. 1234 for 12.345 at scale 2
+     * @throws ArithmeticException if !isRoundable(value, scale)
+     */
+    public static long roundHalfEven( double value, int scale ) {
+        if( !isRoundable(value, scale) ) {
+            throw new ArithmeticException("Value " + value + " can not be rounded to scale " + scale);
+        }
+        double magnitude = Math.abs(value);
+        double scaled = magnitude * POWERS_OF_TEN[scale];
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        long units = (long) floor;
+
+        if( fraction > 0.75 ) {
+            units++;
+        }
+        else if( fraction >= 0.25 ) {
+            // close to a tie: the decimal representation of the value lies in the interval of reals rounding to the
+            // value, so it is on the same side of the tie as the value is of the double nearest to the tie
+            double tie = (2.0 * floor + 1.0) / (2.0 * POWERS_OF_TEN[scale]);
+            if( magnitude > tie || (magnitude == tie && (units & 1L) == 1L) ) {
+                units++;
+            }
+        }
+        return (value < 0) ? -units : units;
+    }
+
+    /**
+     * @return the double nearest to the amount, i.e. 12.34 for 1234 minor units at scale 2, as BigDecimal.doubleValue()
+     */
+    public static double toDouble( long units, int scale ) {
+        return units / POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Converts an amount to minor currency units, i.e. kr to öre, as MathUtil.convertFromDecimalToCentesimal. Decimals
+     * beyond the fourth are truncated before the amount is rounded to whole minor units using banker's rounding.
+     */
+    public static long fromAmount( double amount ) {
+        double truncated = Math.floor(amount * 10000) / 10000;
+        if( isRoundable(truncated, CURRENCY_SCALE) ) {
+            return roundHalfEven(truncated, CURRENCY_SCALE);
+        }
+        return (long) MathUtil.bankersRound( MathUtil.bankersRound(truncated) * 100 );
+    }
+
+    /**
+     * @return the amount in major currency units, i.e. 12.34 for 1234 minor units
+     */
+    public static double toAmount( long units ) {
+        return toDouble(units, CURRENCY_SCALE);
+    }
+}
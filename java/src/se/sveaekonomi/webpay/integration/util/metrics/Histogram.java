@@ -0,0 +1,137 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values, i.e. latencies in nanoseconds or payload sizes in bytes.
+ *
+ * Values are counted in log-linear buckets, in the manner of HdrHistogram: values below 32 are counted exactly, and each
+ * power of two above that is split into 16 equally wide buckets, so that a value is reported with a relative error of at
+ * most 1/16 (6.25%) using a fixed number of buckets. Negative values are recorded as 0. The count, sum, min and max are
+ * kept exactly.
+ *
+ * All methods are thread-safe. Reads taken while values are being recorded may see some, but not all, of the concurrently
+ * recorded values.
+ */
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int EXACT_LIMIT = 2 * SUB_BUCKET_COUNT;	// values below this are counted in their own bucket
+	private static final int EXACT_BITS = SUB_BUCKET_BITS + 1;
+	private static final int BUCKET_COUNT = EXACT_LIMIT + (62 - EXACT_BITS + 1) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+	public void record( long value ) {
+		if( value < 0 ) {
+			value = 0;
+		}
+		counts.incrementAndGet( bucketIndex(value) );
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while( value < (current = min.get()) && !min.compareAndSet(current, value) ) {
+			// retry
+		}
+		while( value > (current = max.get()) && !max.compareAndSet(current, value) ) {
+			// retry
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	/** @return the smallest recorded value, or 0 if no values have been recorded */
+	public long getMin() {
+		return (count.get() == 0) ? 0 : min.get();
+	}
+
+	/** @return the largest recorded value, or 0 if no values have been recorded */
+	public long getMax() {
+		return (count.get() == 0) ? 0 : max.get();
+	}
+
+	/** @return the mean of the recorded values, or 0 if no values have been recorded */
+	public double getMean() {
+		long n = count.get();
+		return (n == 0) ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * @param percentile -- between 0 and 100, i.e. 99.9
+	 * @return the largest value that is equivalent to the value at the percentile, i.e. at most 6.25% larger than the
+	 * 		recorded value and never larger than getMax(), or 0 if no values have been recorded
+	 */
+	public long getValueAtPercentile( double percentile ) {
+		long total = 0;
+		for( int i = 0; i < BUCKET_COUNT; i++ ) {
+			total += counts.get(i);
+		}
+		if( total == 0 ) {
+			return 0;
+		}
+		long target = Math.max( 1, (long) Math.ceil( Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total ) );
+		long seen = 0;
+		for( int i = 0; i < BUCKET_COUNT; i++ ) {
+			seen += counts.get(i);
+			if( seen >= target ) {
+				return Math.min( highestEquivalentValue(i), getMax() );
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @param scale -- factor to multiply the values with, i.e. 1e-6 to report nanoseconds as milliseconds
+	 * @return summary of the recorded values
+	 */
+	public HistogramSnapshot getSnapshot( double scale ) {
+		return new HistogramSnapshot(
+			getCount(),
+			getMean() * scale,
+			getMin() * scale,
+			getValueAtPercentile(50.0) * scale,
+			getValueAtPercentile(90.0) * scale,
+			getValueAtPercentile(99.0) * scale,
+			getValueAtPercentile(99.9) * scale,
+			getMax() * scale
+		);
+	}
+
+	static int bucketIndex( long value ) {
+		if( value < EXACT_LIMIT ) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);	// position of the highest set bit, >= EXACT_BITS
+		int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+		return EXACT_LIMIT + (exponent - EXACT_BITS) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long lowestEquivalentValue( int index ) {
+		if( index < EXACT_LIMIT ) {
+			return index;
+		}
+		int exponent = (index - EXACT_LIMIT) / SUB_BUCKET_COUNT + EXACT_BITS;
+		int subBucket = (index - EXACT_LIMIT) % SUB_BUCKET_COUNT;
+		return (1L << exponent) | ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+	}
+
+	static long highestEquivalentValue( int index ) {
+		if( index < EXACT_LIMIT ) {
+			return index;
+		}
+		int exponent = (index - EXACT_LIMIT) / SUB_BUCKET_COUNT + EXACT_BITS;
+		return lowestEquivalentValue(index) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,71 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+
+/**
+ * Immutable summary of a Histogram, in the unit given to Histogram.getSnapshot(). Exposed as a composite attribute by
+ * the OperationStatsMXBean.
+ */
+public final class HistogramSnapshot {
+
+	private final long count;
+	private final double mean;
+	private final double min;
+	private final double p50;
+	private final double p90;
+	private final double p99;
+	private final double p999;
+	private final double max;
+
+	@ConstructorProperties({"count", "mean", "min", "p50", "p90", "p99", "p999", "max"})
+	public HistogramSnapshot( long count, double mean, double min, double p50, double p90, double p99, double p999, double max ) {
+		this.count = count;
+		this.mean = mean;
+		this.min = min;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	/** @return the median */
+	public double getP50() {
+		return p50;
+	}
+
+	public double getP90() {
+		return p90;
+	}
+
+	public double getP99() {
+		return p99;
+	}
+
+	public double getP999() {
+		return p999;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format( Locale.ROOT, "count=%d mean=%.3f min=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f",
+				count, mean, min, p50, p90, p99, p999, max );
+	}
+}
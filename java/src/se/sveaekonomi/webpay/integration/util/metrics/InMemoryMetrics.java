@@ -0,0 +1,148 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * MetricsListener that keeps latency and payload size histograms, result code counts and retry and flip counts in
+ * memory, per operation, payment type and country code. The collected OperationStats can be read directly, or exposed
+ * as MXBeans named i.e. "se.sveaekonomi.webpay:type=RequestMetrics,operation=GetOrders,paymentType=Invoice,countryCode=SE".
+ *
+ * All methods are thread-safe.
+ */
+public class InMemoryMetrics implements MetricsListener {
+
+	public static final String JMX_DOMAIN = "se.sveaekonomi.webpay";
+
+	private final ConcurrentMap<Key,OperationStats> stats = new ConcurrentHashMap<Key,OperationStats>();
+	private volatile MBeanServer mbeanServer;
+
+	@Override
+	public void requestCompleted( RequestSample sample ) {
+		Key key = new Key( sample.getOperation(), sample.getPaymentType(), sample.getCountryCode() );
+		OperationStats operationStats = stats.get(key);
+		if( operationStats != null ) {
+			operationStats.record(sample);
+			return;
+		}
+		OperationStats created = new OperationStats( key.operation, key.paymentType, key.countryCode );
+		operationStats = stats.putIfAbsent(key, created);
+		if( operationStats != null ) {
+			operationStats.record(sample);
+			return;
+		}
+		created.record(sample);
+		MBeanServer server = mbeanServer;
+		if( server != null ) {
+			register( server, created );
+		}
+	}
+
+	/**
+	 * @return the stats collected for the operation, payment type and country code, or null if no such request has been made
+	 */
+	public OperationStats getStats( String operation, PAYMENTTYPE paymentType, COUNTRYCODE countryCode ) {
+		return stats.get( new Key(operation, paymentType, countryCode) );
+	}
+
+	/** @return the stats collected so far, in no particular order */
+	public List<OperationStats> getAllStats() {
+		return new ArrayList<OperationStats>( stats.values() );
+	}
+
+	/**
+	 * Registers an MXBean for each operation collected so far, and for each operation collected later.
+	 * @throws SveaWebPayException if the MXBeans can not be registered, i.e. if already registered by another InMemoryMetrics
+	 */
+	public InMemoryMetrics registerMBeans( MBeanServer server ) {
+		unregisterMBeans();
+		this.mbeanServer = server;
+		for( OperationStats operationStats : stats.values() ) {
+			register( server, operationStats );
+		}
+		return this;
+	}
+
+	/** Unregisters the MXBeans registered by registerMBeans(), if any */
+	public InMemoryMetrics unregisterMBeans() {
+		MBeanServer server = mbeanServer;
+		mbeanServer = null;
+		if( server != null ) {
+			for( OperationStats operationStats : stats.values() ) {
+				try {
+					ObjectName name = getObjectName(operationStats);
+					if( server.isRegistered(name) ) {
+						server.unregisterMBean(name);
+					}
+				}
+				catch( JMException e ) {
+					// already gone
+				}
+			}
+		}
+		return this;
+	}
+
+	/** Discards all collected stats, and unregisters their MXBeans */
+	public void clear() {
+		MBeanServer server = mbeanServer;
+		unregisterMBeans();
+		stats.clear();
+		mbeanServer = server;
+	}
+
+	public static ObjectName getObjectName( OperationStats operationStats ) throws JMException {
+		return new ObjectName( JMX_DOMAIN + ":type=RequestMetrics"
+				+ ",operation=" + operationStats.getOperation()
+				+ ",paymentType=" + (operationStats.getPaymentType().isEmpty() ? "none" : operationStats.getPaymentType())
+				+ ",countryCode=" + (operationStats.getCountryCode().isEmpty() ? "none" : operationStats.getCountryCode())
+		);
+	}
+
+	private static void register( MBeanServer server, OperationStats operationStats ) {
+		try {
+			server.registerMBean( operationStats, getObjectName(operationStats) );
+		}
+		catch( JMException e ) {
+			throw new SveaWebPayException( "Could not register metrics MXBean for " + operationStats.getOperation(), e );
+		}
+	}
+
+	private static final class Key {
+		private final String operation;
+		private final PAYMENTTYPE paymentType;
+		private final COUNTRYCODE countryCode;
+
+		Key( String operation, PAYMENTTYPE paymentType, COUNTRYCODE countryCode ) {
+			this.operation = operation;
+			this.paymentType = paymentType;
+			this.countryCode = countryCode;
+		}
+
+		@Override
+		public boolean equals( Object o ) {
+			if( !(o instanceof Key) ) {
+				return false;
+			}
+			Key other = (Key) o;
+			return operation.equals(other.operation) && paymentType == other.paymentType && countryCode == other.countryCode;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = operation.hashCode();
+			result = 31 * result + (paymentType == null ? 0 : paymentType.hashCode());
+			return 31 * result + (countryCode == null ? 0 : countryCode.hashCode());
+		}
+	}
+}
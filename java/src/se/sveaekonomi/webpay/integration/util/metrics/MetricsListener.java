@@ -0,0 +1,21 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+/**
+ * Receives a RequestSample for each request sent by the integration package, once the response has been parsed or the
+ * request has failed. Install a listener using RequestMetrics.setListener(), i.e. an InMemoryMetrics instance, or an
+ * adapter to the metrics library used by the integration.
+ *
+ * Listeners are called on the thread that performed the request, and must be thread-safe and return quickly. Exceptions
+ * thrown by a listener are ignored.
+ */
+public interface MetricsListener {
+
+	/** Listener that discards all samples, used by default */
+	MetricsListener NO_OP = new MetricsListener() {
+		@Override
+		public void requestCompleted( RequestSample sample ) {
+		}
+	};
+
+	void requestCompleted( RequestSample sample );
+}
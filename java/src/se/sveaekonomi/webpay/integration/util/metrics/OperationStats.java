@@ -0,0 +1,168 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * Counters and histograms of the requests collected by InMemoryMetrics for one operation, payment type and country code.
+ * All methods are thread-safe.
+ */
+public final class OperationStats implements OperationStatsMXBean {
+
+	private static final double NANOS_TO_MILLIS = 1e-6;
+
+	private final String operation;
+	private final PAYMENTTYPE paymentType;
+	private final COUNTRYCODE countryCode;
+
+	private final Histogram totalTime = new Histogram();
+	private final Histogram buildTime = new Histogram();
+	private final Histogram serializeTime = new Histogram();
+	private final Histogram networkTime = new Histogram();
+	private final Histogram parseTime = new Histogram();
+	private final Histogram requestSize = new Histogram();
+	private final Histogram responseSize = new Histogram();
+
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong notAccepted = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong flips = new AtomicLong();
+	private final ConcurrentMap<String,AtomicLong> resultCodes = new ConcurrentHashMap<String,AtomicLong>();
+
+	OperationStats( String operation, PAYMENTTYPE paymentType, COUNTRYCODE countryCode ) {
+		this.operation = operation;
+		this.paymentType = paymentType;
+		this.countryCode = countryCode;
+	}
+
+	void record( RequestSample sample ) {
+		totalTime.record( sample.getTotalNanos() );
+		buildTime.record( sample.getBuildNanos() );
+		serializeTime.record( sample.getSerializeNanos() );
+		networkTime.record( sample.getNetworkNanos() );
+		parseTime.record( sample.getParseNanos() );
+		requestSize.record( sample.getBytesOut() );
+		responseSize.record( sample.getBytesIn() );
+
+		if( sample.getFailure() != null ) {
+			failures.incrementAndGet();
+		}
+		else if( !Boolean.TRUE.equals(sample.isAccepted()) ) {
+			notAccepted.incrementAndGet();
+		}
+		retries.addAndGet( sample.getRetries() );
+		flips.addAndGet( sample.getFlips() );
+
+		if( sample.getResultCode() != null ) {
+			AtomicLong counter = resultCodes.get( sample.getResultCode() );
+			if( counter == null ) {
+				AtomicLong created = new AtomicLong();
+				counter = resultCodes.putIfAbsent( sample.getResultCode(), created );
+				if( counter == null ) {
+					counter = created;
+				}
+			}
+			counter.incrementAndGet();
+		}
+	}
+
+	@Override
+	public String getOperation() {
+		return operation;
+	}
+
+	@Override
+	public String getPaymentType() {
+		return (paymentType == null) ? "" : paymentType.toString();
+	}
+
+	@Override
+	public String getCountryCode() {
+		return (countryCode == null) ? "" : countryCode.toString();
+	}
+
+	@Override
+	public long getCount() {
+		return totalTime.getCount();
+	}
+
+	@Override
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	@Override
+	public long getNotAcceptedCount() {
+		return notAccepted.get();
+	}
+
+	@Override
+	public long getRetryCount() {
+		return retries.get();
+	}
+
+	@Override
+	public long getFlipCount() {
+		return flips.get();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return requestSize.getSum();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return responseSize.getSum();
+	}
+
+	@Override
+	public HistogramSnapshot getTotalTime() {
+		return totalTime.getSnapshot(NANOS_TO_MILLIS);
+	}
+
+	@Override
+	public HistogramSnapshot getBuildTime() {
+		return buildTime.getSnapshot(NANOS_TO_MILLIS);
+	}
+
+	@Override
+	public HistogramSnapshot getSerializeTime() {
+		return serializeTime.getSnapshot(NANOS_TO_MILLIS);
+	}
+
+	@Override
+	public HistogramSnapshot getNetworkTime() {
+		return networkTime.getSnapshot(NANOS_TO_MILLIS);
+	}
+
+	@Override
+	public HistogramSnapshot getParseTime() {
+		return parseTime.getSnapshot(NANOS_TO_MILLIS);
+	}
+
+	@Override
+	public HistogramSnapshot getRequestSize() {
+		return requestSize.getSnapshot(1.0);
+	}
+
+	@Override
+	public HistogramSnapshot getResponseSize() {
+		return responseSize.getSnapshot(1.0);
+	}
+
+	@Override
+	public Map<String,Long> getResultCodes() {
+		Map<String,Long> counts = new TreeMap<String,Long>();
+		for( Map.Entry<String,AtomicLong> entry : resultCodes.entrySet() ) {
+			counts.put( entry.getKey(), entry.getValue().get() );
+		}
+		return counts;
+	}
+}
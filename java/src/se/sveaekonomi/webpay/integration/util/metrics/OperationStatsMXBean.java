@@ -0,0 +1,52 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the requests collected by InMemoryMetrics for one operation, payment type and country code. Times are in
+ * milliseconds, payload sizes in bytes.
+ */
+public interface OperationStatsMXBean {
+
+	String getOperation();
+
+	/** @return the payment type, or "" if not applicable */
+	String getPaymentType();
+
+	/** @return the country code, or "" if not set */
+	String getCountryCode();
+
+	/** @return number of requests, including failed requests */
+	long getCount();
+
+	/** @return number of requests that threw an exception */
+	long getFailureCount();
+
+	/** @return number of responses that were not accepted */
+	long getNotAcceptedCount();
+
+	long getRetryCount();
+
+	long getFlipCount();
+
+	long getBytesOut();
+
+	long getBytesIn();
+
+	HistogramSnapshot getTotalTime();
+
+	HistogramSnapshot getBuildTime();
+
+	HistogramSnapshot getSerializeTime();
+
+	HistogramSnapshot getNetworkTime();
+
+	HistogramSnapshot getParseTime();
+
+	HistogramSnapshot getRequestSize();
+
+	HistogramSnapshot getResponseSize();
+
+	/** @return number of responses per result code */
+	Map<String,Long> getResultCodes();
+}
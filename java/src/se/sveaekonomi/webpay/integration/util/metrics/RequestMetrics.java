@@ -0,0 +1,47 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * Holds the library-wide MetricsListener, which receives a RequestSample for each webservice, admin service and hosted
+ * service request. By default samples are discarded. To collect per-operation latency histograms and expose them via JMX:
+ *
+ * ```java
+ *     InMemoryMetrics metrics = new InMemoryMetrics();
+ *     metrics.registerMBeans( ManagementFactory.getPlatformMBeanServer() );
+ *     RequestMetrics.setListener( metrics );
+ * ```
+ */
+public final class RequestMetrics {
+
+	private static volatile MetricsListener listener = MetricsListener.NO_OP;
+
+	private RequestMetrics() {
+	}
+
+	public static MetricsListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Installs the given listener as the library-wide listener, use null or MetricsListener.NO_OP to stop collecting.
+	 * Requests already started report to the listener installed when they started.
+	 * @return the previous listener
+	 */
+	public static MetricsListener setListener( MetricsListener metricsListener ) {
+		MetricsListener previous = listener;
+		listener = (metricsListener == null) ? MetricsListener.NO_OP : metricsListener;
+		return previous;
+	}
+
+	/**
+	 * Starts measuring a request.
+	 * @param operation -- the service operation, i.e. the SOAP action or hosted admin method name
+	 * @param paymentType -- payment type of the order, or null
+	 * @param countryCode -- country code of the credentials used, or null
+	 */
+	public static RequestTimer start( String operation, PAYMENTTYPE paymentType, COUNTRYCODE countryCode ) {
+		return new RequestTimer( listener, operation, paymentType, countryCode );
+	}
+}
@@ -0,0 +1,121 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * Immutable measurements of a single request, as passed to MetricsListener.requestCompleted().
+ *
+ * The time of the request is split into four phases:
+ * - build: validating the request and formatting the order rows, including rebuilding the request before a resend
+ * - serialize: writing the request xml, and the SOAP envelope as it is streamed to the connection
+ * - network: sending the request and waiting for the response, excluding the time spent serializing and parsing
+ * - parse: parsing the response envelope and building the response object
+ */
+public final class RequestSample {
+
+	private final String operation;
+	private final PAYMENTTYPE paymentType;
+	private final COUNTRYCODE countryCode;
+	private final long buildNanos;
+	private final long serializeNanos;
+	private final long networkNanos;
+	private final long parseNanos;
+	private final long bytesOut;
+	private final long bytesIn;
+	private final String resultCode;
+	private final Boolean accepted;
+	private final Throwable failure;
+	private final int retries;
+	private final int flips;
+
+	RequestSample( String operation, PAYMENTTYPE paymentType, COUNTRYCODE countryCode,
+			long buildNanos, long serializeNanos, long networkNanos, long parseNanos, long bytesOut, long bytesIn,
+			String resultCode, Boolean accepted, Throwable failure, int retries, int flips ) {
+		this.operation = operation;
+		this.paymentType = paymentType;
+		this.countryCode = countryCode;
+		this.buildNanos = buildNanos;
+		this.serializeNanos = serializeNanos;
+		this.networkNanos = networkNanos;
+		this.parseNanos = parseNanos;
+		this.bytesOut = bytesOut;
+		this.bytesIn = bytesIn;
+		this.resultCode = resultCode;
+		this.accepted = accepted;
+		this.failure = failure;
+		this.retries = retries;
+		this.flips = flips;
+	}
+
+	/** @return the service operation, i.e. "CreateOrderEu", "GetOrders" or "querytransactionid" */
+	public String getOperation() {
+		return operation;
+	}
+
+	/** @return the payment type of the order, or null if not applicable */
+	public PAYMENTTYPE getPaymentType() {
+		return paymentType;
+	}
+
+	/** @return the country code used to select the credentials, or null if not set */
+	public COUNTRYCODE getCountryCode() {
+		return countryCode;
+	}
+
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	public long getSerializeNanos() {
+		return serializeNanos;
+	}
+
+	public long getNetworkNanos() {
+		return networkNanos;
+	}
+
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	/** @return the time from the start of the request until the response was parsed or the request failed */
+	public long getTotalNanos() {
+		return buildNanos + serializeNanos + networkNanos + parseNanos;
+	}
+
+	/** @return number of request body bytes sent, summed over any resends */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	/** @return number of response body bytes received, summed over any resends */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/** @return the response result code, or null if the request failed or the response has no result code */
+	public String getResultCode() {
+		return resultCode;
+	}
+
+	/** @return the response isOrderAccepted() flag, or null if the request failed */
+	public Boolean isAccepted() {
+		return accepted;
+	}
+
+	/** @return the exception thrown by the request, or null if a response was returned */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/** @return number of times the request was retried */
+	public int getRetries() {
+		return retries;
+	}
+
+	/** @return number of times the request was resent with the PriceIncludingVat flag flipped after result code 50036 */
+	public int getFlips() {
+		return flips;
+	}
+}
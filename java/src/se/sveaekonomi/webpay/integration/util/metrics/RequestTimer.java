@@ -0,0 +1,155 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import java.util.List;
+
+import se.sveaekonomi.webpay.integration.response.Response;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * Measures a single request, and reports it to the MetricsListener as a RequestSample when finished. Get an instance
+ * using RequestMetrics.start() at the start of doRequest().
+ *
+ * The timer is always in one of the phases described in RequestSample, starting in BUILD. Calling enter() adds the time
+ * since the last phase change to the current phase, and switches to the new phase. The request classes enter SERIALIZE
+ * once the request has been built, SveaSoapConnection and SveaHttpClient enter NETWORK, SERIALIZE and PARSE as the
+ * request is sent and the response received, and the time until finish() is counted as PARSE.
+ *
+ * A timer is used by the thread performing the request only, and is not thread-safe.
+ *
+ * ```java
+ *     RequestTimer timer = RequestMetrics.start("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+ *     try {
+ *         NodeList soapResponse = sendRequest(timer);
+ *         return timer.finish( new GetOrdersResponse(soapResponse) );
+ *     }
+ *     catch( RuntimeException e ) {
+ *         throw timer.fail(e);
+ *     }
+ * ```
+ */
+public final class RequestTimer {
+
+	public enum Phase { BUILD, SERIALIZE, NETWORK, PARSE }
+
+	private final MetricsListener listener;
+	private final String operation;
+	private final PAYMENTTYPE paymentType;
+	private final COUNTRYCODE countryCode;
+
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private Phase phase = Phase.BUILD;
+	private long mark;
+
+	private long bytesOut;
+	private long bytesIn;
+	private int retries;
+	private int flips;
+	private boolean finished;
+
+	RequestTimer( MetricsListener listener, String operation, PAYMENTTYPE paymentType, COUNTRYCODE countryCode ) {
+		this.listener = listener;
+		this.operation = operation;
+		this.paymentType = paymentType;
+		this.countryCode = countryCode;
+		this.mark = System.nanoTime();
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Adds the time since the last phase change to the current phase, and switches to the given phase.
+	 * @return the phase the timer was in
+	 */
+	public Phase enter( Phase next ) {
+		long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] += now - mark;
+		mark = now;
+		Phase previous = phase;
+		phase = next;
+		return previous;
+	}
+
+	public void addBytesOut( long bytes ) {
+		bytesOut += bytes;
+	}
+
+	public void addBytesIn( long bytes ) {
+		bytesIn += bytes;
+	}
+
+	/** Records that the request is resent with the PriceIncludingVat flag flipped, and enters BUILD */
+	public void flipped() {
+		flips++;
+		enter(Phase.BUILD);
+	}
+
+	/** Records that the request is retried, and enters BUILD */
+	public void retried() {
+		retries++;
+		enter(Phase.BUILD);
+	}
+
+	/**
+	 * Reports the request with the result code and accepted flag of the response.
+	 * @return response
+	 */
+	public <R extends Response> R finish( R response ) {
+		report( response.getResultCode(), response.isOrderAccepted(), null );
+		return response;
+	}
+
+	/**
+	 * Reports a request returning one response per order. The request is accepted if all responses are accepted, and the
+	 * result code is that of the first response not accepted, or "0".
+	 * @return responses
+	 */
+	public <R extends Response> List<R> finishAll( List<R> responses ) {
+		String resultCode = "0";
+		boolean accepted = true;
+		for( R response : responses ) {
+			if( !Boolean.TRUE.equals(response.isOrderAccepted()) ) {
+				resultCode = response.getResultCode();
+				accepted = false;
+				break;
+			}
+		}
+		report( resultCode, accepted, null );
+		return responses;
+	}
+
+	/**
+	 * Reports the request as failed with the exception.
+	 * @return failure, to be rethrown by the caller
+	 */
+	public <E extends Throwable> E fail( E failure ) {
+		report( null, null, failure );
+		return failure;
+	}
+
+	private void report( String resultCode, Boolean accepted, Throwable failure ) {
+		if( finished ) {
+			return;
+		}
+		finished = true;
+		if( listener == MetricsListener.NO_OP ) {
+			return;
+		}
+		enter(phase);
+		RequestSample sample = new RequestSample( operation, paymentType, countryCode,
+				phaseNanos[Phase.BUILD.ordinal()], phaseNanos[Phase.SERIALIZE.ordinal()], phaseNanos[Phase.NETWORK.ordinal()], phaseNanos[Phase.PARSE.ordinal()],
+				bytesOut, bytesIn, resultCode, accepted, failure, retries, flips );
+		try {
+			listener.requestCompleted(sample);
+		}
+		catch( RuntimeException e ) {
+			// a misbehaving listener must not fail the request
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Circuit breaker and bulkhead of one endpoint, created by EndpointIsolation using its settings.
+ *
+ * - Bulkhead: at most maxConcurrentRequests requests are sent to the endpoint at a time. A request that can not start
+ *   within maxWait is rejected, so that a slow endpoint holds at most that many of the caller's threads.
+ * - Circuit breaker: after failureThreshold failures in a row the breaker opens, and requests are rejected without being
+ *   sent. Once openDuration has passed the breaker is half-open, and up to halfOpenProbes requests are sent. The breaker
+ *   closes if one of them succeeds, and opens again if one of them fails.
+ *
+ * Failures are transport errors, i.e. connection refused or read timeouts, and responses with http status 5xx, 408 or
+ * 429, other than SOAP faults. Rejected requests throw an EndpointUnavailableException. All methods are thread-safe.
+ */
+public class EndpointGuard implements EndpointGuardMXBean {
+
+	public enum STATE {
+		/** requests are sent */
+		CLOSED,
+		/** requests are rejected */
+		OPEN,
+		/** a few requests are sent to probe whether the endpoint has recovered */
+		HALF_OPEN
+	}
+
+	private static final int SUCCEEDED = 0;
+	private static final int FAILED = 1;
+	private static final int UNKNOWN = 2;	// i.e. a response that could not be handled, which neither opens nor closes the breaker
+
+	private final String endpoint;
+	private final Semaphore permits;	// null if the number of concurrent requests is not limited
+	private final int maxConcurrentRequests;
+	private final long maxWaitNanos;
+	private final int failureThreshold;
+	private final long openDurationNanos;
+	private final int halfOpenProbes;
+
+	// breaker state, guarded by this
+	private STATE state = STATE.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private int probesInFlight;
+
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong rejectedOpen = new AtomicLong();
+	private final AtomicLong rejectedFull = new AtomicLong();
+	private final AtomicLong opened = new AtomicLong();
+
+	EndpointGuard( String endpoint, EndpointIsolation isolation ) {
+		this.endpoint = endpoint;
+		this.maxConcurrentRequests = isolation.getMaxConcurrentRequests();
+		this.permits = (maxConcurrentRequests > 0) ? new Semaphore(maxConcurrentRequests, true) : null;
+		this.maxWaitNanos = isolation.getMaxWaitNanos();
+		this.failureThreshold = isolation.getFailureThreshold();
+		this.openDurationNanos = isolation.getOpenDurationNanos();
+		this.halfOpenProbes = isolation.getHalfOpenProbes();
+	}
+
+	/**
+	 * Executes the request using the client, unless the guard rejects it.
+	 * @throws EndpointUnavailableException if the request is rejected
+	 */
+	public <T> T execute( HttpClient client, HttpUriRequest request, ResponseHandler<T> handler ) throws IOException {
+		boolean probe = enter();
+		int outcome = UNKNOWN;
+		try {
+			T response = client.execute( request, handler );
+			outcome = SUCCEEDED;
+			return response;
+		}
+		catch( IOException e ) {
+			if( !request.isAborted() ) {	// an aborted request, i.e. a losing hedged attempt, says nothing about the endpoint
+				outcome = isFailure(e) ? FAILED : SUCCEEDED;
+			}
+			throw e;
+		}
+		finally {
+			exit( probe, outcome );
+		}
+	}
+
+	@Override
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	@Override
+	public String getState() {
+		return getCurrentState().name();
+	}
+
+	/** @return the circuit breaker state, moving from OPEN to HALF_OPEN once the open duration has passed */
+	public synchronized STATE getCurrentState() {
+		if( state == STATE.OPEN && System.nanoTime() - openedAt >= openDurationNanos ) {
+			state = STATE.HALF_OPEN;
+			probesInFlight = 0;
+		}
+		return state;
+	}
+
+	@Override
+	public int getActiveRequests() {
+		return (permits == null) ? 0 : maxConcurrentRequests - permits.availablePermits();
+	}
+
+	@Override
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	@Override
+	public long getRejectedOpenCount() {
+		return rejectedOpen.get();
+	}
+
+	@Override
+	public long getRejectedFullCount() {
+		return rejectedFull.get();
+	}
+
+	@Override
+	public long getOpenedCount() {
+		return opened.get();
+	}
+
+	/** @return true if the response with the exception should count as a failure of the endpoint */
+	static boolean isFailure( IOException e ) {
+		if( e instanceof HttpResponseException ) {
+			int status = ((HttpResponseException) e).getStatusCode();
+			return status >= 500 || status == 408 || status == 429;
+		}
+		return true;
+	}
+
+	/** @return true if the request is a half-open probe */
+	private boolean enter() throws IOException {
+		boolean probe = false;
+		if( failureThreshold > 0 ) {
+			synchronized( this ) {
+				STATE current = getCurrentState();
+				if( current == STATE.OPEN || (current == STATE.HALF_OPEN && probesInFlight >= halfOpenProbes) ) {
+					rejectedOpen.incrementAndGet();
+					throw new EndpointUnavailableException( "Circuit breaker open for " + endpoint, endpoint, current );
+				}
+				if( current == STATE.HALF_OPEN ) {
+					probesInFlight++;
+					probe = true;
+				}
+			}
+		}
+		if( permits != null ) {
+			boolean acquired;
+			try {
+				acquired = permits.tryAcquire( maxWaitNanos, TimeUnit.NANOSECONDS );
+			}
+			catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				releaseProbe(probe);
+				throw new InterruptedIOException( "Interrupted waiting to send request to " + endpoint );
+			}
+			if( !acquired ) {
+				releaseProbe(probe);
+				rejectedFull.incrementAndGet();
+				throw new EndpointUnavailableException( maxConcurrentRequests + " concurrent requests already being sent to " + endpoint,
+					endpoint, getCurrentState() );
+			}
+		}
+		return probe;
+	}
+
+	private void exit( boolean probe, int outcome ) {
+		if( permits != null ) {
+			permits.release();
+		}
+		if( outcome == FAILED ) {
+			failures.incrementAndGet();
+		}
+		if( failureThreshold <= 0 ) {
+			return;
+		}
+		synchronized( this ) {
+			if( probe && state == STATE.HALF_OPEN && probesInFlight > 0 ) {
+				probesInFlight--;
+			}
+			if( outcome == SUCCEEDED ) {
+				consecutiveFailures = 0;
+				if( state == STATE.HALF_OPEN ) {
+					state = STATE.CLOSED;
+				}
+			}
+			else if( outcome == FAILED ) {
+				consecutiveFailures++;
+				if( state == STATE.HALF_OPEN || (state == STATE.CLOSED && consecutiveFailures >= failureThreshold) ) {
+					state = STATE.OPEN;
+					openedAt = System.nanoTime();
+					opened.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	private synchronized void releaseProbe( boolean probe ) {
+		if( probe && state == STATE.HALF_OPEN && probesInFlight > 0 ) {
+			probesInFlight--;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+/**
+ * JMX view of the circuit breaker and bulkhead of one endpoint, see EndpointIsolation.registerMBeans().
+ */
+public interface EndpointGuardMXBean {
+
+	String getEndpoint();
+
+	/** @return the circuit breaker state, i.e. "CLOSED", "OPEN" or "HALF_OPEN" */
+	String getState();
+
+	/** @return number of requests being sent to the endpoint */
+	int getActiveRequests();
+
+	/** @return number of requests that failed with a transport error or http status 5xx, 408 or 429 */
+	long getFailureCount();
+
+	/** @return number of requests rejected as the circuit breaker was open */
+	long getRejectedOpenCount();
+
+	/** @return number of requests rejected as the maximum number of concurrent requests were being sent */
+	long getRejectedFullCount();
+
+	/** @return number of times the circuit breaker has opened */
+	long getOpenedCount();
+}
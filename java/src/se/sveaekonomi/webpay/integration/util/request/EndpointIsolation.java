@@ -0,0 +1,297 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import se.sveaekonomi.webpay.integration.config.CachingConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.metrics.InMemoryMetrics;
+
+/**
+ * Isolates the endpoints of a ConfigurationProvider from each other, i.e. the webservice, admin service and hosted admin
+ * endpoints returned by getEndPoint() for each PAYMENTTYPE, using one EndpointGuard per endpoint url. A slow or failing
+ * admin service then holds at most maxConcurrentRequests of the caller's threads, and fails fast while its circuit
+ * breaker is open, instead of delaying i.e. CreateOrderEu requests sent to the webservice.
+ *
+ * By default endpoints are not isolated. To isolate the endpoints of a ConfigurationProvider:
+ *
+ * ```java
+ *     EndpointIsolation isolation = new EndpointIsolation()
+ *         .setMaxConcurrentRequests(20)				// optional, defaults to 0, i.e. no limit
+ *         .setMaxWait(100, TimeUnit.MILLISECONDS)		// optional, defaults to 0
+ *         .setFailureThreshold(5)						// optional, defaults to 0, i.e. no circuit breaker
+ *         .setOpenDuration(30, TimeUnit.SECONDS)		// optional, defaults to 30 seconds
+ *         .setHalfOpenProbes(1)						// optional, defaults to 1
+ *         .registerMBeans( ManagementFactory.getPlatformMBeanServer() );	// optional
+ *     EndpointIsolation.register( config, isolation );
+ * ```
+ *
+ * or install it using setDefault() to isolate the endpoints of all ConfigurationProviders not registered. Settings must
+ * be set before the isolation is first used. All methods are thread-safe.
+ */
+public class EndpointIsolation {
+
+	public static final long DEFAULT_OPEN_DURATION_MILLIS = 30000;
+
+	private static volatile EndpointIsolation defaultIsolation = new EndpointIsolation();
+
+	// copied on register(), so that forConfig() reads it without locking on each request; weakly referencing the
+	// ConfigurationProviders, so that a registered ConfigurationProvider can still be garbage collected
+	private static final Object registerLock = new Object();
+	private static volatile Registration[] registered = new Registration[0];
+
+	private int maxConcurrentRequests = 0;
+	private long maxWaitNanos = 0;
+	private int failureThreshold = 0;
+	private long openDurationNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_DURATION_MILLIS);
+	private int halfOpenProbes = 1;
+
+	private final ConcurrentMap<String,EndpointGuard> guards = new ConcurrentHashMap<String,EndpointGuard>();
+	private volatile boolean started;
+	private volatile MBeanServer mbeanServer;
+
+	/**
+	 * Returns the library-wide isolation, used for ConfigurationProviders not registered using register().
+	 */
+	public static EndpointIsolation getDefault() {
+		return defaultIsolation;
+	}
+
+	/**
+	 * Installs the given isolation as the library-wide default.
+	 * @return the previous default isolation
+	 */
+	public static EndpointIsolation setDefault( EndpointIsolation isolation ) {
+		if( isolation == null ) {
+			throw new SveaWebPayException("An endpoint isolation must be provided, use new EndpointIsolation() to not isolate endpoints.");
+		}
+		EndpointIsolation previous = defaultIsolation;
+		defaultIsolation = isolation;
+		return previous;
+	}
+
+	/**
+	 * Isolates the endpoints of the given ConfigurationProvider, and of any CachingConfigurationProvider wrapping it, using
+	 * the given isolation. Use null to go back to the default isolation.
+	 */
+	public static void register( ConfigurationProvider config, EndpointIsolation isolation ) {
+		synchronized( registerLock ) {
+			List<Registration> registrations = new ArrayList<Registration>( registered.length + 1 );
+			for( Registration registration : registered ) {
+				ConfigurationProvider registeredConfig = registration.config.get();
+				if( registeredConfig != null && !registeredConfig.equals(config) ) {
+					registrations.add(registration);
+				}
+			}
+			if( isolation != null ) {
+				registrations.add( new Registration(config, isolation) );
+			}
+			registered = registrations.toArray( new Registration[registrations.size()] );
+		}
+	}
+
+	/**
+	 * @return the isolation registered for the ConfigurationProvider, or for the ConfigurationProvider wrapped by it, else the default
+	 */
+	public static EndpointIsolation forConfig( ConfigurationProvider config ) {
+		Registration[] registrations = registered;
+		if( registrations.length > 0 ) {
+			EndpointIsolation isolation = find( registrations, config );
+			if( isolation == null && config instanceof CachingConfigurationProvider ) {
+				isolation = find( registrations, ((CachingConfigurationProvider) config).getDelegate() );
+			}
+			if( isolation != null ) {
+				return isolation;
+			}
+		}
+		return defaultIsolation;
+	}
+
+	private static EndpointIsolation find( Registration[] registrations, ConfigurationProvider config ) {
+		for( Registration registration : registrations ) {
+			ConfigurationProvider registeredConfig = registration.config.get();
+			if( registeredConfig != null && registeredConfig.equals(config) ) {
+				return registration.isolation;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the guard for the endpoint of the ConfigurationProvider, or null if its endpoints are not isolated
+	 */
+	public static EndpointGuard getGuard( ConfigurationProvider config, URL endpoint ) {
+		return forConfig(config).getGuard( endpoint.toString() );
+	}
+
+	/** Optional, maximum number of requests sent to each endpoint at a time, 0 means no limit */
+	public EndpointIsolation setMaxConcurrentRequests( int maxConcurrentRequests ) {
+		assertNotStarted();
+		if( maxConcurrentRequests < 0 ) {
+			throw new SveaWebPayException("Max concurrent requests must not be negative.");
+		}
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		return this;
+	}
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/** Optional, time to wait for one of the maxConcurrentRequests to finish before rejecting a request */
+	public EndpointIsolation setMaxWait( long maxWait, TimeUnit unit ) {
+		assertNotStarted();
+		if( maxWait < 0 ) {
+			throw new SveaWebPayException("Max wait must not be negative.");
+		}
+		this.maxWaitNanos = unit.toNanos(maxWait);
+		return this;
+	}
+	long getMaxWaitNanos() {
+		return maxWaitNanos;
+	}
+
+	/** Optional, number of failures in a row that opens the circuit breaker of an endpoint, 0 means no circuit breaker */
+	public EndpointIsolation setFailureThreshold( int failureThreshold ) {
+		assertNotStarted();
+		if( failureThreshold < 0 ) {
+			throw new SveaWebPayException("Failure threshold must not be negative.");
+		}
+		this.failureThreshold = failureThreshold;
+		return this;
+	}
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/** Optional, time the circuit breaker stays open before probing the endpoint */
+	public EndpointIsolation setOpenDuration( long openDuration, TimeUnit unit ) {
+		assertNotStarted();
+		if( openDuration < 0 ) {
+			throw new SveaWebPayException("Open duration must not be negative.");
+		}
+		this.openDurationNanos = unit.toNanos(openDuration);
+		return this;
+	}
+	long getOpenDurationNanos() {
+		return openDurationNanos;
+	}
+
+	/** Optional, number of requests sent at a time to probe an endpoint while its circuit breaker is half-open */
+	public EndpointIsolation setHalfOpenProbes( int halfOpenProbes ) {
+		assertNotStarted();
+		if( halfOpenProbes < 1 ) {
+			throw new SveaWebPayException("Half-open probes must be at least 1.");
+		}
+		this.halfOpenProbes = halfOpenProbes;
+		return this;
+	}
+	public int getHalfOpenProbes() {
+		return halfOpenProbes;
+	}
+
+	/** @return true if requests are guarded, i.e. if either the concurrent requests are limited or the circuit breaker is used */
+	public boolean isEnabled() {
+		return maxConcurrentRequests > 0 || failureThreshold > 0;
+	}
+
+	/**
+	 * @return the guard for the endpoint url, created on first use, or null if the endpoints are not isolated
+	 */
+	public EndpointGuard getGuard( String endpoint ) {
+		if( !isEnabled() ) {
+			return null;
+		}
+		EndpointGuard guard = guards.get(endpoint);
+		if( guard != null ) {
+			return guard;
+		}
+		started = true;
+		EndpointGuard created = new EndpointGuard( endpoint, this );
+		guard = guards.putIfAbsent( endpoint, created );
+		if( guard != null ) {
+			return guard;
+		}
+		MBeanServer server = mbeanServer;
+		if( server != null ) {
+			register( server, created );
+		}
+		return created;
+	}
+
+	/** @return the guards of the endpoints used so far, in no particular order */
+	public List<EndpointGuard> getGuards() {
+		return new ArrayList<EndpointGuard>( guards.values() );
+	}
+
+	/**
+	 * Registers an MXBean for the guard of each endpoint used so far, and for each endpoint used later.
+	 * @throws SveaWebPayException if the MXBeans can not be registered, i.e. if already registered by another EndpointIsolation
+	 */
+	public EndpointIsolation registerMBeans( MBeanServer server ) {
+		unregisterMBeans();
+		this.mbeanServer = server;
+		for( EndpointGuard guard : guards.values() ) {
+			register( server, guard );
+		}
+		return this;
+	}
+
+	/** Unregisters the MXBeans registered by registerMBeans(), if any */
+	public EndpointIsolation unregisterMBeans() {
+		MBeanServer server = mbeanServer;
+		mbeanServer = null;
+		if( server != null ) {
+			for( EndpointGuard guard : guards.values() ) {
+				try {
+					ObjectName name = getObjectName(guard);
+					if( server.isRegistered(name) ) {
+						server.unregisterMBean(name);
+					}
+				}
+				catch( JMException e ) {
+					// already gone
+				}
+			}
+		}
+		return this;
+	}
+
+	public static ObjectName getObjectName( EndpointGuard guard ) throws JMException {
+		return new ObjectName( InMemoryMetrics.JMX_DOMAIN + ":type=EndpointGuard,endpoint=" + ObjectName.quote(guard.getEndpoint()) );
+	}
+
+	private static void register( MBeanServer server, EndpointGuard guard ) {
+		try {
+			server.registerMBean( guard, getObjectName(guard) );
+		}
+		catch( JMException e ) {
+			throw new SveaWebPayException( "Could not register endpoint guard MXBean for " + guard.getEndpoint(), e );
+		}
+	}
+
+	private static final class Registration {
+		private final WeakReference<ConfigurationProvider> config;
+		private final EndpointIsolation isolation;
+
+		Registration( ConfigurationProvider config, EndpointIsolation isolation ) {
+			this.config = new WeakReference<ConfigurationProvider>(config);
+			this.isolation = isolation;
+		}
+	}
+
+	private void assertNotStarted() {
+		if( started ) {
+			throw new IllegalStateException("EndpointIsolation settings must be set before the isolation is first used");
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request when the EndpointGuard of the endpoint rejects it, i.e. when the circuit breaker is
+ * open, or when the maximum number of concurrent requests to the endpoint are already being sent. The request has not
+ * reached Svea, and is not retried by the ResiliencePolicy.
+ */
+public class EndpointUnavailableException extends IOException {
+
+	private static final long serialVersionUID = -2817263310874533612L;
+
+	private final String endpoint;
+	private final EndpointGuard.STATE state;
+
+	public EndpointUnavailableException( String message, String endpoint, EndpointGuard.STATE state ) {
+		super(message);
+		this.endpoint = endpoint;
+		this.state = state;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/** @return the circuit breaker state when the request was rejected */
+	public EndpointGuard.STATE getState() {
+		return state;
+	}
+}
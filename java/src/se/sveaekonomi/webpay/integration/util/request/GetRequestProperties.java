@@ -5,20 +5,40 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
-
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.WeakHashMap;
 
 import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.config.CachingConfigurationProvider;
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
 
 /**
  * Class to get integration package name and version from manifest file for request versioning
+ * 
+ * The library properties are read from info.properties once, and the integration properties are looked up once per
+ * ConfigurationProvider instance. Use clearCache() if a ConfigurationProvider changes its integration properties.
  */
 public class GetRequestProperties {
+
+	private static volatile HashMap<String,String> libraryPropertiesCache;
+
+	// weak keys, so that a cached ConfigurationProvider can still be garbage collected
+	private static final Map<ConfigurationProvider,RequestProperties> requestPropertiesCache = new WeakHashMap<>();
+	
+	/**
+	 * @return a copy of the library name and version, read from info.properties on the first call
+	 */
+	public static HashMap<String,String> getSveaLibraryProperties() {
+		HashMap<String,String> libraryProperties = libraryPropertiesCache;
+		if( libraryProperties == null ) {
+			libraryProperties = loadSveaLibraryProperties();
+			libraryPropertiesCache = libraryProperties;
+		}
+		return new HashMap<>(libraryProperties);
+	}
        
-	public static HashMap<String,String> getSveaLibraryProperties() {		
+	private static HashMap<String,String> loadSveaLibraryProperties() {		
 		
 		HashMap<String,String> libraryProperties = new HashMap<>();
 		
@@ -60,17 +80,62 @@ public class GetRequestProperties {
 
 	public static HashMap<String, String> getSveaIntegrationProperties( ConfigurationProvider config ) {
 		
+		RequestProperties requestProperties = getRequestProperties( config );
 		HashMap<String,String> integrationProperties = new HashMap<>();
+		integrationProperties.put("integrationcompany", requestProperties.getIntegrationCompany());
+		integrationProperties.put("integrationversion", requestProperties.getIntegrationVersion());				
+		integrationProperties.put("integrationplatform", requestProperties.getIntegrationPlatform());				
+		return integrationProperties;		
+	}
+
+	/**
+	 * Returns the library and integration properties for the given ConfigurationProvider, including the precomputed
+	 * request headers and json comment. The properties are computed on the first call for each ConfigurationProvider.
+	 */
+	public static RequestProperties getRequestProperties( ConfigurationProvider config ) {
+		synchronized( requestPropertiesCache ) {
+			RequestProperties requestProperties = requestPropertiesCache.get(config);
+			if( requestProperties != null ) {
+				return requestProperties;
+			}
+		}
+		RequestProperties requestProperties = createRequestProperties( config );
+		synchronized( requestPropertiesCache ) {
+			requestPropertiesCache.put(config, requestProperties);
+		}
+		return requestProperties;
+	}
+
+	/**
+	 * Forgets all cached library and integration properties, they are read again on the next request.
+	 */
+	public static void clearCache() {
+		libraryPropertiesCache = null;
+		synchronized( requestPropertiesCache ) {
+			requestPropertiesCache.clear();
+		}
+	}
+
+	private static RequestProperties createRequestProperties( ConfigurationProvider config ) {
+		HashMap<String,String> libraryproperties = getSveaLibraryProperties();
+
+		// the integration methods are implemented by the wrapped ConfigurationProvider, if any
+		if( config instanceof CachingConfigurationProvider ) {
+			config = ((CachingConfigurationProvider) config).getDelegate();
+		}
 
 		// get integration platform, version and company from ConfigurationProvider, if implemented, else use default
 		String integrationcompany = getIntegrationMethodIfAvailable(config, "getIntegrationCompany", "Integration company not available");
 		String integrationversion = getIntegrationMethodIfAvailable(config, "getIntegrationVersion", "Integration version not available");
 		String integrationplatform = getIntegrationMethodIfAvailable(config, "getIntegrationPlatform", "Integration platform not available");
-				
-		integrationProperties.put("integrationcompany", integrationcompany);
-		integrationProperties.put("integrationversion", integrationversion);				
-		integrationProperties.put("integrationplatform", integrationplatform);				
-		return integrationProperties;		
+
+		return new RequestProperties(
+				libraryproperties.get("library_name"),
+				libraryproperties.get("library_version"),
+				integrationplatform,
+				integrationcompany,
+				integrationversion
+		);
 	}
 
 	private static String getIntegrationMethodIfAvailable( ConfigurationProvider config, String integrationMethod, String integrationMethodDefaultReturnValue) {
@@ -93,20 +158,6 @@ public class GetRequestProperties {
      * and integration (from config) name, version et al. Used by HostedService requests.
      */
     public static String getLibraryAndPlatformPropertiesAsJson( ConfigurationProvider config ) {
-    	
-		HashMap<String,String> libraryproperties = GetRequestProperties.getSveaLibraryProperties();            
-		HashMap<String,String> integrationproperties = GetRequestProperties.getSveaIntegrationProperties( config );            
-      
-		// write json string in well-defined order, i.e in the order the test suite currently expects it
-		String json = String.format(
-				"{\"X-Svea-Integration-Version\":\"%s\",\"X-Svea-Integration-Platform\":\"%s\",\"X-Svea-Library-Name\":\"%s\",\"X-Svea-Integration-Company\":\"%s\",\"X-Svea-Library-Version\":\"%s\"}", 
-				integrationproperties.get("integrationversion"),
-				integrationproperties.get("integrationplatform"),
-				libraryproperties.get("library_name"),
-				integrationproperties.get("integrationcompany"),
-				libraryproperties.get("library_version")
-			)
-		;		
-		return json;
+		return getRequestProperties( config ).getJson();
     }
 }
\ No newline at end of file
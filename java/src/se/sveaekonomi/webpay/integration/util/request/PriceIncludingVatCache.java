@@ -0,0 +1,170 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which PriceIncludingVat mode Svea accepts for an order, so that DeliverOrderEu and CreditInvoiceRows requests
+ * can be sent with the right mode up front instead of being resent when the webservice answers with result code 50036.
+ *
+ * Entries are learned from accepted CreateOrderEu requests, and from the mode that was accepted after a 50036 flip. When
+ * an invoice order is delivered, the mode is also remembered for the resulting invoice id, which is used when crediting.
+ * The cache holds at most maxEntries entries, evicting the least recently used entry first. All methods are thread-safe.
+ */
+public class PriceIncludingVatCache {
+
+	/** Default maximum number of entries */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private static volatile PriceIncludingVatCache defaultCache = new PriceIncludingVatCache(DEFAULT_MAX_ENTRIES);
+
+	private final Map<Key,Boolean> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong flips = new AtomicLong();
+	private final AtomicLong flipsAfterHit = new AtomicLong();
+
+	/**
+	 * Returns the library-wide cache used by HandleOrder, CreditOrderRowsRequest and WebServicePayment.
+	 */
+	public static PriceIncludingVatCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * Installs the given cache as the library-wide default.
+	 * @return the previous default cache
+	 */
+	public static PriceIncludingVatCache setDefault( PriceIncludingVatCache cache ) {
+		PriceIncludingVatCache previous = defaultCache;
+		defaultCache = cache;
+		return previous;
+	}
+
+	/**
+	 * @param maxEntries -- maximum number of orders and invoices to remember, use 0 to disable the cache
+	 */
+	public PriceIncludingVatCache( final int maxEntries ) {
+		this.entries = new LinkedHashMap<Key,Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = -3946524937458172283L;
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<Key,Boolean> eldest ) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the remembered PriceIncludingVat mode for the order, or null if not known
+	 */
+	public Boolean getForOrder( int clientNumber, long orderId ) {
+		return get( new Key(clientNumber, false, orderId) );
+	}
+
+	/**
+	 * @return the remembered PriceIncludingVat mode for the invoice, or null if not known
+	 */
+	public Boolean getForInvoice( int clientNumber, long invoiceId ) {
+		return get( new Key(clientNumber, true, invoiceId) );
+	}
+
+	public void putForOrder( int clientNumber, long orderId, boolean priceIncludingVat ) {
+		put( new Key(clientNumber, false, orderId), priceIncludingVat );
+	}
+
+	public void putForInvoice( int clientNumber, long invoiceId, boolean priceIncludingVat ) {
+		put( new Key(clientNumber, true, invoiceId), priceIncludingVat );
+	}
+
+	/**
+	 * Records that a request was resent with PriceIncludingVat flipped after a 50036 result code.
+	 * @param afterHit -- true if the first request used a mode taken from this cache
+	 */
+	public void recordFlip( boolean afterHit ) {
+		flips.incrementAndGet();
+		if( afterHit ) {
+			flipsAfterHit.incrementAndGet();
+		}
+	}
+
+	/** @return number of lookups that found a remembered mode */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/** @return number of lookups that found no remembered mode */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/** @return number of requests that still needed a 50036 resend */
+	public long getFlipCount() {
+		return flips.get();
+	}
+
+	/** @return number of requests that needed a 50036 resend although the mode was taken from the cache */
+	public long getFlipAfterHitCount() {
+		return flipsAfterHit.get();
+	}
+
+	public int size() {
+		synchronized( entries ) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized( entries ) {
+			entries.clear();
+		}
+	}
+
+	private Boolean get( Key key ) {
+		Boolean priceIncludingVat;
+		synchronized( entries ) {
+			priceIncludingVat = entries.get(key);
+		}
+		if( priceIncludingVat == null ) {
+			misses.incrementAndGet();
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return priceIncludingVat;
+	}
+
+	private void put( Key key, boolean priceIncludingVat ) {
+		synchronized( entries ) {
+			entries.put(key, priceIncludingVat);
+		}
+	}
+
+	private static final class Key {
+		private final int clientNumber;
+		private final boolean isInvoice;
+		private final long id;
+
+		Key( int clientNumber, boolean isInvoice, long id ) {
+			this.clientNumber = clientNumber;
+			this.isInvoice = isInvoice;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals( Object o ) {
+			if( !(o instanceof Key) ) {
+				return false;
+			}
+			Key other = (Key) o;
+			return clientNumber == other.clientNumber && isInvoice == other.isInvoice && id == other.id;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = 31 * clientNumber + (isInvoice ? 1 : 0);
+			return 31 * result + (int) (id ^ (id >>> 32));
+		}
+	}
+}
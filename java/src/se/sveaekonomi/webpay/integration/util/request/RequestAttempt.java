@@ -0,0 +1,71 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * An attempt of a request raced by the ResiliencePolicy, i.e. a hedged attempt or an attempt with a deadline. The http
+ * request sent by the attempt is registered by SveaHttpClient.execute(), so that a losing or timed out attempt can be
+ * aborted, which closes its connection instead of leaving it to finish in the background.
+ */
+final class RequestAttempt {
+
+	private static final ThreadLocal<RequestAttempt> current = new ThreadLocal<RequestAttempt>();
+
+	private final Thread thread;
+
+	// guarded by this
+	private HttpUriRequest request;
+	private boolean aborted;
+	private boolean active = true;
+	private boolean interrupted;
+
+	/** Starts an attempt on the calling thread */
+	RequestAttempt() {
+		this.thread = Thread.currentThread();
+		current.set(this);
+	}
+
+	/** @return the attempt running on the calling thread, or null */
+	static RequestAttempt getCurrent() {
+		return current.get();
+	}
+
+	/** Registers the http request sent by the attempt, aborting it at once if the attempt has been aborted */
+	synchronized void register( HttpUriRequest request ) {
+		this.request = request;
+		if( aborted ) {
+			request.abort();
+		}
+	}
+
+	/**
+	 * Aborts the http request of the attempt, if any, and interrupts its thread while the attempt is running, so that an
+	 * attempt blocked elsewhere than in the http client returns as well.
+	 */
+	synchronized void abort() {
+		if( aborted ) {
+			return;
+		}
+		aborted = true;
+		if( request != null ) {
+			request.abort();
+		}
+		if( active ) {
+			interrupted = true;
+			thread.interrupt();
+		}
+	}
+
+	/** Ends the attempt on its thread, clearing the interrupt caused by abort(), if any */
+	void end() {
+		current.remove();
+		boolean clear;
+		synchronized( this ) {
+			active = false;
+			clear = interrupted;
+		}
+		if( clear ) {
+			Thread.interrupted();
+		}
+	}
+}
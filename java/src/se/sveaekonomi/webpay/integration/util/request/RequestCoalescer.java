@@ -0,0 +1,198 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+
+/**
+ * Coalesces concurrent identical read-only requests, i.e. GetOrdersRequest and QueryTransactionRequest for the same
+ * order or transaction using the same credentials, so that they share one request to Svea and one parsed response.
+ *
+ * A request for a key that already has a request in progress waits for that request instead of sending its own, and
+ * gets the same response, or the same exception. If a result time to live is set, a response is also returned to
+ * requests for the same key made within that time after it was received. The time to live should be kept short, i.e.
+ * a few hundred milliseconds, as a cached response does not reflect changes made to the order meanwhile. Exceptions
+ * are never kept after the request has finished.
+ *
+ * Use GetOrdersRequest.useCoalescing() or QueryTransactionRequest.useCoalescing() to coalesce a request. Coalesced
+ * responses are shared between callers and should not be modified. All methods are thread-safe.
+ */
+public class RequestCoalescer {
+
+	/** Number of kept responses above which expired responses are removed */
+	private static final int PRUNE_THRESHOLD = 1024;
+
+	private static volatile RequestCoalescer defaultCoalescer = new RequestCoalescer();
+
+	private volatile long resultTimeToLiveNanos = 0;
+
+	private final ConcurrentHashMap<Object,FutureTask<?>> inFlight = new ConcurrentHashMap<Object,FutureTask<?>>();
+	private final ConcurrentHashMap<Object,Result> results = new ConcurrentHashMap<Object,Result>();
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong resultHits = new AtomicLong();
+
+	/**
+	 * Returns the library-wide coalescer used by useCoalescing().
+	 */
+	public static RequestCoalescer getDefault() {
+		return defaultCoalescer;
+	}
+
+	/**
+	 * Installs the given coalescer as the library-wide default.
+	 * @return the previous default coalescer
+	 */
+	public static RequestCoalescer setDefault( RequestCoalescer coalescer ) {
+		if( coalescer == null ) {
+			throw new SveaWebPayException("A request coalescer must be provided.");
+		}
+		RequestCoalescer previous = defaultCoalescer;
+		defaultCoalescer = coalescer;
+		return previous;
+	}
+
+	/** Optional, time a response is returned to later requests for the same key, defaults to 0, i.e. only while in progress */
+	public RequestCoalescer setResultTimeToLive( long resultTimeToLive, TimeUnit unit ) {
+		if( resultTimeToLive < 0 ) {
+			throw new SveaWebPayException("Result time to live must not be negative.");
+		}
+		this.resultTimeToLiveNanos = unit.toNanos(resultTimeToLive);
+		return this;
+	}
+
+	public long getResultTimeToLive( TimeUnit unit ) {
+		return unit.convert( resultTimeToLiveNanos, TimeUnit.NANOSECONDS );
+	}
+
+	/**
+	 * Returns the response for the key, performing the request unless a request for the key is in progress, or a response
+	 * for the key was received within the result time to live.
+	 *
+	 * @param key -- identifies the request, i.e. the operation, credentials and order id, compared using equals(), or null to not coalesce the request
+	 * @param request -- performs the request
+	 * @throws SveaWebPayException as thrown by the request
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute( Object key, final Callable<T> request ) {
+		requests.incrementAndGet();
+		if( key == null ) {
+			return call(request);
+		}
+
+		Result result = results.get(key);
+		if( result != null ) {
+			if( System.nanoTime() - result.receivedAt < resultTimeToLiveNanos ) {
+				resultHits.incrementAndGet();
+				return (T) result.response;
+			}
+			results.remove(key, result);
+		}
+
+		FutureTask<T> task = new FutureTask<T>(request);
+		FutureTask<T> inProgress = (FutureTask<T>) inFlight.putIfAbsent(key, task);
+		if( inProgress == null ) {
+			try {
+				task.run();
+				keep( key, task );
+			}
+			finally {
+				inFlight.remove(key, task);
+			}
+			inProgress = task;
+		}
+		else {
+			coalesced.incrementAndGet();
+		}
+
+		try {
+			return inProgress.get();
+		}
+		catch( ExecutionException e ) {
+			if( e.getCause() instanceof RuntimeException ) {
+				throw (RuntimeException) e.getCause();
+			}
+			if( e.getCause() instanceof Error ) {
+				throw (Error) e.getCause();
+			}
+			throw new SveaWebPayException("Request failed", e.getCause());
+		}
+		catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new SveaWebPayException("Interrupted while waiting for coalesced request", e);
+		}
+	}
+
+	/** Forgets all kept responses */
+	public void clear() {
+		results.clear();
+	}
+
+	/** @return number of requests made through the coalescer */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/** @return number of requests that waited for a request already in progress, instead of sending their own */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/** @return number of requests served a response received within the result time to live */
+	public long getResultHitCount() {
+		return resultHits.get();
+	}
+
+	private static <T> T call( Callable<T> request ) {
+		try {
+			return request.call();
+		}
+		catch( RuntimeException e ) {
+			throw e;
+		}
+		catch( Exception e ) {
+			throw new SveaWebPayException("Request failed", e);
+		}
+	}
+
+	private void keep( Object key, FutureTask<?> task ) {
+		long timeToLive = resultTimeToLiveNanos;
+		if( timeToLive <= 0 ) {
+			return;
+		}
+		Object response;
+		try {
+			response = task.get();
+		}
+		catch( Exception e ) {
+			return;	// failed, exceptions are not kept
+		}
+		long now = System.nanoTime();
+		results.put( key, new Result(response, now) );
+		if( results.size() > PRUNE_THRESHOLD ) {
+			for( Iterator<Map.Entry<Object,Result>> i = results.entrySet().iterator(); i.hasNext(); ) {
+				if( now - i.next().getValue().receivedAt >= timeToLive ) {
+					i.remove();
+				}
+			}
+		}
+	}
+
+	private static final class Result {
+		private final Object response;
+		private final long receivedAt;
+
+		Result( Object response, long receivedAt ) {
+			this.response = response;
+			this.receivedAt = receivedAt;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import javax.xml.soap.MimeHeaders;
+
+/**
+ * Immutable set of the library and integration properties sent with each request, i.e. the X-Svea-* http headers used
+ * by the webservice and admin service requests, and the json comment written to the hosted service request xml.
+ *
+ * Instances are computed once per ConfigurationProvider, use GetRequestProperties.getRequestProperties() to get one.
+ */
+public final class RequestProperties {
+
+	private final String libraryName;
+	private final String libraryVersion;
+	private final String integrationPlatform;
+	private final String integrationCompany;
+	private final String integrationVersion;
+
+	private final String[] headerNames;
+	private final String[] headerValues;
+	private final String json;
+
+	RequestProperties( String libraryName, String libraryVersion, String integrationPlatform, String integrationCompany, String integrationVersion ) {
+		this.libraryName = libraryName;
+		this.libraryVersion = libraryVersion;
+		this.integrationPlatform = integrationPlatform;
+		this.integrationCompany = integrationCompany;
+		this.integrationVersion = integrationVersion;
+
+		this.headerNames = new String[] {
+			"X-Svea-Library-Name",
+			"X-Svea-Library-Version",
+			"X-Svea-Integration-Platform",
+			"X-Svea-Integration-Company",
+			"X-Svea-Integration-Version"
+		};
+		this.headerValues = new String[] {
+			libraryName,
+			libraryVersion,
+			integrationPlatform,
+			integrationCompany,
+			integrationVersion
+		};
+
+		// write json string in well-defined order, i.e in the order the test suite currently expects it
+		this.json = String.format(
+				"{\"X-Svea-Integration-Version\":\"%s\",\"X-Svea-Integration-Platform\":\"%s\",\"X-Svea-Library-Name\":\"%s\",\"X-Svea-Integration-Company\":\"%s\",\"X-Svea-Library-Version\":\"%s\"}",
+				integrationVersion,
+				integrationPlatform,
+				libraryName,
+				integrationCompany,
+				libraryVersion
+			)
+		;
+	}
+
+	public String getLibraryName() {
+		return libraryName;
+	}
+
+	public String getLibraryVersion() {
+		return libraryVersion;
+	}
+
+	public String getIntegrationPlatform() {
+		return integrationPlatform;
+	}
+
+	public String getIntegrationCompany() {
+		return integrationCompany;
+	}
+
+	public String getIntegrationVersion() {
+		return integrationVersion;
+	}
+
+	/**
+	 * Adds the X-Svea-Library-* and X-Svea-Integration-* headers to the given SOAP message headers.
+	 */
+	public void addHeaders( MimeHeaders headers ) {
+		for( int i = 0; i < headerNames.length; i++ ) {
+			headers.addHeader( headerNames[i], headerValues[i] );
+		}
+	}
+
+	/**
+	 * @return json string containing the library and integration name, version et al. Used by HostedService requests.
+	 */
+	public String getJson() {
+		return json;
+	}
+}
@@ -0,0 +1,498 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.HttpResponseException;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.metrics.Histogram;
+
+/**
+ * Retries, hedges and bounds the time of read-only requests, i.e. GetOrdersRequest, QueryTransactionRequest, GetAddresses
+ * and GetPaymentPlanParams, which use the default policy unless another policy is given to their useResiliencePolicy().
+ * Requests that create or change orders and transactions never use a policy, as sending them twice is not safe.
+ *
+ * - Retries: a request failing with a transient error, i.e. an IOException such as a connection reset or timeout, or an
+ *   http 5xx, 408 or 429 status, is sent again up to maxRetries times, waiting a random time between 0 and the backoff
+ *   before each retry. The backoff starts at initialBackoff and doubles for each retry, up to maxBackoff.
+ * - Hedging: if a hedge percentile is set, a second request is sent when the first has not answered within that
+ *   percentile of the latencies seen for the operation, and the first answer is used. No second request is sent until
+ *   hedgeMinimumSamples latencies have been seen, and never before hedgeMinimumDelay.
+ * - Deadline: if set, the request fails with a SveaWebPayException caused by a TimeoutException once the deadline has
+ *   passed, counting all attempts and backoffs.
+ *
+ * The first attempt is always sent on the calling thread. Hedged attempts are sent on a pool of daemon threads owned by
+ * the library, never on the SveaRequestExecutor, so that they do not queue behind the doRequestAsync() requests that they
+ * hedge. Attempts that lose to a hedged attempt, or pass the deadline, are aborted, which closes their connection. Each
+ * attempt is reported to the MetricsListener as a request of its own. Configure a policy before sharing it, using it is
+ * thread-safe.
+ */
+public class ResiliencePolicy {
+
+	public static final int DEFAULT_MAX_RETRIES = 2;
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+	public static final int DEFAULT_HEDGE_MINIMUM_SAMPLES = 20;
+
+	private static volatile ResiliencePolicy defaultPolicy = new ResiliencePolicy();
+
+	// timer starting hedged attempts and ending attempts at the deadline, and pool running the hedged attempts, created on first use
+	private static final Object poolLock = new Object();
+	private static ScheduledExecutorService timer;
+	private static ExecutorService hedgeExecutor;
+
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF_MILLIS);
+	private long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MILLIS);
+	private double hedgePercentile = 0;	// 0 disables hedging
+	private int hedgeMinimumSamples = DEFAULT_HEDGE_MINIMUM_SAMPLES;
+	private long hedgeMinimumDelayNanos = 0;
+	private long deadlineNanos = 0;		// 0 means no deadline
+	private ExecutorService executor;
+
+	// latencies of successful attempts per operation, used to pick the hedge delay
+	private final ConcurrentMap<String,Histogram> latencies = new ConcurrentHashMap<String,Histogram>();
+
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong deadlinesExceeded = new AtomicLong();
+
+	/**
+	 * Returns the library-wide policy used by the read-only requests.
+	 */
+	public static ResiliencePolicy getDefault() {
+		return defaultPolicy;
+	}
+
+	/**
+	 * Installs the given policy as the library-wide default, use none() to send read-only requests once.
+	 * @return the previous default policy
+	 */
+	public static ResiliencePolicy setDefault( ResiliencePolicy policy ) {
+		if( policy == null ) {
+			throw new SveaWebPayException("A resilience policy must be provided, use ResiliencePolicy.none() to disable retries.");
+		}
+		ResiliencePolicy previous = defaultPolicy;
+		defaultPolicy = policy;
+		return previous;
+	}
+
+	/**
+	 * @return a policy that sends requests once, without hedging or deadline
+	 */
+	public static ResiliencePolicy none() {
+		return new ResiliencePolicy().setMaxRetries(0);
+	}
+
+	/** Sets the number of times a request failing with a transient error is sent again, defaults to DEFAULT_MAX_RETRIES */
+	public ResiliencePolicy setMaxRetries( int maxRetries ) {
+		if( maxRetries < 0 ) {
+			throw new SveaWebPayException("Max retries must not be negative.");
+		}
+		this.maxRetries = maxRetries;
+		return this;
+	}
+
+	/** Sets the backoff before the first retry, and the largest backoff, defaults to DEFAULT_INITIAL_BACKOFF_MILLIS and DEFAULT_MAX_BACKOFF_MILLIS */
+	public ResiliencePolicy setBackoff( long initialBackoff, long maxBackoff, TimeUnit unit ) {
+		if( initialBackoff < 0 || maxBackoff < initialBackoff ) {
+			throw new SveaWebPayException("Backoff must not be negative, and max backoff must not be less than initial backoff.");
+		}
+		this.initialBackoffNanos = unit.toNanos(initialBackoff);
+		this.maxBackoffNanos = unit.toNanos(maxBackoff);
+		return this;
+	}
+
+	/**
+	 * Sends a second request when the first has not answered within the given percentile of the latencies seen, i.e. 95.
+	 * Use 0 to disable hedging, which is the default.
+	 */
+	public ResiliencePolicy setHedgePercentile( double hedgePercentile ) {
+		if( hedgePercentile < 0 || hedgePercentile >= 100 ) {
+			throw new SveaWebPayException("Hedge percentile must be at least 0 and less than 100.");
+		}
+		this.hedgePercentile = hedgePercentile;
+		return this;
+	}
+
+	/** Sets the number of latencies seen for an operation before hedging it, defaults to DEFAULT_HEDGE_MINIMUM_SAMPLES */
+	public ResiliencePolicy setHedgeMinimumSamples( int hedgeMinimumSamples ) {
+		if( hedgeMinimumSamples < 1 ) {
+			throw new SveaWebPayException("Hedge minimum samples must be at least 1.");
+		}
+		this.hedgeMinimumSamples = hedgeMinimumSamples;
+		return this;
+	}
+
+	/** Sets the shortest time to wait before sending a second request, defaults to 0 */
+	public ResiliencePolicy setHedgeMinimumDelay( long hedgeMinimumDelay, TimeUnit unit ) {
+		if( hedgeMinimumDelay < 0 ) {
+			throw new SveaWebPayException("Hedge minimum delay must not be negative.");
+		}
+		this.hedgeMinimumDelayNanos = unit.toNanos(hedgeMinimumDelay);
+		return this;
+	}
+
+	/** Sets the time after which the request fails, counting all attempts, use 0 for no deadline, which is the default */
+	public ResiliencePolicy setDeadline( long deadline, TimeUnit unit ) {
+		if( deadline < 0 ) {
+			throw new SveaWebPayException("Deadline must not be negative.");
+		}
+		this.deadlineNanos = unit.toNanos(deadline);
+		return this;
+	}
+
+	/**
+	 * Sends hedged attempts on the given executor instead of the pool owned by the library. The executor must not be the
+	 * one running the requests, i.e. the SveaRequestExecutor, or hedged attempts may wait behind the requests they hedge.
+	 */
+	public ResiliencePolicy setExecutor( ExecutorService executor ) {
+		this.executor = executor;
+		return this;
+	}
+
+	/** @return the number of retries sent */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/** @return the number of hedged second requests sent */
+	public long getHedges() {
+		return hedges.get();
+	}
+
+	/** @return the number of requests failed by the deadline */
+	public long getDeadlinesExceeded() {
+		return deadlinesExceeded.get();
+	}
+
+	/**
+	 * Performs the request according to the policy.
+	 * @param operation -- the name of the operation, used to keep the latencies used for hedging
+	 * @param request -- performs a single attempt, and may be called more than once, and concurrently if hedging
+	 * @throws SveaWebPayException if the deadline passes, or as thrown by the last attempt
+	 */
+	public <T> T execute( String operation, Callable<T> request ) {
+		long start = System.nanoTime();
+		long deadline = (deadlineNanos > 0) ? start + deadlineNanos : Long.MAX_VALUE;
+		boolean async = deadlineNanos > 0 || hedgePercentile > 0;
+
+		for( int attempt = 0; ; attempt++ ) {
+			try {
+				return async ? attemptRace(operation, request, deadline) : attempt(operation, request);
+			}
+			catch( RuntimeException e ) {
+				if( attempt >= maxRetries || !isRetryable(e) ) {
+					throw e;
+				}
+				long backoff = getBackoffNanos(attempt);
+				if( System.nanoTime() + backoff >= deadline ) {
+					throw e;	// no time left for another attempt
+				}
+				try {
+					TimeUnit.NANOSECONDS.sleep(backoff);
+				}
+				catch( InterruptedException ie ) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+				retries.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the failure is transient, i.e. caused by an IOException other than an http 4xx status except 408 and 429,
+	 * or an EndpointUnavailableException
+	 */
+	protected boolean isRetryable( Throwable failure ) {
+		for( Throwable cause = failure; cause != null; cause = cause.getCause() ) {
+			if( cause instanceof EndpointUnavailableException ) {
+				return false;	// rejected by the EndpointGuard without being sent
+			}
+			if( cause instanceof HttpResponseException ) {
+				int status = ((HttpResponseException) cause).getStatusCode();
+				return status >= 500 || status == 408 || status == 429;
+			}
+			if( cause instanceof IOException ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return a random backoff between 0 and the backoff for the retry, i.e. "full jitter" */
+	long getBackoffNanos( int retry ) {
+		long backoff = initialBackoffNanos << Math.min(retry, 30);
+		if( backoff < initialBackoffNanos || backoff > maxBackoffNanos ) {
+			backoff = maxBackoffNanos;
+		}
+		return (backoff == 0) ? 0 : ThreadLocalRandom.current().nextLong(backoff + 1);
+	}
+
+	/** @return the time to wait before hedging the operation, or -1 if not hedging */
+	long getHedgeDelayNanos( String operation ) {
+		if( hedgePercentile <= 0 ) {
+			return -1;
+		}
+		Histogram histogram = latencies.get(operation);
+		if( histogram == null || histogram.getCount() < hedgeMinimumSamples ) {
+			return -1;
+		}
+		return Math.max( hedgeMinimumDelayNanos, histogram.getValueAtPercentile(hedgePercentile) );
+	}
+
+	private <T> T attempt( String operation, Callable<T> request ) {
+		long start = System.nanoTime();
+		T response;
+		try {
+			response = request.call();
+		}
+		catch( RuntimeException e ) {
+			throw e;
+		}
+		catch( Exception e ) {
+			throw new SveaWebPayException( operation + ": request failed", e );
+		}
+		getLatencies(operation).record( System.nanoTime() - start );
+		return response;
+	}
+
+	/**
+	 * Races the first attempt, on the calling thread, against a hedged attempt started on the hedge executor after the
+	 * hedge delay, and against the deadline. The first successful attempt wins, and the other attempts are aborted.
+	 */
+	private <T> T attemptRace( final String operation, final Callable<T> request, long deadline ) {
+		final Race<T> race = new Race<T>();
+		ScheduledFuture<?> hedgeTimer = null;
+		ScheduledFuture<?> deadlineTimer = null;
+
+		long hedgeDelay = getHedgeDelayNanos(operation);
+		if( hedgeDelay >= 0 ) {
+			hedgeTimer = getTimer().schedule( new Runnable() {
+				@Override
+				public void run() {
+					startHedge( operation, request, race );
+				}
+			}, hedgeDelay, TimeUnit.NANOSECONDS );
+		}
+		if( deadline != Long.MAX_VALUE ) {
+			deadlineTimer = getTimer().schedule( new Runnable() {
+				@Override
+				public void run() {
+					race.timeout( deadlinesExceeded );
+				}
+			}, deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+		}
+
+		try {
+			runAttempt( operation, request, race );
+			return race.await( operation, deadlineNanos );
+		}
+		finally {
+			if( hedgeTimer != null ) {
+				hedgeTimer.cancel(false);
+			}
+			if( deadlineTimer != null ) {
+				deadlineTimer.cancel(false);
+			}
+		}
+	}
+
+	private <T> void startHedge( final String operation, final Callable<T> request, final Race<T> race ) {
+		if( !race.isHedgeAllowed() ) {
+			return;
+		}
+		ExecutorService pool = (executor != null) ? executor : getHedgeExecutor();
+		hedges.incrementAndGet();	// counted before starting, as the hedge may answer before execute() returns
+		try {
+			pool.execute( new Runnable() {
+				@Override
+				public void run() {
+					runAttempt( operation, request, race );
+				}
+			});
+		}
+		catch( RejectedExecutionException e ) {
+			hedges.decrementAndGet();	// executor shut down, the first attempt is left to answer
+		}
+	}
+
+	private <T> void runAttempt( String operation, Callable<T> request, Race<T> race ) {
+		RequestAttempt attempt = race.begin();
+		if( attempt == null ) {
+			return;	// race already over
+		}
+		try {
+			race.succeeded( attempt, attempt(operation, request) );
+		}
+		catch( RuntimeException e ) {
+			race.failed( attempt, e );
+		}
+		finally {
+			attempt.end();
+		}
+	}
+
+	private static ScheduledExecutorService getTimer() {
+		synchronized( poolLock ) {
+			if( timer == null ) {
+				ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor( 1, new DaemonThreadFactory("sveawebpay-resilience-timer-") );
+				created.setRemoveOnCancelPolicy(true);
+				timer = created;
+			}
+			return timer;
+		}
+	}
+
+	// a pool of its own, so that hedged attempts never wait behind the requests they hedge, i.e. doRequestAsync() requests
+	// queued on the SveaRequestExecutor
+	private static ExecutorService getHedgeExecutor() {
+		synchronized( poolLock ) {
+			if( hedgeExecutor == null ) {
+				hedgeExecutor = new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+						new SynchronousQueue<Runnable>(), new DaemonThreadFactory("sveawebpay-hedge-") );
+			}
+			return hedgeExecutor;
+		}
+	}
+
+	private Histogram getLatencies( String operation ) {
+		Histogram histogram = latencies.get(operation);
+		if( histogram == null ) {
+			latencies.putIfAbsent( operation, new Histogram() );
+			histogram = latencies.get(operation);
+		}
+		return histogram;
+	}
+
+	/**
+	 * State shared by the attempts of a race. Once over, the race holds the response of the winning attempt, or the
+	 * failure of the last failed attempt, or the timeout.
+	 */
+	private static final class Race<T> {
+		private final List<RequestAttempt> attempts = new ArrayList<RequestAttempt>(2);
+		private int running;
+		private boolean hedgeAllowed = true;
+		private boolean over;
+		private boolean succeeded;
+		private boolean timedOut;
+		private T response;
+		private RuntimeException failure;
+
+		/** @return a new attempt on the calling thread, or null if the race is over */
+		synchronized RequestAttempt begin() {
+			if( over || (running > 0 && !hedgeAllowed) ) {
+				return null;
+			}
+			RequestAttempt attempt = new RequestAttempt();
+			attempts.add(attempt);
+			running++;
+			return attempt;
+		}
+
+		synchronized boolean isHedgeAllowed() {
+			return !over && hedgeAllowed;
+		}
+
+		synchronized void succeeded( RequestAttempt winner, T response ) {
+			running--;
+			if( over ) {
+				return;
+			}
+			this.response = response;
+			this.succeeded = true;
+			end(winner);
+		}
+
+		synchronized void failed( RequestAttempt attempt, RuntimeException e ) {
+			running--;
+			if( over ) {
+				return;
+			}
+			failure = e;
+			hedgeAllowed = false;	// a failed attempt is retried, not hedged
+			if( running == 0 ) {
+				end(null);
+			}
+		}
+
+		/** Times out the race unless already over, counting the timeout before the waiting caller is woken */
+		synchronized void timeout( AtomicLong deadlinesExceeded ) {
+			if( over ) {
+				return;
+			}
+			deadlinesExceeded.incrementAndGet();
+			timedOut = true;
+			end(null);
+		}
+
+		T await( String operation, long deadlineNanos ) {
+			synchronized( this ) {
+				try {
+					while( !over ) {
+						wait();
+					}
+				}
+				catch( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					end(null);
+					throw new SveaWebPayException( operation + ": interrupted", e );
+				}
+				if( succeeded ) {
+					return response;
+				}
+				if( timedOut ) {
+					throw new SveaWebPayException( operation + ": deadline of " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos) + " ms exceeded",
+						new TimeoutException() );
+				}
+				throw failure;
+			}
+		}
+
+		// called holding the lock
+		private void end( RequestAttempt winner ) {
+			over = true;
+			for( RequestAttempt attempt : attempts ) {
+				if( attempt != winner ) {
+					attempt.abort();
+				}
+			}
+			notifyAll();
+		}
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory( String prefix ) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread( Runnable r ) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
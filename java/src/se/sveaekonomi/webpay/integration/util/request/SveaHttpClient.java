@@ -0,0 +1,369 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+
+/**
+ * Shared, thread-safe pooled http transport used for all requests to Svea.
+ *
+ * By default a single library-wide instance is created on first use, see getDefault(). A long-running
+ * service that wants to control the transport lifecycle may instead create its own instance, install it
+ * using setDefault(), and close() it on shutdown.
+ *
+ * ...
+ *     SveaHttpClient client = new SveaHttpClient()
+ *         .setMaxTotalConnections(100)	// optional, defaults to 50
+ *         .setMaxConnectionsPerRoute(50)	// optional, defaults to 20
+ *         .setConnectTimeout(5000)		// optional, milliseconds, defaults to 10000
+ *         .setReadTimeout(30000)		// optional, milliseconds, defaults to 60000
+ *     ;
+ *     SveaHttpClient.setDefault(client);
+ *     ...
+ *     client.close();
+ * ...
+ */
+public class SveaHttpClient implements Closeable {
+
+	private static final Object defaultLock = new Object();
+	private static volatile SveaHttpClient defaultClient;
+
+	private int maxTotalConnections = 50;
+	private int maxConnectionsPerRoute = 20;
+	private int connectTimeout = 10000;
+	private int readTimeout = 60000;
+	private int connectionRequestTimeout = 10000;
+	private long keepAlive = 30000;
+	private long idleConnectionTimeout = 30000;
+	private long idleConnectionEvictionInterval = 5000;
+
+	private volatile CloseableHttpClient client;
+	private PoolingHttpClientConnectionManager connectionManager;
+	private ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	/**
+	 * Returns the library-wide default client, creating it on first use.
+	 */
+	public static SveaHttpClient getDefault() {
+		SveaHttpClient current = defaultClient;
+		if( current == null || current.isClosed() ) {
+			synchronized( defaultLock ) {
+				current = defaultClient;
+				if( current == null || current.isClosed() ) {
+					current = new SveaHttpClient();
+					defaultClient = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Installs the given client as the library-wide default. The caller owns the client and is responsible for closing it.
+	 * @return the previous default client, or null if none had been created
+	 */
+	public static SveaHttpClient setDefault( SveaHttpClient client ) {
+		synchronized( defaultLock ) {
+			SveaHttpClient previous = defaultClient;
+			defaultClient = client;
+			return previous;
+		}
+	}
+
+	/** Optional, maximum number of pooled connections in total */
+	public SveaHttpClient setMaxTotalConnections( int maxTotalConnections ) {
+		assertNotStarted();
+		this.maxTotalConnections = maxTotalConnections;
+		return this;
+	}
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	/** Optional, maximum number of pooled connections per endpoint host */
+	public SveaHttpClient setMaxConnectionsPerRoute( int maxConnectionsPerRoute ) {
+		assertNotStarted();
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		return this;
+	}
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/** Optional, connect timeout in milliseconds, 0 means no timeout */
+	public SveaHttpClient setConnectTimeout( int connectTimeout ) {
+		assertNotStarted();
+		this.connectTimeout = connectTimeout;
+		return this;
+	}
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/** Optional, read (socket) timeout in milliseconds, 0 means no timeout */
+	public SveaHttpClient setReadTimeout( int readTimeout ) {
+		assertNotStarted();
+		this.readTimeout = readTimeout;
+		return this;
+	}
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/** Optional, max time in milliseconds to wait for a free pooled connection */
+	public SveaHttpClient setConnectionRequestTimeout( int connectionRequestTimeout ) {
+		assertNotStarted();
+		this.connectionRequestTimeout = connectionRequestTimeout;
+		return this;
+	}
+	public int getConnectionRequestTimeout() {
+		return connectionRequestTimeout;
+	}
+
+	/** Optional, keep-alive in milliseconds used when the server does not send a Keep-Alive timeout */
+	public SveaHttpClient setKeepAlive( long keepAlive ) {
+		assertNotStarted();
+		this.keepAlive = keepAlive;
+		return this;
+	}
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	/** Optional, pooled connections idle for longer than this (milliseconds) are evicted */
+	public SveaHttpClient setIdleConnectionTimeout( long idleConnectionTimeout ) {
+		assertNotStarted();
+		this.idleConnectionTimeout = idleConnectionTimeout;
+		return this;
+	}
+	public long getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	/** Optional, how often (milliseconds) the pool is checked for expired and idle connections */
+	public SveaHttpClient setIdleConnectionEvictionInterval( long idleConnectionEvictionInterval ) {
+		assertNotStarted();
+		this.idleConnectionEvictionInterval = idleConnectionEvictionInterval;
+		return this;
+	}
+	public long getIdleConnectionEvictionInterval() {
+		return idleConnectionEvictionInterval;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns the underlying pooled http client, building it on first use.
+	 */
+	public CloseableHttpClient getHttpClient() {
+		CloseableHttpClient current = client;
+		if( current == null ) {
+			synchronized( this ) {
+				if( closed ) {
+					throw new IllegalStateException("SveaHttpClient has been closed");
+				}
+				current = client;
+				if( current == null ) {
+					current = build();
+					client = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private CloseableHttpClient build() {
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxTotalConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+			.setConnectTimeout(connectTimeout)
+			.setSocketTimeout(readTimeout)
+			.setConnectionRequestTimeout(connectionRequestTimeout)
+			.setStaleConnectionCheckEnabled(true)
+			.build()
+		;
+
+		// honour the server Keep-Alive header if present, else fall back to our configured keep-alive
+		ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration( HttpResponse response, HttpContext context ) {
+				long duration = super.getKeepAliveDuration(response, context);
+				return (duration > 0) ? duration : keepAlive;
+			}
+		};
+
+		evictor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread t = new Thread(r, "sveawebpay-idle-connection-evictor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		final PoolingHttpClientConnectionManager cm = connectionManager;
+		evictor.scheduleWithFixedDelay( new Runnable() {
+			@Override
+			public void run() {
+				cm.closeExpiredConnections();
+				cm.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+			}
+		}, idleConnectionEvictionInterval, idleConnectionEvictionInterval, TimeUnit.MILLISECONDS);
+
+		return HttpClients.custom()
+			.setConnectionManager(connectionManager)
+			.setDefaultRequestConfig(requestConfig)
+			.setKeepAliveStrategy(keepAliveStrategy)
+			.build()
+		;
+	}
+
+	/**
+	 * Posts the given fields url-encoded to endpoint and returns the response body as a string.
+	 */
+	public String postForm( String endpoint, List<NameValuePair> params ) throws IOException {
+		return postForm( endpoint, params, null );
+	}
+
+	/**
+	 * As postForm(endpoint, params), also recording the serialize and network time and the payload sizes to the timer.
+	 * @param timer -- timer of the request, or null
+	 */
+	public String postForm( String endpoint, List<NameValuePair> params, RequestTimer timer ) throws IOException {
+		return postForm( endpoint, params, timer, null );
+	}
+
+	/**
+	 * As postForm(endpoint, params, timer), sending the request through the guard of the endpoint.
+	 * @param guard -- guard of the endpoint, or null
+	 * @throws EndpointUnavailableException if the guard rejects the request
+	 */
+	public String postForm( String endpoint, List<NameValuePair> params, RequestTimer timer, EndpointGuard guard ) throws IOException {
+		if( timer != null ) {
+			timer.enter(Phase.SERIALIZE);
+		}
+		HttpPost post = new HttpPost(endpoint);
+		UrlEncodedFormEntity entity = new UrlEncodedFormEntity(params);
+		post.setEntity( entity );
+		if( timer != null ) {
+			timer.addBytesOut( entity.getContentLength() );
+			timer.enter(Phase.NETWORK);
+		}
+		return execute(post, new StringResponseHandler(timer), guard);
+	}
+
+	/**
+	 * Executes the request using the pooled http client, through the guard of the endpoint if given.
+	 * @param guard -- guard of the endpoint, or null
+	 * @throws EndpointUnavailableException if the guard rejects the request
+	 */
+	public <T> T execute( HttpUriRequest request, ResponseHandler<T> handler, EndpointGuard guard ) throws IOException {
+		RequestAttempt attempt = RequestAttempt.getCurrent();
+		if( attempt != null ) {
+			attempt.register(request);	// aborted by the ResiliencePolicy if the attempt loses a hedge race or passes the deadline
+		}
+		CloseableHttpClient httpClient = getHttpClient();
+		return (guard == null) ? httpClient.execute(request, handler) : guard.execute(httpClient, request, handler);
+	}
+
+	/**
+	 * Closes all pooled connections and stops the idle connection evictor. A closed client can not be reused.
+	 */
+	@Override
+	public void close() throws IOException {
+		CloseableHttpClient toClose;
+		synchronized( this ) {
+			if( closed ) {
+				return;
+			}
+			closed = true;
+			toClose = client;
+			client = null;
+			if( evictor != null ) {
+				evictor.shutdownNow();
+			}
+		}
+		if( toClose != null ) {
+			toClose.close();	// also shuts down the connection manager
+		}
+	}
+
+	private void assertNotStarted() {
+		if( client != null || closed ) {
+			throw new IllegalStateException("SveaHttpClient settings must be set before the client is first used");
+		}
+	}
+
+	/**
+	 * Parses the HttpClient request response from Svea, returning the service xml response as a string
+	 */
+	private static final class StringResponseHandler implements ResponseHandler<String> {
+
+		private final RequestTimer timer;
+
+		StringResponseHandler( RequestTimer timer ) {
+			this.timer = timer;
+		}
+
+		@Override
+		public String handleResponse( final HttpResponse response ) throws IOException {
+			StatusLine statusLine = response.getStatusLine();
+			HttpEntity entity = response.getEntity();
+
+			if( statusLine.getStatusCode() >= 300 ) {
+				throw new HttpResponseException( statusLine.getStatusCode(), statusLine.getReasonPhrase() );
+			}
+			if( entity == null ) {
+				throw new ClientProtocolException("Response contains no content");
+			}
+
+			// fully consumes the entity so that the connection is returned to the pool
+			byte[] body = EntityUtils.toByteArray(entity);
+			if( timer != null ) {
+				timer.addBytesIn( body.length );
+				timer.enter(Phase.PARSE);
+			}
+
+			BufferedReader br = new BufferedReader( new InputStreamReader(new ByteArrayInputStream(body), "UTF-8") );
+			StringBuilder sb = new StringBuilder();
+			String line = "";
+			while ((line = br.readLine()) != null) {
+				sb.append(line);
+			}
+			return sb.toString();
+		}
+	}
+}
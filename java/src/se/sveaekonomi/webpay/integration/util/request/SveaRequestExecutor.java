@@ -0,0 +1,91 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor used by the doRequestAsync() methods to run requests in the background.
+ *
+ * On a JVM with virtual threads, each request runs on its own virtual thread, so a single service
+ * instance may keep hundreds of requests in flight. On older JVMs a bounded pool of daemon threads
+ * is used instead. Use setDefault() to provide your own ExecutorService, i.e. to size the pool or to
+ * integrate with an application managed executor.
+ */
+public class SveaRequestExecutor {
+
+	/** Size of the fallback pool used when virtual threads are not available */
+	public static final int DEFAULT_POOL_SIZE = 64;
+
+	private static final Object defaultLock = new Object();
+	private static volatile ExecutorService defaultExecutor;
+
+	/**
+	 * Returns the library-wide executor, creating it on first use.
+	 */
+	public static ExecutorService getDefault() {
+		ExecutorService current = defaultExecutor;
+		if( current == null || current.isShutdown() ) {
+			synchronized( defaultLock ) {
+				current = defaultExecutor;
+				if( current == null || current.isShutdown() ) {
+					current = createDefaultExecutor();
+					defaultExecutor = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Installs the given executor as the library-wide default. The caller owns the executor and is responsible for shutting it down.
+	 * @return the previous default executor, or null if none had been created
+	 */
+	public static ExecutorService setDefault( ExecutorService executor ) {
+		synchronized( defaultLock ) {
+			ExecutorService previous = defaultExecutor;
+			defaultExecutor = executor;
+			return previous;
+		}
+	}
+
+	/**
+	 * Runs the given request on the default executor.
+	 */
+	public static <T> Future<T> submit( Callable<T> request ) {
+		return getDefault().submit(request);
+	}
+
+	private static ExecutorService createDefaultExecutor() {
+		// use Executors.newVirtualThreadPerTaskExecutor() if running on a JVM that supports virtual threads
+		try {
+			Method newVirtualThreadPerTaskExecutor = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		}
+		catch( Exception e ) {
+			// not available, fall back to a bounded pool of daemon threads
+		}
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, 60L, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override
+				public Thread newThread( Runnable r ) {
+					Thread t = new Thread(r, "sveawebpay-request-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
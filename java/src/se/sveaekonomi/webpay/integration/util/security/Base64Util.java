@@ -1,11 +1,53 @@
 package se.sveaekonomi.webpay.integration.util.security;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 public abstract class Base64Util {
     
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    
+    // maps ascii characters to their 6-bit value, or -1 for characters that are not part of the base64 alphabet
+    private static final byte[] DECODE_TABLE = new byte[128];
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            DECODE_TABLE[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+    
+    // decodes in one pass, skipping whitespace, line breaks, padding and other characters outside of the alphabet as
+    // DatatypeConverter.parseBase64Binary() does, so that the message need not be copied by removeWhitespace() first
     private static byte[] decode(String msg) {
-        return javax.xml.bind.DatatypeConverter.parseBase64Binary(removeWhitespace(msg));
+        int length = msg.length();
+        byte[] decoded = new byte[length / 4 * 3 + 3];
+        int position = 0;
+        int bits = 0;
+        int count = 0;
+        
+        for (int i = 0; i < length; i++) {
+            char c = msg.charAt(i);
+            int value = (c < 128) ? DECODE_TABLE[c] : -1;
+            if (value < 0) {
+                continue;
+            }
+            bits = (bits << 6) | value;
+            if (++count == 4) {
+                decoded[position++] = (byte) (bits >> 16);
+                decoded[position++] = (byte) (bits >> 8);
+                decoded[position++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 2) {
+            decoded[position++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            decoded[position++] = (byte) (bits >> 10);
+            decoded[position++] = (byte) (bits >> 2);
+        }
+        
+        return (position == decoded.length) ? decoded : Arrays.copyOf(decoded, position);
     }
     
     private static String encodeAsString(byte[] msg) {
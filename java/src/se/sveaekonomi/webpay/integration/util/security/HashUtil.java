@@ -4,24 +4,56 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class HashUtil {
-    
+
     public enum HASHALGORITHM {
         MD2, MD5, SHA1, SHA_256, SHA_384, SHA_512
     };
-    
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // MessageDigest instances are not thread-safe, and getInstance() looks up the provider on each call, so keep one per algorithm and thread
+    private static final ThreadLocal<MessageDigest[]> digests = new ThreadLocal<MessageDigest[]>() {
+        @Override
+        protected MessageDigest[] initialValue() {
+            return new MessageDigest[HASHALGORITHM.values().length];
+        }
+    };
+
     public static String createHash(String inputString, HASHALGORITHM algorithm) {
-        String hash = null;
-        MessageDigest digest;
-        
-        try {
-            digest = MessageDigest.getInstance(algorithm.toString().replaceAll("_", "-"));
-            digest.reset();
-            byte[] hashBytes = digest.digest(inputString.getBytes());
-            hash = javax.xml.bind.DatatypeConverter.printHexBinary(hashBytes).toLowerCase();
-        } catch (NoSuchAlgorithmException e) {
-            // ignore
+        MessageDigest digest = getDigest(algorithm);
+        if (digest == null) {
+            return null;
+        }
+        return toHex(digest.digest(inputString.getBytes()));
+    }
+
+    /**
+     * @return a reset MessageDigest for the algorithm, owned by the calling thread, or null if the algorithm is not available
+     */
+    static MessageDigest getDigest(HASHALGORITHM algorithm) {
+        MessageDigest[] threadDigests = digests.get();
+        MessageDigest digest = threadDigests[algorithm.ordinal()];
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(algorithm.toString().replace('_', '-'));
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+            threadDigests[algorithm.ordinal()] = digest;
+        }
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * @return the bytes as lower case hex digits
+     */
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
         }
-        
-        return hash;
+        return new String(hex);
     }
 }
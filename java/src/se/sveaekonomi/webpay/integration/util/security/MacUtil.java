@@ -0,0 +1,88 @@
+package se.sveaekonomi.webpay.integration.util.security;
+
+import java.security.MessageDigest;
+
+import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+
+/**
+ * Creates and validates the SHA-512 mac sent with hosted service messages, i.e. the hash of the base64 encoded message
+ * followed by the secret word, as HashUtil.createHash(messageBase64 + secretWord, HASHALGORITHM.SHA_512).
+ *
+ * The message and secret word are fed to a per-thread digest one after another, without building the concatenated
+ * string, and macs are compared in constant time, so that validating a callback does not reveal how much of a forged
+ * mac was correct.
+ */
+public final class MacUtil {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // per-thread buffer used to pass ascii characters, i.e. base64 encoded messages, to the digest without encoding them
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private MacUtil() {
+    }
+
+    /**
+     * @return the mac for the base64 encoded message, as lower case hex digits
+     */
+    public static String createMac( String messageBase64, String secretWord ) {
+        return HashUtil.toHex( digest(messageBase64, secretWord) );
+    }
+
+    /**
+     * @return true if the expected mac is the mac for the base64 encoded message, compared in constant time
+     */
+    public static boolean validateMac( String messageBase64, String expectedMac, String secretWord ) {
+        if( expectedMac == null ) {
+            return false;
+        }
+        return isEqual( createMac(messageBase64, secretWord), expectedMac );
+    }
+
+    /**
+     * Compares two macs in time depending only on their length, not on the position of the first difference.
+     */
+    static boolean isEqual( String actual, String expected ) {
+        if( actual.length() != expected.length() ) {
+            return false;
+        }
+        int difference = 0;
+        for( int i = 0; i < actual.length(); i++ ) {
+            difference |= actual.charAt(i) ^ expected.charAt(i);
+        }
+        return difference == 0;
+    }
+
+    private static byte[] digest( String messageBase64, String secretWord ) {
+        MessageDigest digest = HashUtil.getDigest(HASHALGORITHM.SHA_512);
+        byte[] buffer = buffers.get();
+        // String.valueOf() as the concatenation of a null message or secret word is hashed as "null"
+        update( digest, String.valueOf(messageBase64), buffer );
+        update( digest, String.valueOf(secretWord), buffer );
+        return digest.digest();
+    }
+
+    // ascii characters are copied to the digest as is, which is what String.getBytes() does for them in the ascii compatible
+    // default charsets, other strings are encoded as HashUtil.createHash() does
+    private static void update( MessageDigest digest, String value, byte[] buffer ) {
+        int length = value.length();
+        for( int i = 0; i < length; i++ ) {
+            if( value.charAt(i) >= 0x80 ) {
+                digest.update( value.getBytes() );
+                return;
+            }
+        }
+        for( int start = 0; start < length; start += buffer.length ) {
+            int end = Math.min(length, start + buffer.length);
+            for( int i = start; i < end; i++ ) {
+                buffer[i - start] = (byte) value.charAt(i);
+            }
+            digest.update( buffer, 0, end - start );
+        }
+    }
+}
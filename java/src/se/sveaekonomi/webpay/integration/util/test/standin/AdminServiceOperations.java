@@ -0,0 +1,413 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.element;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.find;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.findAll;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.formatAmount;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.nillable;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.rowNumbers;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Element;
+
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInStore.Order;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInStore.Row;
+
+/**
+ * The AdminService operations, answering the request classes in adminservice. Responses are written in the layout
+ * returned by AdminService.svc/backward, i.e. with the "a:" and "b:" prefixes the response classes look up.
+ */
+final class AdminServiceOperations {
+
+	static final String GET_ORDERS = "GetOrders";
+	static final String DELIVER_ORDERS = "DeliverOrders";
+	static final String DELIVER_PARTIAL = "DeliverPartial";
+	static final String CANCEL_ORDER_ROWS = "CancelOrderRows";
+	static final String CREDIT_INVOICE_ROWS = "CreditInvoiceRows";
+	static final String ADD_ORDER_ROWS = "AddOrderRows";
+	static final String UPDATE_ORDER_ROWS = "UpdateOrderRows";
+
+	static final String ORDER_NOT_FOUND = "20004";
+	static final String ORDER_CLOSED = "20000";
+	static final String INVOICE_NOT_FOUND = "24000";
+	static final String INVALID_ROW = "24001";
+	static final String PRICE_INCLUDING_VAT_MISMATCH = "50036";
+
+	private static final String NAMESPACE_ADMIN = "http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service";
+	private static final String NAMESPACE_WEBSERVICE = "http://schemas.datacontract.org/2004/07/DataObjects.Webservice";
+
+	private final StandInStore store;
+
+	AdminServiceOperations( StandInStore store ) {
+		this.store = store;
+	}
+
+	static boolean supports( String operation ) {
+		return GET_ORDERS.equals(operation) || DELIVER_ORDERS.equals(operation) || DELIVER_PARTIAL.equals(operation)
+				|| CANCEL_ORDER_ROWS.equals(operation) || CREDIT_INVOICE_ROWS.equals(operation)
+				|| ADD_ORDER_ROWS.equals(operation) || UPDATE_ORDER_ROWS.equals(operation);
+	}
+
+	/** @return the response envelope for the operation element of the request */
+	String handle( String operation, Element request ) {
+		synchronized( store ) {
+			if( GET_ORDERS.equals(operation) ) {
+				return getOrders(request);
+			}
+			if( DELIVER_ORDERS.equals(operation) ) {
+				return deliverOrders(request);
+			}
+			if( DELIVER_PARTIAL.equals(operation) ) {
+				return deliverPartial(request);
+			}
+			if( CANCEL_ORDER_ROWS.equals(operation) ) {
+				return cancelOrderRows(request);
+			}
+			if( CREDIT_INVOICE_ROWS.equals(operation) ) {
+				return creditInvoiceRows(request);
+			}
+			if( ADD_ORDER_ROWS.equals(operation) ) {
+				return addOrderRows(request);
+			}
+			return updateOrderRows(request);
+		}
+	}
+
+	/** @return a response for the operation with the given result code and error message */
+	String error( String operation, String resultCode, String errorMessage ) {
+		StringBuilder xml = start( operation, errorMessage, resultCode );
+		return end( xml, operation );
+	}
+
+	private String getOrders( Element request ) {
+		List<Order> found = new ArrayList<Order>();
+		for( Element information : findAll(find(request, "OrdersToRetrieve"), "GetOrderInformation") ) {
+			Order order = store.getOrder( Long.parseLong( text(information, "SveaOrderId") ) );
+			if( order != null ) {
+				found.add(order);
+			}
+		}
+		if( found.isEmpty() ) {
+			return error( GET_ORDERS, ORDER_NOT_FOUND, "Order not found" );
+		}
+
+		StringBuilder xml = start( GET_ORDERS, null, "0" );
+		xml.append("<a:Orders>");
+		for( Order order : found ) {
+			writeOrder( xml, order );
+		}
+		xml.append("</a:Orders>");
+		return end( xml, GET_ORDERS );
+	}
+
+	private static void writeOrder( StringBuilder xml, Order order ) {
+		boolean isCompany = "Company".equals(order.customerType);
+		xml.append("<a:Order>");
+		xml.append("<a:ChangedDate i:nil=\"true\"/>");
+		element( xml, "a:ClientId", order.clientId );
+		element( xml, "a:ClientOrderId", (order.clientOrderNumber == null) ? "" : order.clientOrderNumber );
+		element( xml, "a:CreatedDate", order.createdDate );
+		xml.append("<a:CreditReportStatus>");
+		element( xml, "a:Accepted", "true" );
+		element( xml, "a:CreationDate", order.createdDate );
+		xml.append("</a:CreditReportStatus>");
+		element( xml, "a:Currency", order.getCurrency() );
+		xml.append("<a:Customer xmlns:b=\"").append(NAMESPACE_WEBSERVICE).append("\">");
+		nillable( xml, "b:CoAddress", order.coAddress );
+		if( isCompany ) {
+			xml.append("<b:CompanyIdentity><b:CompanyIdentification i:nil=\"true\"/><b:CompanyVatNumber i:nil=\"true\"/></b:CompanyIdentity>");
+		}
+		else {
+			xml.append("<b:CompanyIdentity i:nil=\"true\"/>");
+		}
+		element( xml, "b:CountryCode", order.countryCode );
+		element( xml, "b:CustomerType", order.customerType );
+		nillable( xml, "b:Email", order.email );
+		element( xml, "b:FullName", order.fullName );
+		nillable( xml, "b:HouseNumber", order.houseNumber );
+		if( isCompany ) {
+			xml.append("<b:IndividualIdentity i:nil=\"true\"/>");
+		}
+		else {
+			xml.append("<b:IndividualIdentity><b:BirthDate i:nil=\"true\"/><b:FirstName i:nil=\"true\"/><b:Initials i:nil=\"true\"/><b:LastName i:nil=\"true\"/></b:IndividualIdentity>");
+		}
+		element( xml, "b:Locality", order.locality );
+		element( xml, "b:NationalIdNumber", order.nationalIdNumber );
+		nillable( xml, "b:PhoneNumber", order.phoneNumber );
+		xml.append("<b:PublicKey i:nil=\"true\"/>");
+		element( xml, "b:Street", order.street );
+		element( xml, "b:ZipCode", order.zipCode );
+		xml.append("</a:Customer>");
+		element( xml, "a:CustomerId", 1000000 + (order.id % 1000) );
+		element( xml, "a:CustomerReference", order.customerReference );
+		xml.append("<a:DeliveryAddress i:nil=\"true\" xmlns:b=\"").append(NAMESPACE_WEBSERVICE).append("\"/>");
+		element( xml, "a:IsPossibleToAdminister", "false" );
+		element( xml, "a:IsPossibleToCancel", order.isPossibleToCancel() ? "true" : "false" );
+		xml.append("<a:Notes i:nil=\"true\"/>");
+		element( xml, "a:OrderDeliveryStatus", order.getDeliveryStatus() );
+		xml.append("<a:OrderRows>");
+		String ns = " xmlns=\"" + NAMESPACE_WEBSERVICE + "\"";
+		for( Row row : order.rows ) {
+			xml.append("<a:NumberedOrderRow>");
+			xml.append("<ArticleNumber").append(ns).append('>');
+			StandInXml.escape( xml, (row.articleNumber == null) ? "" : row.articleNumber ).append("</ArticleNumber>");
+			xml.append("<Description").append(ns).append('>');
+			StandInXml.escape( xml, (row.description == null) ? "" : row.description ).append("</Description>");
+			xml.append("<DiscountPercent").append(ns).append('>').append( formatAmount(row.discountPercent) ).append("</DiscountPercent>");
+			xml.append("<NumberOfUnits").append(ns).append('>').append( formatAmount(row.numberOfUnits) ).append("</NumberOfUnits>");
+			xml.append("<PriceIncludingVat").append(ns).append('>').append( row.priceIncludingVat ).append("</PriceIncludingVat>");
+			xml.append("<PricePerUnit").append(ns).append('>').append( formatAmount(row.pricePerUnit) ).append("</PricePerUnit>");
+			xml.append("<Unit").append(ns).append('>');
+			StandInXml.escape( xml, (row.unit == null) ? "" : row.unit ).append("</Unit>");
+			xml.append("<VatPercent").append(ns).append('>').append( formatAmount(row.vatPercent) ).append("</VatPercent>");
+			nillable( xml, "a:CreditInvoiceId", row.creditInvoiceId );
+			nillable( xml, "a:InvoiceId", row.invoiceId );
+			element( xml, "a:RowNumber", row.rowNumber );
+			element( xml, "a:Status", row.status );
+			xml.append("</a:NumberedOrderRow>");
+		}
+		xml.append("</a:OrderRows>");
+		element( xml, "a:OrderStatus", "Active" );
+		element( xml, "a:OrderType", order.orderType );
+		if( StandInStore.PAYMENTPLAN.equals(order.orderType) ) {
+			xml.append("<a:PaymentPlanDetails>");
+			nillable( xml, "a:CampaignCode", order.campaignCode );
+			element( xml, "a:ContractLengthMonths", "60" );
+			nillable( xml, "a:ContractNumber", order.contractNumber );
+			xml.append("</a:PaymentPlanDetails>");
+		}
+		else {
+			xml.append("<a:PaymentPlanDetails i:nil=\"true\"/>");
+		}
+		xml.append("<a:PendingReasons/>");
+		element( xml, "a:SveaOrderId", order.id );
+		element( xml, "a:SveaWillBuy", "true" );
+		xml.append("</a:Order>");
+	}
+
+	/** Delivers all undelivered rows of each order, the request fails if any order can not be delivered */
+	private String deliverOrders( Element request ) {
+		List<Order> orders = new ArrayList<Order>();
+		for( Element information : findAll(find(request, "OrdersToDeliver"), "DeliverOrderInformation") ) {
+			long orderId = Long.parseLong( text(information, "SveaOrderId") );
+			Order order = store.getOrder(orderId);
+			if( order == null ) {
+				return error( DELIVER_ORDERS, ORDER_NOT_FOUND, "Order " + orderId + " not found" );
+			}
+			if( order.closed || getRows(order, StandInStore.ROW_NOTDELIVERED).isEmpty() ) {
+				return error( DELIVER_ORDERS, ORDER_CLOSED, "Order " + orderId + " has no rows to deliver" );
+			}
+			orders.add(order);
+		}
+
+		StringBuilder xml = start( DELIVER_ORDERS, null, "0" );
+		xml.append("<a:OrdersDelivered>");
+		for( Order order : orders ) {
+			writeDeliverOrderResult( xml, order, deliver( order, getRows(order, StandInStore.ROW_NOTDELIVERED) ) );
+		}
+		xml.append("</a:OrdersDelivered>");
+		return end( xml, DELIVER_ORDERS );
+	}
+
+	private String deliverPartial( Element request ) {
+		Element orderToDeliver = find(request, "OrderToDeliver");
+		Order order = store.getOrder( Long.parseLong( text(orderToDeliver, "SveaOrderId") ) );
+		if( order == null ) {
+			return error( DELIVER_PARTIAL, ORDER_NOT_FOUND, "Order not found" );
+		}
+		List<Row> rows = getRows( order, rowNumbers(request, "RowNumbers"), StandInStore.ROW_NOTDELIVERED );
+		if( order.closed || rows == null ) {
+			return error( DELIVER_PARTIAL, INVALID_ROW, "Row not found or not possible to deliver" );
+		}
+		StringBuilder xml = start( DELIVER_PARTIAL, null, "0" );
+		xml.append("<a:OrdersDelivered>");
+		writeDeliverOrderResult( xml, order, deliver( order, rows ) );
+		xml.append("</a:OrdersDelivered>");
+		return end( xml, DELIVER_PARTIAL );
+	}
+
+	/** @return the invoice id or contract number */
+	private long deliver( Order order, List<Row> rows ) {
+		long deliveryReferenceNumber;
+		if( StandInStore.INVOICE.equals(order.orderType) ) {
+			deliveryReferenceNumber = store.newInvoice(order);
+			for( Row row : rows ) {
+				row.invoiceId = deliveryReferenceNumber;
+			}
+		}
+		else {
+			if( order.contractNumber == null ) {
+				order.contractNumber = store.newContractNumber();
+			}
+			deliveryReferenceNumber = order.contractNumber;
+		}
+		for( Row row : rows ) {
+			row.status = StandInStore.ROW_DELIVERED;
+		}
+		return deliveryReferenceNumber;
+	}
+
+	private static void writeDeliverOrderResult( StringBuilder xml, Order order, long deliveryReferenceNumber ) {
+		double amount = 0.0;
+		for( Row row : order.rows ) {
+			Long reference = StandInStore.INVOICE.equals(order.orderType) ? row.invoiceId : order.contractNumber;
+			if( StandInStore.ROW_DELIVERED.equals(row.status) && reference != null && reference == deliveryReferenceNumber ) {
+				amount += row.getAmountIncludingVat();
+			}
+		}
+		writeDeliverOrderResult( xml, order, amount, deliveryReferenceNumber );
+	}
+
+	private static void writeDeliverOrderResult( StringBuilder xml, Order order, double amount, long deliveryReferenceNumber ) {
+		xml.append("<a:DeliverOrderResult>");
+		element( xml, "a:ClientId", order.clientId );
+		element( xml, "a:DeliveredAmount", formatAmount(amount) );
+		element( xml, "a:DeliveryReferenceNumber", deliveryReferenceNumber );
+		element( xml, "a:OrderType", order.orderType );
+		element( xml, "a:SveaOrderId", order.id );
+		xml.append("</a:DeliverOrderResult>");
+	}
+
+	private String cancelOrderRows( Element request ) {
+		Order order = store.getOrder( Long.parseLong( text(request, "SveaOrderId") ) );
+		if( order == null ) {
+			return error( CANCEL_ORDER_ROWS, ORDER_NOT_FOUND, "Order not found" );
+		}
+		List<Row> rows = getRows( order, rowNumbers(request, "OrderRowNumbers"), StandInStore.ROW_NOTDELIVERED );
+		if( order.closed || rows == null ) {
+			return error( CANCEL_ORDER_ROWS, INVALID_ROW, "Row not found or not possible to cancel" );
+		}
+		for( Row row : rows ) {
+			row.status = StandInStore.ROW_CANCELLED;
+		}
+		return end( start( CANCEL_ORDER_ROWS, null, "0" ), CANCEL_ORDER_ROWS );
+	}
+
+	/** Credits the delivered rows given by row number, and the new credit rows, on a new credit invoice */
+	private String creditInvoiceRows( Element request ) {
+		long invoiceId = Long.parseLong( text(request, "InvoiceId") );
+		Order order = store.getInvoiceOrder(invoiceId);
+		if( order == null ) {
+			return error( CREDIT_INVOICE_ROWS, INVOICE_NOT_FOUND, "Invoice not found" );
+		}
+		List<Row> rows = getRows( order, rowNumbers(request, "RowNumbers"), StandInStore.ROW_DELIVERED );
+		if( rows == null ) {
+			return error( CREDIT_INVOICE_ROWS, INVALID_ROW, "Row not found or not possible to credit" );
+		}
+		for( Row row : rows ) {
+			if( row.invoiceId == null || row.invoiceId != invoiceId || row.creditInvoiceId != null ) {
+				return error( CREDIT_INVOICE_ROWS, INVALID_ROW, "Row " + row.rowNumber + " is not possible to credit on invoice " + invoiceId );
+			}
+		}
+
+		// new credit rows must be given with the PriceIncludingVat the order was created with
+		List<Row> newCreditRows = new ArrayList<Row>();
+		for( Element orderRow : findAll(find(request, "NewCreditInvoiceRows"), "OrderRow") ) {
+			Row row = WebServiceOperations.readRow(orderRow);
+			if( row.priceIncludingVat != order.isPriceIncludingVat() ) {
+				return error( CREDIT_INVOICE_ROWS, PRICE_INCLUDING_VAT_MISMATCH, "PriceIncludingVat differs from the order" );
+			}
+			newCreditRows.add(row);
+		}
+
+		long creditInvoiceId = store.newInvoice(order);
+		double amount = 0.0;
+		for( Row row : rows ) {
+			row.creditInvoiceId = creditInvoiceId;
+			amount += row.getAmountIncludingVat();
+		}
+		for( Row row : newCreditRows ) {
+			amount += row.getAmountIncludingVat();
+		}
+
+		StringBuilder xml = start( CREDIT_INVOICE_ROWS, null, "0" );
+		xml.append("<a:OrdersDelivered>");
+		writeDeliverOrderResult( xml, order, amount, creditInvoiceId );
+		xml.append("</a:OrdersDelivered>");
+		return end( xml, CREDIT_INVOICE_ROWS );
+	}
+
+	private String addOrderRows( Element request ) {
+		Order order = store.getOrder( Long.parseLong( text(request, "SveaOrderId") ) );
+		if( order == null ) {
+			return error( ADD_ORDER_ROWS, ORDER_NOT_FOUND, "Order not found" );
+		}
+		if( order.closed ) {
+			return error( ADD_ORDER_ROWS, ORDER_CLOSED, "Order is closed" );
+		}
+		for( Element orderRow : findAll(find(request, "OrderRows"), "OrderRow") ) {
+			order.addRow( WebServiceOperations.readRow(orderRow) );
+		}
+		return end( start( ADD_ORDER_ROWS, null, "0" ), ADD_ORDER_ROWS );
+	}
+
+	private String updateOrderRows( Element request ) {
+		Order order = store.getOrder( Long.parseLong( text(request, "SveaOrderId") ) );
+		if( order == null ) {
+			return error( UPDATE_ORDER_ROWS, ORDER_NOT_FOUND, "Order not found" );
+		}
+		List<Element> updatedRows = findAll(find(request, "UpdatedOrderRows"), "NumberedOrderRow");
+		for( Element updatedRow : updatedRows ) {
+			Row row = order.getRow( Integer.parseInt( text(updatedRow, "RowNumber") ) );
+			if( order.closed || row == null || !StandInStore.ROW_NOTDELIVERED.equals(row.status) ) {
+				return error( UPDATE_ORDER_ROWS, INVALID_ROW, "Row not found or not possible to update" );
+			}
+		}
+		for( Element updatedRow : updatedRows ) {
+			Row update = WebServiceOperations.readRow(updatedRow);
+			Row row = order.getRow( Integer.parseInt( text(updatedRow, "RowNumber") ) );
+			row.articleNumber = update.articleNumber;
+			row.description = update.description;
+			row.discountPercent = update.discountPercent;
+			row.numberOfUnits = update.numberOfUnits;
+			row.priceIncludingVat = update.priceIncludingVat;
+			row.pricePerUnit = update.pricePerUnit;
+			row.unit = update.unit;
+			row.vatPercent = update.vatPercent;
+		}
+		return end( start( UPDATE_ORDER_ROWS, null, "0" ), UPDATE_ORDER_ROWS );
+	}
+
+	private static List<Row> getRows( Order order, String status ) {
+		List<Row> rows = new ArrayList<Row>();
+		for( Row row : order.rows ) {
+			if( status.equals(row.status) ) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	/** @return the rows with the given numbers, or null if any row is missing or has another status */
+	private static List<Row> getRows( Order order, List<Integer> rowNumbers, String status ) {
+		List<Row> rows = new ArrayList<Row>();
+		for( Integer rowNumber : rowNumbers ) {
+			Row row = order.getRow(rowNumber);
+			if( row == null || !status.equals(row.status) ) {
+				return null;
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static StringBuilder start( String operation, String errorMessage, String resultCode ) {
+		StringBuilder xml = new StringBuilder(2048);
+		xml.append("<s:Envelope xmlns:s=\"").append(StandInXml.SOAP_ENVELOPE_NAMESPACE).append("\"><s:Body>");
+		xml.append('<').append(operation).append("Response xmlns=\"http://tempuri.org/\">");
+		xml.append('<').append(operation).append("Result xmlns:a=\"").append(NAMESPACE_ADMIN).append("\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">");
+		nillable( xml, "a:ErrorMessage", errorMessage );
+		element( xml, "a:ResultCode", resultCode );
+		return xml;
+	}
+
+	private static String end( StringBuilder xml, String operation ) {
+		xml.append("</").append(operation).append("Result>");
+		xml.append("</").append(operation).append("Response>");
+		xml.append("</s:Body></s:Envelope>");
+		return xml.toString();
+	}
+}
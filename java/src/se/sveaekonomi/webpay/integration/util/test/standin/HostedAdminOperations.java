@@ -0,0 +1,273 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.element;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.longValue;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.text;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.security.Base64Util;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInStore.Transaction;
+
+/**
+ * The hosted admin methods, answering the request classes in hosted.hostedadmin and HostedPayment.getPaymentUrl().
+ * The request mac is checked against the secret word of the merchant, and the response message is signed with it.
+ */
+final class HostedAdminOperations {
+
+	static final String ANNUL = "annul";
+	static final String CONFIRM = "confirm";
+	static final String CREDIT = "credit";
+	static final String LOWER_AMOUNT = "loweramount";
+	static final String QUERY = "querytransactionid";
+	static final String RECUR = "recur";
+	static final String PREPARE_PAYMENT = "preparepayment";
+
+	static final String XMLPARSEFAIL = "101";
+	static final String ILLEGAL_TRANSACTIONSTATUS = "105";
+	static final String ILLEGAL_CREDITED_AMOUNT = "119";
+	static final String NO_SUCH_TRANS = "128";
+	static final String SUBSCRIPTION_NOT_FOUND = "132";
+	static final String BAD_MERCHANT_ID = "303";
+	static final String BAD_AMOUNT = "305";
+	static final String BAD_MAC = "311";
+
+	private final StandInStore store;
+	private final Map<String,String> secretWords;
+	private final AtomicLong nextPreparedPaymentId = new AtomicLong(6000000);
+
+	/**
+	 * @param secretWords -- secret word by merchant id, of the merchants known to the stand-in
+	 */
+	HostedAdminOperations( StandInStore store, Map<String,String> secretWords ) {
+		this.store = store;
+		this.secretWords = secretWords;
+	}
+
+	static boolean supports( String method ) {
+		return ANNUL.equals(method) || CONFIRM.equals(method) || CREDIT.equals(method) || LOWER_AMOUNT.equals(method)
+				|| QUERY.equals(method) || RECUR.equals(method) || PREPARE_PAYMENT.equals(method);
+	}
+
+	/**
+	 * @param forcedStatusCode -- status code to answer with instead of performing the method, or null
+	 * @return the response envelope for the posted form fields
+	 */
+	String handle( String method, String messageBase64, String mac, String merchantId, String forcedStatusCode ) {
+		String secretWord = (merchantId == null) ? null : secretWords.get(merchantId);
+		if( secretWord == null ) {
+			return envelope( status(BAD_MERCHANT_ID), merchantId, "" );
+		}
+		if( messageBase64 == null || mac == null || !MacUtil.validateMac(messageBase64, mac, secretWord) ) {
+			return envelope( status(BAD_MAC), merchantId, secretWord );
+		}
+		if( forcedStatusCode != null ) {
+			return envelope( status(forcedStatusCode), merchantId, secretWord );
+		}
+
+		Element message;
+		try {
+			message = StandInXml.parse( Base64Util.decodeBase64(messageBase64) ).getDocumentElement();
+		}
+		catch( SveaWebPayException e ) {
+			return envelope( status(XMLPARSEFAIL), merchantId, secretWord );
+		}
+
+		String response;
+		synchronized( store ) {
+			if( PREPARE_PAYMENT.equals(method) ) {
+				response = preparePayment();
+			}
+			else if( RECUR.equals(method) ) {
+				response = recur( message, merchantId );
+			}
+			else {
+				Transaction transaction = store.getTransaction( longValue(message, "transactionid", -1), merchantId );
+				if( transaction == null ) {
+					response = status(NO_SUCH_TRANS);
+				}
+				else if( ANNUL.equals(method) ) {
+					response = annul( transaction );
+				}
+				else if( CONFIRM.equals(method) ) {
+					response = confirm( transaction, text(message, "capturedate") );
+				}
+				else if( CREDIT.equals(method) ) {
+					response = credit( transaction, longValue(message, "amounttocredit", -1) );
+				}
+				else if( LOWER_AMOUNT.equals(method) ) {
+					response = lowerAmount( transaction, longValue(message, "amounttolower", -1) );
+				}
+				else {
+					response = query( transaction );
+				}
+			}
+		}
+		return envelope( response, merchantId, secretWord );
+	}
+
+	private String preparePayment() {
+		StringBuilder xml = new StringBuilder(256);
+		xml.append("<response><preparedpayment>");
+		element( xml, "id", nextPreparedPaymentId.getAndIncrement() );
+		element( xml, "created", StandInStore.now() );
+		xml.append("</preparedpayment>");
+		return end( xml, "0" );
+	}
+
+	private String annul( Transaction transaction ) {
+		if( !StandInStore.TRANSACTION_AUTHORIZED.equals(transaction.status) ) {
+			return status(ILLEGAL_TRANSACTIONSTATUS);
+		}
+		transaction.status = StandInStore.TRANSACTION_ANNULLED;
+		return transactionResponse( transaction );
+	}
+
+	private String confirm( Transaction transaction, String captureDate ) {
+		if( !StandInStore.TRANSACTION_AUTHORIZED.equals(transaction.status) ) {
+			return status(ILLEGAL_TRANSACTIONSTATUS);
+		}
+		transaction.status = StandInStore.TRANSACTION_CONFIRMED;
+		transaction.captureDate = captureDate;
+		return transactionResponse( transaction );
+	}
+
+	private String credit( Transaction transaction, long amount ) {
+		if( !StandInStore.TRANSACTION_CONFIRMED.equals(transaction.status) && !StandInStore.TRANSACTION_SUCCESS.equals(transaction.status) ) {
+			return status(ILLEGAL_TRANSACTIONSTATUS);
+		}
+		if( amount <= 0 ) {
+			return status(BAD_AMOUNT);
+		}
+		if( transaction.creditedAmount + amount > transaction.authorizedAmount ) {
+			return status(ILLEGAL_CREDITED_AMOUNT);
+		}
+		transaction.creditedAmount += amount;
+		return transactionResponse( transaction );
+	}
+
+	private String lowerAmount( Transaction transaction, long amount ) {
+		if( !StandInStore.TRANSACTION_AUTHORIZED.equals(transaction.status) ) {
+			return status(ILLEGAL_TRANSACTIONSTATUS);
+		}
+		if( amount <= 0 || amount > transaction.authorizedAmount ) {
+			return status(BAD_AMOUNT);
+		}
+		transaction.authorizedAmount -= amount;
+		if( transaction.authorizedAmount == 0 ) {
+			transaction.status = StandInStore.TRANSACTION_ANNULLED;
+		}
+		return transactionResponse( transaction );
+	}
+
+	private String query( Transaction transaction ) {
+		StringBuilder xml = new StringBuilder(1024);
+		xml.append("<response><transaction id=\"").append(transaction.id).append("\">");
+		element( xml, "customerrefno", transaction.customerRefNo );
+		element( xml, "merchantid", transaction.merchantId );
+		element( xml, "status", transaction.status );
+		element( xml, "amount", transaction.amount );
+		element( xml, "currency", transaction.currency );
+		element( xml, "vat", transaction.vat );
+		element( xml, "capturedamount", StandInStore.TRANSACTION_AUTHORIZED.equals(transaction.status) ? null : transaction.authorizedAmount );
+		element( xml, "authorizedamount", transaction.authorizedAmount );
+		element( xml, "created", transaction.created );
+		element( xml, "creditstatus", transaction.getCreditStatus() );
+		element( xml, "creditedamount", transaction.creditedAmount );
+		element( xml, "merchantresponsecode", "0" );
+		element( xml, "paymentmethod", transaction.paymentMethod );
+		element( xml, "callbackurl", null );
+		element( xml, "capturedate", transaction.captureDate );
+		element( xml, "subscriptionid", transaction.subscriptionId );
+		element( xml, "subscriptiontype", transaction.subscriptionType );
+		element( xml, "cardType", transaction.cardType );
+		element( xml, "maskedcardno", transaction.maskedCardNumber );
+		element( xml, "eci", null );
+		element( xml, "mdstatus", null );
+		element( xml, "expiryyear", transaction.expiryYear );
+		element( xml, "expirymonth", transaction.expiryMonth );
+		element( xml, "chname", null );
+		element( xml, "authCode", transaction.authCode );
+		xml.append("<orderrows/>");
+		xml.append("</transaction>");
+		return end( xml, "0" );
+	}
+
+	/** Charges the card of the subscription, creating a new transaction */
+	private String recur( Element message, String merchantId ) {
+		Transaction subscription = store.getSubscription( longValue(message, "subscriptionid", -1), merchantId );
+		if( subscription == null ) {
+			return status(SUBSCRIPTION_NOT_FOUND);
+		}
+		long amount = longValue(message, "amount", -1);
+		if( amount <= 0 ) {
+			return status(BAD_AMOUNT);
+		}
+
+		Transaction transaction = new Transaction();
+		transaction.merchantId = merchantId;
+		transaction.customerRefNo = text(message, "customerrefno");
+		transaction.status = StandInStore.TRANSACTION_SUCCESS;
+		transaction.currency = (text(message, "currency") != null) ? text(message, "currency") : subscription.currency;
+		transaction.amount = amount;
+		transaction.vat = longValue(message, "vat", 0);
+		transaction.authorizedAmount = amount;
+		transaction.subscriptionId = subscription.subscriptionId;
+		transaction.subscriptionType = subscription.subscriptionType;
+		transaction.cardType = subscription.cardType;
+		transaction.maskedCardNumber = subscription.maskedCardNumber;
+		transaction.expiryMonth = subscription.expiryMonth;
+		transaction.expiryYear = subscription.expiryYear;
+		store.addTransaction(transaction);
+
+		StringBuilder xml = new StringBuilder(512);
+		xml.append("<response><transaction id=\"").append(transaction.id).append("\">");
+		element( xml, "paymentmethod", transaction.paymentMethod );
+		element( xml, "merchantid", transaction.merchantId );
+		element( xml, "customerrefno", transaction.customerRefNo );
+		element( xml, "amount", transaction.amount );
+		element( xml, "currency", transaction.currency );
+		element( xml, "cardtype", transaction.cardType );
+		element( xml, "maskedcardno", transaction.maskedCardNumber );
+		element( xml, "expirymonth", transaction.expiryMonth );
+		element( xml, "expiryyear", transaction.expiryYear );
+		element( xml, "authcode", transaction.authCode );
+		element( xml, "subscriptionid", transaction.subscriptionId );
+		xml.append("</transaction>");
+		return end( xml, "0" );
+	}
+
+	private static String transactionResponse( Transaction transaction ) {
+		StringBuilder xml = new StringBuilder(256);
+		xml.append("<response><transaction id=\"").append(transaction.id).append("\">");
+		element( xml, "customerrefno", transaction.customerRefNo );
+		xml.append("</transaction>");
+		return end( xml, "0" );
+	}
+
+	/** @return a response message holding the status code only */
+	private static String status( String statusCode ) {
+		return end( new StringBuilder("<response>"), statusCode );
+	}
+
+	private static String end( StringBuilder xml, String statusCode ) {
+		element( xml, "statuscode", statusCode );
+		return xml.append("</response>").toString();
+	}
+
+	/** @return the response message, base64 encoded and signed using the secret word, in a response envelope */
+	private static String envelope( String message, String merchantId, String secretWord ) {
+		String messageBase64 = Base64Util.encodeBase64String( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + message );
+		StringBuilder xml = new StringBuilder( messageBase64.length() + 256 );
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><response>");
+		element( xml, "message", messageBase64 );
+		element( xml, "merchantid", merchantId );
+		element( xml, "mac", MacUtil.createMac(messageBase64, secretWord) );
+		return xml.append("</response>").toString();
+	}
+}
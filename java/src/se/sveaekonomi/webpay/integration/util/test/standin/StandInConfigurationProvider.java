@@ -0,0 +1,68 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import java.net.URL;
+
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+
+/**
+ * ConfigurationProvider returning the credentials of another ConfigurationProvider, and the endpoints of a StandInServer.
+ * Get an instance using StandInServer.getConfigurationProvider().
+ */
+public class StandInConfigurationProvider implements ConfigurationProvider {
+
+	private final ConfigurationProvider credentials;
+	private final URL webserviceUrl;
+	private final URL adminServiceUrl;
+	private final URL hostedAdminUrl;
+	private final URL payPageUrl;
+
+	StandInConfigurationProvider( ConfigurationProvider credentials, URL webserviceUrl, URL adminServiceUrl, URL hostedAdminUrl, URL payPageUrl ) {
+		this.credentials = credentials;
+		this.webserviceUrl = webserviceUrl;
+		this.adminServiceUrl = adminServiceUrl;
+		this.hostedAdminUrl = hostedAdminUrl;
+		this.payPageUrl = payPageUrl;
+	}
+
+	@Override
+	public String getUsername( PAYMENTTYPE type, COUNTRYCODE country ) {
+		return credentials.getUsername(type, country);
+	}
+
+	@Override
+	public String getPassword( PAYMENTTYPE type, COUNTRYCODE country ) {
+		return credentials.getPassword(type, country);
+	}
+
+	@Override
+	public int getClientNumber( PAYMENTTYPE type, COUNTRYCODE country ) {
+		return credentials.getClientNumber(type, country);
+	}
+
+	@Override
+	public String getMerchantId( PAYMENTTYPE type, COUNTRYCODE country ) {
+		return credentials.getMerchantId(type, country);
+	}
+
+	@Override
+	public String getSecretWord( PAYMENTTYPE type, COUNTRYCODE country ) {
+		return credentials.getSecretWord(type, country);
+	}
+
+	/** @return the stand-in endpoint of the service. The pay page is not emulated, and is not served by the stand-in. */
+	@Override
+	public URL getEndPoint( PAYMENTTYPE type ) {
+		if( PAYMENTTYPE.HOSTED == type ) {
+			return payPageUrl;
+		}
+		if( PAYMENTTYPE.HOSTED_ADMIN == type ) {
+			return hostedAdminUrl;
+		}
+		if( PAYMENTTYPE.ADMIN_TYPE == type ) {
+			return adminServiceUrl;
+		}
+		return webserviceUrl;
+	}
+}
@@ -0,0 +1,367 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaTestConfigurationProvider;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInStore.Transaction;
+
+/**
+ * Local stand-in for the Svea services, for load and integration testing without network access to the Svea test
+ * environment. The stand-in is started in-process on an ephemeral loopback port, and answers the EU webservice
+ * operations (CreateOrderEu, DeliverOrderEu, CloseOrderEu, GetAddresses, GetPaymentPlanParamsEu), the AdminService
+ * operations used by the adminservice request classes, and the hosted admin methods used by the hostedadmin request
+ * classes and HostedPayment.getPaymentUrl(). Orders and card transactions are kept in memory, and administered as by
+ * the services, i.e. an order delivered by DeliverOrderEu is returned as delivered by GetOrders, and invoice rows given
+ * to DeliverOrderEu or CreditInvoiceRows with another PriceIncludingVat than the order was created with are answered
+ * with ResultCode 50036.
+ *
+ * Point the integration package at the stand-in using the ConfigurationProvider returned by getConfigurationProvider(),
+ * which returns the credentials of the ConfigurationProvider given to the constructor and the stand-in endpoints.
+ * The hosted admin request mac is checked, and the response signed, using the secret word of the merchant. Other
+ * credentials are not checked. The pay page is not emulated, add card transactions to administer using
+ * addCardTransaction() instead.
+ *
+ * Latency, transport failures and business errors may be injected to exercise i.e. timeouts, retries and error handling:
+ *
+ * ```java
+ *     StandInServer standIn = new StandInServer().start();
+ *     standIn.setLatency( 20, 50 )					// each response is delayed 20-50 ms
+ *         .setFailureRate( 0.01 )					// one request in a hundred fails with http status 503
+ *         .setResultCode( "DeliverOrderEu", "20000" );	// all DeliverOrderEu requests are answered with ResultCode 20000
+ *     CreateOrderResponse response = WebPay.createOrder( standIn.getConfigurationProvider() )...
+ *     standIn.stop();
+ * ```
+ *
+ * All methods are thread-safe.
+ */
+public class StandInServer implements Closeable {
+
+	public static final String WEBSERVICE_PATH = "/SveaWebPay.asmx";
+	public static final String ADMIN_SERVICE_PATH = "/AdminService.svc/backward";
+	public static final String HOSTED_ADMIN_PATH = "/webpay/rest/";
+	public static final String PAY_PAGE_PATH = "/webpay/payment";
+
+	private static final String INJECTED_ERROR_MESSAGE = "Error injected by stand-in";
+
+	private final ConfigurationProvider credentials;
+	private final StandInStore store = new StandInStore();
+	private final WebServiceOperations webservice;
+	private final AdminServiceOperations adminService;
+	private final HostedAdminOperations hostedAdmin;
+
+	private final ConcurrentMap<String,AtomicLong> requestCounts = new ConcurrentHashMap<String,AtomicLong>();
+	private final ConcurrentMap<String,String> resultCodes = new ConcurrentHashMap<String,String>();
+	private volatile long minLatencyMillis;
+	private volatile long maxLatencyMillis;
+	private volatile double failureRate;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/** Uses the credentials of SveaTestConfigurationProvider */
+	public StandInServer() {
+		this( new SveaTestConfigurationProvider() );
+	}
+
+	/**
+	 * @param credentials -- provider of the credentials of the clients and merchants known to the stand-in
+	 */
+	public StandInServer( ConfigurationProvider credentials ) {
+		this.credentials = credentials;
+		this.webservice = new WebServiceOperations(store);
+		this.adminService = new AdminServiceOperations(store);
+		this.hostedAdmin = new HostedAdminOperations( store, getSecretWords(credentials) );
+	}
+
+	private static Map<String,String> getSecretWords( ConfigurationProvider credentials ) {
+		Map<String,String> secretWords = new HashMap<String,String>();
+		for( COUNTRYCODE countryCode : COUNTRYCODE.values() ) {
+			String merchantId = credentials.getMerchantId(PAYMENTTYPE.HOSTED, countryCode);
+			if( merchantId != null && !merchantId.isEmpty() && !secretWords.containsKey(merchantId) ) {
+				secretWords.put( merchantId, credentials.getSecretWord(PAYMENTTYPE.HOSTED, countryCode) );
+			}
+		}
+		return secretWords;
+	}
+
+	/**
+	 * Starts the stand-in on an ephemeral port on the loopback interface.
+	 * @throws IOException if the server socket can not be bound
+	 */
+	public synchronized StandInServer start() throws IOException {
+		if( server != null ) {
+			throw new IllegalStateException("StandInServer already started");
+		}
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newCachedThreadPool( new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread thread = new Thread( r, "svea-standin-" + threadNumber.incrementAndGet() );
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server = HttpServer.create( new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0 );
+		server.setExecutor(executor);
+		server.createContext( "/", new StandInHandler() );
+		server.start();
+		return this;
+	}
+
+	/** Stops the stand-in, closing open connections */
+	public synchronized void stop() {
+		if( server != null ) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+			executor = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	/** @return the port the stand-in listens on */
+	public synchronized int getPort() {
+		if( server == null ) {
+			throw new IllegalStateException("StandInServer not started");
+		}
+		return server.getAddress().getPort();
+	}
+
+	/** @return a ConfigurationProvider with the credentials given to the constructor and the endpoints of the stand-in */
+	public StandInConfigurationProvider getConfigurationProvider() {
+		return new StandInConfigurationProvider( credentials, getUrl(WEBSERVICE_PATH), getUrl(ADMIN_SERVICE_PATH), getUrl(HOSTED_ADMIN_PATH), getUrl(PAY_PAGE_PATH) );
+	}
+
+	private URL getUrl( String path ) {
+		try {
+			return new URL( "http", InetAddress.getLoopbackAddress().getHostAddress(), getPort(), path );
+		}
+		catch( MalformedURLException e ) {
+			throw new SveaWebPayException("Could not create stand-in url", e);
+		}
+	}
+
+	/**
+	 * Delays each response by a random time between minMillis and maxMillis, inclusive. Use 0, 0 for no delay.
+	 */
+	public StandInServer setLatency( long minMillis, long maxMillis ) {
+		if( minMillis < 0 || maxMillis < minMillis ) {
+			throw new IllegalArgumentException("Latency must satisfy 0 <= minMillis <= maxMillis");
+		}
+		this.minLatencyMillis = minMillis;
+		this.maxLatencyMillis = maxMillis;
+		return this;
+	}
+
+	/**
+	 * Answers the given fraction of requests, after any latency, with http status 503 Service Unavailable.
+	 * @param failureRate -- 0.0 for none, 1.0 for all requests
+	 */
+	public StandInServer setFailureRate( double failureRate ) {
+		if( failureRate < 0.0 || failureRate > 1.0 ) {
+			throw new IllegalArgumentException("Failure rate must be between 0.0 and 1.0");
+		}
+		this.failureRate = failureRate;
+		return this;
+	}
+
+	/**
+	 * Answers all requests for the operation with the given result code, without performing the operation.
+	 * @param operation -- the webservice or AdminService operation, or hosted admin method, i.e. "CreateOrderEu", "GetOrders" or "confirm"
+	 * @param resultCode -- the ResultCode, or hosted statuscode, to answer with, or null to perform the operation again
+	 */
+	public StandInServer setResultCode( String operation, String resultCode ) {
+		if( resultCode == null ) {
+			resultCodes.remove(operation);
+		}
+		else {
+			resultCodes.put( operation, resultCode );
+		}
+		return this;
+	}
+
+	/** @return the number of requests received for the operation, including requests answered with injected failures */
+	public long getRequestCount( String operation ) {
+		AtomicLong count = requestCounts.get(operation);
+		return (count == null) ? 0 : count.get();
+	}
+
+	/**
+	 * Adds an authorized card transaction, as if paid using the pay page, for the merchant used for the country.
+	 * @param amount -- amount in minor currency units, i.e. 10000 for 100.00 SEK
+	 * @param vat -- vat in minor currency units
+	 * @param subscriptionType -- i.e. "RECURRINGCAPTURE", or null if the transaction does not start a subscription
+	 * @return the transaction id
+	 */
+	public long addCardTransaction( COUNTRYCODE countryCode, String customerRefNo, long amount, long vat, String currency, String subscriptionType ) {
+		Transaction transaction = new Transaction();
+		transaction.merchantId = credentials.getMerchantId(PAYMENTTYPE.HOSTED, countryCode);
+		transaction.customerRefNo = customerRefNo;
+		transaction.currency = currency;
+		transaction.amount = amount;
+		transaction.vat = vat;
+		transaction.authorizedAmount = amount;
+		transaction.subscriptionType = subscriptionType;
+		synchronized( store ) {
+			store.addTransaction(transaction);
+			if( subscriptionType != null ) {
+				transaction.subscriptionId = store.newSubscription(transaction);
+			}
+		}
+		return transaction.id;
+	}
+
+	/** @return the subscription started by the transaction, or null */
+	public Long getSubscriptionId( long transactionId ) {
+		synchronized( store ) {
+			Transaction transaction = store.getTransaction( transactionId, null );
+			return (transaction == null) ? null : transaction.subscriptionId;
+		}
+	}
+
+	private void countRequest( String operation ) {
+		AtomicLong count = requestCounts.get(operation);
+		if( count == null ) {
+			AtomicLong created = new AtomicLong();
+			count = requestCounts.putIfAbsent(operation, created);
+			if( count == null ) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/** @return true if the request should fail, after waiting the injected latency */
+	private boolean inject() {
+		long min = minLatencyMillis;
+		long max = maxLatencyMillis;
+		if( max > 0 ) {
+			try {
+				Thread.sleep( (min == max) ? min : min + ThreadLocalRandom.current().nextLong(max - min + 1) );
+			}
+			catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		double rate = failureRate;
+		return rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	private final class StandInHandler implements HttpHandler {
+
+		@Override
+		public void handle( HttpExchange exchange ) throws IOException {
+			try {
+				byte[] body = readBody( exchange.getRequestBody() );
+				String path = exchange.getRequestURI().getPath();
+				if( WEBSERVICE_PATH.equals(path) || ADMIN_SERVICE_PATH.equals(path) ) {
+					handleSoap( exchange, WEBSERVICE_PATH.equals(path), body );
+				}
+				else if( path.startsWith(HOSTED_ADMIN_PATH) && HostedAdminOperations.supports( path.substring(HOSTED_ADMIN_PATH.length()) ) ) {
+					handleHostedAdmin( exchange, path.substring(HOSTED_ADMIN_PATH.length()), body );
+				}
+				else {
+					send( exchange, 404, "text/plain", "Not found: " + path );
+				}
+			}
+			catch( RuntimeException e ) {
+				send( exchange, 500, "text/plain", "Stand-in failed: " + e );
+			}
+			finally {
+				exchange.close();
+			}
+		}
+
+		private void handleSoap( HttpExchange exchange, boolean isWebservice, byte[] body ) throws IOException {
+			Element request = StandInXml.getOperation( StandInXml.parse(body) );
+			String operation = (request == null) ? null : request.getLocalName();
+			if( operation == null || (isWebservice ? !WebServiceOperations.supports(operation) : !AdminServiceOperations.supports(operation)) ) {
+				send( exchange, 404, "text/plain", "Unknown operation: " + operation );
+				return;
+			}
+			countRequest(operation);
+			if( inject() ) {
+				send( exchange, 503, "text/plain", INJECTED_ERROR_MESSAGE );
+				return;
+			}
+			String resultCode = resultCodes.get(operation);
+			String response;
+			if( isWebservice ) {
+				response = (resultCode != null) ? webservice.error(operation, resultCode, INJECTED_ERROR_MESSAGE) : webservice.handle(operation, request);
+			}
+			else {
+				response = (resultCode != null) ? adminService.error(operation, resultCode, INJECTED_ERROR_MESSAGE) : adminService.handle(operation, request);
+			}
+			send( exchange, 200, "text/xml; charset=utf-8", response );
+		}
+
+		private void handleHostedAdmin( HttpExchange exchange, String method, byte[] body ) throws IOException {
+			countRequest(method);
+			if( inject() ) {
+				send( exchange, 503, "text/plain", INJECTED_ERROR_MESSAGE );
+				return;
+			}
+			Map<String,String> fields = new HashMap<String,String>();
+			for( String field : new String(body, "UTF-8").split("&") ) {
+				int separator = field.indexOf('=');
+				if( separator > 0 ) {
+					fields.put( URLDecoder.decode(field.substring(0, separator), "UTF-8"), URLDecoder.decode(field.substring(separator + 1), "UTF-8") );
+				}
+			}
+			String response = hostedAdmin.handle( method, fields.get("message"), fields.get("mac"), fields.get("merchantid"), resultCodes.get(method) );
+			send( exchange, 200, "text/xml; charset=utf-8", response );
+		}
+
+		private byte[] readBody( InputStream in ) throws IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+			byte[] buffer = new byte[4096];
+			int read;
+			while( (read = in.read(buffer)) != -1 ) {
+				body.write(buffer, 0, read);
+			}
+			return body.toByteArray();
+		}
+
+		private void send( HttpExchange exchange, int status, String contentType, String response ) throws IOException {
+			byte[] bytes = response.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The orders, invoices and card transactions known to a StandInServer. Callers hold the store monitor while reading or
+ * changing its contents, so that each stand-in operation is applied atomically.
+ */
+final class StandInStore {
+
+	static final String INVOICE = "Invoice";
+	static final String PAYMENTPLAN = "PaymentPlan";
+
+	static final String ROW_NOTDELIVERED = "NotDelivered";
+	static final String ROW_DELIVERED = "Delivered";
+	static final String ROW_CANCELLED = "Cancelled";
+
+	static final String TRANSACTION_AUTHORIZED = "AUTHORIZED";
+	static final String TRANSACTION_CONFIRMED = "CONFIRMED";
+	static final String TRANSACTION_ANNULLED = "ANNULLED";
+	static final String TRANSACTION_SUCCESS = "SUCCESS";
+
+	private final Map<Long,Order> orders = new HashMap<Long,Order>();
+	private final Map<Long,Long> invoiceOrders = new HashMap<Long,Long>();
+	private final Map<Long,Transaction> transactions = new HashMap<Long,Transaction>();
+	private final Map<Long,Transaction> subscriptions = new HashMap<Long,Transaction>();
+
+	private long nextOrderId = 1000000;
+	private long nextInvoiceId = 2000000;
+	private long nextContractNumber = 3000000;
+	private long nextTransactionId = 4000000;
+	private long nextSubscriptionId = 5000000;
+
+	Order addOrder( Order order ) {
+		order.id = nextOrderId++;
+		orders.put( order.id, order );
+		return order;
+	}
+
+	Order getOrder( long orderId ) {
+		return orders.get(orderId);
+	}
+
+	/** @return the order the invoice was created for, or null if unknown */
+	Order getInvoiceOrder( long invoiceId ) {
+		Long orderId = invoiceOrders.get(invoiceId);
+		return (orderId == null) ? null : orders.get(orderId);
+	}
+
+	long newInvoice( Order order ) {
+		long invoiceId = nextInvoiceId++;
+		invoiceOrders.put( invoiceId, order.id );
+		return invoiceId;
+	}
+
+	long newContractNumber() {
+		return nextContractNumber++;
+	}
+
+	Transaction addTransaction( Transaction transaction ) {
+		transaction.id = nextTransactionId++;
+		transactions.put( transaction.id, transaction );
+		return transaction;
+	}
+
+	/** @return the transaction, or null if unknown or belonging to another merchant than the given, if not null */
+	Transaction getTransaction( long transactionId, String merchantId ) {
+		Transaction transaction = transactions.get(transactionId);
+		return (transaction == null || (merchantId != null && !transaction.merchantId.equals(merchantId))) ? null : transaction;
+	}
+
+	long newSubscription( Transaction transaction ) {
+		long subscriptionId = nextSubscriptionId++;
+		subscriptions.put( subscriptionId, transaction );
+		return subscriptionId;
+	}
+
+	/** @return the transaction that started the subscription, or null if unknown or belonging to another merchant */
+	Transaction getSubscription( long subscriptionId, String merchantId ) {
+		Transaction transaction = subscriptions.get(subscriptionId);
+		return (transaction == null || !transaction.merchantId.equals(merchantId)) ? null : transaction;
+	}
+
+	static String now() {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").format( new Date() );
+	}
+
+	static String today( int plusDays ) {
+		return new SimpleDateFormat("yyyy-MM-dd'T'00:00:00").format( new Date( System.currentTimeMillis() + plusDays * 86400000L ) );
+	}
+
+	/**
+	 * Webservice order, as created by CreateOrderEu and administered by the webservice and AdminService operations.
+	 */
+	static final class Order {
+		long id;
+		int clientId;
+		String orderType;
+		String clientOrderNumber;
+		String customerReference;
+		String countryCode;
+		String createdDate;
+		String campaignCode;
+		Long contractNumber;
+		boolean closed;
+
+		String customerType;
+		String nationalIdNumber;
+		String fullName;
+		String street;
+		String coAddress;
+		String zipCode;
+		String houseNumber;
+		String locality;
+		String email;
+		String phoneNumber;
+
+		final List<Row> rows = new ArrayList<Row>();
+
+		Row getRow( int rowNumber ) {
+			for( Row row : rows ) {
+				if( row.rowNumber == rowNumber ) {
+					return row;
+				}
+			}
+			return null;
+		}
+
+		Row addRow( Row row ) {
+			row.rowNumber = rows.isEmpty() ? 1 : rows.get( rows.size() - 1 ).rowNumber + 1;
+			rows.add(row);
+			return row;
+		}
+
+		String getCurrency() {
+			if( "SE".equals(countryCode) ) return "SEK";
+			if( "NO".equals(countryCode) ) return "NOK";
+			if( "DK".equals(countryCode) ) return "DKK";
+			return "EUR";
+		}
+
+		String getDeliveryStatus() {
+			if( closed ) {
+				return "Cancelled";
+			}
+			int delivered = 0;
+			int notDelivered = 0;
+			for( Row row : rows ) {
+				if( ROW_DELIVERED.equals(row.status) ) delivered++;
+				if( ROW_NOTDELIVERED.equals(row.status) ) notDelivered++;
+			}
+			if( delivered == 0 ) {
+				return (notDelivered == 0 && !rows.isEmpty()) ? "Cancelled" : "Created";
+			}
+			return (notDelivered == 0) ? "Delivered" : "PartiallyDelivered";
+		}
+
+		/** @return the PriceIncludingVat the order rows were created with */
+		boolean isPriceIncludingVat() {
+			return !rows.isEmpty() && rows.get(0).priceIncludingVat;
+		}
+
+		boolean isPossibleToCancel() {
+			return !closed && "Created".equals( getDeliveryStatus() );
+		}
+	}
+
+	/**
+	 * Order row, with the values given in the request. The row amount is calculated from these as by the service.
+	 */
+	static final class Row {
+		int rowNumber;
+		String articleNumber;
+		String description;
+		double discountPercent;
+		double numberOfUnits;
+		boolean priceIncludingVat;
+		double pricePerUnit;
+		String unit;
+		double vatPercent;
+		String status = ROW_NOTDELIVERED;
+		Long invoiceId;
+		Long creditInvoiceId;
+
+		/** @return the row amount including vat, rounded to two decimals */
+		double getAmountIncludingVat() {
+			double amount = pricePerUnit * numberOfUnits * (1.0 - discountPercent / 100.0);
+			if( !priceIncludingVat ) {
+				amount = amount * (1.0 + vatPercent / 100.0);
+			}
+			return StandInXml.round(amount);
+		}
+	}
+
+	/**
+	 * Card transaction, with amounts in minor currency units as in the hosted admin messages.
+	 */
+	static final class Transaction {
+		long id;
+		String merchantId;
+		String customerRefNo;
+		String status = TRANSACTION_AUTHORIZED;
+		String currency;
+		long amount;
+		long vat;
+		long authorizedAmount;
+		long creditedAmount;
+		String created = now();
+		String captureDate;
+		Long subscriptionId;
+		String subscriptionType;
+		String paymentMethod = "KORTCERT";
+		String cardType = "VISA";
+		String maskedCardNumber = "444433xxxxxx1100";
+		String expiryMonth = "01";
+		String expiryYear = "24";
+		String authCode = "123456";
+
+		String getCreditStatus() {
+			return (creditedAmount > 0) ? "CREDSUCCESS" : null;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+
+/**
+ * Helpers used by the stand-in operations to read requests and write responses. Requests are looked up by element local
+ * name, so that any namespace prefix the integration package uses is accepted. Responses are written without whitespace
+ * between elements, as the response classes navigate the response by child index.
+ */
+final class StandInXml {
+
+	static final String SOAP_ENVELOPE_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				factory.setNamespaceAware(true);
+				factory.setExpandEntityReferences(false);
+				return factory.newDocumentBuilder();
+			}
+			catch( ParserConfigurationException e ) {
+				throw new SveaWebPayException("Could not create stand-in DocumentBuilder", e);
+			}
+		}
+	};
+
+	private StandInXml() {
+	}
+
+	static Document parse( byte[] xml ) {
+		try {
+			return DOCUMENT_BUILDER.get().parse( new ByteArrayInputStream(xml) );
+		}
+		catch( SAXException e ) {
+			throw new SveaWebPayException("Stand-in could not parse request", e);
+		}
+		catch( IOException e ) {
+			throw new SveaWebPayException("Stand-in could not parse request", e);
+		}
+	}
+
+	/** @return the first element child of the soap Body, i.e. the operation element, or null if none */
+	static Element getOperation( Document envelope ) {
+		NodeList bodies = envelope.getElementsByTagNameNS(SOAP_ENVELOPE_NAMESPACE, "Body");
+		if( bodies.getLength() == 0 ) {
+			return null;
+		}
+		return firstChild( (Element) bodies.item(0) );
+	}
+
+	static Element firstChild( Element parent ) {
+		for( Node child = parent.getFirstChild(); child != null; child = child.getNextSibling() ) {
+			if( child.getNodeType() == Node.ELEMENT_NODE ) {
+				return (Element) child;
+			}
+		}
+		return null;
+	}
+
+	/** @return the first descendant element with the given local name, or null if none */
+	static Element find( Element parent, String localName ) {
+		if( parent == null ) {
+			return null;
+		}
+		NodeList found = parent.getElementsByTagNameNS("*", localName);
+		return (found.getLength() == 0) ? null : (Element) found.item(0);
+	}
+
+	/** @return all descendant elements with the given local name */
+	static List<Element> findAll( Element parent, String localName ) {
+		List<Element> elements = new ArrayList<Element>();
+		if( parent != null ) {
+			NodeList found = parent.getElementsByTagNameNS("*", localName);
+			for( int i = 0; i < found.getLength(); i++ ) {
+				elements.add( (Element) found.item(i) );
+			}
+		}
+		return elements;
+	}
+
+	/** @return the trimmed text of the first descendant element with the given local name, or null if none or empty */
+	static String text( Element parent, String localName ) {
+		Element element = find( parent, localName );
+		if( element == null ) {
+			return null;
+		}
+		String text = element.getTextContent().trim();
+		return text.isEmpty() ? null : text;
+	}
+
+	static long longValue( Element parent, String localName, long defaultValue ) {
+		String text = text( parent, localName );
+		return (text == null) ? defaultValue : Long.parseLong(text);
+	}
+
+	static double doubleValue( Element parent, String localName, double defaultValue ) {
+		String text = text( parent, localName );
+		return (text == null) ? defaultValue : Double.parseDouble(text);
+	}
+
+	/** @return the numbers in the arr:long children of the first descendant element with the given local name */
+	static List<Integer> rowNumbers( Element parent, String localName ) {
+		List<Integer> rowNumbers = new ArrayList<Integer>();
+		for( Element number : findAll( find(parent, localName), "long" ) ) {
+			rowNumbers.add( Integer.valueOf( number.getTextContent().trim() ) );
+		}
+		return rowNumbers;
+	}
+
+	/** Appends &lt;name&gt;value&lt;/name&gt;, or &lt;name/&gt; if value is null */
+	static StringBuilder element( StringBuilder xml, String name, Object value ) {
+		if( value == null ) {
+			return xml.append('<').append(name).append("/>");
+		}
+		xml.append('<').append(name).append('>');
+		escape( xml, value.toString() );
+		return xml.append("</").append(name).append('>');
+	}
+
+	/** Appends &lt;name&gt;value&lt;/name&gt;, or &lt;name i:nil="true"/&gt; if value is null */
+	static StringBuilder nillable( StringBuilder xml, String name, Object value ) {
+		if( value == null ) {
+			return xml.append('<').append(name).append(" i:nil=\"true\"/>");
+		}
+		return element( xml, name, value );
+	}
+
+	static StringBuilder escape( StringBuilder xml, String text ) {
+		for( int i = 0; i < text.length(); i++ ) {
+			char c = text.charAt(i);
+			switch( c ) {
+			case '<': xml.append("&lt;"); break;
+			case '>': xml.append("&gt;"); break;
+			case '&': xml.append("&amp;"); break;
+			case '"': xml.append("&quot;"); break;
+			default: xml.append(c);
+			}
+		}
+		return xml;
+	}
+
+	/** @return amount with two decimals and a decimal point, as returned by the services */
+	static String formatAmount( double amount ) {
+		return String.format( Locale.ROOT, "%.2f", amount );
+	}
+
+	static double round( double amount ) {
+		return Math.round( amount * 100.0 ) / 100.0;
+	}
+}
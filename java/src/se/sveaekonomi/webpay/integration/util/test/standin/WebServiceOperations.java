@@ -0,0 +1,330 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.element;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.find;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.findAll;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.formatAmount;
+import static se.sveaekonomi.webpay.integration.util.test.standin.StandInXml.text;
+
+import org.w3c.dom.Element;
+
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInStore.Order;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInStore.Row;
+
+/**
+ * The EU webservice operations, answering the request classes in webservice.handleorder, webservice.payment and
+ * webservice.getaddresses. Responses are written in the layout returned by SveaWebPay.asmx.
+ */
+final class WebServiceOperations {
+
+	static final String CREATE_ORDER = "CreateOrderEu";
+	static final String DELIVER_ORDER = "DeliverOrderEu";
+	static final String CLOSE_ORDER = "CloseOrderEu";
+	static final String GET_ADDRESSES = "GetAddresses";
+	static final String GET_PAYMENTPLAN_PARAMS = "GetPaymentPlanParamsEu";
+
+	static final String ORDER_NOT_FOUND = "20004";
+	static final String ORDER_CLOSED = "20000";
+	static final String NO_ROWS_TO_DELIVER = "20001";
+	static final String PRICE_INCLUDING_VAT_MISMATCH = "50036";
+
+	private static final String NAMESPACE = "https://webservices.sveaekonomi.se/webpay";
+
+	private final StandInStore store;
+
+	WebServiceOperations( StandInStore store ) {
+		this.store = store;
+	}
+
+	static boolean supports( String operation ) {
+		return CREATE_ORDER.equals(operation) || DELIVER_ORDER.equals(operation) || CLOSE_ORDER.equals(operation)
+				|| GET_ADDRESSES.equals(operation) || GET_PAYMENTPLAN_PARAMS.equals(operation);
+	}
+
+	/** @return the response envelope for the operation element of the request */
+	String handle( String operation, Element request ) {
+		if( CREATE_ORDER.equals(operation) ) {
+			return createOrder(request);
+		}
+		if( DELIVER_ORDER.equals(operation) ) {
+			return deliverOrder(request);
+		}
+		if( CLOSE_ORDER.equals(operation) ) {
+			return closeOrder(request);
+		}
+		if( GET_ADDRESSES.equals(operation) ) {
+			return getAddresses(request);
+		}
+		return getPaymentPlanParams();
+	}
+
+	/** @return a not accepted response for the operation, with the given result code and error message */
+	String error( String operation, String resultCode, String errorMessage ) {
+		StringBuilder xml = start(operation);
+		writeResult( xml, false, resultCode, errorMessage );
+		if( CREATE_ORDER.equals(operation) ) {
+			// SveaOrderId and Amount are always present
+			xml.append("<CreateOrderResult><SveaOrderId>0</SveaOrderId><SveaWillBuyOrder>false</SveaWillBuyOrder><Amount>0</Amount></CreateOrderResult>");
+		}
+		if( GET_ADDRESSES.equals(operation) ) {
+			xml.append("<RejectionCode>Error</RejectionCode><Addresses/>");
+		}
+		return end( xml, operation );
+	}
+
+	private String createOrder( Element request ) {
+		Element information = find(request, "CreateOrderInformation");
+		Element identity = find(information, "CustomerIdentity");
+
+		Order order = new Order();
+		order.clientId = Integer.parseInt( text(request, "ClientNumber") );
+		order.orderType = text(information, "OrderType");
+		order.clientOrderNumber = text(information, "ClientOrderNumber");
+		order.customerReference = text(information, "CustomerReference");
+		order.campaignCode = text(information, "CampaignCode");
+		order.countryCode = text(identity, "CountryCode");
+		order.customerType = "Company".equals( text(identity, "CustomerType") ) ? "Company" : "Individual";
+		order.nationalIdNumber = (text(identity, "NationalIdNumber") != null) ? text(identity, "NationalIdNumber") : text(identity, "CompanyIdentification");
+		order.fullName = (text(identity, "FullName") != null) ? text(identity, "FullName") : "Persson, Tess T";
+		order.street = (text(identity, "Street") != null) ? text(identity, "Street") : "Testgatan 1";
+		order.coAddress = text(identity, "CoAddress");
+		order.zipCode = (text(identity, "ZipCode") != null) ? text(identity, "ZipCode") : "99999";
+		order.houseNumber = text(identity, "HouseNumber");
+		order.locality = (text(identity, "Locality") != null) ? text(identity, "Locality") : "Stan";
+		order.email = text(identity, "Email");
+		order.phoneNumber = text(identity, "PhoneNumber");
+		order.createdDate = StandInStore.now();
+		for( Element orderRow : findAll(find(information, "OrderRows"), "OrderRow") ) {
+			order.addRow( readRow(orderRow) );
+		}
+
+		double amount = 0.0;
+		synchronized( store ) {
+			store.addOrder(order);
+			for( Row row : order.rows ) {
+				amount += row.getAmountIncludingVat();
+			}
+		}
+
+		StringBuilder xml = start(CREATE_ORDER);
+		writeResult( xml, true, "0", null );
+		xml.append("<CreateOrderResult>");
+		element( xml, "SveaOrderId", order.id );
+		element( xml, "SveaWillBuyOrder", "true" );
+		element( xml, "Amount", formatAmount(amount) );
+		element( xml, "ExpirationDate", StandInStore.today(14) );
+		if( order.clientOrderNumber != null ) {
+			element( xml, "ClientOrderNumber", order.clientOrderNumber );
+		}
+		element( xml, "OrderType", order.orderType );
+		xml.append("<CustomerIdentity>");
+		element( xml, "NationalIdNumber", order.nationalIdNumber );
+		element( xml, "FullName", order.fullName );
+		element( xml, "Street", order.street );
+		if( order.coAddress != null ) {
+			element( xml, "CoAddress", order.coAddress );
+		}
+		element( xml, "ZipCode", order.zipCode );
+		element( xml, "Locality", order.locality );
+		element( xml, "CountryCode", order.countryCode );
+		element( xml, "CustomerType", order.customerType );
+		xml.append("</CustomerIdentity>");
+		xml.append("</CreateOrderResult>");
+		return end( xml, CREATE_ORDER );
+	}
+
+	private String deliverOrder( Element request ) {
+		Element information = find(request, "DeliverOrderInformation");
+		long orderId = Long.parseLong( text(information, "SveaOrderId") );
+		Element details = find(information, "DeliverInvoiceDetails");
+
+		synchronized( store ) {
+			Order order = store.getOrder(orderId);
+			if( order == null ) {
+				return error( DELIVER_ORDER, ORDER_NOT_FOUND, "Order not found" );
+			}
+			if( order.closed ) {
+				return error( DELIVER_ORDER, ORDER_CLOSED, "Order is closed" );
+			}
+			double amount = 0.0;
+			for( Row row : order.rows ) {
+				if( StandInStore.ROW_NOTDELIVERED.equals(row.status) ) {
+					amount += row.getAmountIncludingVat();
+				}
+			}
+			// an invoice is delivered with the rows given in the request, which may differ from the order rows, but must be
+			// given with the PriceIncludingVat the order was created with
+			if( details != null && find(details, "OrderRows") != null ) {
+				amount = 0.0;
+				for( Element orderRow : findAll(find(details, "OrderRows"), "OrderRow") ) {
+					Row row = readRow(orderRow);
+					if( row.priceIncludingVat != order.isPriceIncludingVat() ) {
+						return error( DELIVER_ORDER, PRICE_INCLUDING_VAT_MISMATCH, "PriceIncludingVat differs from the order" );
+					}
+					amount += row.getAmountIncludingVat();
+				}
+			}
+			if( amount == 0.0 ) {
+				return error( DELIVER_ORDER, NO_ROWS_TO_DELIVER, "No rows to deliver" );
+			}
+
+			StringBuilder xml = start(DELIVER_ORDER);
+			writeResult( xml, true, "0", null );
+			xml.append("<DeliverOrderResult>");
+			if( StandInStore.INVOICE.equals(order.orderType) ) {
+				boolean isCreditInvoice = "true".equals( text(details, "IsCreditInvoice") );
+				long invoiceId = store.newInvoice(order);
+				if( !isCreditInvoice ) {
+					markDelivered( order, invoiceId );
+				}
+				String distributionType = (text(details, "InvoiceDistributionType") != null) ? text(details, "InvoiceDistributionType") : "Post";
+				xml.append("<InvoiceResultDetails>");
+				element( xml, "InvoiceId", invoiceId );
+				element( xml, "InvoiceAmount", formatAmount(amount) );
+				element( xml, "DueDate", StandInStore.today(30) );
+				element( xml, "InvoiceDate", StandInStore.today(0) );
+				element( xml, "InvoiceDistributionType", distributionType );
+				element( xml, "Ocr", Long.toString(invoiceId) + "1" );
+				element( xml, "LowestAmountToPay", formatAmount(amount) );
+				xml.append("</InvoiceResultDetails>");
+			}
+			else {
+				if( order.contractNumber == null ) {
+					order.contractNumber = store.newContractNumber();
+				}
+				markDelivered( order, null );
+				xml.append("<PaymentPlanResultDetails>");
+				element( xml, "ContractNumber", order.contractNumber );
+				xml.append("</PaymentPlanResultDetails>");
+			}
+			element( xml, "Amount", formatAmount(amount) );
+			element( xml, "OrderType", order.orderType );
+			xml.append("</DeliverOrderResult>");
+			return end( xml, DELIVER_ORDER );
+		}
+	}
+
+	private static void markDelivered( Order order, Long invoiceId ) {
+		for( Row row : order.rows ) {
+			if( StandInStore.ROW_NOTDELIVERED.equals(row.status) ) {
+				row.status = StandInStore.ROW_DELIVERED;
+				row.invoiceId = invoiceId;
+			}
+		}
+	}
+
+	private String closeOrder( Element request ) {
+		long orderId = Long.parseLong( text(find(request, "CloseOrderInformation"), "SveaOrderId") );
+		synchronized( store ) {
+			Order order = store.getOrder(orderId);
+			if( order == null ) {
+				return error( CLOSE_ORDER, ORDER_NOT_FOUND, "Order not found" );
+			}
+			if( !order.isPossibleToCancel() ) {
+				return error( CLOSE_ORDER, ORDER_CLOSED, "Order can not be closed" );
+			}
+			order.closed = true;
+			for( Row row : order.rows ) {
+				row.status = StandInStore.ROW_CANCELLED;
+			}
+		}
+		StringBuilder xml = start(CLOSE_ORDER);
+		writeResult( xml, true, "0", null );
+		return end( xml, CLOSE_ORDER );
+	}
+
+	/** Returns a single address, made up from the given security number */
+	private String getAddresses( Element request ) {
+		boolean isCompany = "true".equals( text(request, "IsCompany") );
+		String securityNumber = text(request, "SecurityNumber");
+
+		StringBuilder xml = start(GET_ADDRESSES);
+		// the response is read by child position, Accepted and RejectionCode must precede Addresses
+		element( xml, "Accepted", "true" );
+		element( xml, "RejectionCode", "Accepted" );
+		xml.append("<Addresses><CustomerAddress>");
+		element( xml, "LegalName", isCompany ? "Testbolaget AB" : "Persson, Tess T" );
+		element( xml, "SecurityNumber", securityNumber );
+		element( xml, "PhoneNumber", "08-1111111" );
+		element( xml, "AddressLine1", "c/o Eriksson, Erik" );
+		element( xml, "AddressLine2", "Testgatan 1" );
+		element( xml, "Postcode", "99999" );
+		element( xml, "Postarea", "Stan" );
+		element( xml, "BusinessType", isCompany ? "Business" : "Person" );
+		element( xml, "AddressSelector", Integer.toHexString( String.valueOf(securityNumber).hashCode() ) );
+		if( !isCompany ) {
+			element( xml, "FirstName", "Tess T" );
+			element( xml, "LastName", "Persson" );
+		}
+		xml.append("</CustomerAddress></Addresses>");
+		return end( xml, GET_ADDRESSES );
+	}
+
+	/** Returns two campaigns, one standard and one interest and amortization free */
+	private String getPaymentPlanParams() {
+		StringBuilder xml = start(GET_PAYMENTPLAN_PARAMS);
+		writeResult( xml, true, "0", null );
+		xml.append("<CampaignCodes>");
+		writeCampaign( xml, "213060", "Dela upp betalningen på 60 månader", "Standard", "60", "0.02555", "100", "29", "16.75", "0", "0", "1000", "50000" );
+		writeCampaign( xml, "310012", "Köp nu betala om 3 månader (räntefritt)", "InterestAndAmortizationFree", "3", "1.0", "0", "29", "0", "3", "3", "1000", "50000" );
+		xml.append("</CampaignCodes>");
+		return end( xml, GET_PAYMENTPLAN_PARAMS );
+	}
+
+	private static void writeCampaign( StringBuilder xml, String campaignCode, String description, String paymentPlanType,
+			String contractLengthInMonths, String monthlyAnnuityFactor, String initialFee, String notificationFee, String interestRatePercent,
+			String numberOfInterestFreeMonths, String numberOfPaymentFreeMonths, String fromAmount, String toAmount ) {
+		xml.append("<CampaignCodeInfo>");
+		element( xml, "CampaignCode", campaignCode );
+		element( xml, "Description", description );
+		element( xml, "PaymentPlanType", paymentPlanType );
+		element( xml, "ContractLengthInMonths", contractLengthInMonths );
+		element( xml, "MonthlyAnnuityFactor", monthlyAnnuityFactor );
+		element( xml, "InitialFee", initialFee );
+		element( xml, "NotificationFee", notificationFee );
+		element( xml, "InterestRatePercent", interestRatePercent );
+		element( xml, "NumberOfInterestFreeMonths", numberOfInterestFreeMonths );
+		element( xml, "NumberOfPaymentFreeMonths", numberOfPaymentFreeMonths );
+		element( xml, "FromAmount", fromAmount );
+		element( xml, "ToAmount", toAmount );
+		xml.append("</CampaignCodeInfo>");
+	}
+
+	static Row readRow( Element orderRow ) {
+		Row row = new Row();
+		row.articleNumber = text(orderRow, "ArticleNumber");
+		row.description = text(orderRow, "Description");
+		row.discountPercent = StandInXml.doubleValue(orderRow, "DiscountPercent", 0.0);
+		row.numberOfUnits = StandInXml.doubleValue(orderRow, "NumberOfUnits", 1.0);
+		row.priceIncludingVat = "true".equals( text(orderRow, "PriceIncludingVat") );
+		row.pricePerUnit = StandInXml.doubleValue(orderRow, "PricePerUnit", 0.0);
+		row.unit = text(orderRow, "Unit");
+		row.vatPercent = StandInXml.doubleValue(orderRow, "VatPercent", 0.0);
+		return row;
+	}
+
+	private static StringBuilder start( String operation ) {
+		StringBuilder xml = new StringBuilder(1024);
+		xml.append("<soap:Envelope xmlns:soap=\"").append(StandInXml.SOAP_ENVELOPE_NAMESPACE).append("\"")
+			.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">");
+		xml.append("<soap:Body>");
+		xml.append('<').append(operation).append("Response xmlns=\"").append(NAMESPACE).append("\">");
+		xml.append('<').append(operation).append("Result>");
+		return xml;
+	}
+
+	private static String end( StringBuilder xml, String operation ) {
+		xml.append("</").append(operation).append("Result>");
+		xml.append("</").append(operation).append("Response>");
+		xml.append("</soap:Body></soap:Envelope>");
+		return xml.toString();
+	}
+
+	private static void writeResult( StringBuilder xml, boolean accepted, String resultCode, String errorMessage ) {
+		element( xml, "Accepted", accepted ? "true" : "false" );
+		element( xml, "ResultCode", resultCode );
+		if( errorMessage != null ) {
+			element( xml, "ErrorMessage", errorMessage );
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package se.sveaekonomi.webpay.integration.util.xml;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+
+/**
+ * Reads the element values of an xml document in a single StAX pass, used to parse the hosted service responses.
+ *
+ * For each element name, the value and attributes of the first element with that name in document order are kept,
+ * which matches looking up the name with getElementsByTagName(name).item(0) in a DOM. The value is the trimmed text
+ * content directly following the start tag, or null if the element is empty.
+ *
+ * If a row container element name is given, each child element of the first container element is also read as a row,
+ * holding the first value for each element name within that row.
+ */
+public final class XMLValueReader {
+
+	// XMLInputFactory implementations are not guaranteed to be thread-safe, so keep one configured factory per thread
+	private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			return factory;
+		}
+	};
+
+	private final Map<String,String> values = new HashMap<String,String>();
+	private final Map<String,Map<String,String>> attributes = new HashMap<String,Map<String,String>>();
+	private final List<Map<String,String>> rows = new ArrayList<Map<String,String>>();
+
+	private XMLValueReader() {
+	}
+
+	/**
+	 * Reads the element values of the given xml document.
+	 * @throws SveaWebPayException if the xml is not well-formed
+	 */
+	public static XMLValueReader parse( String xml ) {
+		return parse( xml, null );
+	}
+
+	/**
+	 * Reads the element values of the given xml document, and the rows held by the first rowContainer element.
+	 * @throws SveaWebPayException if the xml is not well-formed
+	 */
+	public static XMLValueReader parse( String xml, String rowContainer ) {
+		XMLValueReader reader = new XMLValueReader();
+		try {
+			XMLStreamReader xmlr = inputFactory.get().createXMLStreamReader( new StringReader(xml) );
+			try {
+				reader.read( xmlr, rowContainer );
+			}
+			finally {
+				xmlr.close();
+			}
+		}
+		catch( XMLStreamException e ) {
+			throw new SveaWebPayException("XMLStreamException", e);
+		}
+		return reader;
+	}
+
+	/**
+	 * @return a StAX reader for the xml document, using the same configuration as parse(), for responses read by other classes
+	 */
+	public static XMLStreamReader createStreamReader( InputStream xml ) throws XMLStreamException {
+		return inputFactory.get().createXMLStreamReader( xml );
+	}
+
+	/** @return true if the document contains an element with the given name */
+	public boolean hasElement( String name ) {
+		return values.containsKey(name);
+	}
+
+	/** @return the value of the first element with the given name, or null if not found or empty */
+	public String getValue( String name ) {
+		return values.get(name);
+	}
+
+	/** @return the attribute value of the first element with the given name, or null if not found */
+	public String getAttribute( String name, String attributeName ) {
+		Map<String,String> elementAttributes = attributes.get(name);
+		return (elementAttributes == null) ? null : elementAttributes.get(attributeName);
+	}
+
+	/** @return the rows of the row container, in document order, each mapping element names to values */
+	public List<Map<String,String>> getRows() {
+		return rows;
+	}
+
+	private void read( XMLStreamReader xmlr, String rowContainer ) throws XMLStreamException {
+		int depth = 0;
+		int containerDepth = -1;	// depth of the children of the row container, once found
+		boolean containerDone = false;
+		Map<String,String> row = null;
+
+		// the element whose text is being read, if it is the first of its name in the document or the current row
+		String pendingName = null;
+		boolean pendingValue = false;
+		boolean pendingRowValue = false;
+		StringBuilder text = null;
+
+		while( xmlr.hasNext() ) {
+			int event = xmlr.next();
+			switch( event ) {
+			case XMLStreamConstants.START_ELEMENT:
+				if( pendingName != null ) {
+					setValue( pendingName, pendingValue, pendingRowValue ? row : null, text );
+					pendingName = null;
+				}
+				String name = xmlr.getLocalName();
+				depth++;
+
+				if( containerDepth == depth ) {
+					row = new HashMap<String,String>();
+					rows.add(row);
+				}
+
+				pendingValue = !values.containsKey(name);
+				pendingRowValue = (row != null && depth > containerDepth && !row.containsKey(name));
+				if( pendingValue ) {
+					values.put(name, null);
+					if( xmlr.getAttributeCount() > 0 ) {
+						Map<String,String> elementAttributes = new HashMap<String,String>();
+						for( int i = 0; i < xmlr.getAttributeCount(); i++ ) {
+							elementAttributes.put( xmlr.getAttributeLocalName(i), xmlr.getAttributeValue(i) );
+						}
+						attributes.put(name, elementAttributes);
+					}
+				}
+				if( pendingRowValue ) {
+					row.put(name, null);
+				}
+				if( pendingValue || pendingRowValue ) {
+					pendingName = name;
+					text = null;
+				}
+
+				if( !containerDone && containerDepth < 0 && name.equals(rowContainer) ) {
+					containerDepth = depth + 1;
+				}
+				break;
+
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if( pendingName != null ) {
+					if( text == null ) {
+						text = new StringBuilder();
+					}
+					text.append( xmlr.getTextCharacters(), xmlr.getTextStart(), xmlr.getTextLength() );
+				}
+				break;
+
+			case XMLStreamConstants.END_ELEMENT:
+				if( pendingName != null ) {
+					setValue( pendingName, pendingValue, pendingRowValue ? row : null, text );
+					pendingName = null;
+				}
+				if( containerDepth == depth ) {
+					row = null;
+				}
+				else if( containerDepth == depth + 1 ) {
+					containerDepth = -1;	// end of row container
+					containerDone = true;
+				}
+				depth--;
+				break;
+
+			default:
+				break;
+			}
+		}
+	}
+
+	private void setValue( String name, boolean isFirst, Map<String,String> row, StringBuilder text ) {
+		String value = (text == null) ? null : text.toString().trim();
+		if( isFirst ) {
+			values.put(name, value);
+		}
+		if( row != null ) {
+			row.put(name, value);
+		}
+	}
+}
@@ -1,17 +1,26 @@
 package se.sveaekonomi.webpay.integration.webservice.getaddresses;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
 
 import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.response.webservice.GetAddressesResponse;
 import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+import se.sveaekonomi.webpay.integration.util.request.ResiliencePolicy;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebServiceXmlBuilder;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaAuth;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaGetAddresses;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaRequest;
@@ -34,6 +43,7 @@ public class GetAddresses {
     private COUNTRYCODE countryCode;
     private String orderType;
     private ConfigurationProvider config;
+    private ResiliencePolicy policy;
     
     public GetAddresses(ConfigurationProvider config) {
         this.config = config;
@@ -129,9 +139,10 @@ public class GetAddresses {
     private SveaAuth getStoreAuthorization() {
          SveaAuth auth = new SveaAuth();
          PAYMENTTYPE type = (orderType != null && orderType.equals("Invoice") ? PAYMENTTYPE.INVOICE : PAYMENTTYPE.PAYMENTPLAN);
-         auth.Username = config.getUsername(type, countryCode);
-         auth.Password = config.getPassword(type, countryCode);
-         auth.ClientNumber = config.getClientNumber(type, countryCode);
+         Credentials credentials = Credentials.resolve(config, type, countryCode);
+         auth.Username = credentials.getUsername();
+         auth.Password = credentials.getPassword();
+         auth.ClientNumber = credentials.getClientNumber();
          return auth;
     }
     
@@ -164,16 +175,56 @@ public class GetAddresses {
         return request;
     }
     
+    /**
+     * Optional, retry, hedge and bound the request using the given policy instead of ResiliencePolicy.getDefault()
+     * @param policy
+     * @return GetAddresses
+     */
+    public GetAddresses useResiliencePolicy(ResiliencePolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+    
     public GetAddressesResponse doRequest() {
+        ResiliencePolicy policy = (this.policy != null) ? this.policy : ResiliencePolicy.getDefault();
+        return policy.execute("GetAddresses", new Callable<GetAddressesResponse>() {
+            @Override
+            public GetAddressesResponse call() {
+                RequestTimer timer = RequestMetrics.start("GetAddresses", null, countryCode);
+                try {
+                    return timer.finish( doRequest(timer) );
+                }
+                catch( RuntimeException e ) {
+                    throw timer.fail(e);
+                }
+            }
+        });
+    }
+    
+    private GetAddressesResponse doRequest(RequestTimer timer) {
         SveaRequest<SveaGetAddresses> request = prepareRequest();
         
+        timer.enter(Phase.SERIALIZE);
         WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
         String xml = xmlBuilder.getGetAddressesXml(request.request);
         
-        SveaSoapBuilder soapBuilder = new SveaSoapBuilder();
-        String soapMessage = soapBuilder.makeSoapMessage("GetAddresses", xml);
+        SveaSoapBuilder soapBuilder = new SveaSoapBuilder().setRequestTimer(timer);
+        SoapEnvelopeWriter.Content soapMessage = soapBuilder.makeSoapContent("GetAddresses", xml);
         NodeList soapResponse = soapBuilder.createGetAddressesEuRequest(soapMessage, config);
         GetAddressesResponse response = new GetAddressesResponse(soapResponse);
         return response;
     }
+
+    /**
+     * Looks up the addresses on the SveaRequestExecutor, i.e. while the customer fills in the rest of a checkout form.
+     * @return a Future of the GetAddressesResponse
+     */
+    public Future<GetAddressesResponse> doRequestAsync() {
+        return SveaRequestExecutor.submit( new Callable<GetAddressesResponse>() {
+            @Override
+            public GetAddressesResponse call() {
+                return doRequest();
+            }
+        });
+    }
 }
@@ -1,17 +1,26 @@
 package se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
 
 import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
 import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+import se.sveaekonomi.webpay.integration.util.request.ResiliencePolicy;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebServiceXmlBuilder;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaAuth;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaGetPaymentPlanParams;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaRequest;
@@ -21,6 +30,8 @@ public class GetPaymentPlanParams {
     
     private COUNTRYCODE countryCode;
     private ConfigurationProvider config;
+    private PaymentPlanParamsCache cache;
+    private ResiliencePolicy policy;
     
     public GetPaymentPlanParams(ConfigurationProvider config) {
         this.config = config;
@@ -36,11 +47,40 @@ public class GetPaymentPlanParams {
         return this;
     }
     
+    /**
+     * Optional, serve the response from the default PaymentPlanParamsCache
+     * @return GetPaymentPlanParams
+     */
+    public GetPaymentPlanParams useCache() {
+        return useCache(PaymentPlanParamsCache.getDefault());
+    }
+    
+    /**
+     * Optional, serve the response from the given PaymentPlanParamsCache
+     * @param cache
+     * @return GetPaymentPlanParams
+     */
+    public GetPaymentPlanParams useCache(PaymentPlanParamsCache cache) {
+        this.cache = cache;
+        return this;
+    }
+    
+    /**
+     * Optional, retry, hedge and bound the request using the given policy instead of ResiliencePolicy.getDefault()
+     * @param policy
+     * @return GetPaymentPlanParams
+     */
+    public GetPaymentPlanParams useResiliencePolicy(ResiliencePolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+    
     protected SveaAuth getStoreAuthorization() {
         SveaAuth auth = new SveaAuth();
-        auth.Username = config.getUsername(PAYMENTTYPE.PAYMENTPLAN, countryCode);
-        auth.Password = config.getPassword(PAYMENTTYPE.PAYMENTPLAN, countryCode);
-        auth.ClientNumber = config.getClientNumber(PAYMENTTYPE.PAYMENTPLAN, countryCode);
+        Credentials credentials = Credentials.resolve(config, PAYMENTTYPE.PAYMENTPLAN, countryCode);
+        auth.Username = credentials.getUsername();
+        auth.Password = credentials.getPassword();
+        auth.ClientNumber = credentials.getClientNumber();
         
         return auth;
     }
@@ -71,15 +111,54 @@ public class GetPaymentPlanParams {
     }
     
     public PaymentPlanParamsResponse doRequest() {
-        SveaRequest<SveaGetPaymentPlanParams> request = prepareRequest();
-        
+        final SveaRequest<SveaGetPaymentPlanParams> request = prepareRequest();
+        final ResiliencePolicy policy = (this.policy != null) ? this.policy : ResiliencePolicy.getDefault();
+        final Callable<PaymentPlanParamsResponse> attempt = new Callable<PaymentPlanParamsResponse>() {
+            @Override
+            public PaymentPlanParamsResponse call() {
+                RequestTimer timer = RequestMetrics.start("GetPaymentPlanParamsEu", PAYMENTTYPE.PAYMENTPLAN, countryCode);
+                try {
+                    return timer.finish( sendRequest(request, timer) );
+                }
+                catch( RuntimeException e ) {
+                    throw timer.fail(e);
+                }
+            }
+        };
+        if (this.cache == null) {
+            return policy.execute("GetPaymentPlanParamsEu", attempt);
+        }
+        // responses served from the cache are not reported to the MetricsListener, a load or background refresh is
+        return this.cache.get(request.request.Auth.ClientNumber, this.countryCode, new Callable<PaymentPlanParamsResponse>() {
+            @Override
+            public PaymentPlanParamsResponse call() {
+                return policy.execute("GetPaymentPlanParamsEu", attempt);
+            }
+        });
+    }
+    
+    private PaymentPlanParamsResponse sendRequest(SveaRequest<SveaGetPaymentPlanParams> request, RequestTimer timer) {
+        timer.enter(Phase.SERIALIZE);
         WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
         String xml = xmlBuilder.getGetPaymentPlanParamsXml(request.request);
-        SveaSoapBuilder soapBuilder = new SveaSoapBuilder();
-        String soapMessage = soapBuilder.makeSoapMessage("GetPaymentPlanParamsEu", xml);
+        SveaSoapBuilder soapBuilder = new SveaSoapBuilder().setRequestTimer(timer);
+        SoapEnvelopeWriter.Content soapMessage = soapBuilder.makeSoapContent("GetPaymentPlanParamsEu", xml);
         NodeList soapResponse = soapBuilder.createGetPaymentPlanParamsEuRequest(soapMessage, this.config, PAYMENTTYPE.PAYMENTPLAN);
         PaymentPlanParamsResponse response = new PaymentPlanParamsResponse(soapResponse);
         
         return response;
     }
+
+    /**
+     * Fetches the campaigns on the SveaRequestExecutor, using the resilience policy as doRequest() does.
+     * @return a Future of the PaymentPlanParamsResponse
+     */
+    public Future<PaymentPlanParamsResponse> doRequestAsync() {
+        return SveaRequestExecutor.submit( new Callable<PaymentPlanParamsResponse>() {
+            @Override
+            public PaymentPlanParamsResponse call() {
+                return doRequest();
+            }
+        });
+    }
 }
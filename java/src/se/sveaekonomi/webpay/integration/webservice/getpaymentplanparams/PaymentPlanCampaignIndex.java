@@ -0,0 +1,218 @@
+package se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import se.sveaekonomi.webpay.integration.response.webservice.CampaignCode;
+import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
+
+/**
+ * Immutable, precompiled form of the campaigns in a PaymentPlanParamsResponse, used to calculate the price per month for
+ * many amounts without re-parsing the campaign attributes on each call.
+ *
+ * Campaigns keep the order they have in the response, and are referred to by their index in that order. The price per
+ * month is calculated exactly as in PaymentPlanPricePerMonth, i.e. Math.round(amount * monthlyAnnuityFactor + notificationFee).
+ *
+ * Build an index once per PaymentPlanParamsResponse, and share it between threads:
+ * ```java
+ *     PaymentPlanCampaignIndex index = PaymentPlanCampaignIndex.compile(response);
+ *     long[] prices = index.calculatePricesPerMonth(amounts, null);	// prices[i * index.size() + c] is the price of amounts[i] using campaign c
+ * ```
+ */
+public final class PaymentPlanCampaignIndex {
+
+	/** Price per month returned for a campaign that is not available for the amount */
+	public static final long NOT_AVAILABLE = Long.MIN_VALUE;
+
+	private final String[] campaignCodes;
+	private final String[] descriptions;
+	private final double[] fromAmounts;
+	private final double[] toAmounts;
+	private final double[] monthlyAnnuityFactors;
+	private final double[] notificationFees;
+
+	// campaign indexes sorted by fromAmount, and the corresponding fromAmounts, used for the interval lookup
+	private final int[] sortedIndexes;
+	private final double[] sortedFromAmounts;
+
+	private PaymentPlanCampaignIndex( List<CampaignCode> campaigns ) {
+		int size = campaigns.size();
+		campaignCodes = new String[size];
+		descriptions = new String[size];
+		fromAmounts = new double[size];
+		toAmounts = new double[size];
+		monthlyAnnuityFactors = new double[size];
+		notificationFees = new double[size];
+
+		for( int i = 0; i < size; i++ ) {
+			CampaignCode campaign = campaigns.get(i);
+			campaignCodes[i] = campaign.getCampaignCode();
+			descriptions[i] = campaign.getDescription();
+			fromAmounts[i] = Double.parseDouble(campaign.getFromAmount());
+			toAmounts[i] = Double.parseDouble(campaign.getToAmount());
+			monthlyAnnuityFactors[i] = Double.parseDouble(campaign.getMonthlyAnnuityFactor());
+			notificationFees[i] = Double.parseDouble(campaign.getNotificationFee());
+		}
+
+		// sort campaign indexes by fromAmount, keeping response order for equal fromAmounts
+		Integer[] order = new Integer[size];
+		for( int i = 0; i < size; i++ ) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare( Integer a, Integer b ) {
+				int c = Double.compare(fromAmounts[a], fromAmounts[b]);
+				return (c != 0) ? c : a.compareTo(b);
+			}
+		});
+		sortedIndexes = new int[size];
+		sortedFromAmounts = new double[size];
+		for( int i = 0; i < size; i++ ) {
+			sortedIndexes[i] = order[i];
+			sortedFromAmounts[i] = fromAmounts[order[i]];
+		}
+	}
+
+	/**
+	 * Builds the index from the campaigns in the response. A null response gives an empty index.
+	 * @throws NumberFormatException if a campaign amount attribute is not a number
+	 */
+	public static PaymentPlanCampaignIndex compile( PaymentPlanParamsResponse paymentPlanParams ) {
+		if( paymentPlanParams == null || paymentPlanParams.getCampaignCodes() == null ) {
+			return new PaymentPlanCampaignIndex( new ArrayList<CampaignCode>() );
+		}
+		return new PaymentPlanCampaignIndex( paymentPlanParams.getCampaignCodes() );
+	}
+
+	/** @return number of campaigns */
+	public int size() {
+		return campaignCodes.length;
+	}
+
+	public String getCampaignCode( int campaign ) {
+		return campaignCodes[campaign];
+	}
+
+	public String getDescription( int campaign ) {
+		return descriptions[campaign];
+	}
+
+	public double getFromAmount( int campaign ) {
+		return fromAmounts[campaign];
+	}
+
+	public double getToAmount( int campaign ) {
+		return toAmounts[campaign];
+	}
+
+	/** @return true if fromAmount <= amount <= toAmount for the campaign */
+	public boolean isAvailable( int campaign, double amount ) {
+		return fromAmounts[campaign] <= amount && amount <= toAmounts[campaign];
+	}
+
+	/** @return the price per month for the amount using the campaign, regardless of the campaign amount limits */
+	public long getPricePerMonth( int campaign, double amount ) {
+		return Math.round(amount * monthlyAnnuityFactors[campaign] + notificationFees[campaign]);
+	}
+
+	/**
+	 * @return indexes of the campaigns available for the amount, in response order
+	 */
+	public int[] findAvailableCampaigns( double amount ) {
+		int candidates = countCandidates(amount);
+		int[] found = new int[candidates];
+		int count = 0;
+		for( int k = 0; k < candidates; k++ ) {
+			int campaign = sortedIndexes[k];
+			if( amount <= toAmounts[campaign] ) {
+				found[count++] = campaign;
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Calculates the price per month for each amount and campaign.
+	 *
+	 * @param amounts -- amounts to price
+	 * @param result -- array of at least amounts.length * size() elements to write to, or null to allocate a new array
+	 * @return result, where result[i * size() + c] holds the price per month of amounts[i] using campaign c, or NOT_AVAILABLE
+	 * 		if the amount is outside the campaign amount limits
+	 */
+	public long[] calculatePricesPerMonth( double[] amounts, long[] result ) {
+		return calculatePricesPerMonth( amounts, result, false );
+	}
+
+	/**
+	 * As calculatePricesPerMonth(amounts, result), but if ignoreMaxAndMinFlag is true all campaigns are priced for all amounts.
+	 */
+	public long[] calculatePricesPerMonth( double[] amounts, long[] result, boolean ignoreMaxAndMinFlag ) {
+		int size = size();
+		if( result == null ) {
+			result = new long[amounts.length * size];
+		}
+		else if( result.length < amounts.length * size ) {
+			throw new IllegalArgumentException("result must hold at least amounts.length * size() elements");
+		}
+
+		for( int i = 0; i < amounts.length; i++ ) {
+			double amount = amounts[i];
+			int row = i * size;
+			if( ignoreMaxAndMinFlag ) {
+				for( int c = 0; c < size; c++ ) {
+					result[row + c] = getPricePerMonth(c, amount);
+				}
+				continue;
+			}
+			Arrays.fill(result, row, row + size, NOT_AVAILABLE);
+			int candidates = countCandidates(amount);
+			for( int k = 0; k < candidates; k++ ) {
+				int c = sortedIndexes[k];
+				if( amount <= toAmounts[c] ) {
+					result[row + c] = getPricePerMonth(c, amount);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the same result as PaymentPlanPricePerMonth.calculate() for the response this index was compiled from.
+	 */
+	public List<Map<String, String>> calculate( Double amount, Boolean ignoreMaxAndMinFlag ) {
+		List<Map<String, String>> pricesPerMonth = new ArrayList<Map<String, String>>();
+		for( int c = 0; c < size(); c++ ) {
+			if( ignoreMaxAndMinFlag || isAvailable(c, amount) ) {
+				Map<String, String> priceMap = new HashMap<String, String>();
+				priceMap.put("campaignCode", campaignCodes[c]);
+				priceMap.put("description", descriptions[c]);
+				priceMap.put("pricePerMonth", Long.toString(getPricePerMonth(c, amount)));
+				pricesPerMonth.add(priceMap);
+			}
+		}
+		return pricesPerMonth;
+	}
+
+	/** @return number of campaigns, in sortedIndexes order, with fromAmount <= amount */
+	private int countCandidates( double amount ) {
+		int low = 0;
+		int high = sortedFromAmounts.length;
+		while( low < high ) {
+			int mid = (low + high) >>> 1;
+			if( sortedFromAmounts[mid] <= amount ) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
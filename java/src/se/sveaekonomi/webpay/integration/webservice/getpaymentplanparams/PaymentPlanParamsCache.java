@@ -0,0 +1,272 @@
+package se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+
+/**
+ * In-memory cache of accepted GetPaymentPlanParams responses, keyed by client number and country code.
+ *
+ * A cached response is served as-is until it is refreshAfter milliseconds old. After that it is still served, but a
+ * refresh is started in the background on the SveaRequestExecutor (stale-while-revalidate). Once a response is
+ * timeToLive milliseconds old it is no longer served, and the next request waits for a new response. Concurrent requests
+ * for a missing entry are collapsed into a single GetPaymentPlanParams request. Responses that are not accepted are
+ * never cached.
+ *
+ * Use GetPaymentPlanParams.useCache() to serve a request from the cache. Cached responses are shared between callers and
+ * should not be modified.
+ */
+public class PaymentPlanParamsCache {
+
+	/** Default age after which a cached response is no longer served, one hour */
+	public static final long DEFAULT_TIME_TO_LIVE = 60 * 60 * 1000L;
+	/** Default age after which a cached response is refreshed in the background, 45 minutes */
+	public static final long DEFAULT_REFRESH_AFTER = 45 * 60 * 1000L;
+
+	private static volatile PaymentPlanParamsCache defaultCache = new PaymentPlanParamsCache();
+
+	private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+	private volatile long refreshAfter = DEFAULT_REFRESH_AFTER;
+
+	private final ConcurrentHashMap<Key,Entry> entries = new ConcurrentHashMap<Key,Entry>();
+	private final ConcurrentHashMap<Key,FutureTask<PaymentPlanParamsResponse>> loading = new ConcurrentHashMap<Key,FutureTask<PaymentPlanParamsResponse>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong staleHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalescedMisses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong refreshFailures = new AtomicLong();
+
+	/**
+	 * Returns the library-wide cache used by GetPaymentPlanParams.useCache().
+	 */
+	public static PaymentPlanParamsCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * Installs the given cache as the library-wide default.
+	 * @return the previous default cache
+	 */
+	public static PaymentPlanParamsCache setDefault( PaymentPlanParamsCache cache ) {
+		PaymentPlanParamsCache previous = defaultCache;
+		defaultCache = cache;
+		return previous;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/** Optional, age in milliseconds after which a cached response is no longer served, defaults to DEFAULT_TIME_TO_LIVE */
+	public PaymentPlanParamsCache setTimeToLive( long timeToLive ) {
+		this.timeToLive = timeToLive;
+		return this;
+	}
+
+	public long getRefreshAfter() {
+		return refreshAfter;
+	}
+
+	/** Optional, age in milliseconds after which a cached response is refreshed in the background, defaults to DEFAULT_REFRESH_AFTER */
+	public PaymentPlanParamsCache setRefreshAfter( long refreshAfter ) {
+		this.refreshAfter = refreshAfter;
+		return this;
+	}
+
+	/**
+	 * Returns the cached response for the client number and country, calling the loader if there is no usable cached response.
+	 *
+	 * @param loader -- performs the GetPaymentPlanParams request
+	 * @throws SveaWebPayException if the loader fails
+	 */
+	public PaymentPlanParamsResponse get( int clientNumber, COUNTRYCODE countryCode, Callable<PaymentPlanParamsResponse> loader ) {
+		Key key = new Key(clientNumber, countryCode);
+		Entry entry = entries.get(key);
+		if( entry != null ) {
+			long age = System.currentTimeMillis() - entry.loadedAt;
+			if( age < timeToLive ) {
+				if( age >= refreshAfter ) {
+					staleHits.incrementAndGet();
+					refreshInBackground(key, entry, loader);
+				}
+				else {
+					hits.incrementAndGet();
+				}
+				return entry.response;
+			}
+		}
+		misses.incrementAndGet();
+		return load(key, loader);
+	}
+
+	/**
+	 * Removes the cached response for the client number and country, if any.
+	 */
+	public void invalidate( int clientNumber, COUNTRYCODE countryCode ) {
+		entries.remove( new Key(clientNumber, countryCode) );
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/** @return number of requests served from a fresh cached response */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/** @return number of requests served from a cached response while it was refreshed in the background */
+	public long getStaleHitCount() {
+		return staleHits.get();
+	}
+
+	/** @return number of requests that had to wait for a response */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/** @return number of misses that waited for a request already in progress, instead of sending their own */
+	public long getCoalescedMissCount() {
+		return coalescedMisses.get();
+	}
+
+	/** @return number of GetPaymentPlanParams requests sent by the cache */
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	/** @return number of background refreshes started */
+	public long getRefreshCount() {
+		return refreshes.get();
+	}
+
+	/** @return number of background refreshes that failed, in which case the cached response is kept */
+	public long getRefreshFailureCount() {
+		return refreshFailures.get();
+	}
+
+	private PaymentPlanParamsResponse load( final Key key, final Callable<PaymentPlanParamsResponse> loader ) {
+		FutureTask<PaymentPlanParamsResponse> task = new FutureTask<PaymentPlanParamsResponse>( new Callable<PaymentPlanParamsResponse>() {
+			@Override
+			public PaymentPlanParamsResponse call() throws Exception {
+				loads.incrementAndGet();
+				PaymentPlanParamsResponse response = loader.call();
+				if( response != null && Boolean.TRUE.equals(response.isOrderAccepted()) ) {
+					entries.put( key, new Entry(response, System.currentTimeMillis()) );
+				}
+				return response;
+			}
+		});
+
+		FutureTask<PaymentPlanParamsResponse> inProgress = loading.putIfAbsent(key, task);
+		if( inProgress == null ) {
+			try {
+				task.run();
+			}
+			finally {
+				loading.remove(key, task);
+			}
+			inProgress = task;
+		}
+		else {
+			coalescedMisses.incrementAndGet();
+		}
+
+		try {
+			return inProgress.get();
+		}
+		catch( ExecutionException e ) {
+			if( e.getCause() instanceof RuntimeException ) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SveaWebPayException("GetPaymentPlanParams request failed", e.getCause());
+		}
+		catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new SveaWebPayException("Interrupted while waiting for GetPaymentPlanParams response", e);
+		}
+	}
+
+	private void refreshInBackground( final Key key, final Entry entry, final Callable<PaymentPlanParamsResponse> loader ) {
+		if( !entry.refreshing.compareAndSet(false, true) ) {
+			return; // refresh already started
+		}
+		refreshes.incrementAndGet();
+		try {
+			SveaRequestExecutor.submit( new Callable<Void>() {
+				@Override
+				public Void call() {
+					try {
+						PaymentPlanParamsResponse response = load(key, loader);
+						if( response == null || !Boolean.TRUE.equals(response.isOrderAccepted()) ) {
+							refreshFailures.incrementAndGet();	// not accepted, the cached response is kept
+						}
+					}
+					catch( RuntimeException e ) {
+						refreshFailures.incrementAndGet();
+					}
+					finally {
+						entry.refreshing.set(false);
+					}
+					return null;
+				}
+			});
+		}
+		catch( RejectedExecutionException e ) {
+			// executor shut down or saturated, the cached response is returned and the refresh tried again on a later hit
+			refreshFailures.incrementAndGet();
+			entry.refreshing.set(false);
+		}
+	}
+
+	private static final class Entry {
+		private final PaymentPlanParamsResponse response;
+		private final long loadedAt;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Entry( PaymentPlanParamsResponse response, long loadedAt ) {
+			this.response = response;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	private static final class Key {
+		private final int clientNumber;
+		private final COUNTRYCODE countryCode;
+
+		Key( int clientNumber, COUNTRYCODE countryCode ) {
+			this.clientNumber = clientNumber;
+			this.countryCode = countryCode;
+		}
+
+		@Override
+		public boolean equals( Object o ) {
+			if( !(o instanceof Key) ) {
+				return false;
+			}
+			Key other = (Key) o;
+			return clientNumber == other.clientNumber && countryCode == other.countryCode;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * clientNumber + countryCode.hashCode();
+		}
+	}
+}
@@ -37,4 +37,14 @@ public class PaymentPlanPricePerMonth {
         
         return pricesPerMonth;
     }
+    
+    /**
+     * As calculate(amount, paymentPlanParams, ignoreMaxAndMinFlag), using campaigns precompiled with PaymentPlanCampaignIndex.compile()
+     */
+    public List<Map<String, String>> calculate(Double amount, PaymentPlanCampaignIndex campaigns, Boolean ignoreMaxAndMinFlag) {
+        if (null == campaigns) {
+            return new ArrayList<Map<String, String>>();
+        }
+        return campaigns.calculate(amount, ignoreMaxAndMinFlag);
+    }
 }
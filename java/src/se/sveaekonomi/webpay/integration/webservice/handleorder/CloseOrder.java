@@ -1,16 +1,24 @@
 package se.sveaekonomi.webpay.integration.webservice.handleorder;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
 
 import org.w3c.dom.NodeList;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.CloseOrderBuilder;
 import se.sveaekonomi.webpay.integration.response.webservice.CloseOrderResponse;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebServiceXmlBuilder;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaAuth;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaCloseOrder;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaCloseOrderInformation;
@@ -28,9 +36,10 @@ public class CloseOrder {
     protected SveaAuth getStoreAuthorization() {
          SveaAuth auth = new SveaAuth();
          PAYMENTTYPE type = (order.getOrderType().equals("Invoice") ? PAYMENTTYPE.INVOICE : PAYMENTTYPE.PAYMENTPLAN);
-         auth.Username = order.getConfig().getUsername(type, order.getCountryCode());
-         auth.Password = order.getConfig().getPassword(type, order.getCountryCode());
-         auth.ClientNumber = order.getConfig().getClientNumber(type, order.getCountryCode());
+         Credentials credentials = Credentials.resolve(order.getConfig(), type, order.getCountryCode());
+         auth.Username = credentials.getUsername();
+         auth.Password = credentials.getPassword();
+         auth.ClientNumber = credentials.getClientNumber();
          return auth;
     }    
     
@@ -70,14 +79,38 @@ public class CloseOrder {
     
     public CloseOrderResponse doRequest() {
         PAYMENTTYPE orderType = order.getOrderType().equals("Invoice") ? PAYMENTTYPE.INVOICE : PAYMENTTYPE.PAYMENTPLAN;
+        RequestTimer timer = RequestMetrics.start("CloseOrderEu", orderType, order.getCountryCode());
+        try {
+            return timer.finish( doRequest(orderType, timer) );
+        }
+        catch( RuntimeException e ) {
+            throw timer.fail(e);
+        }
+    }
+    
+    private CloseOrderResponse doRequest(PAYMENTTYPE orderType, RequestTimer timer) {
         SveaRequest<SveaCloseOrder> request = this.prepareRequest();
         
+        timer.enter(Phase.SERIALIZE);
         WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
         String xml = xmlBuilder.getCloseOrderEuXml(request.request);
-        SveaSoapBuilder soapBuilder = new SveaSoapBuilder();
-        String soapMessage = soapBuilder.makeSoapMessage("CloseOrderEu", xml);
+        SveaSoapBuilder soapBuilder = new SveaSoapBuilder().setRequestTimer(timer);
+        SoapEnvelopeWriter.Content soapMessage = soapBuilder.makeSoapContent("CloseOrderEu", xml);
         NodeList soapResponse = soapBuilder.closeOrderEuRequest(soapMessage, order.getConfig(), orderType );
         CloseOrderResponse response = new CloseOrderResponse(soapResponse);
         return response;
     }
+
+    /**
+     * Closes the order in the background and returns at once.
+     * @return a Future of the CloseOrderResponse, whose get() throws an ExecutionException if doRequest() fails
+     */
+    public Future<CloseOrderResponse> doRequestAsync() {
+        return SveaRequestExecutor.submit( new Callable<CloseOrderResponse>() {
+            @Override
+            public CloseOrderResponse call() {
+                return doRequest();
+            }
+        });
+    }
 }
@@ -1,17 +1,27 @@
 package se.sveaekonomi.webpay.integration.webservice.handleorder;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
 import javax.xml.bind.ValidationException;
 
 import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.Requestable;
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.DeliverOrderBuilder;
 import se.sveaekonomi.webpay.integration.order.validator.HandleOrderValidator;
 import se.sveaekonomi.webpay.integration.response.webservice.DeliverOrderResponse;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+import se.sveaekonomi.webpay.integration.util.request.PriceIncludingVatCache;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebServiceXmlBuilder;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebserviceRowFormatter;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaAuth;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaDeliverInvoiceDetails;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaDeliverOrder;
@@ -32,9 +42,10 @@ public class HandleOrder implements Requestable {
     protected SveaAuth getStoreAuthorization() {
          SveaAuth auth = new SveaAuth();
          PAYMENTTYPE orderType = (order.getOrderType().toString().equals("Invoice") ? PAYMENTTYPE.INVOICE : PAYMENTTYPE.PAYMENTPLAN);
-         auth.Username = order.getConfig().getUsername(orderType, order.getCountryCode());
-         auth.Password = order.getConfig().getPassword(orderType, order.getCountryCode());
-         auth.ClientNumber = order.getConfig().getClientNumber(orderType, order.getCountryCode());
+         Credentials credentials = Credentials.resolve(order.getConfig(), orderType, order.getCountryCode());
+         auth.Username = credentials.getUsername();
+         auth.Password = credentials.getPassword();
+         auth.ClientNumber = credentials.getClientNumber();
          return auth;
     }
     
@@ -88,32 +99,85 @@ public class HandleOrder implements Requestable {
     
     public DeliverOrderResponse doRequest() {
         PAYMENTTYPE orderType = (order.getOrderType().toString().equals("Invoice") ? PAYMENTTYPE.INVOICE : PAYMENTTYPE.PAYMENTPLAN);
+        RequestTimer timer = RequestMetrics.start("DeliverOrderEu", orderType, order.getCountryCode());
+        try {
+            return timer.finish( doRequest(orderType, timer) );
+        }
+        catch( RuntimeException e ) {
+            throw timer.fail(e);
+        }
+    }
+    
+    private DeliverOrderResponse doRequest(PAYMENTTYPE orderType, RequestTimer timer) {
+        PriceIncludingVatCache priceIncludingVatCache = PriceIncludingVatCache.getDefault();
+        boolean useCache = (orderType == PAYMENTTYPE.INVOICE && order.getOrderId() != null && order.getCountryCode() != null);
+        int clientNumber = useCache ? Credentials.resolve(order.getConfig(), orderType, order.getCountryCode()).getClientNumber() : 0;
         
-        // prepare request xml
-        SveaRequest<SveaDeliverOrder> request = this.prepareRequest();
-        WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
-        String xml = xmlBuilder.getDeliverOrderEuXml(request.request);
-        //System.out.println( xml ); // debug, print xml
+        // use the PriceIncludingVat flag Svea accepted for this order before, if known, to avoid the 50036 resend below
+        Boolean knownVatFlag = null;
+        if( useCache ) {
+        	knownVatFlag = priceIncludingVatCache.getForOrder(clientNumber, order.getOrderId());
+        }
         
-        // send soap request
-        SveaSoapBuilder soapBuilder = new SveaSoapBuilder();
-        String soapMessage = soapBuilder.makeSoapMessage("DeliverOrderEu", xml);
-        NodeList soapResponse = soapBuilder.deliverOrderEuRequest(soapMessage, order.getConfig(), orderType );
-        DeliverOrderResponse response = new DeliverOrderResponse(soapResponse); 
+        // prepare request xml
+        SveaRequest<SveaDeliverOrder> request = this.prepareRequest(knownVatFlag);
+        DeliverOrderResponse response = sendDeliverOrderEuRequest(request, orderType, timer); 
         
         // if we received error 50036 from webservice , resend request with PriceIncludingVat flipped in request
         String resultCode = response.getResultCode();
-		if( resultCode.equals("50036") ) {         				
-			Boolean oldVatFlag = request.request.deliverOrderInformation.getDeliverInvoiceDetails().OrderRows.get(0).PriceIncludingVat;   
-        	SveaRequest<SveaDeliverOrder> flippedVatRequest = this.prepareRequest(!oldVatFlag);
-            String flippedVatXml = xmlBuilder.getDeliverOrderEuXml(flippedVatRequest.request);
-            SveaSoapBuilder newSoapBuilder = new SveaSoapBuilder();
-            String flippedVatSoapMessage = newSoapBuilder.makeSoapMessage("DeliverOrderEu", flippedVatXml);
-            NodeList flippedVatSoapResponse = newSoapBuilder.deliverOrderEuRequest(flippedVatSoapMessage, order.getConfig(), orderType);
-            DeliverOrderResponse flippedVatResponse = new DeliverOrderResponse(flippedVatSoapResponse);   
-            response = flippedVatResponse;
+        Boolean oldVatFlag = getPriceIncludingVatFlag(request);
+		if( resultCode.equals("50036") && oldVatFlag != null ) {         				
+			priceIncludingVatCache.recordFlip(knownVatFlag != null);
+			timer.flipped();
+        	request = this.prepareRequest(!oldVatFlag);
+            response = sendDeliverOrderEuRequest(request, orderType, timer);   
         }
+		
+		// remember the accepted PriceIncludingVat flag for the order, and for the resulting invoice
+		Boolean acceptedVatFlag = getPriceIncludingVatFlag(request);
+		if( useCache && Boolean.TRUE.equals(response.isOrderAccepted()) && acceptedVatFlag != null ) {
+			priceIncludingVatCache.putForOrder(clientNumber, order.getOrderId(), acceptedVatFlag);
+			if( response.getInvoiceId() != null ) {
+				priceIncludingVatCache.putForInvoice(clientNumber, response.getInvoiceId(), acceptedVatFlag);
+			}
+		}
         
         return response;
     }
+    
+    private DeliverOrderResponse sendDeliverOrderEuRequest(SveaRequest<SveaDeliverOrder> request, PAYMENTTYPE orderType, RequestTimer timer) {
+        timer.enter(Phase.SERIALIZE);
+        WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
+        String xml = xmlBuilder.getDeliverOrderEuXml(request.request);
+        //System.out.println( xml ); // debug, print xml
+        
+        // send soap request
+        SveaSoapBuilder soapBuilder = new SveaSoapBuilder().setRequestTimer(timer);
+        SoapEnvelopeWriter.Content soapMessage = soapBuilder.makeSoapContent("DeliverOrderEu", xml);
+        NodeList soapResponse = soapBuilder.deliverOrderEuRequest(soapMessage, order.getConfig(), orderType );
+        return new DeliverOrderResponse(soapResponse); 
+    }
+    
+    /** @return the PriceIncludingVat flag used by the request order rows, or null if the request has no invoice order rows */
+    private Boolean getPriceIncludingVatFlag(SveaRequest<SveaDeliverOrder> request) {
+    	SveaDeliverInvoiceDetails invoiceDetails = request.request.deliverOrderInformation.getDeliverInvoiceDetails();
+    	if( invoiceDetails == null || invoiceDetails.OrderRows == null || invoiceDetails.OrderRows.isEmpty() ) {
+    		return null;
+    	}
+    	return invoiceDetails.OrderRows.get(0).PriceIncludingVat;
+    }
+    
+    /**
+     * Delivers the order on the SveaRequestExecutor, including any resend after result code 50036.
+     * @return a Future of the DeliverOrderResponse
+     */
+    @Override
+    public Future<DeliverOrderResponse> doRequestAsync() {
+        return SveaRequestExecutor.submit( new Callable<DeliverOrderResponse>() {
+            @Override
+            public DeliverOrderResponse call() {
+                return doRequest();
+            }
+        });
+    }
 }
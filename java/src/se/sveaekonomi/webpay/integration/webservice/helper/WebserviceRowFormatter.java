@@ -1,18 +1,14 @@
 package se.sveaekonomi.webpay.integration.webservice.helper;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 import se.sveaekonomi.webpay.integration.order.OrderBuilder;
 import se.sveaekonomi.webpay.integration.order.row.FixedDiscountBuilder;
-import se.sveaekonomi.webpay.integration.order.row.InvoiceFeeBuilder;
 import se.sveaekonomi.webpay.integration.order.row.OrderRowBuilder;
 import se.sveaekonomi.webpay.integration.order.row.RelativeDiscountBuilder;
 import se.sveaekonomi.webpay.integration.order.row.RowBuilder;
-import se.sveaekonomi.webpay.integration.order.row.ShippingFeeBuilder;
 import se.sveaekonomi.webpay.integration.util.calculation.MathUtil;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaOrderRow;
 
@@ -23,56 +19,56 @@ public class WebserviceRowFormatter {
 	private double totalAmountExVat;
 	private double totalAmountIncVat;
 	
-	private LinkedHashMap<Double,Double> totalAmountPerVatRateIncVat;
-	private LinkedHashMap<Double,Double> totalAmountPerVatRateExVat;
+	private VatRateTotals totalAmountPerVatRate;
 
 	private ArrayList<SveaOrderRow> newRows;
 
 	// flags for each order row specification method seen in the order
-	private HashMap<String,Boolean> rowSpecificationTypesFound = new HashMap<String, Boolean>();
+	private static final int EXVAT_AND_VATPERCENT_ORDERROW_FOUND = 1;
+	private static final int INCVAT_AND_VATPERCENT_ORDERROW_FOUND = 2;
+	private static final int INCVAT_AND_EXVAT_ORDERROW_FOUND = 4;
 
-	private void checkRowSpecificationType( RowBuilder row, HashMap<String,Boolean> flags  ) {
+	private int rowSpecificationTypesFound;
+
+	private static int getRowSpecificationType( RowBuilder row ) {
+		int flags = 0;
 		
         if (row.getAmountExVat() != null && row.getVatPercent() != null && row.getAmountIncVat() == null) {
-        	flags.put("exvat_and_vatpercent_orderrow_found", Boolean.TRUE);
+        	flags |= EXVAT_AND_VATPERCENT_ORDERROW_FOUND;
         }
         if (row.getAmountExVat() == null && row.getVatPercent() != null && row.getAmountIncVat() != null) {
-        	flags.put("incvat_and_vatpercent_orderrow_found", Boolean.TRUE);
+        	flags |= INCVAT_AND_VATPERCENT_ORDERROW_FOUND;
         }
 
         if (row.getAmountExVat() != null && row.getVatPercent() == null && row.getAmountIncVat() != null) {
-        	flags.put("incvat_and_exvat_orderrow_found", Boolean.TRUE);
+        	flags |= INCVAT_AND_EXVAT_ORDERROW_FOUND;
         }	
         
         if (row.getAmountExVat() != null && row.getVatPercent() == null && row.getAmountIncVat() == null) {		// fixedDiscount w/ exvat only
-        	flags.put("exvat_and_vatpercent_orderrow_found", Boolean.TRUE);
+        	flags |= EXVAT_AND_VATPERCENT_ORDERROW_FOUND;
         }	
         
+        return flags;
 	}	
 	
 	public WebserviceRowFormatter(OrderBuilder<?> order) {
 		this.order = order;
 	}
 
+	private <T extends RowBuilder> void checkRowSpecificationTypes( List<T> rows ) {
+		if( rows == null ) {
+			return;
+		}
+		for (RowBuilder row : rows) {
+			rowSpecificationTypesFound |= getRowSpecificationType(row);
+		}
+	}
+
 	/**
 	 * @return true iff no rows specified by ExVat and VatPercent in order
 	 */
 	private boolean checkUntaintedByExVatAndVatPercent() {
-    	for (OrderRowBuilder row : order.getOrderRows()) {
-    		checkRowSpecificationType( row, rowSpecificationTypesFound);
-    	}
-    	for (InvoiceFeeBuilder row : order.getInvoiceFeeRows()) {
-    		checkRowSpecificationType( row, rowSpecificationTypesFound);
-    	}    	
-    	for (ShippingFeeBuilder row : order.getShippingFeeRows()) {
-    		checkRowSpecificationType( row, rowSpecificationTypesFound);
-    	}
-    	for (FixedDiscountBuilder row : order.getFixedDiscountRows()) {
-    		checkRowSpecificationType( row, rowSpecificationTypesFound);
-    	}
-    	
-    	Boolean boolean1 = rowSpecificationTypesFound.get("exvat_and_vatpercent_orderrow_found");
-		return (boolean1 == null); // i.e. we haven't seen exvat_and_vatpercent_orderrow_found
+		return (rowSpecificationTypesFound & EXVAT_AND_VATPERCENT_ORDERROW_FOUND) == 0;
 	} 	
 	
 	public ArrayList<SveaOrderRow> formatRows() {
@@ -85,16 +81,25 @@ public class WebserviceRowFormatter {
 	 * @return
 	 */
 	public ArrayList<SveaOrderRow> formatRows(Boolean usePriceIncludingVat) {
-		newRows = new ArrayList<SveaOrderRow>();		
 
-		// calculate order row totals, used to calculate discounts split per vatrate
+		// calculate order row totals, used to calculate discounts split per vatrate, and note row specification types
 		calculateTotals();				
 		
+		// the order rows were checked by calculateTotals, check the other rows that may be given using amount ex vat
+		checkRowSpecificationTypes(order.getInvoiceFeeRows());
+		checkRowSpecificationTypes(order.getShippingFeeRows());
+		checkRowSpecificationTypes(order.getFixedDiscountRows());
+
 		if( usePriceIncludingVat == null ) {
 			// check if any rows were specified w/PriceIncludingVat = false, and if so, convert all rows to use legacy setting of flag = false
 			// done first so as not to lose accuracy by converting back in/from serializeAmountAndVat later 
 			usePriceIncludingVat = checkUntaintedByExVatAndVatPercent();		
 		}
+
+		// discounts are split into one row per vat rate
+		int discountRows = sizeOf(order.getFixedDiscountRows()) + sizeOf(order.getRelativeDiscountRows());
+		newRows = new ArrayList<SveaOrderRow>( sizeOf(order.getOrderRows()) + sizeOf(order.getShippingFeeRows()) + sizeOf(order.getInvoiceFeeRows())
+				+ discountRows * Math.max(1, totalAmountPerVatRate.size()) );
 		
 		formatOrderRows(usePriceIncludingVat);
 		formatShippingFeeRows(usePriceIncludingVat);
@@ -106,21 +111,16 @@ public class WebserviceRowFormatter {
 		return newRows;
 	}
 
-    private void increaseCumulativeVatRateAmounts( LinkedHashMap<Double, Double> amountPerVatRate, Double key, Double value ) {    	
-        if (amountPerVatRate.containsKey(key)) {
-        	amountPerVatRate.put(key,  value + amountPerVatRate.get(key) );
-        }
-        else {
-        	amountPerVatRate.put(key, value);
-        }	
-    }		
-	
+    private static int sizeOf( List<?> rows ) {
+    	return (rows == null) ? 0 : rows.size();
+    }
+
 	private void calculateTotals() {
 		totalAmountIncVat = 0;
 		totalAmountExVat = 0;
 		
-		totalAmountPerVatRateIncVat = new LinkedHashMap<Double, Double>();
-		totalAmountPerVatRateExVat = new LinkedHashMap<Double, Double>();
+		totalAmountPerVatRate = new VatRateTotals();
+		rowSpecificationTypesFound = 0;
 		
 		List<OrderRowBuilder> orderRows = order.getOrderRows();
 		
@@ -133,6 +133,8 @@ public class WebserviceRowFormatter {
 
 		for (OrderRowBuilder existingRow : orderRows) {
 			
+			rowSpecificationTypesFound |= getRowSpecificationType(existingRow);
+
 			vatPercent = existingRow.getVatPercent() != null ? existingRow.getVatPercent() : 0;
 			vatPercentAsHundredth = vatPercent * 0.01;
 			
@@ -146,16 +148,14 @@ public class WebserviceRowFormatter {
                 totalAmountExVat += amountExVat * quantity;
                 totalAmountIncVat += (amountExVat + (vatPercentAsHundredth * amountExVat)) * quantity;
 
-                increaseCumulativeVatRateAmounts(totalAmountPerVatRateIncVat, vatPercent, amountExVat*quantity*(1 + vatPercentAsHundredth) );                
-                increaseCumulativeVatRateAmounts(totalAmountPerVatRateExVat, vatPercent, amountExVat*quantity );                
+                totalAmountPerVatRate.add(vatPercent, amountExVat*quantity*(1 + vatPercentAsHundredth) );                
 			}
             // amountIncVat & vatPercent used to specify product price
 			else if (existingRow.getVatPercent() != null && existingRow.getAmountIncVat() != null) {
                 totalAmountIncVat += amountIncVat * quantity;
                 totalAmountExVat += (amountIncVat - ((vatPercentAsHundredth / (1 + vatPercentAsHundredth)) * amountIncVat)) * quantity;
 
-                increaseCumulativeVatRateAmounts(totalAmountPerVatRateIncVat, vatPercent, amountIncVat*quantity );                
-                increaseCumulativeVatRateAmounts(totalAmountPerVatRateExVat, vatPercent, amountExVat*quantity );                
+                totalAmountPerVatRate.add(vatPercent, amountIncVat*quantity );                
 			}
             // no vatPercent given
 			else {
@@ -173,8 +173,7 @@ public class WebserviceRowFormatter {
                 }
                 vatRateAsHundredth = vatRate * 0.01;
                 
-                increaseCumulativeVatRateAmounts(totalAmountPerVatRateIncVat, vatRate, (amountExVat * quantity * (1 + vatRateAsHundredth)) );                
-                increaseCumulativeVatRateAmounts(totalAmountPerVatRateExVat, vatRate, amountExVat*quantity );                                
+                totalAmountPerVatRate.add(vatRate, (amountExVat * quantity * (1 + vatRateAsHundredth)) );                                
 			}
 		}
 	}
@@ -189,13 +188,13 @@ public class WebserviceRowFormatter {
 				if (existingRow.getAmountIncVat() != null && existingRow.getVatPercent() == null && existingRow.getAmountExVat() == null) 
 				{
 					
-                	Set<Double> keySet = totalAmountPerVatRateIncVat.keySet();
-					for (double vatRate : keySet) {
+					for (int i = 0; i < totalAmountPerVatRate.size(); i++) {
                     	SveaOrderRow orderRow = newRowBasedOnExisting(existingRow);
 
-                    	double amountAtThisVatRateIncVat = totalAmountPerVatRateIncVat.get(vatRate);
+                    	double vatRate = totalAmountPerVatRate.getVatRate(i);
+                    	double amountAtThisVatRateIncVat = totalAmountPerVatRate.getAmountIncVat(i);
 
-                        if (totalAmountPerVatRateIncVat.size() > 1) {
+                        if (totalAmountPerVatRate.size() > 1) {
                             String name = existingRow.getName();
                             String description = existingRow.getDescription();
 
@@ -222,13 +221,14 @@ public class WebserviceRowFormatter {
 				// exvat set only, calculate discount from amount ex vat
 				if (existingRow.getAmountIncVat() == null && existingRow.getVatPercent() == null && existingRow.getAmountExVat() != null) 
 				{              
-                	for (double vatRate : totalAmountPerVatRateExVat.keySet()) {
+                	for (int i = 0; i < totalAmountPerVatRate.size(); i++) {
                     	SveaOrderRow orderRow = newRowBasedOnExisting(existingRow);
 
+                    	double vatRate = totalAmountPerVatRate.getVatRate(i);
      					// we'll need the ex vat total, so reconstruct totalAmountExVat from inc vat totals
-                        double amountAtThisVatRateExVat = totalAmountPerVatRateIncVat.get(vatRate)/(1+(vatRate/100));
+                        double amountAtThisVatRateExVat = totalAmountPerVatRate.getAmountIncVat(i)/(1+(vatRate/100));
 
-                        if (totalAmountPerVatRateExVat.size() > 1) {
+                        if (totalAmountPerVatRate.size() > 1) {
                             String name = existingRow.getName();
                             String description = existingRow.getDescription();
 
@@ -296,12 +296,13 @@ public class WebserviceRowFormatter {
 		
 			// if relativeDiscount row, calculate vat, split over several rows if needed.
 			else if (RelativeDiscountBuilder.class.equals(existingRow.getClass())) {
-				for (double vatRate : totalAmountPerVatRateIncVat.keySet()) {
+				for (int i = 0; i < totalAmountPerVatRate.size(); i++) {
                 	SveaOrderRow orderRow = newRowBasedOnExisting(existingRow);
 
-                    double amountAtThisVatRateIncVat = totalAmountPerVatRateIncVat.get(vatRate);
+                	double vatRate = totalAmountPerVatRate.getVatRate(i);
+                    double amountAtThisVatRateIncVat = totalAmountPerVatRate.getAmountIncVat(i);
 
-                    if (totalAmountPerVatRateIncVat.size() > 1)
+                    if (totalAmountPerVatRate.size() > 1)
                     {
                         String name = existingRow.getName();
                         String description = existingRow.getDescription();
@@ -480,4 +481,43 @@ public class WebserviceRowFormatter {
 
 		return orderRow;
 	}
+
+	/**
+	 * Order row amounts including vat summed per vat rate, in the order the vat rates are first seen. Orders rarely have
+	 * more than a few vat rates, so the rates are kept in a primitive array and compared as by Double.equals().
+	 */
+	static final class VatRateTotals {
+		private double[] vatRates = new double[4];
+		private double[] amountsIncVat = new double[4];
+		private int size;
+
+		void add( double vatRate, double amountIncVat ) {
+			long vatRateBits = Double.doubleToLongBits(vatRate);
+			for( int i = 0; i < size; i++ ) {
+				if( Double.doubleToLongBits(vatRates[i]) == vatRateBits ) {
+					amountsIncVat[i] += amountIncVat;
+					return;
+				}
+			}
+			if( size == vatRates.length ) {
+				vatRates = Arrays.copyOf(vatRates, size * 2);
+				amountsIncVat = Arrays.copyOf(amountsIncVat, size * 2);
+			}
+			vatRates[size] = vatRate;
+			amountsIncVat[size] = amountIncVat;
+			size++;
+		}
+
+		int size() {
+			return size;
+		}
+
+		double getVatRate( int index ) {
+			return vatRates[index];
+		}
+
+		double getAmountIncVat( int index ) {
+			return amountsIncVat[index];
+		}
+	}
 }
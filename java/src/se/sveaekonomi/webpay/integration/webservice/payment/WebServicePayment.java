@@ -2,11 +2,15 @@ package se.sveaekonomi.webpay.integration.webservice.payment;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.ValidationException;
 
 import org.w3c.dom.NodeList;
 
+import se.sveaekonomi.webpay.integration.config.Credentials;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.create.CreateOrderBuilder;
 import se.sveaekonomi.webpay.integration.order.validator.WebServiceOrderValidator;
@@ -14,8 +18,14 @@ import se.sveaekonomi.webpay.integration.response.webservice.CreateOrderResponse
 import se.sveaekonomi.webpay.integration.util.calculation.MathUtil;
 import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestMetrics;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+import se.sveaekonomi.webpay.integration.util.request.PriceIncludingVatCache;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebServiceXmlBuilder;
 import se.sveaekonomi.webpay.integration.webservice.helper.WebserviceRowFormatter;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SoapEnvelopeWriter;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaAuth;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaCreateOrder;
 import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaCreateOrderInformation;
@@ -31,6 +41,11 @@ public abstract class WebServicePayment {
     protected PAYMENTTYPE orderType;
     public SveaCreateOrderInformation orderInformation;
     
+    // the request prepared from the order and its xml, reused while the order fingerprint is unchanged
+    private SveaRequest<SveaCreateOrder> preparedRequest;
+    private String preparedXml;
+    private List<Object> preparedFingerprint;
+    
     public WebServicePayment(CreateOrderBuilder orderBuilder) {
         this.createOrderBuilder = orderBuilder;
         orderInformation = new SveaCreateOrderInformation();
@@ -40,19 +55,22 @@ public abstract class WebServicePayment {
     
     private SveaAuth getPasswordBasedAuthorization() {
         SveaAuth auth = new SveaAuth();
-        auth.Username = this.createOrderBuilder.getConfig().getUsername(this.orderType, this.createOrderBuilder.getCountryCode());
-        auth.Password = this.createOrderBuilder.getConfig().getPassword(this.orderType, this.createOrderBuilder.getCountryCode());
-        auth.ClientNumber = this.createOrderBuilder.getConfig().getClientNumber(this.orderType, this.createOrderBuilder.getCountryCode());
+        Credentials credentials = Credentials.resolve(this.createOrderBuilder.getConfig(), this.orderType, this.createOrderBuilder.getCountryCode());
+        auth.Username = credentials.getUsername();
+        auth.Password = credentials.getPassword();
+        auth.ClientNumber = credentials.getClientNumber();
         return auth;
     }
     
-    public String getXML() {
+    public synchronized String getXML() {
         SveaRequest<SveaCreateOrder> request = this.prepareRequest();
-        WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
         
-        String xml = xmlBuilder.getCreateOrderEuXml(request.request);
+        if (preparedXml == null) {
+            WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
+            preparedXml = xmlBuilder.getCreateOrderEuXml(request.request);
+        }
         
-        return xml;
+        return preparedXml;
     }
     
     public String validateOrder() {
@@ -67,9 +85,18 @@ public abstract class WebServicePayment {
     /**
      * Rebuild order with soap package to be in right format for SveaWebPay Europe Web service API
      * 
+     * The order is validated and formatted once, and the returned request is reused by getXML(), getRequestTotals() and
+     * doRequest() for as long as the order fingerprint is unchanged, see OrderBuilder.getFingerprint().
+     * The returned request should not be modified.
+     * 
      * @return SveaRequest
      */
-    public SveaRequest<SveaCreateOrder> prepareRequest() {
+    public synchronized SveaRequest<SveaCreateOrder> prepareRequest() {
+        List<Object> fingerprint = this.createOrderBuilder.getFingerprint();
+        if (preparedRequest != null && fingerprint.equals(preparedFingerprint)) {
+            return preparedRequest;
+        }
+        
         String errors = "";
         errors = validateOrder();
         
@@ -91,29 +118,51 @@ public abstract class WebServicePayment {
         SveaRequest<SveaCreateOrder> object = new SveaRequest<SveaCreateOrder>();
         object.request = sveaOrder;
         
+        preparedRequest = object;
+        preparedXml = null;
+        preparedFingerprint = fingerprint;
+        
         return object;
     }
     
     public CreateOrderResponse doRequest() {
-        SveaRequest<SveaCreateOrder> request = this.prepareRequest();
-        WebServiceXmlBuilder xmlBuilder = new WebServiceXmlBuilder();
-        String xml = "";
-        
-        xml = xmlBuilder.getCreateOrderEuXml(request.request);
+        RequestTimer timer = RequestMetrics.start("CreateOrderEu", this.orderType, this.createOrderBuilder.getCountryCode());
+        try {
+            return timer.finish( doRequest(timer) );
+        }
+        catch( RuntimeException e ) {
+            throw timer.fail(e);
+        }
+    }
+    
+    private CreateOrderResponse doRequest(RequestTimer timer) {
+        SveaRequest<SveaCreateOrder> request;
+        String xml;
+        synchronized (this) {
+            request = this.prepareRequest();
+            timer.enter(Phase.SERIALIZE);
+            xml = this.getXML();
+        }
                 
-        SveaSoapBuilder soapBuilder = new SveaSoapBuilder();
-        String soapMessage = soapBuilder.makeSoapMessage("CreateOrderEu", xml);
+        SveaSoapBuilder soapBuilder = new SveaSoapBuilder().setRequestTimer(timer);
+        SoapEnvelopeWriter.Content soapMessage = soapBuilder.makeSoapContent("CreateOrderEu", xml);
         NodeList soapResponse = soapBuilder.createOrderEuRequest(soapMessage, this.createOrderBuilder.getConfig(), this.orderType );
         CreateOrderResponse response = new CreateOrderResponse(soapResponse);
         
+        // remember the PriceIncludingVat flag the order was created with, used when delivering and crediting the order
+        ArrayList<SveaOrderRow> orderRows = request.request.CreateOrderInformation.OrderRows;
+        if( Boolean.TRUE.equals(response.isOrderAccepted()) && request.request.Auth.ClientNumber != null && !orderRows.isEmpty() && orderRows.get(0).PriceIncludingVat != null ) {
+        	PriceIncludingVatCache.getDefault().putForOrder(request.request.Auth.ClientNumber, response.getOrderId(), orderRows.get(0).PriceIncludingVat);
+        }
+        
         return response;
     }
     
     public HashMap<String,Double> getRequestTotals() {
     	HashMap<String,Double> requestTotals = new HashMap<String, Double>();
-    	Double total_exvat = 0D;
-    	Double total_incvat = 0D;
-    	Double total_vat = 0D;
+    	double total_exvat = 0;
+    	double total_incvat = 0;
+    	double total_vat = 0;
     	    	
     	SveaRequest<SveaCreateOrder> preparedRequest = this.prepareRequest();
     	ArrayList<SveaOrderRow> sveaOrderRows = preparedRequest.request.CreateOrderInformation.OrderRows;
@@ -127,9 +176,9 @@ public abstract class WebServicePayment {
 		//public Boolean PriceIncludingVat;
     	
     	for( SveaOrderRow row : sveaOrderRows ) {
-    		Double rowExVat = calculateOrderRowExVat( row );
+    		double rowExVat = calculateOrderRowExVat( row );
     		total_exvat += rowExVat;
-            Double rowVat = calculateTotalVatSumOfRows( row );
+            double rowVat = calculateTotalVatSumOfRows( row );
             total_vat += rowVat;
             total_incvat += MathUtil.bankersRound(rowExVat + rowVat);            
     	}
@@ -140,10 +189,10 @@ public abstract class WebServicePayment {
 		return requestTotals;
     }
     
-    private Double calculateOrderRowExVat( SveaOrderRow row ) {
-    	Double rowsum_exvat = 0D;
+    private double calculateOrderRowExVat( SveaOrderRow row ) {
+    	double rowsum_exvat;
     	if( row.PriceIncludingVat ) {
-    		Double rowsum_incvat = getRowAmount(row);
+    		double rowsum_incvat = getRowAmount(row);
 			rowsum_exvat = convertIncVatToExVat(row, rowsum_incvat);
     	}
     	else {
@@ -162,17 +211,17 @@ public abstract class WebServicePayment {
 		(1 - (row.DiscountPercent /100.0) );
 	}
     
-    private Double calculateTotalVatSumOfRows( SveaOrderRow row ) {
-    	Double exvat = 0D;
+    private double calculateTotalVatSumOfRows( SveaOrderRow row ) {
+    	double exvat;
     	if( row.PriceIncludingVat ) {
-    		Double rowsum_incvat = getRowAmount(row);
+    		double rowsum_incvat = getRowAmount(row);
     		exvat = convertIncVatToExVat(row, rowsum_incvat);
     	}
     	else {
     		exvat = getRowAmount(row);    		
     	}
-    	Double vatTimes100 = MathUtil.bankersRound(exvat) * row.VatPercent;
-    	Double vat =((vatTimes100 <= 0D) ? Math.ceil(vatTimes100) : Math.floor(vatTimes100)) /100.0; //java for .NET Math.Truncate -- round to nearest integer towards zero
+    	double vatTimes100 = MathUtil.bankersRound(exvat) * row.VatPercent;
+    	double vat =((vatTimes100 <= 0D) ? Math.ceil(vatTimes100) : Math.floor(vatTimes100)) /100.0; //java for .NET Math.Truncate -- round to nearest integer towards zero
     	return vat;
     }
     
@@ -275,4 +324,17 @@ public abstract class WebServicePayment {
         
         return orderInformation;
     }
+
+    /**
+     * Creates the order without blocking the caller, i.e. when creating many orders at once.
+     * @return a Future of the CreateOrderResponse, whose get() throws an ExecutionException wrapping any validation error
+     */
+    public Future<CreateOrderResponse> doRequestAsync() {
+        return SveaRequestExecutor.submit( new Callable<CreateOrderResponse>() {
+            @Override
+            public CreateOrderResponse call() {
+                return doRequest();
+            }
+        });
+    }
 }
@@ -0,0 +1,195 @@
+package se.sveaekonomi.webpay.integration.webservice.svea_soap;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Writes a SOAP 1.1 envelope as UTF-8 straight to an output stream in a single pass, without building a SAAJ DOM.
+ *
+ * The output is byte-identical to what SAAJ writes for the same envelope built using SOAPElement.addChildElement() and
+ * addTextNode(), i.e. no xml declaration or whitespace, elements without content are written as empty-element tags, and
+ * text is escaped the same way. Used by SveaSoapConnection to stream the webservice and admin service requests to the
+ * http connection.
+ *
+ * ```java
+ *     writer.startEnvelope("SOAP-ENV", "tem", "http://tempuri.org/");
+ *     writer.startElement("tem", "GetOrders");
+ *     writer.element("dat", "ClientId", "79021");
+ *     writer.endEnvelope();
+ * ```
+ */
+public class SoapEnvelopeWriter {
+
+	/** Writes the envelope of a request, may be called several times, i.e. if the request is resent */
+	public interface Content {
+		void writeTo( SoapEnvelopeWriter writer ) throws IOException;
+	}
+
+	public static final String SOAP_ENVELOPE_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+
+	private final Writer out;
+	private final ArrayList<String> openElements = new ArrayList<String>();
+	private boolean startTagOpen = false;
+
+	public SoapEnvelopeWriter( OutputStream os ) throws IOException {
+		this.out = new BufferedWriter( new OutputStreamWriter(os, "UTF-8") );
+	}
+
+	/**
+	 * @return the envelope written by the content, as UTF-8 bytes
+	 */
+	public static byte[] toByteArray( Content content ) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		content.writeTo( new SoapEnvelopeWriter(os) );
+		return os.toByteArray();
+	}
+
+	/**
+	 * Writes the Envelope start tag with the given namespace declarations, an empty Header and the Body start tag.
+	 * @param envelopePrefix -- prefix of the SOAP envelope namespace, i.e. "SOAP-ENV" or "soapenv"
+	 * @param prefixesAndNamespaces -- namespace declarations to add, as prefix, namespace uri pairs, in the order written
+	 */
+	public SoapEnvelopeWriter startEnvelope( String envelopePrefix, String... prefixesAndNamespaces ) throws IOException {
+		if( prefixesAndNamespaces.length % 2 != 0 ) {
+			throw new IllegalArgumentException("prefixesAndNamespaces must hold prefix, namespace uri pairs");
+		}
+		startElement( envelopePrefix, "Envelope" );
+		writeNamespace( envelopePrefix, SOAP_ENVELOPE_NAMESPACE );
+		for( int i = 0; i < prefixesAndNamespaces.length; i += 2 ) {
+			writeNamespace( prefixesAndNamespaces[i], prefixesAndNamespaces[i+1] );
+		}
+		startElement( envelopePrefix, "Header" );
+		endElement();
+		startElement( envelopePrefix, "Body" );
+		return this;
+	}
+
+	public SoapEnvelopeWriter startElement( String prefix, String localName ) throws IOException {
+		closeStartTag();
+		String qualifiedName = prefix + ":" + localName;
+		out.write('<');
+		out.write(qualifiedName);
+		openElements.add(qualifiedName);
+		startTagOpen = true;
+		return this;
+	}
+
+	/**
+	 * Writes escaped text content to the current element. Empty or null text adds no content.
+	 */
+	public SoapEnvelopeWriter text( String text ) throws IOException {
+		if( text == null || text.length() == 0 ) {
+			return this;
+		}
+		closeStartTag();
+		writeEscaped(text);
+		return this;
+	}
+
+	/**
+	 * Writes the given well-formed xml fragment to the current element as-is.
+	 */
+	public SoapEnvelopeWriter raw( String xml ) throws IOException {
+		closeStartTag();
+		out.write(xml);
+		return this;
+	}
+
+	public SoapEnvelopeWriter endElement() throws IOException {
+		String qualifiedName = openElements.remove( openElements.size() - 1 );
+		if( startTagOpen ) {
+			out.write("/>");
+			startTagOpen = false;
+		}
+		else {
+			out.write("</");
+			out.write(qualifiedName);
+			out.write('>');
+		}
+		return this;
+	}
+
+	/**
+	 * Writes an element holding the given text, i.e. startElement(), text(), endElement().
+	 */
+	public SoapEnvelopeWriter element( String prefix, String localName, String text ) throws IOException {
+		startElement( prefix, localName );
+		text( text );
+		return endElement();
+	}
+
+	/**
+	 * Ends all open elements, including the Body and Envelope, and flushes the output stream.
+	 */
+	public void endEnvelope() throws IOException {
+		while( !openElements.isEmpty() ) {
+			endElement();
+		}
+		out.flush();
+	}
+
+	private void writeNamespace( String prefix, String namespace ) throws IOException {
+		out.write(" xmlns:");
+		out.write(prefix);
+		out.write("=\"");
+		out.write(namespace);
+		out.write('"');
+	}
+
+	private void closeStartTag() throws IOException {
+		if( startTagOpen ) {
+			out.write('>');
+			startTagOpen = false;
+		}
+	}
+
+	// escapes text the same way as the SAAJ serializer: markup characters as entities, control characters and
+	// supplementary characters as decimal character references, everything else (including tab and newline) as-is
+	private void writeEscaped( String text ) throws IOException {
+		int length = text.length();
+		int start = 0;
+		for( int i = 0; i < length; i++ ) {
+			char c = text.charAt(i);
+			String replacement = null;
+			int codePoint = -1;
+			if( c == '&' ) {
+				replacement = "&amp;";
+			}
+			else if( c == '<' ) {
+				replacement = "&lt;";
+			}
+			else if( c == '>' ) {
+				replacement = "&gt;";
+			}
+			else if( (c < 0x20 && c != '\t' && c != '\n') || (c >= 0x7f && c <= 0x9f) ) {
+				codePoint = c;
+			}
+			else if( Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i+1)) ) {
+				codePoint = Character.toCodePoint( c, text.charAt(i+1) );
+			}
+			else {
+				continue;
+			}
+
+			out.write( text, start, i - start );
+			if( replacement != null ) {
+				out.write(replacement);
+			}
+			else {
+				out.write("&#");
+				out.write( Integer.toString(codePoint) );
+				out.write(';');
+				if( Character.isSupplementaryCodePoint(codePoint) ) {
+					i++;
+				}
+			}
+			start = i + 1;
+		}
+		out.write( text, start, length - start );
+	}
+}
@@ -1,60 +1,75 @@
 package se.sveaekonomi.webpay.integration.webservice.svea_soap;
 
-import static org.junit.Assert.assertEquals;
-
-import java.io.ByteArrayInputStream;
-import java.net.MalformedURLException;
+import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
 
-import javax.xml.soap.MessageFactory;
 import javax.xml.soap.MimeHeaders;
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.soap.SOAPPart;
-import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.NodeList;
 
 import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
 import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.request.EndpointIsolation;
 import se.sveaekonomi.webpay.integration.util.request.GetRequestProperties;
 
 public class SveaSoapBuilder {
 
     private static String prefix = "web";
-    private static String namespace_soapSchema = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static String namespace_soapSchema = SoapEnvelopeWriter.SOAP_ENVELOPE_NAMESPACE;
     private static String namespace_soapAction = "https://webservices.sveaekonomi.se/webpay";
     
-    private SOAPConnectionFactory soapConnectionFactory;
-    private SOAPConnection connection;
+    private SveaSoapConnection connection;
+    private RequestTimer timer;
     
     public SveaSoapBuilder() {
-        try {
-            soapConnectionFactory = SOAPConnectionFactory.newInstance();
-            connection = soapConnectionFactory.createConnection();
-        } catch (SOAPException ex) {
-            throw new SveaWebPayException("SOAP exception", ex);
-        }
+        this(SveaSoapConnection.getDefault());
+    }
+    
+    public SveaSoapBuilder(SveaSoapConnection connection) {
+        this.connection = connection;
+    }
+    
+    /**
+     * Records the serialize, network and parse time and payload sizes of the requests sent by this builder to the timer.
+     */
+    public SveaSoapBuilder setRequestTimer(RequestTimer timer) {
+        this.timer = timer;
+        return this;
     }
     
     public NodeList createOrderEuRequest(String message, ConfigurationProvider config, PAYMENTTYPE orderType ) {
+        return createOrderEuRequest(makeSoapContent(message), config, orderType);
+    }
+    
+    public NodeList createOrderEuRequest(SoapEnvelopeWriter.Content message, ConfigurationProvider config, PAYMENTTYPE orderType ) {
         return sendSoapMessage(message, config, orderType, "CreateOrderEu", "CreateOrderEuResult");
     }
     
     public NodeList closeOrderEuRequest(String message, ConfigurationProvider config, PAYMENTTYPE orderType) {
+        return closeOrderEuRequest(makeSoapContent(message), config, orderType);
+    }
+    
+    public NodeList closeOrderEuRequest(SoapEnvelopeWriter.Content message, ConfigurationProvider config, PAYMENTTYPE orderType) {
         return sendSoapMessage(message, config, orderType, "CloseOrderEu", "CloseOrderEuResult");
     }
     
     public NodeList deliverOrderEuRequest(String message, ConfigurationProvider config, PAYMENTTYPE orderType) {
+        return deliverOrderEuRequest(makeSoapContent(message), config, orderType);
+    }
+    
+    public NodeList deliverOrderEuRequest(SoapEnvelopeWriter.Content message, ConfigurationProvider config, PAYMENTTYPE orderType) {
         return sendSoapMessage(message, config, orderType, "DeliverOrderEu", "DeliverOrderEuResult");
     }
         
     public NodeList createGetAddressesEuRequest(String message, ConfigurationProvider config) {
+        return createGetAddressesEuRequest(makeSoapContent(message), config);
+    }
+    
+    public NodeList createGetAddressesEuRequest(SoapEnvelopeWriter.Content message, ConfigurationProvider config) {
     	PAYMENTTYPE orderType = PAYMENTTYPE.INVOICE;    	
     	@SuppressWarnings("unused")
 		URL url;
@@ -70,43 +85,24 @@ public class SveaSoapBuilder {
     }
     
     public NodeList createGetPaymentPlanParamsEuRequest(String message, ConfigurationProvider config, PAYMENTTYPE orderType) {
+        return createGetPaymentPlanParamsEuRequest(makeSoapContent(message), config, orderType);
+    }
+    
+    public NodeList createGetPaymentPlanParamsEuRequest(SoapEnvelopeWriter.Content message, ConfigurationProvider config, PAYMENTTYPE orderType) {
         return sendSoapMessage(message, config, orderType, "GetPaymentPlanParamsEu", "GetPaymentPlanParamsEuResponse");
     }
     
-    private NodeList sendSoapMessage(String message, ConfigurationProvider config, PAYMENTTYPE orderType, String requestHeader, String responseHeader) {
+    private NodeList sendSoapMessage(SoapEnvelopeWriter.Content message, ConfigurationProvider config, PAYMENTTYPE orderType, String requestHeader, String responseHeader) {
         try {
-            MessageFactory factory = MessageFactory.newInstance();
-            SOAPMessage outgoingMessage = factory.createMessage();
-            
-            SOAPPart soapPart = outgoingMessage.getSOAPPart();
-            SOAPEnvelope envelope = soapPart.getEnvelope();
-            
             // SoapHeader Action
-            MimeHeaders headers = outgoingMessage.getMimeHeaders();
+            MimeHeaders headers = new MimeHeaders();
             headers.addHeader("SOAPAction", namespace_soapAction + "/" +requestHeader);
             
-        	HashMap<String,String> libraryproperties = GetRequestProperties.getSveaLibraryProperties();            
-            
-            headers.addHeader("X-Svea-Library-Name", libraryproperties.get("library_name") );
-            headers.addHeader("X-Svea-Library-Version", libraryproperties.get("library_version") );
-            
-        	HashMap<String,String> integrationproperties = GetRequestProperties.getSveaIntegrationProperties( config );            
-
-            headers.addHeader("X-Svea-Integration-Platform", integrationproperties.get("integrationplatform") );
-            headers.addHeader("X-Svea-Integration-Company", integrationproperties.get("integrationcompany") );
-            headers.addHeader("X-Svea-Integration-Version", integrationproperties.get("integrationversion") );
+            GetRequestProperties.getRequestProperties( config ).addHeaders( headers );
 
-            envelope.addNamespaceDeclaration(prefix, namespace_soapAction);
-            
-            byte[] buffer = message.getBytes();
-            ByteArrayInputStream stream = new ByteArrayInputStream(buffer);
-            StreamSource source = new StreamSource(stream);
-            soapPart.setContent(source);
-            
-            // send message
-            SOAPMessage response = connection.call(outgoingMessage, config.getEndPoint(orderType) );
-            
-            connection.close();
+            // send message, the envelope is written straight to the connection
+            URL endpoint = config.getEndPoint(orderType);
+            SOAPMessage response = connection.call(message, headers, endpoint, timer, EndpointIsolation.getGuard(config, endpoint) );
             
             return response.getSOAPPart().getEnvelope().getElementsByTagName(responseHeader);
         } catch (SOAPException ex) {
@@ -114,8 +110,35 @@ public class SveaSoapBuilder {
         }
     }
     
+    /**
+     * Returns the soap envelope for the given method and request xml, i.e. the envelope written by makeSoapMessage(), 
+     * as content to stream to the connection.
+     */
+    public SoapEnvelopeWriter.Content makeSoapContent(final String soapMethod, final String xmlDocument) {
+        return new SoapEnvelopeWriter.Content() {
+            @Override
+            public void writeTo(SoapEnvelopeWriter writer) throws IOException {
+                writer.startEnvelope("soapenv", prefix, namespace_soapAction);
+                writer.startElement(prefix, soapMethod);
+                writer.raw(xmlDocument);
+                writer.endEnvelope();
+            }
+        };
+    }
+    
+    /** Wraps an envelope made by makeSoapMessage() as content to stream to the connection */
+    private SoapEnvelopeWriter.Content makeSoapContent(final String message) {
+        return new SoapEnvelopeWriter.Content() {
+            @Override
+            public void writeTo(SoapEnvelopeWriter writer) throws IOException {
+                writer.raw(message);
+                writer.endEnvelope();
+            }
+        };
+    }
+    
     public String makeSoapMessage(String soapMethod, String xmlDocument) {
-        StringBuffer result = new StringBuffer();
+        StringBuilder result = new StringBuilder();
         result.append("<soapenv:Envelope xmlns:soapenv=\"" + namespace_soapSchema + "\" xmlns:" + prefix + "=\"" + namespace_soapAction + "\">");
         result.append("<soapenv:Header/>");
         result.append("<soapenv:Body>");
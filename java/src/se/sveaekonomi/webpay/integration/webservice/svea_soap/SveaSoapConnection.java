@@ -0,0 +1,283 @@
+package se.sveaekonomi.webpay.integration.webservice.svea_soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Iterator;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeader;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.util.EntityUtils;
+
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+import se.sveaekonomi.webpay.integration.util.request.EndpointGuard;
+import se.sveaekonomi.webpay.integration.util.request.SveaHttpClient;
+
+/**
+ * Sends SOAP 1.1 messages to the Svea webservice and admin service endpoints over the shared pooled
+ * SveaHttpClient, replacing per-call SOAPConnectionFactory/SOAPConnection instances. Connections are
+ * kept alive between calls, connect and read timeouts are taken from the SveaHttpClient settings,
+ * and a single instance is safe for use by concurrent callers.
+ */
+public class SveaSoapConnection {
+
+	/** Accept header set by SAAJ, sent with streamed requests as well to keep the http requests identical */
+	public static final String ACCEPT = "text/xml, text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2";
+	private static final String CONTENT_TYPE = "text/xml; charset=utf-8";
+
+	private static final SveaSoapConnection defaultConnection = new SveaSoapConnection(null);
+
+	private final SveaHttpClient httpClient;
+
+	/**
+	 * Returns a connection that sends using the library-wide default SveaHttpClient.
+	 */
+	public static SveaSoapConnection getDefault() {
+		return defaultConnection;
+	}
+
+	/**
+	 * @param httpClient -- client to send requests with, or null to always use the current SveaHttpClient.getDefault()
+	 */
+	public SveaSoapConnection( SveaHttpClient httpClient ) {
+		this.httpClient = httpClient;
+	}
+
+	private SveaHttpClient getHttpClient() {
+		return (httpClient != null) ? httpClient : SveaHttpClient.getDefault();
+	}
+
+	/**
+	 * Sends the request message to the endpoint and blocks until the response message has been received.
+	 * Mime headers set on the request message (i.e. SOAPAction, X-Svea-*) are sent as http headers.
+	 *
+	 * @throws SOAPException on transport errors, non-SOAP error responses, or if the response can not be parsed
+	 */
+	public SOAPMessage call( SOAPMessage request, URL endpoint ) throws SOAPException {
+		try {
+			if( request.saveRequired() ) {
+				request.saveChanges();
+			}
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			request.writeTo(os);
+
+			HttpPost post = new HttpPost( endpoint.toString() );
+			addHeaders( post, request.getMimeHeaders() );
+			post.setEntity( new ByteArrayEntity(os.toByteArray()) );
+
+			return execute( post, endpoint, new SoapResponseHandler(null), null, null );
+		}
+		catch( IOException e ) {
+			throw new SOAPException( "Error sending SOAP request to " + endpoint, e );
+		}
+	}
+
+	/**
+	 * Sends the envelope written by the content to the endpoint and blocks until the response message has been received.
+	 * The envelope is written straight to the http connection using chunked transfer encoding, without building a SOAPMessage.
+	 *
+	 * @param headers -- mime headers to send as http headers, i.e. SOAPAction, X-Svea-*
+	 * @throws SOAPException on transport errors, non-SOAP error responses, or if the response can not be parsed
+	 */
+	public SOAPMessage call( SoapEnvelopeWriter.Content content, MimeHeaders headers, URL endpoint ) throws SOAPException {
+		return call( content, headers, endpoint, null );
+	}
+
+	/**
+	 * As call(content, headers, endpoint), also recording the serialize, network and parse time and the payload sizes to the timer.
+	 * @param timer -- timer of the request, or null
+	 */
+	public SOAPMessage call( SoapEnvelopeWriter.Content content, MimeHeaders headers, URL endpoint, RequestTimer timer ) throws SOAPException {
+		return call( content, headers, endpoint, timer, null );
+	}
+
+	/**
+	 * As call(content, headers, endpoint, timer), sending the request through the guard of the endpoint.
+	 * @param guard -- guard of the endpoint, or null
+	 * @throws SOAPException caused by an EndpointUnavailableException if the guard rejects the request
+	 */
+	public SOAPMessage call( SoapEnvelopeWriter.Content content, MimeHeaders headers, URL endpoint, RequestTimer timer, EndpointGuard guard ) throws SOAPException {
+		return execute( createPost(content, headers, endpoint, timer), endpoint, new SoapResponseHandler(timer), timer, guard );
+	}
+
+	/**
+	 * As call(content, headers, endpoint, timer), but returns the response body as received instead of parsing it into a
+	 * SOAPMessage, for responses that are read using a streaming parser. If given, the timer is left in the parse phase.
+	 *
+	 * @throws SOAPException on transport errors or non-SOAP error responses
+	 */
+	public byte[] callForBody( SoapEnvelopeWriter.Content content, MimeHeaders headers, URL endpoint, RequestTimer timer ) throws SOAPException {
+		return callForBody( content, headers, endpoint, timer, null );
+	}
+
+	/**
+	 * As callForBody(content, headers, endpoint, timer), sending the request through the guard of the endpoint.
+	 * @param guard -- guard of the endpoint, or null
+	 * @throws SOAPException caused by an EndpointUnavailableException if the guard rejects the request
+	 */
+	public byte[] callForBody( SoapEnvelopeWriter.Content content, MimeHeaders headers, URL endpoint, RequestTimer timer, EndpointGuard guard ) throws SOAPException {
+		return execute( createPost(content, headers, endpoint, timer), endpoint, new SoapBodyHandler(timer), timer, guard );
+	}
+
+	private static HttpPost createPost( final SoapEnvelopeWriter.Content content, MimeHeaders headers, URL endpoint, final RequestTimer timer ) {
+		HttpPost post = new HttpPost( endpoint.toString() );
+		post.addHeader( "Accept", ACCEPT );
+		addHeaders( post, headers );
+		post.setEntity( new EntityTemplate( new ContentProducer() {
+			@Override
+			public void writeTo( OutputStream os ) throws IOException {
+				if( timer == null ) {
+					content.writeTo( new SoapEnvelopeWriter(os) );
+					return;
+				}
+				CountingOutputStream counter = new CountingOutputStream(os);
+				Phase previous = timer.enter(Phase.SERIALIZE);
+				try {
+					content.writeTo( new SoapEnvelopeWriter(counter) );
+				}
+				finally {
+					timer.addBytesOut( counter.count );
+					timer.enter(previous);
+				}
+			}
+		}));
+		return post;
+	}
+
+	private static void addHeaders( HttpPost post, MimeHeaders headers ) {
+		Iterator<?> requestHeaders = headers.getAllHeaders();
+		while( requestHeaders.hasNext() ) {
+			MimeHeader header = (MimeHeader) requestHeaders.next();
+			if( !header.getName().equalsIgnoreCase("Content-Length") ) {
+				post.addHeader( header.getName(), header.getValue() );
+			}
+		}
+		if( post.getFirstHeader("Content-Type") == null ) {
+			post.addHeader("Content-Type", CONTENT_TYPE);
+		}
+	}
+
+	private <T> T execute( HttpPost post, URL endpoint, ResponseHandler<T> handler, RequestTimer timer, EndpointGuard guard ) throws SOAPException {
+		if( timer != null ) {
+			timer.enter(Phase.NETWORK);
+		}
+		try {
+			return getHttpClient().execute( post, handler, guard );
+		}
+		catch( SoapResponseParseException e ) {
+			throw (SOAPException) e.getCause();
+		}
+		catch( IOException e ) {
+			throw new SOAPException( "Error sending SOAP request to " + endpoint, e );
+		}
+	}
+
+	/**
+	 * Reads the http response body. SOAP faults are returned with http status 500, so these are read as well.
+	 */
+	private static class SoapBodyHandler implements ResponseHandler<byte[]> {
+
+		private final RequestTimer timer;
+
+		SoapBodyHandler( RequestTimer timer ) {
+			this.timer = timer;
+		}
+
+		@Override
+		public byte[] handleResponse( final HttpResponse response ) throws IOException {
+			StatusLine statusLine = response.getStatusLine();
+			HttpEntity entity = response.getEntity();
+
+			if( statusLine.getStatusCode() >= 300 && statusLine.getStatusCode() != 500 ) {
+				throw new HttpResponseException( statusLine.getStatusCode(), statusLine.getReasonPhrase() );
+			}
+			if( entity == null ) {
+				throw new ClientProtocolException("Response contains no content");
+			}
+
+			// buffer the body, as the pooled connection is released once we return
+			byte[] body = EntityUtils.toByteArray(entity);
+			if( timer != null ) {
+				timer.addBytesIn( body.length );
+				timer.enter(Phase.PARSE);
+			}
+			return body;
+		}
+	}
+
+	/**
+	 * Reads the http response into a SOAPMessage. SOAP faults are returned with http status 500, so these are parsed as well.
+	 */
+	private static final class SoapResponseHandler implements ResponseHandler<SOAPMessage> {
+
+		private final SoapBodyHandler bodyHandler;
+
+		SoapResponseHandler( RequestTimer timer ) {
+			this.bodyHandler = new SoapBodyHandler(timer);
+		}
+
+		@Override
+		public SOAPMessage handleResponse( final HttpResponse response ) throws IOException {
+			// SAAJ parses the SOAPPart lazily, so the body is buffered before the message is created
+			byte[] body = bodyHandler.handleResponse(response);
+
+			MimeHeaders mimeHeaders = new MimeHeaders();
+			for( Header header : response.getAllHeaders() ) {
+				mimeHeaders.addHeader( header.getName(), header.getValue() );
+			}
+			try {
+				SOAPMessage message = MessageFactory.newInstance().createMessage( mimeHeaders, new ByteArrayInputStream(body) );
+				message.getSOAPPart().getEnvelope(); // force parse while we can still report errors
+				return message;
+			}
+			catch( SOAPException e ) {
+				throw new SoapResponseParseException(e);
+			}
+		}
+	}
+
+	/** Used to tunnel SOAPExceptions through the IOException-only ResponseHandler interface */
+	private static class SoapResponseParseException extends IOException {
+		private static final long serialVersionUID = 4473815735125405147L;
+		SoapResponseParseException( SOAPException cause ) {
+			super(cause);
+		}
+	}
+
+	/** Counts the bytes of the streamed request envelope */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+		CountingOutputStream( OutputStream out ) {
+			super(out);
+		}
+		@Override
+		public void write( int b ) throws IOException {
+			out.write(b);
+			count++;
+		}
+		@Override
+		public void write( byte[] b, int off, int len ) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package se.sveaekonomi.webpay.integration.adminservice;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.adminservice.DeliverOrdersResponse;
+import se.sveaekonomi.webpay.integration.util.constant.DISTRIBUTIONTYPE;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERTYPE;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+
+public class DeliverOrdersBulkRequestTest {
+
+    @Test
+    public void test_prepareRequest_splits_order_ids_into_chunks() throws SOAPException {
+    	List<Long> orderIds = new ArrayList<Long>();
+    	for( long i = 1; i <= 5; i++ ) {
+    		orderIds.add(i);
+    	}
+		List<SOAPMessage> soapMessages = WebPay.deliverOrder(SveaConfig.getDefaultConfig())
+			.setOrderIds(orderIds)
+			.setCountryCode(TestingTool.DefaultTestCountryCode)
+			.setInvoiceDistributionType(DISTRIBUTIONTYPE.Post)
+			.deliverInvoiceOrders()
+				.setChunkSize(2)
+				.prepareRequest()
+		;
+		assertEquals( 3, soapMessages.size() );
+		assertEquals( 2, soapMessages.get(0).getSOAPBody().getElementsByTagName("dat:DeliverOrderInformation").getLength() );
+		assertEquals( 1, soapMessages.get(2).getSOAPBody().getElementsByTagName("dat:DeliverOrderInformation").getLength() );
+		assertEquals( "5", soapMessages.get(2).getSOAPBody().getElementsByTagName("dat:SveaOrderId").item(0).getTextContent() );
+		assertEquals( "Post", soapMessages.get(0).getSOAPBody().getElementsByTagName("dat:InvoiceDistributionType").item(0).getTextContent() );
+    }
+
+    @Test
+    public void test_validates_missing_order_ids_and_distribution_type() {
+		try {
+			WebPay.deliverOrder(SveaConfig.getDefaultConfig())
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.deliverInvoiceOrders()
+					.getChunkRequests()
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals(
+				"MISSING VALUE - OrderIds are required, use setOrderIds().\n" +
+				"MISSING VALUE - distributionType is required, use setInvoiceDistributionType().\n",
+				e.getCause().getMessage()
+			);
+		}
+    }
+
+    @Test
+    public void test_validates_order_id_combined_with_order_ids() {
+		try {
+			WebPay.deliverOrder(SveaConfig.getDefaultConfig())
+				.setOrderId(10L)
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.setInvoiceDistributionType(DISTRIBUTIONTYPE.Post)
+				.deliverInvoiceOrders()
+					.getChunkRequests()
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "NOT VALID - Use either setOrderId() or setOrderIds(), not both.\n", e.getCause().getMessage() );
+		}
+		try {
+			DeliverOrdersRequest request = WebPay.deliverOrder(SveaConfig.getDefaultConfig())
+				.setOrderId(10L)
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.setInvoiceDistributionType(DISTRIBUTIONTYPE.Post)
+				.deliverInvoiceOrder();
+			request.prepareRequest();
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "NOT VALID - OrderIds are only used by deliverInvoiceOrders() and deliverPaymentPlanOrders(), use setOrderId().\n", e.getCause().getMessage() );
+		}
+    }
+
+    @Test
+    public void test_single_order_request_rejects_order_ids() {
+		try {
+			DeliverOrdersRequest request = WebPay.deliverOrder(SveaConfig.getDefaultConfig())
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.setInvoiceDistributionType(DISTRIBUTIONTYPE.Post)
+				.deliverInvoiceOrder();
+			request.doRequest();
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "NOT VALID - OrderIds are only used by deliverInvoiceOrders() and deliverPaymentPlanOrders(), use setOrderId().\n", e.getCause().getMessage() );
+		}
+    }
+
+    @Test
+    public void test_getDeliverOrdersResponses_returns_result_per_order() throws Exception {
+    	NodeList xmlResponse = getResponseNodes(
+    		"<a:ErrorMessage i:nil=\"true\"/><a:ResultCode>0</a:ResultCode><a:OrdersDelivered>" +
+    		"<a:DeliverOrderResult><a:ClientId>79021</a:ClientId><a:DeliveredAmount>1562.50</a:DeliveredAmount><a:DeliveryReferenceNumber>1047605</a:DeliveryReferenceNumber><a:OrderType>Invoice</a:OrderType><a:SveaOrderId>12</a:SveaOrderId></a:DeliverOrderResult>" +
+    		"<a:DeliverOrderResult><a:ClientId>79021</a:ClientId><a:DeliveredAmount>100.00</a:DeliveredAmount><a:DeliveryReferenceNumber>1047606</a:DeliveryReferenceNumber><a:OrderType>Invoice</a:OrderType><a:SveaOrderId>11</a:SveaOrderId></a:DeliverOrderResult>" +
+    		"</a:OrdersDelivered>"
+    	);
+    	List<DeliverOrdersResponse> responses = DeliverOrdersResponse.getDeliverOrdersResponses(xmlResponse, Arrays.asList(11L, 12L, 13L));
+
+    	assertEquals( 3, responses.size() );
+    	assertTrue( responses.get(0).isOrderAccepted() );
+    	assertEquals( Long.valueOf(11L), responses.get(0).getOrderId() );
+    	assertEquals( Long.valueOf(1047606L), responses.get(0).getInvoiceId() );
+    	assertEquals( 100.00, responses.get(0).getAmount(), 0.001 );
+    	assertEquals( ORDERTYPE.Invoice, responses.get(0).getOrderType() );
+    	assertEquals( Long.valueOf(1047605L), responses.get(1).getInvoiceId() );
+    	assertEquals( 1562.50, responses.get(1).getAmount(), 0.001 );
+    	assertFalse( responses.get(2).isOrderAccepted() );
+    	assertEquals( Long.valueOf(13L), responses.get(2).getOrderId() );
+    	assertEquals( "Order 13 was not returned by DeliverOrders.", responses.get(2).getErrorMessage() );
+    }
+
+    @Test
+    public void test_getDeliverOrdersResponses_applies_request_error_to_all_orders() throws Exception {
+    	NodeList xmlResponse = getResponseNodes("<a:ErrorMessage>Order is closed</a:ErrorMessage><a:ResultCode>20000</a:ResultCode><a:OrdersDelivered/>");
+    	List<DeliverOrdersResponse> responses = DeliverOrdersResponse.getDeliverOrdersResponses(xmlResponse, Arrays.asList(11L, 12L));
+
+    	assertEquals( 2, responses.size() );
+    	for( DeliverOrdersResponse response : responses ) {
+	    	assertFalse( response.isOrderAccepted() );
+	    	assertEquals( "20000", response.getResultCode() );
+	    	assertEquals( "Order is closed", response.getErrorMessage() );
+    	}
+    }
+
+    private NodeList getResponseNodes( String result ) throws Exception {
+    	String xml =
+    		"<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>" +
+    		"<DeliverOrdersResponse xmlns=\"http://tempuri.org/\">" +
+    		"<DeliverOrdersResult xmlns:a=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+    		result +
+    		"</DeliverOrdersResult></DeliverOrdersResponse></s:Body></s:Envelope>";
+    	SOAPMessage message = MessageFactory.newInstance().createMessage( new MimeHeaders(), new ByteArrayInputStream(xml.getBytes("UTF-8")) );
+    	return message.getSOAPPart().getEnvelope().getBody().getElementsByTagName("*");
+    }
+}
@@ -0,0 +1,164 @@
+package se.sveaekonomi.webpay.integration.adminservice;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+
+public class GetOrdersBulkRequestTest {
+
+    @Test
+    public void test_prepareRequest_splits_order_ids_into_chunks() throws SOAPException {
+    	List<Long> orderIds = new ArrayList<Long>();
+    	for( long i = 1; i <= 250; i++ ) {
+    		orderIds.add(i);
+    	}
+		List<SOAPMessage> soapMessages = WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+			.setOrderIds(orderIds)
+			.setCountryCode(TestingTool.DefaultTestCountryCode)
+			.queryInvoiceOrders()
+				.setChunkSize(100)
+				.prepareRequest()
+		;
+		assertEquals( 3, soapMessages.size() );
+		assertEquals( 100, soapMessages.get(0).getSOAPBody().getElementsByTagName("dat:GetOrderInformation").getLength() );
+		assertEquals( 100, soapMessages.get(1).getSOAPBody().getElementsByTagName("dat:GetOrderInformation").getLength() );
+		assertEquals( 50, soapMessages.get(2).getSOAPBody().getElementsByTagName("dat:GetOrderInformation").getLength() );
+
+		NodeList lastChunkIds = soapMessages.get(2).getSOAPBody().getElementsByTagName("dat:SveaOrderId");
+		assertEquals( "201", lastChunkIds.item(0).getTextContent() );
+		assertEquals( "250", lastChunkIds.item(49).getTextContent() );
+		assertEquals( "Invoice", soapMessages.get(0).getSOAPBody().getElementsByTagName("dat:OrderType").item(0).getTextContent() );
+    }
+
+    @Test
+    public void test_validates_missing_order_ids() {
+		try {
+			WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.queryPaymentPlanOrders()
+					.getChunkRequests()
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "MISSING VALUE - OrderIds are required, use setOrderIds().\n", e.getCause().getMessage() );
+		}
+    }
+
+    @Test
+    public void test_validates_order_id_combined_with_order_ids() {
+		try {
+			WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+				.setOrderId(10L)
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.queryInvoiceOrders()
+					.getChunkRequests()
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "NOT VALID - Use either setOrderId() or setOrderIds(), not both.\n", e.getCause().getMessage() );
+		}
+		try {
+			WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+				.setOrderId(10L)
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.queryInvoiceOrder()
+					.prepareRequest()
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "NOT VALID - OrderIds are only used by queryInvoiceOrders() and queryPaymentPlanOrders(), use setOrderId().\n", e.getCause().getMessage() );
+		}
+		catch( SOAPException e ) {
+			fail( "Unexpected SOAPException" );
+		}
+    }
+
+    @Test
+    public void test_single_order_request_rejects_order_ids() {
+		try {
+			WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.queryPaymentPlanOrder()
+					.doRequest()
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "NOT VALID - OrderIds are only used by queryInvoiceOrders() and queryPaymentPlanOrders(), use setOrderId().\n", e.getCause().getMessage() );
+		}
+    }
+
+    @Test
+    public void test_chunk_size_must_be_positive() {
+		try {
+			WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+				.setOrderIds(Arrays.asList(11L, 12L))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.queryInvoiceOrders()
+					.setChunkSize(0)
+			;
+	        fail( "Expected SveaWebPayException missing." );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "GetOrdersBulkRequest: chunkSize must be at least 1, was 0.", e.getMessage() );
+		}
+    }
+
+    @Test
+    public void test_getOrdersResponses_returns_result_per_requested_order() throws Exception {
+    	NodeList xmlResponse = getResponseNodes("<a:ErrorMessage i:nil=\"true\"/><a:ResultCode>0</a:ResultCode><a:Orders/>");
+    	List<GetOrdersResponse> responses = GetOrdersResponse.getOrdersResponses(xmlResponse, Arrays.asList(11L, 12L));
+
+    	assertEquals( 2, responses.size() );
+    	assertEquals( Long.valueOf(11L), responses.get(0).getOrderId() );
+    	assertEquals( Long.valueOf(12L), responses.get(1).getOrderId() );
+    	assertFalse( responses.get(1).isOrderAccepted() );
+    	assertEquals( "Order 12 was not returned by GetOrders.", responses.get(1).getErrorMessage() );
+    }
+
+    @Test
+    public void test_getOrdersResponses_applies_request_error_to_all_orders() throws Exception {
+    	NodeList xmlResponse = getResponseNodes("<a:ErrorMessage>Order is not found</a:ErrorMessage><a:ResultCode>20004</a:ResultCode><a:Orders/>");
+    	List<GetOrdersResponse> responses = GetOrdersResponse.getOrdersResponses(xmlResponse, Arrays.asList(11L, 12L));
+
+    	for( GetOrdersResponse response : responses ) {
+	    	assertFalse( response.isOrderAccepted() );
+	    	assertEquals( "20004", response.getResultCode() );
+	    	assertEquals( "Order is not found", response.getErrorMessage() );
+    	}
+    }
+
+    private NodeList getResponseNodes( String result ) throws Exception {
+    	String xml =
+    		"<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>" +
+    		"<GetOrdersResponse xmlns=\"http://tempuri.org/\">" +
+    		"<GetOrdersResult xmlns:a=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+    		result +
+    		"</GetOrdersResult></GetOrdersResponse></s:Body></s:Envelope>";
+    	SOAPMessage message = MessageFactory.newInstance().createMessage( new MimeHeaders(), new ByteArrayInputStream(xml.getBytes("UTF-8")) );
+    	return message.getSOAPPart().getEnvelope().getBody().getElementsByTagName("*");
+    }
+}
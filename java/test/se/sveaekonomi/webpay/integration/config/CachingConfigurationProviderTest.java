@@ -0,0 +1,151 @@
+package se.sveaekonomi.webpay.integration.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.request.GetRequestProperties;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+
+public class CachingConfigurationProviderTest {
+
+	/** counts the credential lookups made, i.e. against a database */
+	public static class CountingConfigurationProvider implements ConfigurationProvider {
+		private final ConfigurationProvider config = SveaConfig.getDefaultConfig();
+		public int lookups;
+
+		public String getUsername( PAYMENTTYPE type, COUNTRYCODE country ) { lookups++; return config.getUsername(type, country); }
+		public String getPassword( PAYMENTTYPE type, COUNTRYCODE country ) { lookups++; return config.getPassword(type, country); }
+		public int getClientNumber( PAYMENTTYPE type, COUNTRYCODE country ) { lookups++; return config.getClientNumber(type, country); }
+		public String getMerchantId( PAYMENTTYPE type, COUNTRYCODE country ) { lookups++; return config.getMerchantId(type, country); }
+		public String getSecretWord( PAYMENTTYPE type, COUNTRYCODE country ) { lookups++; return config.getSecretWord(type, country); }
+		public URL getEndPoint( PAYMENTTYPE type ) { return config.getEndPoint(type); }
+		public String getIntegrationPlatform() { return "counting platform"; }
+	}
+
+	@Test
+	public void test_credentials_are_looked_up_once_per_payment_type_and_country() {
+		CountingConfigurationProvider counting = new CountingConfigurationProvider();
+		CachingConfigurationProvider config = new CachingConfigurationProvider(counting);
+
+		assertEquals( "sverigetest", config.getUsername(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+		assertEquals( "sverigetest", config.getPassword(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+		assertEquals( 79021, config.getClientNumber(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+		assertEquals( 3, counting.lookups );
+
+		assertEquals( 59999, config.getClientNumber(PAYMENTTYPE.PAYMENTPLAN, COUNTRYCODE.SE) );
+		assertEquals( 33308, config.getClientNumber(PAYMENTTYPE.INVOICE, COUNTRYCODE.NO) );
+		assertEquals( 9, counting.lookups );
+
+		assertSame( config.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE), Credentials.resolve(config, PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+		assertEquals( 9, counting.lookups );
+		assertEquals( 3, config.getMisses() );
+	}
+
+	@Test
+	public void test_hosted_credentials_are_merchant_id_and_secret_word() {
+		CountingConfigurationProvider counting = new CountingConfigurationProvider();
+		CachingConfigurationProvider config = new CachingConfigurationProvider(counting);
+
+		Credentials credentials = config.getCredentials(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE);
+		assertEquals( "1130", credentials.getMerchantId() );
+		assertEquals( SveaConfig.getDefaultConfig().getSecretWord(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE), credentials.getSecretWord() );
+		assertNull( credentials.getUsername() );
+		assertEquals( 2, counting.lookups );
+
+		assertEquals( "1130", config.getMerchantId(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE) );
+		assertEquals( 2, counting.lookups );
+	}
+
+	@Test
+	public void test_invalidate_and_time_to_live() {
+		CountingConfigurationProvider counting = new CountingConfigurationProvider();
+		CachingConfigurationProvider config = new CachingConfigurationProvider(counting);
+
+		config.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		config.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.NO);
+		config.invalidate(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		config.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		config.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.NO);
+		assertEquals( 9, counting.lookups );
+
+		config.invalidate();
+		config.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.NO);
+		assertEquals( 12, counting.lookups );
+
+		CachingConfigurationProvider expiring = new CachingConfigurationProvider(counting, 1, TimeUnit.NANOSECONDS);
+		expiring.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		expiring.getCredentials(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		assertEquals( 18, counting.lookups );
+	}
+
+	/** changes its credentials, and invalidates the cache, while the first lookup is in progress */
+	private static class InvalidatingConfigurationProvider extends CountingConfigurationProvider {
+		CachingConfigurationProvider cache;
+		boolean invalidateAll;
+		String username = "old";
+
+		@Override
+		public String getUsername( PAYMENTTYPE type, COUNTRYCODE country ) {
+			lookups++;
+			String fetched = username;
+			if( lookups == 1 ) {
+				username = "new";
+				if( invalidateAll ) {
+					cache.invalidate();
+				}
+				else {
+					cache.invalidate(type, country);
+				}
+			}
+			return fetched;
+		}
+	}
+
+	@Test
+	public void test_credentials_fetched_while_invalidated_are_not_kept() {
+		for( boolean invalidateAll : new boolean[] { false, true } ) {
+			InvalidatingConfigurationProvider invalidating = new InvalidatingConfigurationProvider();
+			CachingConfigurationProvider config = new CachingConfigurationProvider(invalidating);
+			invalidating.cache = config;
+			invalidating.invalidateAll = invalidateAll;
+
+			assertEquals( "old", config.getUsername(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+			assertEquals( "new", config.getUsername(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+			assertEquals( "new", config.getUsername(PAYMENTTYPE.INVOICE, COUNTRYCODE.SE) );
+			assertEquals( 2, config.getMisses() );
+		}
+	}
+
+	@Test
+	public void test_requests_use_cached_credentials() {
+		CountingConfigurationProvider counting = new CountingConfigurationProvider();
+		CachingConfigurationProvider config = new CachingConfigurationProvider(counting);
+
+		for( int i = 0; i < 3; i++ ) {
+			WebPay.createOrder(config)
+				.addOrderRow(TestingTool.createExVatBasedOrderRow("1"))
+				.addCustomerDetails(WebPayItem.individualCustomer().setNationalIdNumber(TestingTool.DefaultTestIndividualNationalIdNumber))
+				.setCountryCode(COUNTRYCODE.SE)
+				.setOrderDate(TestingTool.DefaultTestDate)
+				.useInvoicePayment()
+				.prepareRequest();
+		}
+		assertEquals( 3, counting.lookups );
+	}
+
+	@Test
+	public void test_integration_properties_are_read_from_wrapped_config() {
+		CachingConfigurationProvider config = new CachingConfigurationProvider( new CountingConfigurationProvider() );
+		assertEquals( "counting platform", GetRequestProperties.getRequestProperties(config).getIntegrationPlatform() );
+	}
+}
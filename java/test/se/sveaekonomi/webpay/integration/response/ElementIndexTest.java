@@ -0,0 +1,90 @@
+package se.sveaekonomi.webpay.integration.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+public class ElementIndexTest {
+
+	private static final String XML =
+		"<response>" +
+			"<transaction id=\"593951\" status=\"SUCCESS\">" +
+				"<customerrefno> recur1423569086456 </customerrefno>" +
+				"<amount>25000</amount>" +
+				"<row><amount>100</amount></row>" +
+				"<empty/>" +
+			"</transaction>" +
+			"<amount>1</amount>" +
+			"<statuscode>0</statuscode>" +
+		"</response>";
+
+	private static Element parse( String xml ) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( new InputSource(new StringReader(xml)) ).getDocumentElement();
+	}
+
+	private static class Helper extends ResponseHelper {
+	}
+
+	@Test
+	public void test_values_match_getElementsByTagName() throws Exception {
+		Element response = parse(XML);
+		ElementIndex elements = ElementIndex.of(response);
+		Helper helper = new Helper();
+
+		for( String tagName : new String[] { "transaction", "customerrefno", "amount", "row", "empty", "statuscode", "missing" } ) {
+			assertSame( response.getElementsByTagName(tagName).item(0), elements.getElement(tagName) );
+		}
+		for( String tagName : new String[] { "customerrefno", "amount", "empty", "statuscode", "missing" } ) {
+			assertEquals( helper.getTagValue(response, tagName), elements.getValue(tagName) );
+		}
+		assertNull( elements.getValue("row") );
+		assertEquals( "recur1423569086456", elements.getValue("customerrefno") );
+		assertEquals( "25000", elements.getValue("amount") );
+		assertNull( elements.getValue("empty") );
+		assertTrue( elements.hasElement("empty") );
+		assertNull( elements.getChildNodes("empty") );
+		assertEquals( 1, elements.getChildNodes("row").getLength() );
+	}
+
+	@Test
+	public void test_index_does_not_include_the_indexed_element() throws Exception {
+		ElementIndex elements = ElementIndex.of( parse(XML) );
+		assertFalse( elements.hasElement("response") );
+	}
+
+	@Test
+	public void test_getAttribute_returns_named_attribute() throws Exception {
+		Element response = parse(XML);
+		ElementIndex elements = ElementIndex.of(response);
+		Helper helper = new Helper();
+
+		assertEquals( "593951", elements.getAttribute("transaction", "id") );
+		assertEquals( "SUCCESS", elements.getAttribute("transaction", "status") );
+		assertNull( elements.getAttribute("transaction", "missing") );
+		assertNull( elements.getAttribute("missing", "id") );
+
+		assertEquals( "593951", helper.getTagAttribute(response, "transaction", "id") );
+		assertEquals( "SUCCESS", helper.getTagAttribute(response, "transaction", "status") );
+		assertNull( helper.getTagAttribute(response, "transaction", "missing") );
+		assertNull( helper.getTagAttribute(response, "missing", "id") );
+	}
+
+	@Test
+	public void test_getElementIndex_reuses_index_for_same_element() throws Exception {
+		Element response = parse(XML);
+		Helper helper = new Helper();
+		ElementIndex elements = helper.getElementIndex(response);
+		assertSame( elements, helper.getElementIndex(response) );
+		assertSame( response, elements.getRoot() );
+	}
+}
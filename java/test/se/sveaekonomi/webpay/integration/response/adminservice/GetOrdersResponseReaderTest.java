@@ -0,0 +1,168 @@
+package se.sveaekonomi.webpay.integration.response.adminservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.order.row.NumberedOrderRowBuilder;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERDELIVERYSTATUS;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERROWSTATUS;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERSTATUS;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERTYPE;
+import se.sveaekonomi.webpay.integration.util.constant.PENDINGTYPE;
+
+public class GetOrdersResponseReaderTest {
+
+	private static final String INVOICE_ORDER =
+		"<a:Order><a:ChangedDate i:nil=\"true\"/><a:ClientId>79021</a:ClientId><a:ClientOrderId>order &amp; co</a:ClientOrderId>" +
+		"<a:CreatedDate>2014-12-01T10:00:00</a:CreatedDate>" +
+		"<a:CreditReportStatus><a:Accepted>true</a:Accepted><a:CreationDate>2014-12-01T10:00:01</a:CreationDate></a:CreditReportStatus>" +
+		"<a:Currency>SEK</a:Currency>" +
+		"<a:Customer xmlns:b=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\">" +
+		"<b:CoAddress>c/o Eriksson, Erik</b:CoAddress><b:CompanyIdentity i:nil=\"true\"/><b:CountryCode>SE</b:CountryCode>" +
+		"<b:CustomerType>Individual</b:CustomerType><b:Email i:nil=\"true\"/><b:FullName>Persson, Tess T</b:FullName><b:HouseNumber i:nil=\"true\"/>" +
+		"<b:IndividualIdentity><b:BirthDate i:nil=\"true\"/><b:FirstName i:nil=\"true\"/><b:Initials i:nil=\"true\"/><b:LastName i:nil=\"true\"/></b:IndividualIdentity>" +
+		"<b:Locality>Stan</b:Locality><b:NationalIdNumber>194605092222</b:NationalIdNumber><b:PhoneNumber i:nil=\"true\"/><b:PublicKey i:nil=\"true\"/>" +
+		"<b:Street>Testgatan 1</b:Street><b:ZipCode>99999</b:ZipCode></a:Customer>" +
+		"<a:CustomerId>1000117</a:CustomerId><a:CustomerReference/><a:DeliveryAddress i:nil=\"true\"/>" +
+		"<a:IsPossibleToAdminister>false</a:IsPossibleToAdminister><a:IsPossibleToCancel>true</a:IsPossibleToCancel><a:Notes i:nil=\"true\"/>" +
+		"<a:OrderDeliveryStatus>Created</a:OrderDeliveryStatus><a:OrderRows>" +
+		row("1", "100.00", "true", "NotDelivered") + row("2", "80.00", "false", "Delivered") +
+		"</a:OrderRows><a:OrderStatus>Active</a:OrderStatus><a:OrderType>Invoice</a:OrderType>" +
+		"<a:PaymentPlanDetails i:nil=\"true\"/><a:PendingReasons/><a:SveaOrderId>11</a:SveaOrderId><a:SveaWillBuy>true</a:SveaWillBuy></a:Order>";
+
+	private static final String PAYMENTPLAN_ORDER = INVOICE_ORDER
+		.replace("<a:OrderType>Invoice</a:OrderType>", "<a:OrderType>PaymentPlan</a:OrderType>")
+		.replace("<a:PaymentPlanDetails i:nil=\"true\"/>", "<a:PaymentPlanDetails><a:CampaignCode>213060</a:CampaignCode><a:ContractLengthMonths>60</a:ContractLengthMonths><a:ContractNumber i:nil=\"true\"/></a:PaymentPlanDetails>")
+		.replace("<a:PendingReasons/>", "<a:PendingReasons><a:CreatedDate>2014-12-02</a:CreatedDate><a:PendingType>SMSOnHighAmount</a:PendingType></a:PendingReasons>")
+		.replace("<b:CompanyIdentity i:nil=\"true\"/>", "<b:CompanyIdentity><b:CompanyIdentification i:nil=\"true\"/><b:CompanyVatNumber>SE556</b:CompanyVatNumber></b:CompanyIdentity>")
+		.replace("<b:CustomerType>Individual</b:CustomerType>", "<b:CustomerType>Company</b:CustomerType>")
+		.replace("<a:SveaOrderId>11</a:SveaOrderId>", "<a:SveaOrderId>12</a:SveaOrderId>");
+
+	private static String row( String rowNumber, String pricePerUnit, String priceIncludingVat, String status ) {
+		String ns = " xmlns=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\"";
+		return "<a:NumberedOrderRow><ArticleNumber" + ns + ">A" + rowNumber + "</ArticleNumber><Description" + ns + ">Product: a product</Description>" +
+			"<DiscountPercent" + ns + ">0</DiscountPercent><NumberOfUnits" + ns + ">2.00</NumberOfUnits><PriceIncludingVat" + ns + ">" + priceIncludingVat + "</PriceIncludingVat>" +
+			"<PricePerUnit" + ns + ">" + pricePerUnit + "</PricePerUnit><Unit" + ns + "/><VatPercent" + ns + ">25.00</VatPercent>" +
+			"<a:CreditInvoiceId i:nil=\"true\"/><a:InvoiceId i:nil=\"true\"/><a:RowNumber>" + rowNumber + "</a:RowNumber><a:Status>" + status + "</a:Status></a:NumberedOrderRow>";
+	}
+
+	private static byte[] getResponse( String result ) throws Exception {
+		String xml =
+			"<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>" +
+			"<GetOrdersResponse xmlns=\"http://tempuri.org/\">" +
+			"<GetOrdersResult xmlns:a=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+			result +
+			"</GetOrdersResult></GetOrdersResponse></s:Body></s:Envelope>";
+		return xml.getBytes("UTF-8");
+	}
+
+	private static NodeList getResponseNodes( byte[] xml ) throws Exception {
+		SOAPMessage message = MessageFactory.newInstance().createMessage( new MimeHeaders(), new ByteArrayInputStream(xml) );
+		return message.getSOAPPart().getEnvelope().getBody().getElementsByTagName("*");
+	}
+
+	@Test
+	public void test_readResponse_reads_order_as_GetOrdersResponse() throws Exception {
+		byte[] xml = getResponse("<a:ErrorMessage i:nil=\"true\"/><a:ResultCode>0</a:ResultCode><a:Orders>" + INVOICE_ORDER + "</a:Orders>");
+		GetOrdersResponse response = GetOrdersResponseReader.readResponse(xml);
+		GetOrdersResponse expected = new GetOrdersResponse( getResponseNodes(xml) );
+
+		assertTrue( response.isOrderAccepted() );
+		assertEquals( Long.valueOf(11L), response.getOrderId() );
+		assertEquals( ORDERSTATUS.ACTIVE, response.getOrderStatus() );
+		assertEquals( ORDERDELIVERYSTATUS.CREATED, response.getOrderDeliveryStatus() );
+		assertEquals( ORDERTYPE.Invoice, response.getOrderType() );
+		assertEquals( "order & co", response.getClientOrderId() );
+		assertNull( response.getChangeDate() );
+		assertNull( response.getCustomerReference() );
+		assertEquals( Long.valueOf(79021L), response.getClientId() );
+		assertEquals( Boolean.TRUE, response.getCreditReportStatusAccepted() );
+		assertNull( response.getPaymentPlanDetailsContractLengthMonths() );
+
+		assertEquals( expected.getIndividualCustomer().getNationalIdNumber(), response.getIndividualCustomer().getNationalIdNumber() );
+		assertEquals( expected.getIndividualCustomer().getCoAddress(), response.getIndividualCustomer().getCoAddress() );
+		assertEquals( expected.getIndividualCustomer().getFirstName(), response.getIndividualCustomer().getFirstName() );
+
+		List<NumberedOrderRowBuilder> rows = response.getNumberedOrderRows();
+		assertSame( rows, response.getNumberedOrderRows() );
+		assertEquals( 2, rows.size() );
+		for( int i = 0; i < rows.size(); i++ ) {
+			NumberedOrderRowBuilder row = rows.get(i);
+			NumberedOrderRowBuilder expectedRow = expected.getNumberedOrderRows().get(i);
+			assertEquals( expectedRow.getRowNumber(), row.getRowNumber() );
+			assertEquals( expectedRow.getArticleNumber(), row.getArticleNumber() );
+			assertEquals( expectedRow.getAmountIncVat(), row.getAmountIncVat() );
+			assertEquals( expectedRow.getAmountExVat(), row.getAmountExVat() );
+			assertEquals( expectedRow.getQuantity(), row.getQuantity() );
+			assertEquals( expectedRow.getUnit(), row.getUnit() );
+			assertEquals( expectedRow.getStatus(), row.getStatus() );
+		}
+		assertEquals( Double.valueOf(100.0), rows.get(0).getAmountIncVat() );
+		assertEquals( ORDERROWSTATUS.DELIVERED, rows.get(1).getStatus() );
+	}
+
+	@Test
+	public void test_readResponses_returns_result_per_requested_order() throws Exception {
+		byte[] xml = getResponse("<a:ErrorMessage i:nil=\"true\"/><a:ResultCode>0</a:ResultCode><a:Orders>" + INVOICE_ORDER + PAYMENTPLAN_ORDER + "</a:Orders>");
+		List<GetOrdersResponse> responses = GetOrdersResponseReader.readResponses( xml, Arrays.asList(12L, 13L, 11L) );
+
+		assertEquals( 3, responses.size() );
+		GetOrdersResponse paymentPlan = responses.get(0);
+		assertEquals( Long.valueOf(12L), paymentPlan.getOrderId() );
+		assertEquals( ORDERTYPE.PaymentPlan, paymentPlan.getOrderType() );
+		assertEquals( Integer.valueOf(60), paymentPlan.getPaymentPlanDetailsContractLengthMonths() );
+		assertNull( paymentPlan.getPaymentPlanDetailsContractNumber() );
+		assertEquals( PENDINGTYPE.SMSONHIGHAMOUNT, paymentPlan.getPendingReasonsPendingType() );
+		assertEquals( "2014-12-02", paymentPlan.getPendingReasonsCreatedDate() );
+		assertEquals( "SE556", paymentPlan.getCompanyCustomer().getVatNumber() );
+		assertEquals( "Persson, Tess T", paymentPlan.getCompanyCustomer().getCompanyName() );
+
+		assertFalse( responses.get(1).isOrderAccepted() );
+		assertEquals( "Order 13 was not returned by GetOrders.", responses.get(1).getErrorMessage() );
+
+		assertEquals( Long.valueOf(11L), responses.get(2).getOrderId() );
+		assertEquals( 2, responses.get(2).getNumberedOrderRows().size() );
+	}
+
+	@Test
+	public void test_readResponses_applies_request_error_to_all_orders() throws Exception {
+		byte[] xml = getResponse("<a:ErrorMessage>Order is not found</a:ErrorMessage><a:ResultCode>20004</a:ResultCode><a:Orders/>");
+		for( GetOrdersResponse response : GetOrdersResponseReader.readResponses( xml, Arrays.asList(11L, 12L) ) ) {
+			assertFalse( response.isOrderAccepted() );
+			assertEquals( "20004", response.getResultCode() );
+			assertEquals( "Order is not found", response.getErrorMessage() );
+		}
+		assertEquals( "Order is not found", GetOrdersResponseReader.readResponse(xml).getErrorMessage() );
+	}
+
+	@Test
+	public void test_readResponse_reports_soap_fault() throws Exception {
+		String fault =
+			"<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><s:Fault>" +
+			"<faultcode>a:InternalServiceFault</faultcode><faultstring>Object reference not set</faultstring>" +
+			"</s:Fault></s:Body></s:Envelope>";
+		try {
+			GetOrdersResponseReader.readResponse( fault.getBytes("UTF-8") );
+			fail( "Expected SveaWebPayException" );
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "GetOrdersRequest: response holds no ResultCode, SOAP fault: Object reference not set", e.getMessage() );
+		}
+	}
+}
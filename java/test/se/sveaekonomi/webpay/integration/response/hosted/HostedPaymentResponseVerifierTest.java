@@ -0,0 +1,119 @@
+package se.sveaekonomi.webpay.integration.response.hosted;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.response.hosted.HostedPaymentResponseVerifier.Message;
+import se.sveaekonomi.webpay.integration.response.hosted.HostedPaymentResponseVerifier.Result;
+import se.sveaekonomi.webpay.integration.response.hosted.HostedPaymentResponseVerifier.STATUS;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.security.Base64Util;
+import se.sveaekonomi.webpay.integration.util.security.MacUtil;
+
+public class HostedPaymentResponseVerifierTest {
+
+	private static final String MERCHANT_ID = "1130";
+	private static final String SECRET_WORD = SveaConfig.getDefaultConfig().getSecretWord(PAYMENTTYPE.HOSTED, COUNTRYCODE.SE);
+
+	private static String message( int i ) {
+		return Base64Util.encodeBase64String(
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?><response><transaction id=\"" + (580000 + i) + "\">" +
+			"<paymentmethod>KORTCERT</paymentmethod><merchantid>1130</merchantid><customerrefno>" + i + "</customerrefno>" +
+			"<amount>" + (100 * i) + "</amount><currency>SEK</currency></transaction><statuscode>0</statuscode></response>"
+		);
+	}
+
+	private static List<Message> messages( int count ) {
+		List<Message> messages = new ArrayList<Message>();
+		for( int i = 0; i < count; i++ ) {
+			String message = message(i);
+			String mac = MacUtil.createMac(message, SECRET_WORD);
+			switch( i % 10 ) {
+				case 3: messages.add( new Message(message, "bad" + mac, MERCHANT_ID) ); break;
+				case 7: messages.add( new Message(message, mac, "9999") ); break;
+				default: messages.add( new Message(message, mac, MERCHANT_ID) );
+			}
+		}
+		return messages;
+	}
+
+	private static void assertResults( List<Message> messages, Iterable<Result> results ) {
+		int i = 0;
+		for( Result result : results ) {
+			assertSame( messages.get(i), result.getMessage() );
+			switch( i % 10 ) {
+				case 3:
+					assertEquals( STATUS.BAD_MAC, result.getStatus() );
+					assertNull( result.getResponse() );
+					break;
+				case 7:
+					assertEquals( STATUS.UNKNOWN_MERCHANT, result.getStatus() );
+					break;
+				default:
+					assertEquals( STATUS.VERIFIED, result.getStatus() );
+					assertTrue( result.getResponse().isOrderAccepted() );
+					assertEquals( String.valueOf(i), result.getResponse().getClientOrderNumber() );
+					assertEquals( String.valueOf(580000 + i), result.getResponse().getTransactionId() );
+			}
+			i++;
+		}
+		assertEquals( messages.size(), i );
+	}
+
+	@Test
+	public void test_verify_in_parallel_returns_results_in_message_order() {
+		HostedPaymentResponseVerifier verifier = new HostedPaymentResponseVerifier( SveaConfig.getDefaultConfig() ).setParallelism(4).setMaxPending(8);
+		List<Message> messages = messages(500);
+		assertResults( messages, verifier.verify(messages) );
+		verifier.shutdown();
+	}
+
+	@Test
+	public void test_verify_on_calling_thread() {
+		HostedPaymentResponseVerifier verifier = new HostedPaymentResponseVerifier( SveaConfig.getDefaultConfig() ).setParallelism(1);
+		List<Message> messages = messages(50);
+		assertResults( messages, verifier.verify(messages) );
+	}
+
+	@Test
+	public void test_verify_reads_at_most_max_pending_messages_ahead() {
+		final int[] read = new int[1];
+		final List<Message> messages = messages(100);
+		Iterable<Message> counting = new Iterable<Message>() {
+			@Override
+			public Iterator<Message> iterator() {
+				final Iterator<Message> iterator = messages.iterator();
+				return new Iterator<Message>() {
+					public boolean hasNext() { return iterator.hasNext(); }
+					public Message next() { read[0]++; return iterator.next(); }
+					public void remove() { throw new UnsupportedOperationException(); }
+				};
+			}
+		};
+		HostedPaymentResponseVerifier verifier = new HostedPaymentResponseVerifier( SveaConfig.getDefaultConfig() ).setParallelism(2).setMaxPending(5);
+		Iterator<Result> results = verifier.verify(counting).iterator();
+		assertNotNull( results.next() );
+		assertTrue( read[0] <= 6 );
+		verifier.shutdown();
+	}
+
+	@Test
+	public void test_verify_reports_unparseable_message_as_failed() {
+		String message = Base64Util.encodeBase64String("<response><statuscode>x</statuscode></response>");
+		Result result = new HostedPaymentResponseVerifier( SveaConfig.getDefaultConfig() ).verify( new Message(message, MacUtil.createMac(message, SECRET_WORD), MERCHANT_ID) );
+		assertEquals( STATUS.FAILED, result.getStatus() );
+		assertTrue( result.getException() instanceof NumberFormatException );
+		assertNull( result.getResponse() );
+	}
+}
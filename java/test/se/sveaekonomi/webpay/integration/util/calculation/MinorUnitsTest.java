@@ -0,0 +1,160 @@
+package se.sveaekonomi.webpay.integration.util.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MinorUnitsTest {
+
+	private static final int CORPUS_SIZE = 100000;
+
+	// MathUtil.bankersRound and convertFromDecimalToCentesimal as implemented using BigDecimal
+	private static double referenceBankersRound( double value, int precision ) {
+		BigDecimal rounded = new BigDecimal( String.valueOf(value) );
+		rounded = rounded.setScale(precision, RoundingMode.HALF_EVEN);
+		rounded = rounded.round( new MathContext(0,RoundingMode.HALF_EVEN) );
+		return rounded.doubleValue();
+	}
+
+	private static long referenceConvertFromDecimalToCentesimal( double value ) {
+		value = Math.floor(value * 10000) / 10000;
+		value = referenceBankersRound(value, 2);
+		value = value * 100;
+		return (long) referenceBankersRound(value, 2);
+	}
+
+	private static void assertSameRounding( double value, int precision ) {
+		double expected = referenceBankersRound(value, precision);
+		double actual = MathUtil.bankersRound(value, precision);
+		if( Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual) ) {
+			fail( "bankersRound(" + value + ", " + precision + ") expected " + expected + " but was " + actual );
+		}
+	}
+
+	private static void assertSameMinorUnits( double value ) {
+		assertEquals( "convertFromDecimalToCentesimal(" + value + ")",
+				referenceConvertFromDecimalToCentesimal(value), MathUtil.convertFromDecimalToCentesimal(value) );
+	}
+
+	/** @return an amount with up to six decimals, as given by integrations, i.e. 123.455 */
+	private static double randomDecimalAmount( Random random ) {
+		int decimals = random.nextInt(7);
+		long units = (long) (random.nextDouble() * Math.pow(10, 6 + random.nextInt(4)));
+		double amount = new BigDecimal(units).movePointLeft(decimals).doubleValue();
+		return random.nextBoolean() ? amount : -amount;
+	}
+
+	/** @return an amount as calculated by the row formatters, i.e. price * quantity * vat factor * share */
+	private static double randomCalculatedAmount( Random random ) {
+		double price = randomDecimalAmount(random);
+		double quantity = 1 + random.nextInt(100);
+		double vatPercent = new double[] { 0, 6, 8, 10, 12, 14, 15, 19, 21, 24, 25, 25.5 }[ random.nextInt(12) ];
+		double amount = price * quantity * (1 + vatPercent / 100);
+		switch( random.nextInt(3) ) {
+			case 0: return amount;
+			case 1: return amount - amount * MathUtil.reverseVatRate(vatPercent);
+			default: return amount * random.nextDouble();
+		}
+	}
+
+	@Test
+	public void test_bankersRound_parity_on_decimal_amounts() {
+		Random random = new Random(20141201L);
+		for( int i = 0; i < CORPUS_SIZE; i++ ) {
+			double value = randomDecimalAmount(random);
+			assertSameRounding( value, 2 );
+			assertSameRounding( value, random.nextInt(5) );
+		}
+	}
+
+	@Test
+	public void test_bankersRound_parity_on_calculated_amounts() {
+		Random random = new Random(20141202L);
+		for( int i = 0; i < CORPUS_SIZE; i++ ) {
+			double value = randomCalculatedAmount(random);
+			assertSameRounding( value, 2 );
+			assertSameRounding( value, random.nextInt(5) );
+		}
+	}
+
+	@Test
+	public void test_bankersRound_parity_on_ties() {
+		Random random = new Random(20141203L);
+		for( int i = 0; i < CORPUS_SIZE; i++ ) {
+			int precision = random.nextInt(5);
+			long units = random.nextInt(100000000);
+			double tie = new BigDecimal(units * 10 + 5).movePointLeft(precision + 1).doubleValue();
+			assertSameRounding( tie, precision );
+			assertSameRounding( -tie, precision );
+			assertSameRounding( Math.nextUp(tie), precision );
+			assertSameRounding( Math.nextAfter(tie, 0), precision );
+		}
+	}
+
+	@Test
+	public void test_bankersRound_parity_on_bit_patterns() {
+		Random random = new Random(20141204L);
+		for( int i = 0; i < CORPUS_SIZE; i++ ) {
+			double value = Double.longBitsToDouble( random.nextLong() );
+			if( Double.isNaN(value) || Double.isInfinite(value) ) {
+				continue;
+			}
+			assertSameRounding( value, 2 );
+		}
+	}
+
+	@Test
+	public void test_bankersRound_parity_at_limits() {
+		double[] values = { 0.0, -0.0, Double.MIN_VALUE, -Double.MIN_VALUE, 0.005, -0.005, 0.015, 0.125, 2.5, 3.5,
+				MinorUnits.MAX_SCALED_MAGNITUDE / 100, Math.nextAfter(MinorUnits.MAX_SCALED_MAGNITUDE / 100, 0), 1e15, -1e15, Double.MAX_VALUE };
+		for( double value : values ) {
+			for( int precision = 0; precision <= MinorUnits.MAX_SCALE + 1; precision++ ) {
+				assertSameRounding( value, precision );
+			}
+		}
+	}
+
+	@Test
+	public void test_convertFromDecimalToCentesimal_parity() {
+		Random random = new Random(20141205L);
+		for( int i = 0; i < CORPUS_SIZE; i++ ) {
+			assertSameMinorUnits( randomDecimalAmount(random) );
+			assertSameMinorUnits( randomCalculatedAmount(random) );
+		}
+		assertSameMinorUnits( 1e12 );
+		assertSameMinorUnits( -1e12 );
+	}
+
+	@Test
+	public void test_roundHalfEven_returns_minor_units() {
+		assertEquals( 1234L, MinorUnits.roundHalfEven(12.345, 2) );
+		assertEquals( 1236L, MinorUnits.roundHalfEven(12.355, 2) );
+		assertEquals( -1234L, MinorUnits.roundHalfEven(-12.345, 2) );
+		assertEquals( 2L, MinorUnits.roundHalfEven(2.5, 0) );
+		assertEquals( 12.34, MinorUnits.toAmount(1234L), 0.0 );
+		assertEquals( 50000L, MinorUnits.fromAmount(500.0) );
+	}
+
+	@Test
+	public void test_roundHalfEven_rejects_values_out_of_range() {
+		assertTrue( MinorUnits.isRoundable(1e9, 2) );
+		assertFalse( MinorUnits.isRoundable(1e12, 2) );
+		assertFalse( MinorUnits.isRoundable(Double.NaN, 2) );
+		assertFalse( MinorUnits.isRoundable(1.0, -1) );
+		try {
+			MinorUnits.roundHalfEven( Double.POSITIVE_INFINITY, 2 );
+			fail( "Expected ArithmeticException" );
+		}
+		catch( ArithmeticException e ) {
+			// expected
+		}
+	}
+}
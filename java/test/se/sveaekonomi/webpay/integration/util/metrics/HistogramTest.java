@@ -0,0 +1,83 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void test_empty_histogram() {
+		Histogram histogram = new Histogram();
+		assertEquals( 0, histogram.getCount() );
+		assertEquals( 0, histogram.getValueAtPercentile(99.0) );
+		assertEquals( 0.0, histogram.getMean(), 0.0 );
+		assertEquals( 0, histogram.getSnapshot(1.0).getCount() );
+	}
+
+	@Test
+	public void test_small_values_are_exact() {
+		Histogram histogram = new Histogram();
+		for( long value = 0; value < 32; value++ ) {
+			histogram.record(value);
+			assertEquals( value, Histogram.lowestEquivalentValue( Histogram.bucketIndex(value) ) );
+			assertEquals( value, Histogram.highestEquivalentValue( Histogram.bucketIndex(value) ) );
+		}
+		assertEquals( 32, histogram.getCount() );
+		assertEquals( 0, histogram.getMin() );
+		assertEquals( 31, histogram.getMax() );
+		assertEquals( 15, histogram.getValueAtPercentile(50.0) );
+		assertEquals( 31, histogram.getValueAtPercentile(100.0) );
+	}
+
+	@Test
+	public void test_bucket_bounds_cover_value_within_relative_error() {
+		long[] values = { 32, 33, 47, 48, 1000, 1023, 1024, 123456789L, Long.MAX_VALUE / 2 };
+		for( long value : values ) {
+			int index = Histogram.bucketIndex(value);
+			long lowest = Histogram.lowestEquivalentValue(index);
+			long highest = Histogram.highestEquivalentValue(index);
+			assertTrue( value + " >= " + lowest, value >= lowest );
+			assertTrue( value + " <= " + highest, value <= highest );
+			assertTrue( (highest - lowest) <= lowest / 16 );
+		}
+	}
+
+	@Test
+	public void test_percentiles_within_relative_error() {
+		Histogram histogram = new Histogram();
+		for( long value = 1; value <= 100000; value++ ) {
+			histogram.record(value);
+		}
+		assertEquals( 100000, histogram.getCount() );
+		assertEquals( 1, histogram.getMin() );
+		assertEquals( 100000, histogram.getMax() );
+		assertEquals( 50000.5, histogram.getMean(), 0.001 );
+		assertEquals( 50000.0, histogram.getValueAtPercentile(50.0), 50000.0 / 16 );
+		assertEquals( 90000.0, histogram.getValueAtPercentile(90.0), 90000.0 / 16 );
+		assertEquals( 99000.0, histogram.getValueAtPercentile(99.0), 99000.0 / 16 );
+		assertEquals( 100000, histogram.getValueAtPercentile(100.0) );
+	}
+
+	@Test
+	public void test_snapshot_is_scaled() {
+		Histogram histogram = new Histogram();
+		histogram.record( 2000000L );
+		histogram.record( 4000000L );
+		HistogramSnapshot snapshot = histogram.getSnapshot( 1.0 / 1000000 );
+		assertEquals( 2, snapshot.getCount() );
+		assertEquals( 3.0, snapshot.getMean(), 0.0001 );
+		assertEquals( 2.0, snapshot.getMin(), 0.0001 );
+		assertEquals( 4.0, snapshot.getMax(), 0.0001 );
+		assertTrue( snapshot.getP50() >= 2.0 && snapshot.getP50() <= 2.0 + 2.0 / 16 );
+	}
+
+	@Test
+	public void test_negative_values_are_recorded_as_zero() {
+		Histogram histogram = new Histogram();
+		histogram.record( -5 );
+		assertEquals( 1, histogram.getCount() );
+		assertEquals( 0, histogram.getMax() );
+	}
+}
@@ -0,0 +1,234 @@
+package se.sveaekonomi.webpay.integration.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaTestConfigurationProvider;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.ConfirmTransactionResponse;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.metrics.RequestTimer.Phase;
+
+public class InMemoryMetricsTest {
+
+	private static final String GET_ORDERS_RESPONSE =
+		"<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>" +
+		"<GetOrdersResponse xmlns=\"http://tempuri.org/\"><GetOrdersResult xmlns:a=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\">" +
+		"<a:ErrorMessage>Order not found</a:ErrorMessage><a:ResultCode>20004</a:ResultCode><a:Orders/></GetOrdersResult></GetOrdersResponse>" +
+		"</s:Body></s:Envelope>";
+
+	private InMemoryMetrics metrics;
+	private MetricsListener previousListener;
+	private HttpServer server;
+	private final AtomicReference<Integer> receivedLength = new AtomicReference<Integer>();
+
+	@Before
+	public void setUp() {
+		metrics = new InMemoryMetrics();
+		previousListener = RequestMetrics.setListener(metrics);
+	}
+
+	@After
+	public void tearDown() {
+		RequestMetrics.setListener(previousListener);
+		metrics.unregisterMBeans();
+		if( server != null ) {
+			server.stop(0);
+		}
+	}
+
+	private static ConfirmTransactionResponse createResponse( boolean accepted, String resultCode ) {
+		ConfirmTransactionResponse response = new ConfirmTransactionResponse( null, null, null );
+		response.setOrderAccepted(accepted);
+		response.setResultCode(resultCode);
+		return response;
+	}
+
+	@Test
+	public void test_default_listener_is_no_op() {
+		RequestMetrics.setListener(null);
+		assertSame( MetricsListener.NO_OP, RequestMetrics.getListener() );
+		RequestMetrics.start("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE).finish( createResponse(true, "0") );
+		assertTrue( metrics.getAllStats().isEmpty() );
+	}
+
+	@Test
+	public void test_finish_records_sample_per_operation_payment_type_and_country() {
+		for( int i = 0; i < 3; i++ ) {
+			RequestTimer timer = RequestMetrics.start("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+			timer.enter(Phase.SERIALIZE);
+			timer.addBytesOut(100);
+			timer.enter(Phase.NETWORK);
+			timer.addBytesIn(1000);
+			timer.enter(Phase.PARSE);
+			timer.finish( createResponse(i != 2, (i != 2) ? "0" : "20004") );
+		}
+		RequestMetrics.start("GetOrders", PAYMENTTYPE.PAYMENTPLAN, COUNTRYCODE.SE).finish( createResponse(true, "0") );
+
+		OperationStats stats = metrics.getStats("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		assertEquals( 3, stats.getCount() );
+		assertEquals( 1, stats.getNotAcceptedCount() );
+		assertEquals( 0, stats.getFailureCount() );
+		assertEquals( 300, stats.getBytesOut() );
+		assertEquals( 3000, stats.getBytesIn() );
+		assertEquals( 3, stats.getTotalTime().getCount() );
+		assertEquals( 100.0, stats.getRequestSize().getMax(), 0.0 );
+		assertEquals( Long.valueOf(2), stats.getResultCodes().get("0") );
+		assertEquals( Long.valueOf(1), stats.getResultCodes().get("20004") );
+		assertEquals( "Invoice", stats.getPaymentType() );
+		assertEquals( "SE", stats.getCountryCode() );
+
+		assertEquals( 1, metrics.getStats("GetOrders", PAYMENTTYPE.PAYMENTPLAN, COUNTRYCODE.SE).getCount() );
+		assertNull( metrics.getStats("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.NO) );
+		assertEquals( 2, metrics.getAllStats().size() );
+	}
+
+	@Test
+	public void test_fail_flipped_and_retried_are_recorded_once() {
+		RequestTimer timer = RequestMetrics.start("CreditInvoiceRows", PAYMENTTYPE.INVOICE, null);
+		timer.flipped();
+		timer.retried();
+		SveaWebPayException failure = new SveaWebPayException("send request failed");
+		assertSame( failure, timer.fail(failure) );
+		timer.finish( createResponse(true, "0") );	// ignored, already reported
+
+		OperationStats stats = metrics.getStats("CreditInvoiceRows", PAYMENTTYPE.INVOICE, null);
+		assertEquals( 1, stats.getCount() );
+		assertEquals( 1, stats.getFailureCount() );
+		assertEquals( 1, stats.getFlipCount() );
+		assertEquals( 1, stats.getRetryCount() );
+		assertEquals( "", stats.getCountryCode() );
+	}
+
+	@Test
+	public void test_finishAll_reports_first_response_not_accepted() {
+		RequestMetrics.start("DeliverOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE)
+			.finishAll( Arrays.asList( createResponse(true, "0"), createResponse(false, "20004"), createResponse(false, "100") ) );
+
+		OperationStats stats = metrics.getStats("DeliverOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		assertEquals( 1, stats.getNotAcceptedCount() );
+		assertEquals( Long.valueOf(1), stats.getResultCodes().get("20004") );
+	}
+
+	@Test
+	public void test_listener_exception_does_not_fail_request() {
+		RequestMetrics.setListener( new MetricsListener() {
+			@Override
+			public void requestCompleted( RequestSample sample ) {
+				throw new IllegalStateException("listener failed");
+			}
+		});
+		ConfirmTransactionResponse response = createResponse(true, "0");
+		assertSame( response, RequestMetrics.start("confirm", PAYMENTTYPE.HOSTED, COUNTRYCODE.SE).finish(response) );
+	}
+
+	@Test
+	public void test_registerMBeans_exposes_existing_and_later_operations() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		RequestMetrics.start("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE).finish( createResponse(true, "0") );
+		metrics.registerMBeans(server);
+		RequestMetrics.start("querytransactionid", PAYMENTTYPE.HOSTED, null).finish( createResponse(true, "0") );
+
+		ObjectName getOrders = new ObjectName("se.sveaekonomi.webpay:type=RequestMetrics,operation=GetOrders,paymentType=Invoice,countryCode=SE");
+		ObjectName query = new ObjectName("se.sveaekonomi.webpay:type=RequestMetrics,operation=querytransactionid,paymentType=HOSTED,countryCode=none");
+		assertTrue( server.isRegistered(getOrders) );
+		assertTrue( server.isRegistered(query) );
+		assertEquals( 1L, server.getAttribute(getOrders, "Count") );
+		CompositeData totalTime = (CompositeData) server.getAttribute(getOrders, "TotalTime");
+		assertEquals( 1L, totalTime.get("count") );
+		assertNotNull( totalTime.get("p99") );
+
+		// a second registration of the same names fails
+		InMemoryMetrics other = new InMemoryMetrics();
+		other.requestCompleted( new RequestSample("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE, 1, 1, 1, 1, 0, 0, "0", true, null, 0, 0) );
+		try {
+			other.registerMBeans(server);
+			fail("expected SveaWebPayException");
+		}
+		catch( SveaWebPayException e ) {
+			assertTrue( e.getMessage().contains("GetOrders") );
+		}
+
+		metrics.unregisterMBeans();
+		assertFalse( server.isRegistered(getOrders) );
+		assertFalse( server.isRegistered(query) );
+	}
+
+	@Test
+	public void test_request_records_payload_sizes_and_phases() throws Exception {
+		final byte[] body = GET_ORDERS_RESPONSE.getBytes("UTF-8");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				int length = 0;
+				while( in.read() != -1 ) {
+					length++;
+				}
+				receivedLength.set(length);
+				exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		final URL adminServiceUrl = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/AdminService.svc/backward");
+		ConfigurationProvider config = new SveaTestConfigurationProvider() {
+			@Override
+			public URL getEndPoint(PAYMENTTYPE type) {
+				return (type == PAYMENTTYPE.ADMIN_TYPE) ? adminServiceUrl : super.getEndPoint(type);
+			}
+		};
+
+		GetOrdersResponse response = WebPayAdmin.queryOrder(config)
+			.setOrderId(123456L)
+			.setCountryCode(COUNTRYCODE.SE)
+			.queryInvoiceOrder()
+			.doRequest();
+
+		assertFalse( response.isOrderAccepted() );
+		OperationStats stats = metrics.getStats("GetOrders", PAYMENTTYPE.INVOICE, COUNTRYCODE.SE);
+		assertEquals( 1, stats.getCount() );
+		assertEquals( 1, stats.getNotAcceptedCount() );
+		assertEquals( Long.valueOf(1), stats.getResultCodes().get("20004") );
+		assertEquals( receivedLength.get().longValue(), stats.getBytesOut() );
+		assertEquals( body.length, stats.getBytesIn() );
+		assertTrue( stats.getNetworkTime().getMax() > 0 );
+		assertEquals( stats.getTotalTime().getMax(),
+				stats.getBuildTime().getMax() + stats.getSerializeTime().getMax() + stats.getNetworkTime().getMax() + stats.getParseTime().getMax(),
+				0.000001 );
+	}
+}
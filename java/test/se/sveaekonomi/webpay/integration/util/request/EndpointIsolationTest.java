@@ -0,0 +1,217 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.config.CachingConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaTestConfigurationProvider;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.CreateOrderResponse;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInServer;
+
+public class EndpointIsolationTest {
+
+	private StandInServer standIn;
+	private ConfigurationProvider config;
+
+	@Before
+	public void setUp() throws Exception {
+		standIn = new StandInServer().start();
+		config = standIn.getConfigurationProvider();
+	}
+
+	@After
+	public void tearDown() {
+		EndpointIsolation.register( config, null );
+		standIn.stop();
+	}
+
+	private GetOrdersResponse queryInvoiceOrder() {
+		return WebPayAdmin.queryOrder(config)
+			.setOrderId( 123L )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.queryInvoiceOrder()
+			.useResiliencePolicy( ResiliencePolicy.none() )
+			.doRequest();
+	}
+
+	private CreateOrderResponse createInvoiceOrder() {
+		return WebPay.createOrder(config)
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("1") )
+			.addCustomerDetails( WebPayItem.individualCustomer().setNationalIdNumber(TestingTool.DefaultTestIndividualNationalIdNumber) )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setOrderDate( TestingTool.DefaultTestDate )
+			.useInvoicePayment()
+			.doRequest();
+	}
+
+	private EndpointGuard getAdminServiceGuard() {
+		return EndpointIsolation.getGuard( config, config.getEndPoint(PAYMENTTYPE.ADMIN_TYPE) );
+	}
+
+	private static boolean isCausedByEndpointUnavailable( Throwable e ) {
+		for( Throwable cause = e; cause != null; cause = cause.getCause() ) {
+			if( cause instanceof EndpointUnavailableException ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void test_endpoints_are_not_isolated_by_default() {
+		assertSame( EndpointIsolation.getDefault(), EndpointIsolation.forConfig(config) );
+		assertNull( getAdminServiceGuard() );
+		assertNotNull( queryInvoiceOrder() );
+	}
+
+	@Test
+	public void test_register_replaces_and_removes_isolation_of_config_and_its_caching_wrapper() {
+		ConfigurationProvider other = new SveaTestConfigurationProvider();
+		EndpointIsolation first = new EndpointIsolation();
+		EndpointIsolation second = new EndpointIsolation();
+		EndpointIsolation.register( other, new EndpointIsolation() );
+		try {
+			EndpointIsolation.register( config, first );
+			assertSame( first, EndpointIsolation.forConfig(config) );
+			assertSame( first, EndpointIsolation.forConfig( new CachingConfigurationProvider(config) ) );
+
+			EndpointIsolation.register( config, second );
+			assertSame( second, EndpointIsolation.forConfig(config) );
+
+			EndpointIsolation.register( config, null );
+			assertSame( EndpointIsolation.getDefault(), EndpointIsolation.forConfig(config) );
+			assertNotSame( EndpointIsolation.getDefault(), EndpointIsolation.forConfig(other) );
+		}
+		finally {
+			EndpointIsolation.register( other, null );
+		}
+	}
+
+	@Test
+	public void test_circuit_breaker_opens_after_failure_threshold_and_fails_fast() {
+		EndpointIsolation.register( config, new EndpointIsolation().setFailureThreshold(2).setOpenDuration(1, TimeUnit.MINUTES) );
+		standIn.setFailureRate( 1.0 );
+
+		for( int i = 0; i < 3; i++ ) {
+			try {
+				queryInvoiceOrder();
+				fail( "Expected SveaWebPayException" );
+			}
+			catch( SveaWebPayException e ) {
+				assertEquals( i == 2, isCausedByEndpointUnavailable(e) );
+			}
+		}
+
+		EndpointGuard guard = getAdminServiceGuard();
+		assertEquals( 2, standIn.getRequestCount("GetOrders") );
+		assertEquals( EndpointGuard.STATE.OPEN, guard.getCurrentState() );
+		assertEquals( 2, guard.getFailureCount() );
+		assertEquals( 1, guard.getRejectedOpenCount() );
+		assertEquals( 1, guard.getOpenedCount() );
+	}
+
+	@Test
+	public void test_circuit_breaker_closes_after_successful_half_open_probe() throws Exception {
+		EndpointIsolation.register( config, new EndpointIsolation().setFailureThreshold(1).setOpenDuration(50, TimeUnit.MILLISECONDS) );
+		standIn.setFailureRate( 1.0 );
+		try {
+			queryInvoiceOrder();
+			fail( "Expected SveaWebPayException" );
+		}
+		catch( SveaWebPayException e ) {
+			// expected
+		}
+		EndpointGuard guard = getAdminServiceGuard();
+		assertEquals( EndpointGuard.STATE.OPEN, guard.getCurrentState() );
+
+		Thread.sleep( 100 );
+		assertEquals( EndpointGuard.STATE.HALF_OPEN, guard.getCurrentState() );
+		standIn.setFailureRate( 0.0 );
+		assertNotNull( queryInvoiceOrder() );
+		assertEquals( EndpointGuard.STATE.CLOSED, guard.getCurrentState() );
+	}
+
+	@Test
+	public void test_open_circuit_breaker_does_not_affect_other_endpoints() {
+		EndpointIsolation.register( config, new EndpointIsolation().setFailureThreshold(1) );
+		standIn.setFailureRate( 1.0 );
+		try {
+			queryInvoiceOrder();
+			fail( "Expected SveaWebPayException" );
+		}
+		catch( SveaWebPayException e ) {
+			// expected
+		}
+		assertEquals( EndpointGuard.STATE.OPEN, getAdminServiceGuard().getCurrentState() );
+
+		standIn.setFailureRate( 0.0 );
+		assertTrue( createInvoiceOrder().isOrderAccepted() );
+		EndpointGuard webserviceGuard = EndpointIsolation.getGuard( config, config.getEndPoint(PAYMENTTYPE.INVOICE) );
+		assertEquals( EndpointGuard.STATE.CLOSED, webserviceGuard.getCurrentState() );
+	}
+
+	@Test
+	public void test_bulkhead_rejects_requests_over_max_concurrent_requests() throws Exception {
+		EndpointIsolation.register( config, new EndpointIsolation().setMaxConcurrentRequests(1) );
+		standIn.setLatency( 500, 500 );
+
+		Future<GetOrdersResponse> slow = SveaRequestExecutor.submit( new Callable<GetOrdersResponse>() {
+			@Override
+			public GetOrdersResponse call() {
+				return queryInvoiceOrder();
+			}
+		});
+		EndpointGuard guard = getAdminServiceGuard();
+		long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while( guard.getActiveRequests() == 0 && System.nanoTime() < waitUntil ) {
+			Thread.sleep( 5 );
+		}
+		assertEquals( 1, guard.getActiveRequests() );
+
+		try {
+			queryInvoiceOrder();
+			fail( "Expected SveaWebPayException" );
+		}
+		catch( SveaWebPayException e ) {
+			assertTrue( isCausedByEndpointUnavailable(e) );
+		}
+		assertEquals( 1, guard.getRejectedFullCount() );
+		assertNotNull( slow.get(5, TimeUnit.SECONDS) );
+		assertEquals( 0, guard.getActiveRequests() );
+		assertEquals( EndpointGuard.STATE.CLOSED, guard.getCurrentState() );
+	}
+
+	@Test
+	public void test_settings_can_not_be_changed_once_used() {
+		EndpointIsolation isolation = new EndpointIsolation().setFailureThreshold(1);
+		assertNotNull( isolation.getGuard("http://localhost/") );
+		try {
+			isolation.setFailureThreshold(2);
+			fail( "Expected IllegalStateException" );
+		}
+		catch( IllegalStateException e ) {
+			// expected
+		}
+	}
+}
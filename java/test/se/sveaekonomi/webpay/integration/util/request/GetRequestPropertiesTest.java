@@ -1,12 +1,19 @@
 package se.sveaekonomi.webpay.integration.util.request;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 
+import javax.xml.soap.MimeHeaders;
+
 import org.junit.Test;
 
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProviderTestData;
 import se.sveaekonomi.webpay.integration.config.SveaConfig;
 
 public class GetRequestPropertiesTest {
@@ -28,4 +35,42 @@ public class GetRequestPropertiesTest {
         assertEquals("Integration package default SveaTestConfigurationProvider.", properties.get("integrationplatform") );
 	}
 	
+	@Test
+	public void testGetRequestPropertiesIsComputedOncePerConfigurationProvider() {
+		ConfigurationProvider config = SveaConfig.getDefaultConfig();
+		RequestProperties properties = GetRequestProperties.getRequestProperties( config );
+
+		assertSame( properties, GetRequestProperties.getRequestProperties( config ) );
+		assertNotSame( properties, GetRequestProperties.getRequestProperties( new ConfigurationProviderTestData() ) );
+		assertSame( properties.getJson(), GetRequestProperties.getLibraryAndPlatformPropertiesAsJson( config ) );
+	}
+
+	@Test
+	public void testGetRequestPropertiesHeadersAndJson() {
+		HashMap<String,String> library = GetRequestProperties.getSveaLibraryProperties();
+		RequestProperties properties = GetRequestProperties.getRequestProperties( SveaConfig.getDefaultConfig() );
+		String integration = "Integration package default SveaTestConfigurationProvider.";
+
+		MimeHeaders headers = new MimeHeaders();
+		properties.addHeaders( headers );
+		assertArrayEquals( new String[] { library.get("library_name") }, headers.getHeader("X-Svea-Library-Name") );
+		assertArrayEquals( new String[] { library.get("library_version") }, headers.getHeader("X-Svea-Library-Version") );
+		assertArrayEquals( new String[] { integration }, headers.getHeader("X-Svea-Integration-Platform") );
+		assertArrayEquals( new String[] { integration }, headers.getHeader("X-Svea-Integration-Company") );
+		assertArrayEquals( new String[] { integration }, headers.getHeader("X-Svea-Integration-Version") );
+
+		assertEquals(
+				"{\"X-Svea-Integration-Version\":\"" + integration + "\",\"X-Svea-Integration-Platform\":\"" + integration + "\","
+				+ "\"X-Svea-Library-Name\":\"" + library.get("library_name") + "\",\"X-Svea-Integration-Company\":\"" + integration + "\","
+				+ "\"X-Svea-Library-Version\":\"" + library.get("library_version") + "\"}",
+				properties.getJson()
+		);
+	}
+
+	@Test
+	public void testGetSveaLibraryPropertiesReturnsCopy() {
+		GetRequestProperties.getSveaLibraryProperties().put("library_name", "changed");
+
+		assertEquals("Java Integration Package", GetRequestProperties.getSveaLibraryProperties().get("library_name") );
+	}
 }
@@ -0,0 +1,174 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.adminservice.CreditOrderRowsResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.CreateOrderResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.DeliverOrderResponse;
+import se.sveaekonomi.webpay.integration.util.constant.DISTRIBUTIONTYPE;
+import se.sveaekonomi.webpay.integration.util.constant.PAYMENTTYPE;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInServer;
+
+public class PriceIncludingVatCacheTest {
+
+	private StandInServer standIn;
+	private ConfigurationProvider config;
+	private PriceIncludingVatCache cache;
+	private PriceIncludingVatCache previous;
+
+	@Before
+	public void setUp() throws Exception {
+		standIn = new StandInServer().start();
+		config = standIn.getConfigurationProvider();
+		cache = new PriceIncludingVatCache(100);
+		previous = PriceIncludingVatCache.setDefault(cache);
+	}
+
+	@After
+	public void tearDown() {
+		PriceIncludingVatCache.setDefault(previous);
+		standIn.stop();
+	}
+
+	private int getClientNumber() {
+		return config.getClientNumber(PAYMENTTYPE.INVOICE, TestingTool.DefaultTestCountryCode);
+	}
+
+	/** creates an order with price excluding vat rows, i.e. PriceIncludingVat false */
+	private CreateOrderResponse createExVatInvoiceOrder() {
+		CreateOrderResponse order = WebPay.createOrder(config)
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("1") )
+			.addCustomerDetails( WebPayItem.individualCustomer().setNationalIdNumber(TestingTool.DefaultTestIndividualNationalIdNumber) )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setOrderDate( TestingTool.DefaultTestDate )
+			.useInvoicePayment()
+			.doRequest();
+		assertTrue( order.isOrderAccepted() );
+		return order;
+	}
+
+	/** delivers the order with price including vat rows, which are sent with PriceIncludingVat true unless the cache knows better */
+	private DeliverOrderResponse deliverIncVatRows( Long orderId ) {
+		return WebPay.deliverOrder(config)
+			.addOrderRow( TestingTool.createIncVatBasedOrderRow("1") )
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+			.deliverInvoiceOrder()
+			.doRequest();
+	}
+
+	@Test
+	public void test_orders_and_invoices_are_remembered_per_client_number() {
+		PriceIncludingVatCache cache = new PriceIncludingVatCache(10);
+		cache.putForOrder(79021, 123L, false);
+		cache.putForInvoice(79021, 456L, true);
+
+		assertEquals( Boolean.FALSE, cache.getForOrder(79021, 123L) );
+		assertEquals( Boolean.TRUE, cache.getForInvoice(79021, 456L) );
+		assertNull( cache.getForOrder(79021, 456L) );		// invoice id is not an order id
+		assertNull( cache.getForOrder(12345, 123L) );		// other client
+		assertEquals( 2, cache.getHitCount() );
+		assertEquals( 2, cache.getMissCount() );
+	}
+
+	@Test
+	public void test_least_recently_used_entry_is_evicted() {
+		PriceIncludingVatCache cache = new PriceIncludingVatCache(2);
+		cache.putForOrder(79021, 1L, true);
+		cache.putForOrder(79021, 2L, true);
+		cache.getForOrder(79021, 1L);
+		cache.putForOrder(79021, 3L, true);
+
+		assertEquals( 2, cache.size() );
+		assertEquals( Boolean.TRUE, cache.getForOrder(79021, 1L) );
+		assertNull( cache.getForOrder(79021, 2L) );
+	}
+
+	@Test
+	public void test_recordFlip_counts_flips_after_hits_separately() {
+		PriceIncludingVatCache cache = new PriceIncludingVatCache(10);
+		cache.recordFlip(false);
+		cache.recordFlip(true);
+
+		assertEquals( 2, cache.getFlipCount() );
+		assertEquals( 1, cache.getFlipAfterHitCount() );
+	}
+
+	@Test
+	public void test_createOrder_remembers_flag_and_deliver_reuses_it() {
+		CreateOrderResponse order = createExVatInvoiceOrder();
+		assertEquals( Boolean.FALSE, cache.getForOrder(getClientNumber(), order.getOrderId()) );
+
+		DeliverOrderResponse delivered = deliverIncVatRows( order.getOrderId() );
+		assertTrue( delivered.isOrderAccepted() );
+		assertEquals( 1, standIn.getRequestCount("DeliverOrderEu") );
+		assertEquals( 0, cache.getFlipCount() );
+	}
+
+	@Test
+	public void test_flip_after_50036_is_learned_for_order_and_invoice() {
+		CreateOrderResponse order = createExVatInvoiceOrder();
+		cache.clear();		// i.e. created by another process
+
+		// the first deliver is answered with 50036, and accepted when resent with the flag flipped
+		DeliverOrderResponse delivered = deliverIncVatRows( order.getOrderId() );
+		assertTrue( delivered.isOrderAccepted() );
+		assertNotNull( delivered.getInvoiceId() );
+		assertEquals( 2, standIn.getRequestCount("DeliverOrderEu") );
+		assertEquals( 1, cache.getFlipCount() );
+		assertEquals( 0, cache.getFlipAfterHitCount() );
+		assertEquals( Boolean.FALSE, cache.getForOrder(getClientNumber(), order.getOrderId()) );
+		assertEquals( Boolean.FALSE, cache.getForInvoice(getClientNumber(), delivered.getInvoiceId()) );
+
+		// a later deliver of the order uses the learned flag, and needs one request
+		assertTrue( deliverIncVatRows( order.getOrderId() ).isOrderAccepted() );
+		assertEquals( 3, standIn.getRequestCount("DeliverOrderEu") );
+		assertEquals( 1, cache.getFlipCount() );
+
+		// a credit on the resulting invoice uses the flag learned for the invoice, and needs one request
+		CreditOrderRowsResponse credited = WebPayAdmin.creditOrderRows(config)
+			.setInvoiceId( delivered.getInvoiceId() )
+			.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.addCreditOrderRow( TestingTool.createIncVatBasedOrderRow("1") )
+			.creditInvoiceOrderRows()
+			.doRequest();
+		assertTrue( credited.isOrderAccepted() );
+		assertEquals( 1, standIn.getRequestCount("CreditInvoiceRows") );
+		assertEquals( 1, cache.getFlipCount() );
+	}
+
+	@Test
+	public void test_requests_without_country_code_do_not_use_the_cache() {
+		CreateOrderResponse order = createExVatInvoiceOrder();
+		try {
+			WebPay.deliverOrder(config)
+				.addOrderRow( TestingTool.createIncVatBasedOrderRow("1") )
+				.setOrderId( order.getOrderId() )
+				.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+				.deliverInvoiceOrder()
+				.doRequest();
+			fail( "Expected SveaWebPayException" );
+		}
+		catch( SveaWebPayException e ) {
+			assertTrue( e.getCause().getMessage().contains("CountryCode is required") );
+		}
+		assertEquals( 0, cache.getHitCount() + cache.getMissCount() );
+		assertEquals( 0, standIn.getRequestCount("DeliverOrderEu") );
+	}
+}
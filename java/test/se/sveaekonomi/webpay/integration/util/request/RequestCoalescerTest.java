@@ -0,0 +1,233 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.ValidationException;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.QueryTransactionRequest;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+import se.sveaekonomi.webpay.integration.util.test.standin.StandInServer;
+
+public class RequestCoalescerTest {
+
+	@Test
+	public void testConcurrentRequestsForSameKeyShareOneRequest() throws Exception {
+		final RequestCoalescer coalescer = new RequestCoalescer();
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Object> request = new Callable<Object>() {
+			@Override
+			public Object call() throws InterruptedException {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				return new Object();
+			}
+		};
+
+		Future<Object> first = SveaRequestExecutor.submit( new Callable<Object>() {
+			@Override
+			public Object call() {
+				return coalescer.execute( Arrays.asList("GetOrders", 123L), request );
+			}
+		});
+		started.await(5, TimeUnit.SECONDS);
+		Future<Object> second = SveaRequestExecutor.submit( new Callable<Object>() {
+			@Override
+			public Object call() {
+				return coalescer.execute( Arrays.asList("GetOrders", 123L), request );
+			}
+		});
+		long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while( coalescer.getCoalescedCount() == 0 && System.nanoTime() < waitUntil ) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+
+		assertSame( first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS) );
+		assertEquals( 1, calls.get() );
+		assertEquals( 1, coalescer.getCoalescedCount() );
+	}
+
+	@Test
+	public void testResponseIsKeptForResultTimeToLive() throws Exception {
+		RequestCoalescer coalescer = new RequestCoalescer().setResultTimeToLive(50, TimeUnit.MILLISECONDS);
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<Integer> request = new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return calls.incrementAndGet();
+			}
+		};
+
+		assertEquals( Integer.valueOf(1), coalescer.execute("key", request) );
+		assertEquals( Integer.valueOf(1), coalescer.execute("key", request) );
+		assertEquals( Integer.valueOf(2), coalescer.execute("other", request) );
+		assertEquals( 1, coalescer.getResultHitCount() );
+
+		Thread.sleep(100);
+		assertEquals( Integer.valueOf(3), coalescer.execute("key", request) );
+	}
+
+	@Test
+	public void testResponsesAreNotKeptByDefault() {
+		RequestCoalescer coalescer = new RequestCoalescer();
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<Integer> request = new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return calls.incrementAndGet();
+			}
+		};
+
+		assertEquals( Integer.valueOf(1), coalescer.execute("key", request) );
+		assertEquals( Integer.valueOf(2), coalescer.execute("key", request) );
+		assertEquals( Integer.valueOf(3), coalescer.execute(null, request) );
+		assertEquals( 0, coalescer.getResultHitCount() );
+	}
+
+	@Test
+	public void testExceptionsAreNotKept() {
+		RequestCoalescer coalescer = new RequestCoalescer().setResultTimeToLive(1, TimeUnit.MINUTES);
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<String> request = new Callable<String>() {
+			@Override
+			public String call() {
+				if( calls.incrementAndGet() == 1 ) {
+					throw new SveaWebPayException("failed");
+				}
+				return "ok";
+			}
+		};
+
+		try {
+			coalescer.execute("key", request);
+			fail("expected exception");
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals( "failed", e.getMessage() );
+		}
+		assertEquals( "ok", coalescer.execute("key", request) );
+		assertEquals( "ok", coalescer.execute("key", request) );
+		assertEquals( 2, calls.get() );
+	}
+
+	@Test
+	public void testCoalescedGetOrdersRequestsSendOneRequest() throws Exception {
+		StandInServer standIn = new StandInServer().start();
+		try {
+			final ConfigurationProvider config = standIn.getConfigurationProvider();
+			final RequestCoalescer coalescer = new RequestCoalescer();
+			standIn.setLatency( 300, 300 );
+
+			Callable<GetOrdersResponse> query = new Callable<GetOrdersResponse>() {
+				@Override
+				public GetOrdersResponse call() {
+					return WebPayAdmin.queryOrder(config)
+						.setOrderId( 123L )
+						.setCountryCode( TestingTool.DefaultTestCountryCode )
+						.queryInvoiceOrder()
+						.useCoalescing( coalescer )
+						.doRequest();
+				}
+			};
+			Future<GetOrdersResponse> first = SveaRequestExecutor.submit(query);
+			long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while( coalescer.getRequestCount() == 0 && System.nanoTime() < waitUntil ) {
+				Thread.sleep(5);
+			}
+			Future<GetOrdersResponse> second = SveaRequestExecutor.submit(query);
+
+			assertSame( first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS) );
+			assertEquals( 1, standIn.getRequestCount("GetOrders") );
+			assertEquals( 1, coalescer.getCoalescedCount() );
+		}
+		finally {
+			standIn.stop();
+		}
+	}
+
+	@Test
+	public void testGetOrdersRequestsToOtherEndpointsAreNotCoalesced() throws Exception {
+		StandInServer first = new StandInServer().start();
+		StandInServer second = new StandInServer().start();
+		try {
+			final RequestCoalescer coalescer = new RequestCoalescer();
+			first.setLatency( 300, 300 );
+			second.setLatency( 300, 300 );
+
+			List<Future<GetOrdersResponse>> responses = new ArrayList<Future<GetOrdersResponse>>();
+			for( final StandInServer standIn : Arrays.asList(first, second) ) {
+				responses.add( SveaRequestExecutor.submit( new Callable<GetOrdersResponse>() {
+					@Override
+					public GetOrdersResponse call() {
+						return WebPayAdmin.queryOrder(standIn.getConfigurationProvider())
+							.setOrderId( 123L )
+							.setCountryCode( TestingTool.DefaultTestCountryCode )
+							.queryInvoiceOrder()
+							.useCoalescing( coalescer )
+							.doRequest();
+					}
+				}));
+			}
+			for( Future<GetOrdersResponse> response : responses ) {
+				response.get(5, TimeUnit.SECONDS);
+			}
+
+			assertEquals( 1, first.getRequestCount("GetOrders") );
+			assertEquals( 1, second.getRequestCount("GetOrders") );
+			assertEquals( 0, coalescer.getCoalescedCount() );
+		}
+		finally {
+			first.stop();
+			second.stop();
+		}
+	}
+
+	@Test
+	public void testInvalidRequestsFailBeforeCoalescing() {
+		RequestCoalescer coalescer = new RequestCoalescer();
+		try {
+			WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+				.setOrderId( 123L )
+				.queryInvoiceOrder()
+				.useCoalescing( coalescer )
+				.doRequest();
+			fail("expected exception");
+		}
+		catch( SveaWebPayException e ) {
+			assertTrue( e.getCause() instanceof ValidationException );
+		}
+		try {
+			new QueryTransactionRequest(SveaConfig.getDefaultConfig())
+				.setCountryCode( TestingTool.DefaultTestCountryCode )
+				.useCoalescing( coalescer )
+				.doRequest();
+			fail("expected exception");
+		}
+		catch( SveaWebPayException e ) {
+			assertTrue( e.getCause() instanceof ValidationException );
+		}
+		assertEquals( 0, coalescer.getRequestCount() );
+	}
+}
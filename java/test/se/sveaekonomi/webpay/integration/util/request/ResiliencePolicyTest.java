@@ -0,0 +1,301 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.ValidationException;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpResponseException;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+
+public class ResiliencePolicyTest {
+
+	@Test
+	public void testRetriesTransientFailureUntilSuccess() {
+		ResiliencePolicy policy = new ResiliencePolicy().setMaxRetries(2).setBackoff(1, 1, TimeUnit.MILLISECONDS);
+		final AtomicInteger calls = new AtomicInteger();
+
+		String response = policy.execute("test", new Callable<String>() {
+			@Override
+			public String call() {
+				if( calls.incrementAndGet() < 3 ) {
+					throw new SveaWebPayException("IOException", new IOException("connection reset"));
+				}
+				return "ok";
+			}
+		});
+
+		assertEquals("ok", response);
+		assertEquals(3, calls.get());
+		assertEquals(2, policy.getRetries());
+	}
+
+	@Test
+	public void testStopsAfterMaxRetries() {
+		ResiliencePolicy policy = new ResiliencePolicy().setMaxRetries(1).setBackoff(0, 0, TimeUnit.MILLISECONDS);
+		final AtomicInteger calls = new AtomicInteger();
+		final SveaWebPayException failure = new SveaWebPayException("IOException", new IOException("connection reset"));
+
+		try {
+			policy.execute("test", new Callable<String>() {
+				@Override
+				public String call() {
+					calls.incrementAndGet();
+					throw failure;
+				}
+			});
+			fail("expected exception");
+		}
+		catch( SveaWebPayException e ) {
+			assertSame(failure, e);
+		}
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testDoesNotRetryValidationOrClientErrors() {
+		ResiliencePolicy policy = new ResiliencePolicy().setBackoff(0, 0, TimeUnit.MILLISECONDS);
+
+		assertFalse( policy.isRetryable(new SveaWebPayException("Validation failed", new ValidationException("MISSING VALUE"))) );
+		assertFalse( policy.isRetryable(new SveaWebPayException("IOException", new HttpResponseException(404, "Not Found"))) );
+		assertTrue( policy.isRetryable(new SveaWebPayException("IOException", new HttpResponseException(503, "Unavailable"))) );
+		assertTrue( policy.isRetryable(new SveaWebPayException("IOException", new HttpResponseException(429, "Too Many Requests"))) );
+
+		final AtomicInteger calls = new AtomicInteger();
+		try {
+			policy.execute("test", new Callable<String>() {
+				@Override
+				public String call() {
+					calls.incrementAndGet();
+					throw new SveaWebPayException("Validation failed", new ValidationException("MISSING VALUE"));
+				}
+			});
+			fail("expected exception");
+		}
+		catch( SveaWebPayException e ) {
+			assertEquals("Validation failed", e.getMessage());
+		}
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testBackoffIsBoundedByMaxBackoff() {
+		ResiliencePolicy policy = new ResiliencePolicy().setBackoff(100, 400, TimeUnit.MILLISECONDS);
+
+		for( int retry = 0; retry < 64; retry++ ) {
+			long backoff = policy.getBackoffNanos(retry);
+			assertTrue( backoff >= 0 );
+			assertTrue( backoff <= TimeUnit.MILLISECONDS.toNanos( Math.min(400, 100L << Math.min(retry, 3)) ) );
+		}
+	}
+
+	@Test
+	public void testHedgedRequestAnswersWhenFirstIsSlow() {
+		ResiliencePolicy policy = new ResiliencePolicy()
+			.setMaxRetries(0)
+			.setHedgePercentile(50)
+			.setHedgeMinimumSamples(1)
+			.setHedgeMinimumDelay(20, TimeUnit.MILLISECONDS);
+
+		// one fast answer, so the hedge delay is the minimum delay
+		assertEquals("fast", policy.execute("test", new Callable<String>() {
+			@Override
+			public String call() {
+				return "fast";
+			}
+		}));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(20), policy.getHedgeDelayNanos("test"));
+
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		String response = policy.execute("test", new Callable<String>() {
+			@Override
+			public String call() throws InterruptedException {
+				if( calls.incrementAndGet() == 1 ) {
+					release.await(10, TimeUnit.SECONDS);	// aborted once the hedged request answers
+					return "slow";
+				}
+				return "hedged";
+			}
+		});
+
+		assertEquals("hedged", response);
+		assertEquals(2, calls.get());
+		assertEquals(1, policy.getHedges());
+		release.countDown();
+	}
+
+	@Test
+	public void testHedgedRequestsAnswerWhenRequestExecutorIsSaturated() throws Exception {
+		final ResiliencePolicy policy = new ResiliencePolicy()
+			.setMaxRetries(0)
+			.setHedgePercentile(50)
+			.setHedgeMinimumSamples(1)
+			.setHedgeMinimumDelay(20, TimeUnit.MILLISECONDS);
+		policy.execute("test", new Callable<String>() {
+			@Override
+			public String call() {
+				return "fast";
+			}
+		});
+
+		// the first attempts block every thread of the request executor, so the hedged attempts must run elsewhere
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<String> request = new Callable<String>() {
+			@Override
+			public String call() throws InterruptedException {
+				if( Thread.currentThread().getName().startsWith("sveawebpay-hedge-") ) {
+					return "hedged";
+				}
+				release.await(10, TimeUnit.SECONDS);
+				return "slow";
+			}
+		};
+		ExecutorService saturated = Executors.newFixedThreadPool(2);
+		ExecutorService previous = SveaRequestExecutor.setDefault(saturated);
+		try {
+			List<Future<String>> responses = new ArrayList<Future<String>>();
+			for( int i = 0; i < 4; i++ ) {
+				responses.add( SveaRequestExecutor.submit( new Callable<String>() {
+					@Override
+					public String call() {
+						return policy.execute("test", request);
+					}
+				}));
+			}
+			for( Future<String> response : responses ) {
+				assertEquals("hedged", response.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(4, policy.getHedges());
+		}
+		finally {
+			release.countDown();
+			SveaRequestExecutor.setDefault(previous);
+			saturated.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testLosingAttemptIsAborted() throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle( HttpExchange exchange ) throws IOException {
+				int request = received.incrementAndGet();
+				if( request == 2 ) {
+					try {
+						Thread.sleep(5000);		// the first attempt of the hedged request
+					}
+					catch( InterruptedException e ) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] body = ("answer " + request).getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		ExecutorService handlers = Executors.newCachedThreadPool();
+		server.setExecutor(handlers);
+		server.start();
+		try {
+			final String endpoint = "http://localhost:" + server.getAddress().getPort() + "/";
+			ResiliencePolicy policy = new ResiliencePolicy()
+				.setMaxRetries(0)
+				.setHedgePercentile(50)
+				.setHedgeMinimumSamples(1)
+				.setHedgeMinimumDelay(50, TimeUnit.MILLISECONDS);
+			Callable<String> request = new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					return SveaHttpClient.getDefault().postForm(endpoint, Collections.<NameValuePair>emptyList());
+				}
+			};
+			assertEquals("answer 1", policy.execute("test", request));
+
+			// the first attempt is sent on the calling thread, so it answers quickly only if its request is aborted
+			long start = System.nanoTime();
+			assertEquals("answer 3", policy.execute("test", request));
+			assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2) );
+			assertEquals(1, policy.getHedges());
+			assertFalse( Thread.currentThread().isInterrupted() );
+		}
+		finally {
+			server.stop(0);
+			handlers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDoesNotHedgeWithoutEnoughSamples() {
+		ResiliencePolicy policy = new ResiliencePolicy().setHedgePercentile(95);
+		assertEquals(-1, policy.getHedgeDelayNanos("test"));
+	}
+
+	@Test
+	public void testFailsWhenDeadlineIsExceeded() {
+		ResiliencePolicy policy = new ResiliencePolicy().setDeadline(50, TimeUnit.MILLISECONDS);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		long start = System.nanoTime();
+		try {
+			policy.execute("test", new Callable<String>() {
+				@Override
+				public String call() throws InterruptedException {
+					release.await(10, TimeUnit.SECONDS);
+					return "late";
+				}
+			});
+			fail("expected exception");
+		}
+		catch( SveaWebPayException e ) {
+			assertTrue( e.getCause() instanceof TimeoutException );
+		}
+		finally {
+			release.countDown();
+		}
+		assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5) );
+		assertEquals(1, policy.getDeadlinesExceeded());
+		assertEquals(0, policy.getRetries());
+	}
+
+	@Test
+	public void testSetDefault() {
+		ResiliencePolicy policy = ResiliencePolicy.none();
+		ResiliencePolicy previous = ResiliencePolicy.setDefault(policy);
+		try {
+			assertSame(policy, ResiliencePolicy.getDefault());
+		}
+		finally {
+			ResiliencePolicy.setDefault(previous);
+		}
+	}
+}
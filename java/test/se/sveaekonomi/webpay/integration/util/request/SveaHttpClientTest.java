@@ -0,0 +1,100 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class SveaHttpClientTest {
+
+	@Test
+	public void test_getDefault_returns_same_instance_until_closed() throws IOException {
+		SveaHttpClient first = SveaHttpClient.getDefault();
+		assertSame( first, SveaHttpClient.getDefault() );
+
+		first.close();
+		assertTrue( first.isClosed() );
+		assertNotSame( first, SveaHttpClient.getDefault() );
+	}
+
+	@Test
+	public void test_setDefault_returns_previous_default() throws IOException {
+		SveaHttpClient previous = SveaHttpClient.getDefault();
+		SveaHttpClient mine = new SveaHttpClient().setConnectTimeout(1000).setReadTimeout(2000);
+
+		assertSame( previous, SveaHttpClient.setDefault(mine) );
+		assertSame( mine, SveaHttpClient.getDefault() );
+
+		SveaHttpClient.setDefault(previous);
+		mine.close();
+	}
+
+	@Test
+	public void test_settings_can_not_be_changed_after_first_use() throws IOException {
+		SveaHttpClient client = new SveaHttpClient();
+		client.getHttpClient();
+		try {
+			client.setMaxTotalConnections(10);
+			fail("Expected IllegalStateException");
+		}
+		catch( IllegalStateException e ) {
+			// expected
+		}
+		finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void test_postForm_reuses_pooled_connections() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/rest/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				while( in.read() != -1 ) {}
+				byte[] body = "<?xml version=\"1.0\"?>\n<response>\n<message>bWVzc2FnZQ==</message>\n<mac>abc</mac>\n</response>".getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+
+		SveaHttpClient client = new SveaHttpClient().setMaxConnectionsPerRoute(1).setConnectionRequestTimeout(2000);
+		try {
+			String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/rest/confirm";
+			List<NameValuePair> params = new ArrayList<NameValuePair>();
+			params.add(new BasicNameValuePair("message", "bWVzc2FnZQ=="));
+
+			// with one connection per route, the second request would time out if the first connection was not released
+			for( int i = 0; i < 3; i++ ) {
+				assertEquals(
+					"<?xml version=\"1.0\"?><response><message>bWVzc2FnZQ==</message><mac>abc</mac></response>",
+					client.postForm(endpoint, params)
+				);
+			}
+		}
+		finally {
+			client.close();
+			server.stop(0);
+		}
+	}
+}
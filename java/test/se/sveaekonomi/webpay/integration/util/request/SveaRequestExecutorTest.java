@@ -0,0 +1,71 @@
+package se.sveaekonomi.webpay.integration.util.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.QueryTransactionRequest;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.QueryTransactionResponse;
+
+public class SveaRequestExecutorTest {
+
+	@Test
+	public void test_submit_runs_requests_concurrently() throws Exception {
+		final int requests = 10;
+		final CountDownLatch allStarted = new CountDownLatch(requests);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for( int i = 0; i < requests; i++ ) {
+			futures.add( SveaRequestExecutor.submit( new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws InterruptedException {
+					allStarted.countDown();
+					// only returns true if all requests are in flight at the same time
+					return allStarted.await(5, TimeUnit.SECONDS);
+				}
+			}));
+		}
+		for( Future<Boolean> future : futures ) {
+			assertTrue( future.get() );
+		}
+	}
+
+	@Test
+	public void test_setDefault_returns_previous_default() {
+		ExecutorService previous = SveaRequestExecutor.getDefault();
+		ExecutorService mine = Executors.newSingleThreadExecutor();
+
+		assertSame( previous, SveaRequestExecutor.setDefault(mine) );
+		assertSame( mine, SveaRequestExecutor.getDefault() );
+
+		SveaRequestExecutor.setDefault(previous);
+		mine.shutdown();
+	}
+
+	@Test
+	public void test_doRequestAsync_wraps_validation_errors_in_ExecutionException() throws InterruptedException {
+		// missing transactionId fails validation in doRequest()
+		Future<QueryTransactionResponse> future = new QueryTransactionRequest(SveaConfig.getDefaultConfig()).doRequestAsync();
+		try {
+			future.get();
+			fail("Expected ExecutionException");
+		}
+		catch( ExecutionException e ) {
+			assertEquals( SveaWebPayException.class, e.getCause().getClass() );
+		}
+	}
+}
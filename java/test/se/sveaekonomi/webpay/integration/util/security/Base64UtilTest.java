@@ -37,4 +37,15 @@ public class Base64UtilTest {
         
         assertEquals(encoded, Base64Util.encodeBase64Bytes(msg.getBytes("UTF-8")));
     }
+    
+    @Test
+    public void decodeIgnoresWhitespaceAndMissingPadding() throws Exception {
+        String expected = "JAs dkjhas djha sdjha jsdh ajhsd jash";
+        
+        assertEquals(expected, Base64Util.decodeBase64String(" SkFzIGRramhhcyBkamhh\r\nIHNkamhhIGpzZGgg\tYWpoc2QgamFzaA==\n"));
+        assertEquals(expected, Base64Util.decodeBase64String("SkFzIGRramhhcyBkamhhIHNkamhhIGpzZGggYWpoc2QgamFzaA"));
+        assertEquals("a", Base64Util.decodeBase64String("YQ=="));
+        assertEquals("ab", Base64Util.decodeBase64String("YWI="));
+        assertEquals("", Base64Util.decodeBase64String(""));
+    }
 }
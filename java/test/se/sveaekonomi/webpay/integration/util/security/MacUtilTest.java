@@ -0,0 +1,43 @@
+package se.sveaekonomi.webpay.integration.util.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+
+public class MacUtilTest {
+    
+    private static final String MESSAGE = Base64Util.encodeBase64String("<?xml version=\"1.0\" encoding=\"UTF-8\"?><response><statuscode>0</statuscode></response>");
+    private static final String SECRET = "27f18bfcbe4d7f39971cb3460fbe7234a82fb48f985cf22a068fa1a685fe7e6f93c7d0d92fee4e8fd7dc0c9f11e2507300e675220ee85679afa681407ee2416d";
+    
+    @Test
+    public void createMacMatchesHashOfMessageAndSecret() {
+        assertEquals(HashUtil.createHash(MESSAGE + SECRET, HASHALGORITHM.SHA_512), MacUtil.createMac(MESSAGE, SECRET));
+    }
+    
+    @Test
+    public void createMacMatchesHashForLongAndNonAsciiInput() {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.append(MESSAGE);
+        }
+        assertEquals(HashUtil.createHash(message + SECRET, HASHALGORITHM.SHA_512), MacUtil.createMac(message.toString(), SECRET));
+        assertEquals(HashUtil.createHash(MESSAGE + "hemligåäö", HASHALGORITHM.SHA_512), MacUtil.createMac(MESSAGE, "hemligåäö"));
+        assertEquals(HashUtil.createHash(MESSAGE + null, HASHALGORITHM.SHA_512), MacUtil.createMac(MESSAGE, null));
+    }
+    
+    @Test
+    public void validateMac() {
+        String mac = MacUtil.createMac(MESSAGE, SECRET);
+        
+        assertTrue(MacUtil.validateMac(MESSAGE, mac, SECRET));
+        assertFalse(MacUtil.validateMac(MESSAGE, mac, "wrong secret"));
+        assertFalse(MacUtil.validateMac(MESSAGE, mac.substring(1), SECRET));
+        assertFalse(MacUtil.validateMac(MESSAGE, mac.substring(0, mac.length() - 1) + "x", SECRET));
+        assertFalse(MacUtil.validateMac(MESSAGE, mac.toUpperCase(), SECRET));
+        assertFalse(MacUtil.validateMac(MESSAGE, null, SECRET));
+    }
+}
@@ -0,0 +1,303 @@
+package se.sveaekonomi.webpay.integration.util.test.standin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.config.ConfigurationProvider;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.AnnulTransactionRequest;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.ConfirmTransactionRequest;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.CreditTransactionRequest;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.LowerTransactionRequest;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.QueryTransactionRequest;
+import se.sveaekonomi.webpay.integration.hosted.hostedadmin.RecurTransactionRequest;
+import se.sveaekonomi.webpay.integration.response.adminservice.AddOrderRowsResponse;
+import se.sveaekonomi.webpay.integration.response.adminservice.CancelOrderRowsResponse;
+import se.sveaekonomi.webpay.integration.response.adminservice.CreditOrderRowsResponse;
+import se.sveaekonomi.webpay.integration.response.adminservice.DeliverOrderRowsResponse;
+import se.sveaekonomi.webpay.integration.response.adminservice.GetOrdersResponse;
+import se.sveaekonomi.webpay.integration.response.adminservice.UpdateOrderRowsResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.AnnulTransactionResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.ConfirmTransactionResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.CreditTransactionResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.LowerTransactionResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.QueryTransactionResponse;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.RecurTransactionResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.CloseOrderResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.CreateOrderResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.DeliverOrderResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.GetAddressesResponse;
+import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.DISTRIBUTIONTYPE;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERDELIVERYSTATUS;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERROWSTATUS;
+import se.sveaekonomi.webpay.integration.util.request.ResiliencePolicy;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+import se.sveaekonomi.webpay.integration.webservice.handleorder.HandleOrder;
+
+public class StandInServerTest {
+
+	private StandInServer standIn;
+	private ConfigurationProvider config;
+
+	@Before
+	public void setUp() throws Exception {
+		standIn = new StandInServer().start();
+		config = standIn.getConfigurationProvider();
+	}
+
+	@After
+	public void tearDown() {
+		standIn.stop();
+	}
+
+	private CreateOrderResponse createInvoiceOrder() {
+		return WebPay.createOrder(config)
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("1") )
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("2") )
+			.addCustomerDetails( WebPayItem.individualCustomer().setNationalIdNumber(TestingTool.DefaultTestIndividualNationalIdNumber) )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setOrderDate( TestingTool.DefaultTestDate )
+			.useInvoicePayment()
+			.doRequest();
+	}
+
+	private GetOrdersResponse queryInvoiceOrder( Long orderId ) {
+		return WebPayAdmin.queryOrder(config)
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.queryInvoiceOrder()
+			.doRequest();
+	}
+
+	@Test
+	public void test_createOrder_deliverOrder_queryOrder() {
+		CreateOrderResponse order = createInvoiceOrder();
+		assertTrue( order.isOrderAccepted() );
+		assertNotNull( order.getOrderId() );
+		assertEquals( 500.00, order.getAmount(), 0.001 );
+
+		HandleOrder request = WebPay.deliverOrder(config)
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("1") )
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("2") )
+			.setOrderId( order.getOrderId() )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+			.deliverInvoiceOrder();
+		DeliverOrderResponse delivered = request.doRequest();
+		assertTrue( delivered.isOrderAccepted() );
+		assertNotNull( delivered.getInvoiceId() );
+		assertEquals( 500.00, delivered.getAmount(), 0.001 );
+
+		GetOrdersResponse queried = queryInvoiceOrder( order.getOrderId() );
+		assertTrue( queried.isOrderAccepted() );
+		assertEquals( order.getOrderId(), queried.getOrderId() );
+		assertEquals( ORDERDELIVERYSTATUS.DELIVERED, queried.getOrderDeliveryStatus() );
+		assertEquals( 2, queried.getNumberedOrderRows().size() );
+	}
+
+	@Test
+	public void test_cancelOrder_unknown_and_cancelled_order() {
+		CreateOrderResponse order = createInvoiceOrder();
+
+		CloseOrderResponse closed = WebPayAdmin.cancelOrder(config)
+			.setOrderId( order.getOrderId() )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.cancelInvoiceOrder()
+			.doRequest();
+		assertTrue( closed.isOrderAccepted() );
+
+		CloseOrderResponse closedAgain = WebPayAdmin.cancelOrder(config)
+			.setOrderId( order.getOrderId() )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.cancelInvoiceOrder()
+			.doRequest();
+		assertFalse( closedAgain.isOrderAccepted() );
+		assertEquals( "20000", closedAgain.getResultCode() );
+
+		GetOrdersResponse unknown = queryInvoiceOrder( 123L );
+		assertFalse( unknown.isOrderAccepted() );
+		assertEquals( "20004", unknown.getResultCode() );
+	}
+
+	@Test
+	public void test_getAddresses_and_getPaymentPlanParams() {
+		GetAddressesResponse addresses = WebPay.getAddresses(config)
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setCustomerIdentifier( TestingTool.DefaultTestIndividualNationalIdNumber )
+			.getIndividualAddresses()
+			.doRequest();
+		assertTrue( addresses.isOrderAccepted() );
+		assertEquals( 1, addresses.getIndividualCustomers().size() );
+
+		PaymentPlanParamsResponse params = WebPay.getPaymentPlanParams(config)
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.doRequest();
+		assertTrue( params.isOrderAccepted() );
+		assertEquals( 2, params.getCampaignCodes().size() );
+	}
+
+	@Test
+	public void test_adminService_row_operations() {
+		Long orderId = createInvoiceOrder().getOrderId();
+
+		AddOrderRowsResponse added = WebPayAdmin.addOrderRows(config)
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.addOrderRow( TestingTool.createExVatBasedOrderRow("3") )
+			.addInvoiceOrderRows()
+			.doRequest();
+		assertTrue( added.isOrderAccepted() );
+
+		UpdateOrderRowsResponse updated = WebPayAdmin.updateOrderRows(config)
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.addUpdateOrderRow( TestingTool.createNumberedOrderRow(3).setStatus(ORDERROWSTATUS.NOTDELIVERED) )
+			.updateInvoiceOrderRows()
+			.doRequest();
+		assertTrue( updated.isOrderAccepted() );
+
+		CancelOrderRowsResponse cancelled = WebPayAdmin.cancelOrderRows(config)
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setRowToCancel( 3 )
+			.cancelInvoiceOrderRows()
+			.doRequest();
+		assertTrue( cancelled.isOrderAccepted() );
+
+		DeliverOrderRowsResponse delivered = WebPayAdmin.deliverOrderRows(config)
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+			.setRowToDeliver( 1 )
+			.deliverInvoiceOrderRows()
+			.doRequest();
+		assertTrue( delivered.isOrderAccepted() );
+		assertEquals( 250.00, delivered.getAmount(), 0.001 );
+		assertEquals( ORDERDELIVERYSTATUS.PARTIALLYDELIVERED, queryInvoiceOrder( orderId ).getOrderDeliveryStatus() );
+
+		CreditOrderRowsResponse credited = WebPayAdmin.creditOrderRows(config)
+			.setInvoiceId( delivered.getInvoiceId() )
+			.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setRowToCredit( 1 )
+			.creditInvoiceOrderRows()
+			.doRequest();
+		assertTrue( credited.isOrderAccepted() );
+		assertNotNull( credited.getCreditInvoiceId() );
+
+		CancelOrderRowsResponse cancelDelivered = WebPayAdmin.cancelOrderRows(config)
+			.setOrderId( orderId )
+			.setCountryCode( TestingTool.DefaultTestCountryCode )
+			.setRowToCancel( 1 )
+			.cancelInvoiceOrderRows()
+			.doRequest();
+		assertFalse( cancelDelivered.isOrderAccepted() );
+	}
+
+	@Test
+	public void test_hostedAdmin_card_transaction_lifecycle() {
+		long transactionId = standIn.addCardTransaction( COUNTRYCODE.SE, "ref-1", 50000, 10000, "SEK", "RECURRINGCAPTURE" );
+
+		LowerTransactionResponse lowered = new LowerTransactionRequest(config)
+			.setCountryCode( COUNTRYCODE.SE )
+			.setTransactionId( Long.toString(transactionId) )
+			.setAmountToLower( 10000 )
+			.doRequest();
+		assertTrue( lowered.isOrderAccepted() );
+
+		ConfirmTransactionResponse confirmed = new ConfirmTransactionRequest(config)
+			.setCountryCode( COUNTRYCODE.SE )
+			.setTransactionId( Long.toString(transactionId) )
+			.setCaptureDate( "2014-12-01" )
+			.doRequest();
+		assertTrue( confirmed.isOrderAccepted() );
+		assertEquals( Long.valueOf(transactionId), confirmed.getTransactionId() );
+		assertEquals( "ref-1", confirmed.getCustomerRefNo() );
+
+		CreditTransactionRequest credit = new CreditTransactionRequest(config);
+		credit.setCountryCode( COUNTRYCODE.SE );
+		credit.setTransactionId( Long.toString(transactionId) );
+		credit.setCreditAmount( 5000 );
+		CreditTransactionResponse credited = credit.doRequest();
+		assertTrue( credited.isOrderAccepted() );
+
+		QueryTransactionResponse queried = new QueryTransactionRequest(config)
+			.setCountryCode( COUNTRYCODE.SE )
+			.setTransactionId( Long.toString(transactionId) )
+			.doRequest();
+		assertTrue( queried.isOrderAccepted() );
+		assertEquals( StandInStore.TRANSACTION_CONFIRMED, queried.getStatus() );
+		assertEquals( 400.00, queried.getAuthorizedAmount(), 0.001 );
+		assertEquals( 50.00, queried.getCreditedAmount(), 0.001 );
+
+		RecurTransactionResponse recurred = new RecurTransactionRequest(config)
+			.setCountryCode( COUNTRYCODE.SE )
+			.setCustomerRefNo( "ref-2" )
+			.setSubscriptionId( standIn.getSubscriptionId(transactionId).toString() )
+			.setCurrency( "SEK" )
+			.setAmount( "20000" )
+			.doRequest();
+		assertTrue( recurred.isOrderAccepted() );
+		assertEquals( 200.00, recurred.getAmount(), 0.001 );
+
+		AnnulTransactionResponse annulled = new AnnulTransactionRequest(config)
+			.setCountryCode( COUNTRYCODE.SE )
+			.setTransactionId( Long.toString(transactionId) )
+			.doRequest();
+		assertFalse( annulled.isOrderAccepted() );
+		assertTrue( annulled.getResultCode().startsWith("105") );
+
+		QueryTransactionResponse unknown = new QueryTransactionRequest(config)
+			.setCountryCode( COUNTRYCODE.SE )
+			.setTransactionId( "1" )
+			.doRequest();
+		assertFalse( unknown.isOrderAccepted() );
+		assertTrue( unknown.getResultCode().startsWith("128") );
+	}
+
+	@Test
+	public void test_setResultCode_answers_with_result_code() {
+		standIn.setResultCode( "CreateOrderEu", "30000" );
+		CreateOrderResponse rejected = createInvoiceOrder();
+		assertFalse( rejected.isOrderAccepted() );
+		assertEquals( "30000", rejected.getResultCode() );
+
+		standIn.setResultCode( "CreateOrderEu", null );
+		assertTrue( createInvoiceOrder().isOrderAccepted() );
+		assertEquals( 2, standIn.getRequestCount("CreateOrderEu") );
+	}
+
+	@Test
+	public void test_setFailureRate_fails_requests() {
+		standIn.setFailureRate( 1.0 );
+		try {
+			queryInvoiceOrder( 123L );
+			fail( "Expected SveaWebPayException" );
+		}
+		catch( SveaWebPayException e ) {
+			// expected
+		}
+		// http status 503 is transient, so the read-only GetOrders is retried by the default ResiliencePolicy
+		assertEquals( 1 + ResiliencePolicy.DEFAULT_MAX_RETRIES, standIn.getRequestCount("GetOrders") );
+	}
+
+	@Test
+	public void test_setLatency_delays_responses() {
+		standIn.setLatency( 200, 200 );
+		long start = System.nanoTime();
+		queryInvoiceOrder( 123L );
+		assertTrue( System.nanoTime() - start >= 200 * 1000000L );
+	}
+}
@@ -0,0 +1,110 @@
+package se.sveaekonomi.webpay.integration.util.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
+import se.sveaekonomi.webpay.integration.response.hosted.hostedadmin.QueryTransactionResponse;
+import se.sveaekonomi.webpay.integration.util.security.Base64Util;
+import se.sveaekonomi.webpay.integration.util.security.HashUtil;
+import se.sveaekonomi.webpay.integration.util.security.HashUtil.HASHALGORITHM;
+
+public class XMLValueReaderTest {
+
+	private static final String QUERY_RESPONSE = 
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<response>" +
+				"<transaction id=\"598972\">" +
+					"<customerrefno>1ba66a0d653ca4cf3a5bc3eeb9ed1a2b4</customerrefno>" +
+					"<merchantid>1130</merchantid>" +
+					"<status>AUTHORIZED</status>" +
+					"<amount>500</amount>" +
+					"<currency>SEK</currency>" +
+					"<vat>100</vat>" +
+					"<capturedamount/>" +
+					"<authorizedamount>500</authorizedamount>" +
+					"<paymentmethod>KORTCERT</paymentmethod>" +
+					"<orderrows>" +
+						"<row><id>1</id><name>Soft Drink</name><amount>500</amount><vat>100</vat><description>Cola &amp; lemon</description><quantity>1.0</quantity><sku>123</sku><unit>st</unit></row>" +
+						"<row><id>2</id><name>Sandwich</name><amount>250</amount><vat>50</vat><description><![CDATA[Ham <and> cheese]]></description><quantity>2.0</quantity><sku/><unit>st</unit></row>" +
+					"</orderrows>" +
+				"</transaction>" +
+				"<statuscode>0</statuscode>" +
+			"</response>";
+
+	@Test
+	public void test_first_element_value_and_attributes_are_read() {
+		XMLValueReader values = XMLValueReader.parse(QUERY_RESPONSE);
+
+		assertTrue( values.hasElement("response") );
+		assertEquals( "598972", values.getAttribute("transaction", "id") );
+		assertEquals( "500", values.getValue("amount") );			// transaction amount, not the row amounts
+		assertEquals( "Soft Drink", values.getValue("name") );		// first row
+		assertEquals( "0", values.getValue("statuscode") );
+		assertNull( values.getValue("capturedamount") );			// empty element
+		assertTrue( values.hasElement("capturedamount") );
+		assertFalse( values.hasElement("subscriptionid") );
+		assertNull( values.getAttribute("transaction", "missing") );
+		assertTrue( values.getRows().isEmpty() );					// no row container given
+	}
+
+	@Test
+	public void test_rows_of_row_container_are_read() {
+		List<Map<String,String>> rows = XMLValueReader.parse(QUERY_RESPONSE, "orderrows").getRows();
+
+		assertEquals( 2, rows.size() );
+		assertEquals( "Soft Drink", rows.get(0).get("name") );
+		assertEquals( "Cola & lemon", rows.get(0).get("description") );
+		assertEquals( "250", rows.get(1).get("amount") );
+		assertEquals( "Ham <and> cheese", rows.get(1).get("description") );
+		assertNull( rows.get(1).get("sku") );
+	}
+
+	@Test
+	public void test_response_envelope_message_and_mac_are_read_together() {
+		String envelope = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><response>\n  <message>PD94bWw=</message>\n  <mac>abc123</mac>\n  <merchantid>1130</merchantid>\n</response>";
+		XMLValueReader values = XMLValueReader.parse(envelope);
+
+		assertEquals( "PD94bWw=", values.getValue("message") );
+		assertEquals( "abc123", values.getValue("mac") );
+	}
+
+	@Test(expected = SveaWebPayException.class)
+	public void test_malformed_xml_throws_SveaWebPayException() {
+		XMLValueReader.parse("<response><message>");
+	}
+
+	@Test
+	public void test_QueryTransactionResponse_is_parsed_from_payload() {
+		String message = Base64Util.encodeBase64String(QUERY_RESPONSE);
+		String mac = HashUtil.createHash(message + "secret", HASHALGORITHM.SHA_512);
+
+		QueryTransactionResponse response = new QueryTransactionResponse(message, mac, "secret");
+
+		assertTrue( response.isOrderAccepted() );
+		assertEquals( Long.valueOf(598972L), response.getTransactionId() );
+		assertEquals( 5.00, response.getAmount(), 0.001 );
+		assertEquals( 0.0, response.getCapturedAmount(), 0.001 );
+		assertEquals( "KORTCERT", response.getPaymentMethod() );
+		assertEquals( 2, response.getNumberedOrderRows().size() );
+		assertEquals( "Sandwich", response.getNumberedOrderRows().get(1).getName() );
+		assertEquals( 2.00, response.getNumberedOrderRows().get(1).getAmountExVat(), 0.001 );
+		assertEquals( 25.0, response.getNumberedOrderRows().get(1).getVatPercent(), 0.001 );
+		assertEquals( Integer.valueOf(2), response.getNumberedOrderRows().get(1).getRowNumber() );
+	}
+
+	@Test
+	public void test_QueryTransactionResponse_with_bad_mac() {
+		QueryTransactionResponse response = new QueryTransactionResponse(Base64Util.encodeBase64String(QUERY_RESPONSE), "bad", "secret");
+
+		assertFalse( response.isOrderAccepted() );
+		assertEquals( "311 (BAD_MAC)", response.getResultCode() );
+	}
+}
@@ -0,0 +1,94 @@
+package se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import se.sveaekonomi.webpay.integration.response.webservice.CampaignCode;
+import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
+
+public class PaymentPlanCampaignIndexTest {
+
+	private static CampaignCode createCampaign( String code, String from, String to, String factor, String fee ) {
+		CampaignCode campaign = new CampaignCode();
+		campaign.setCampaignCode(code);
+		campaign.setDescription("Campaign " + code);
+		campaign.setFromAmount(from);
+		campaign.setToAmount(to);
+		campaign.setMonthlyAnnuityFactor(factor);
+		campaign.setNotificationFee(fee);
+		return campaign;
+	}
+
+	private static PaymentPlanParamsResponse createResponse() {
+		PaymentPlanParamsResponse response = new PaymentPlanParamsResponse( new NodeList() {
+			public Node item( int index ) { return null; }
+			public int getLength() { return 0; }
+		});
+		response.setOrderAccepted(true);
+		List<CampaignCode> campaigns = new ArrayList<CampaignCode>();
+		campaigns.add( createCampaign("213060", "1000.00", "50000.00", "0.02555", "29") );
+		campaigns.add( createCampaign("310012", "100.00", "30000.00", "0.1", "29") );
+		campaigns.add( createCampaign("410012", "1000.00", "50000.00", "0.08788", "0") );
+		campaigns.add( createCampaign("996699", "5000.00", "100000.00", "0.0457", "29") );
+		response.setCampaignCodes(campaigns);
+		return response;
+	}
+
+	@Test
+	public void test_calculate_gives_same_result_as_PaymentPlanPricePerMonth() {
+		PaymentPlanParamsResponse response = createResponse();
+		PaymentPlanCampaignIndex index = PaymentPlanCampaignIndex.compile(response);
+		PaymentPlanPricePerMonth calculator = new PaymentPlanPricePerMonth();
+
+		Random random = new Random(4711);
+		for( int i = 0; i < 1000; i++ ) {
+			Double amount = Math.round(random.nextDouble() * 12000000) / 100.0;
+			assertEquals( calculator.calculate(amount, response, false), index.calculate(amount, false) );
+			assertEquals( calculator.calculate(amount, response, true), index.calculate(amount, true) );
+		}
+		// amount limits are inclusive
+		for( Double amount : new Double[] { 100.00, 1000.00, 5000.00, 30000.00, 50000.00, 100000.00 } ) {
+			assertEquals( calculator.calculate(amount, response, false), calculator.calculate(amount, index, false) );
+		}
+	}
+
+	@Test
+	public void test_findAvailableCampaigns_returns_campaigns_in_response_order() {
+		PaymentPlanCampaignIndex index = PaymentPlanCampaignIndex.compile( createResponse() );
+
+		assertArrayEquals( new int[] {}, index.findAvailableCampaigns(99.99) );
+		assertArrayEquals( new int[] { 1 }, index.findAvailableCampaigns(500.00) );
+		assertArrayEquals( new int[] { 0, 1, 2 }, index.findAvailableCampaigns(1000.00) );
+		assertArrayEquals( new int[] { 0, 1, 2, 3 }, index.findAvailableCampaigns(20000.00) );
+		assertArrayEquals( new int[] { 0, 2, 3 }, index.findAvailableCampaigns(40000.00) );
+		assertArrayEquals( new int[] { 3 }, index.findAvailableCampaigns(60000.00) );
+	}
+
+	@Test
+	public void test_calculatePricesPerMonth_fills_one_row_per_amount() {
+		PaymentPlanCampaignIndex index = PaymentPlanCampaignIndex.compile( createResponse() );
+		long n = PaymentPlanCampaignIndex.NOT_AVAILABLE;
+
+		long[] prices = index.calculatePricesPerMonth( new double[] { 500.00, 10000.00 }, null );
+
+		assertArrayEquals( new long[] { n, 79, n, n,  285, 1029, 879, 486 }, prices );
+		assertArrayEquals( new long[] { 42, 79, 44, 52 }, index.calculatePricesPerMonth( new double[] { 500.00 }, new long[4], true ) );
+	}
+
+	@Test
+	public void test_null_response_gives_empty_index() {
+		PaymentPlanCampaignIndex index = PaymentPlanCampaignIndex.compile(null);
+
+		assertEquals( 0, index.size() );
+		assertEquals( 0, index.calculatePricesPerMonth( new double[] { 1000.00 }, null ).length );
+		assertEquals( 0, new PaymentPlanPricePerMonth().calculate(1000.00, (PaymentPlanCampaignIndex) null, false).size() );
+	}
+}
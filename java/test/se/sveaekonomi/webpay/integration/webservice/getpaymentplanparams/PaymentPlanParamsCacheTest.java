@@ -0,0 +1,202 @@
+package se.sveaekonomi.webpay.integration.webservice.getpaymentplanparams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import se.sveaekonomi.webpay.integration.response.webservice.PaymentPlanParamsResponse;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.request.SveaRequestExecutor;
+
+public class PaymentPlanParamsCacheTest {
+
+	private static PaymentPlanParamsResponse createResponse( boolean accepted ) {
+		PaymentPlanParamsResponse response = new PaymentPlanParamsResponse( new NodeList() {
+			public Node item( int index ) { return null; }
+			public int getLength() { return 0; }
+		});
+		response.setOrderAccepted(accepted);
+		return response;
+	}
+
+	private static class CountingLoader implements Callable<PaymentPlanParamsResponse> {
+		final AtomicInteger calls = new AtomicInteger();
+		volatile boolean accepted = true;
+		@Override
+		public PaymentPlanParamsResponse call() {
+			calls.incrementAndGet();
+			return createResponse(accepted);
+		}
+	}
+
+	@Test
+	public void test_response_is_cached_per_client_number_and_country() {
+		PaymentPlanParamsCache cache = new PaymentPlanParamsCache();
+		CountingLoader loader = new CountingLoader();
+
+		PaymentPlanParamsResponse first = cache.get(59999, COUNTRYCODE.SE, loader);
+		assertSame( first, cache.get(59999, COUNTRYCODE.SE, loader) );
+		cache.get(59999, COUNTRYCODE.NO, loader);
+
+		assertEquals( 2, loader.calls.get() );
+		assertEquals( 1, cache.getHitCount() );
+		assertEquals( 2, cache.getMissCount() );
+	}
+
+	@Test
+	public void test_not_accepted_responses_are_not_cached() {
+		PaymentPlanParamsCache cache = new PaymentPlanParamsCache();
+		CountingLoader loader = new CountingLoader();
+		loader.accepted = false;
+
+		cache.get(59999, COUNTRYCODE.SE, loader);
+		cache.get(59999, COUNTRYCODE.SE, loader);
+
+		assertEquals( 2, loader.calls.get() );
+		assertEquals( 0, cache.size() );
+	}
+
+	@Test
+	public void test_expired_response_is_reloaded() throws InterruptedException {
+		PaymentPlanParamsCache cache = new PaymentPlanParamsCache().setTimeToLive(20).setRefreshAfter(20);
+		CountingLoader loader = new CountingLoader();
+
+		PaymentPlanParamsResponse first = cache.get(59999, COUNTRYCODE.SE, loader);
+		Thread.sleep(40);
+		assertTrue( first != cache.get(59999, COUNTRYCODE.SE, loader) );
+		assertEquals( 2, loader.calls.get() );
+	}
+
+	@Test
+	public void test_stale_response_is_served_while_refreshed_in_background() throws InterruptedException {
+		PaymentPlanParamsCache cache = new PaymentPlanParamsCache().setTimeToLive(60000).setRefreshAfter(20);
+		CountingLoader loader = new CountingLoader();
+
+		PaymentPlanParamsResponse first = cache.get(59999, COUNTRYCODE.SE, loader);
+		Thread.sleep(40);
+		assertSame( first, cache.get(59999, COUNTRYCODE.SE, loader) );
+
+		// wait for the background refresh to replace the entry
+		for( int i = 0; i < 100 && loader.calls.get() < 2; i++ ) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(20);
+		assertEquals( 2, loader.calls.get() );
+		assertEquals( 1, cache.getStaleHitCount() );
+		assertEquals( 1, cache.getRefreshCount() );
+		assertTrue( first != cache.get(59999, COUNTRYCODE.SE, loader) );
+	}
+
+	/** an executor that rejects every task, like a saturated pool with an abort policy */
+	private static ExecutorService createRejectingExecutor() {
+		return new AbstractExecutorService() {
+			public void execute( Runnable command ) { throw new RejectedExecutionException("saturated"); }
+			public void shutdown() { }
+			public List<Runnable> shutdownNow() { return Collections.emptyList(); }
+			public boolean isShutdown() { return false; }
+			public boolean isTerminated() { return false; }
+			public boolean awaitTermination( long timeout, TimeUnit unit ) { return false; }
+		};
+	}
+
+	private static void waitForRefresh( PaymentPlanParamsCache cache, CountingLoader loader, int calls ) throws InterruptedException {
+		for( int i = 0; i < 100 && loader.calls.get() < calls; i++ ) {
+			Thread.sleep(10);
+		}
+		// let the refresh finish after the loader returned
+		Thread.sleep(20);
+	}
+
+	@Test
+	public void test_rejected_refresh_serves_stale_response_and_is_retried() throws InterruptedException {
+		PaymentPlanParamsCache cache = new PaymentPlanParamsCache().setTimeToLive(60000).setRefreshAfter(20);
+		CountingLoader loader = new CountingLoader();
+
+		PaymentPlanParamsResponse first = cache.get(59999, COUNTRYCODE.SE, loader);
+		Thread.sleep(40);
+		ExecutorService previous = SveaRequestExecutor.setDefault( createRejectingExecutor() );
+		try {
+			assertSame( first, cache.get(59999, COUNTRYCODE.SE, loader) );
+		}
+		finally {
+			SveaRequestExecutor.setDefault(previous);
+		}
+		assertEquals( 1, cache.getRefreshFailureCount() );
+
+		// the rejected refresh must not block later refreshes
+		assertSame( first, cache.get(59999, COUNTRYCODE.SE, loader) );
+		waitForRefresh(cache, loader, 2);
+		assertEquals( 2, loader.calls.get() );
+		assertEquals( 2, cache.getRefreshCount() );
+		assertEquals( 1, cache.getRefreshFailureCount() );
+	}
+
+	@Test
+	public void test_not_accepted_refresh_is_counted_as_failure_and_keeps_cached_response() throws InterruptedException {
+		PaymentPlanParamsCache cache = new PaymentPlanParamsCache().setTimeToLive(60000).setRefreshAfter(20);
+		CountingLoader loader = new CountingLoader();
+
+		PaymentPlanParamsResponse first = cache.get(59999, COUNTRYCODE.SE, loader);
+		Thread.sleep(40);
+		loader.accepted = false;
+		assertSame( first, cache.get(59999, COUNTRYCODE.SE, loader) );
+		waitForRefresh(cache, loader, 2);
+
+		assertEquals( 2, loader.calls.get() );
+		assertEquals( 1, cache.getRefreshFailureCount() );
+		assertSame( first, cache.get(59999, COUNTRYCODE.SE, loader) );
+	}
+
+	@Test
+	public void test_concurrent_misses_send_one_request() throws Exception {
+		final PaymentPlanParamsCache cache = new PaymentPlanParamsCache();
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final Callable<PaymentPlanParamsResponse> slowLoader = new Callable<PaymentPlanParamsResponse>() {
+			@Override
+			public PaymentPlanParamsResponse call() throws InterruptedException {
+				calls.incrementAndGet();
+				release.await(5, TimeUnit.SECONDS);
+				return createResponse(true);
+			}
+		};
+
+		List<Future<PaymentPlanParamsResponse>> futures = new ArrayList<Future<PaymentPlanParamsResponse>>();
+		for( int i = 0; i < 8; i++ ) {
+			futures.add( SveaRequestExecutor.submit( new Callable<PaymentPlanParamsResponse>() {
+				@Override
+				public PaymentPlanParamsResponse call() {
+					return cache.get(59999, COUNTRYCODE.SE, slowLoader);
+				}
+			}));
+		}
+		// give all callers time to arrive before the request completes
+		for( int i = 0; i < 100 && cache.getMissCount() < 8; i++ ) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		PaymentPlanParamsResponse first = futures.get(0).get();
+		for( Future<PaymentPlanParamsResponse> future : futures ) {
+			assertSame( first, future.get() );
+		}
+		assertEquals( 1, calls.get() );
+		assertEquals( 7, cache.getCoalescedMissCount() );
+	}
+}
@@ -2,6 +2,9 @@ package se.sveaekonomi.webpay.integration.webservice.handleorder;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -9,6 +12,7 @@ import org.junit.Test;
 import se.sveaekonomi.webpay.integration.WebPay;
 import se.sveaekonomi.webpay.integration.WebPayItem;
 import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.exception.SveaWebPayException;
 import se.sveaekonomi.webpay.integration.order.handle.DeliverOrderBuilder;
 import se.sveaekonomi.webpay.integration.order.row.FixedDiscountBuilder;
 import se.sveaekonomi.webpay.integration.order.row.InvoiceFeeBuilder;
@@ -935,6 +939,26 @@ public class DeliverOrderTest {
   		assertEquals( true, soapRequest.request.deliverOrderInformation.deliverInvoiceDetails.OrderRows.get(5).PriceIncludingVat );	
   	}		
   	
+    @Test
+    public void test_deliverInvoiceOrder_with_order_rows_rejects_order_ids() {
+        try {
+            HandleOrder request = order.addOrderRow(TestingTool.createExVatBasedOrderRow("1"))
+                .setOrderIds(Arrays.asList(54086L, 54087L))
+                .setInvoiceDistributionType(DISTRIBUTIONTYPE.Post)
+                .setCountryCode(TestingTool.DefaultTestCountryCode)
+                .deliverInvoiceOrder();
+            request.prepareRequest();
+            fail("Expected SveaWebPayException missing.");
+        }
+        catch (SveaWebPayException e) {
+            assertEquals(
+                "MISSING VALUE - setOrderId is required.\n" +
+                "NOT VALID - setOrderIds is only used by deliverInvoiceOrders() and deliverPaymentPlanOrders(), use setOrderId.\n",
+                e.getCause().getMessage()
+            );
+        }
+    }
+
   	// validation
 	// .deliverPaymentPlanOrder() with orderrows fails if try to deliver part of order  // TODO => validation error + other validation tests
 //    public void test_deliverOrder_deliverPaymentPlanOrder_with_orderrows() {	
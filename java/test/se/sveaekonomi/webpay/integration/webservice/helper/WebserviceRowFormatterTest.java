@@ -540,11 +540,121 @@ public class WebserviceRowFormatterTest {
         assertTrue( newRow.PriceIncludingVat );
         assertEquals(6, newRow.VatPercent, 0);
         assertEquals(0, newRow.DiscountPercent, 0); // not the same thing as in our WebPayItem...
-        assertEquals(1, newRow.NumberOfUnits, 0); // 1 "discount unit"        
+        assertEquals(1, newRow.NumberOfUnits, 0); // 1 "discount unit"
+    }
+
+    @Test
+    public void test_relativeDiscount_split_over_more_than_four_vat_rates_in_order_of_first_occurrence() {
+        CreateOrderBuilder order = WebPay.createOrder(SveaConfig.getDefaultConfig());
+        double[] vatRates = { 25, 12, 6, 0, 24, 14, 12, 25 };
+        for (double vatRate : vatRates) {
+            order.addOrderRow(WebPayItem.orderRow()
+                .setAmountExVat(100.00)
+                .setVatPercent(vatRate)
+                .setQuantity(1.0));
+        }
+        order.addDiscount(WebPayItem.relativeDiscount()
+            .setName("couponName")
+            .setDiscountPercent(10.0));
+
+        ArrayList<SveaOrderRow> newRows = new WebserviceRowFormatter(order).formatRows();
+
+        assertEquals(8 + 6, newRows.size());
+        double[] expectedVatRates = { 25, 12, 6, 0, 24, 14 };
+        double[] expectedDiscountsExVat = { -20.00, -20.00, -10.00, -10.00, -10.00, -10.00 };
+        for (int i = 0; i < expectedVatRates.length; i++) {
+            SveaOrderRow newRow = newRows.get(8 + i);
+            assertEquals(expectedVatRates[i], newRow.VatPercent, 0);
+            assertEquals(expectedDiscountsExVat[i], newRow.PricePerUnit, 0.001);
+            assertFalse( newRow.PriceIncludingVat );
+            assertEquals("couponName (" + (long) expectedVatRates[i] + "%)", newRow.Description);
+        }
+    }
+
+    // orders with rows, fees and discounts over several vat rates, expected rows as formatted before the per vat rate totals were rewritten
+    private CreateOrderBuilder createMixedVatRatesOrder(boolean amountsIncludeVat) {
+        CreateOrderBuilder order = WebPay.createOrder(SveaConfig.getDefaultConfig());
+        if (amountsIncludeVat) {
+            order.addOrderRow(WebPayItem.orderRow().setArticleNumber("1").setName("A").setDescription("a").setAmountIncVat(124.99).setVatPercent(25).setQuantity(3.0))
+                .addOrderRow(WebPayItem.orderRow().setArticleNumber("2").setName("B").setAmountIncVat(13.82).setVatPercent(12).setQuantity(2.0))
+                .addOrderRow(WebPayItem.orderRow().setArticleNumber("3").setDescription("c").setAmountIncVat(8.24).setVatPercent(6).setQuantity(5.0))
+                .addFee(WebPayItem.shippingFee().setShippingId("s").setName("Ship").setAmountIncVat(61.25).setVatPercent(25))
+                .addFee(WebPayItem.invoiceFee().setName("Fee").setDescription("inv").setAmountIncVat(36.25).setVatPercent(25))
+                .addDiscount(WebPayItem.fixedDiscount().setDiscountId("f").setName("Fixed").setAmountIncVat(100.00))
+                .addDiscount(WebPayItem.fixedDiscount().setDiscountId("g").setName("Single").setAmountIncVat(11.20).setVatPercent(12))
+                .addDiscount(WebPayItem.relativeDiscount().setDiscountId("r").setName("Relative").setDiscountPercent(15.0));
+        }
+        else {
+            order.addOrderRow(WebPayItem.orderRow().setArticleNumber("1").setName("A").setDescription("a").setAmountExVat(99.99).setVatPercent(25).setQuantity(3.0))
+                .addOrderRow(WebPayItem.orderRow().setArticleNumber("2").setName("B").setAmountExVat(12.34).setVatPercent(12).setQuantity(2.0))
+                .addOrderRow(WebPayItem.orderRow().setArticleNumber("3").setDescription("c").setAmountExVat(7.77).setVatPercent(6).setQuantity(5.0))
+                .addFee(WebPayItem.shippingFee().setShippingId("s").setName("Ship").setAmountExVat(49.00).setVatPercent(25))
+                .addFee(WebPayItem.invoiceFee().setName("Fee").setDescription("inv").setAmountExVat(29.00).setVatPercent(25))
+                .addDiscount(WebPayItem.fixedDiscount().setDiscountId("f").setName("Fixed").setAmountIncVat(100.00))
+                .addDiscount(WebPayItem.relativeDiscount().setDiscountId("r").setName("Relative").setDiscountPercent(10.0));
+        }
+        return order;
     }
-   			
-   			
-   			
+
+    private void assertRows(ArrayList<SveaOrderRow> rows, String[] descriptions, double[] prices, double[] vatRates, boolean priceIncludingVat) {
+        assertEquals(descriptions.length, rows.size());
+        for (int i = 0; i < descriptions.length; i++) {
+            SveaOrderRow row = rows.get(i);
+            assertEquals(descriptions[i], row.Description);
+            assertEquals(descriptions[i], prices[i], row.PricePerUnit, 0);
+            assertEquals(descriptions[i], vatRates[i], row.VatPercent, 0);
+            assertEquals(0, row.DiscountPercent, 0);
+            assertEquals(priceIncludingVat, row.PriceIncludingVat);
+        }
+    }
+
+    @Test
+    public void test_vat_rate_totals_with_mixed_rates_fees_and_discounts_specified_ex_vat() {
+        String[] descriptions = { "A: a", "B", "c", "Ship", "Fee: inv", "Fixed (25%)", "Fixed (12%)", "Fixed (6%)", "Relative (25%)", "Relative (12%)", "Relative (6%)" };
+        double[] vatRates = { 25, 12, 6, 25, 25, 25, 12, 6, 25, 12, 6 };
+
+        ArrayList<SveaOrderRow> newRows = new WebserviceRowFormatter(createMixedVatRatesOrder(false)).formatRows();
+        assertRows(newRows, descriptions,
+            new double[] { 99.99, 12.34, 7.77, 49.00, 29.00, -67.59, -5.56, -8.75, -30.00, -2.47, -3.88 }, vatRates, false);
+        assertEquals(3.0, newRows.get(0).NumberOfUnits, 0);
+        assertEquals(1.0, newRows.get(5).NumberOfUnits, 0);
+
+        assertRows(new WebserviceRowFormatter(createMixedVatRatesOrder(false)).formatRows(true), descriptions,
+            new double[] { 124.99, 13.82, 8.24, 61.25, 36.25, -84.49, -6.23, -9.28, -37.50, -2.76, -4.12 }, vatRates, true);
+    }
+
+    @Test
+    public void test_vat_rate_totals_with_mixed_rates_fees_and_discounts_specified_inc_vat() {
+        String[] descriptions = { "A: a", "B", "c", "Ship", "Fee: inv", "Fixed (25%)", "Fixed (12%)", "Fixed (6%)", "Single", "Relative (25%)", "Relative (12%)", "Relative (6%)" };
+        double[] vatRates = { 25, 12, 6, 25, 25, 25, 12, 6, 12, 25, 12, 6 };
+
+        assertRows(new WebserviceRowFormatter(createMixedVatRatesOrder(true)).formatRows(), descriptions,
+            new double[] { 124.99, 13.82, 8.24, 61.25, 36.25, -84.49, -6.23, -9.28, -11.20, -56.25, -4.15, -6.18 }, vatRates, true);
+
+        assertRows(new WebserviceRowFormatter(createMixedVatRatesOrder(true)).formatRows(false), descriptions,
+            new double[] { 99.99, 12.34, 7.77, 49.00, 29.00, -67.59, -5.56, -8.76, -10.00, -45.00, -3.70, -5.83 }, vatRates, false);
+    }
+
+    @Test
+    public void test_vat_rate_totals_with_row_specified_ex_and_inc_vat_uses_calculated_vat_rate() {
+        CreateOrderBuilder order = WebPay.createOrder(SveaConfig.getDefaultConfig())
+            .addOrderRow(WebPayItem.orderRow().setArticleNumber("1").setName("A").setDescription("a").setAmountIncVat(124.99).setVatPercent(25).setQuantity(3.0))
+            .addOrderRow(WebPayItem.orderRow().setArticleNumber("2").setName("B").setAmountIncVat(13.82).setVatPercent(12).setQuantity(2.0))
+            .addOrderRow(WebPayItem.orderRow().setArticleNumber("3").setDescription("c").setAmountIncVat(8.24).setAmountExVat(7.77).setQuantity(5.0))
+            .addFee(WebPayItem.shippingFee().setShippingId("s").setName("Ship").setAmountIncVat(61.25).setVatPercent(25))
+            .addFee(WebPayItem.invoiceFee().setName("Fee").setDescription("inv").setAmountIncVat(36.25).setVatPercent(25))
+            .addDiscount(WebPayItem.fixedDiscount().setDiscountId("f").setName("Fixed").setAmountExVat(80.00))
+            .addDiscount(WebPayItem.fixedDiscount().setDiscountId("g").setName("Single").setAmountIncVat(11.20).setVatPercent(12))
+            .addDiscount(WebPayItem.relativeDiscount().setDiscountId("r").setName("Relative").setDiscountPercent(15.0));
+
+        assertRows(new WebserviceRowFormatter(order).formatRows(),
+            new String[] { "A: a", "B", "c", "Ship", "Fee: inv", "Fixed (25%)", "Fixed (12%)", "Fixed (6%)", "Single", "Relative (25%)", "Relative (12%)", "Relative (6%)" },
+            new double[] { 99.99, 12.34, 7.77, 49.00, 29.00, -66.02, -5.43, -8.55, -10.00, -45.00, -3.70, -5.83 },
+            new double[] { 25, 12, 6.05, 25, 25, 25, 12, 6.05, 12, 25, 12, 6.05 }, false);
+    }
+
+
+
 
     // helper
     private double convertExVatToIncVat(double amountExVat, double vatPercent) {
@@ -0,0 +1,113 @@
+package se.sveaekonomi.webpay.integration.webservice.payment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Date;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPay;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.order.create.CreateOrderBuilder;
+import se.sveaekonomi.webpay.integration.order.identity.IndividualCustomer;
+import se.sveaekonomi.webpay.integration.order.row.OrderRowBuilder;
+import se.sveaekonomi.webpay.integration.util.test.TestingTool;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaCreateOrder;
+import se.sveaekonomi.webpay.integration.webservice.svea_soap.SveaRequest;
+
+/**
+ * Tests that the request prepared from an order is reused while the order is unchanged, and always reflects the current
+ * order, also when rows or customer details are changed without using the builder methods.
+ */
+public class PreparedRequestTest {
+
+	private CreateOrderBuilder createOrder() {
+		return WebPay.createOrder(SveaConfig.getDefaultConfig())
+				.addOrderRow(TestingTool.createExVatBasedOrderRow("1"))
+				.addCustomerDetails(WebPayItem.individualCustomer().setNationalIdNumber(TestingTool.DefaultTestIndividualNationalIdNumber))
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.setOrderDate(TestingTool.DefaultTestDate);
+	}
+
+	@Test
+	public void test_prepareRequest_is_reused_while_order_is_unchanged() {
+		CreateOrderBuilder order = createOrder();
+		InvoicePayment payment = order.useInvoicePayment();
+		SveaRequest<SveaCreateOrder> request = payment.prepareRequest();
+		String xml = payment.getXML();
+		payment.getRequestTotals();
+
+		assertSame(request, payment.prepareRequest());
+		assertSame(xml, payment.getXML());
+
+		order.setCustomerReference("ref-1");
+		assertNotSame(request, payment.prepareRequest());
+		assertNotSame(xml, payment.getXML());
+	}
+
+	@Test
+	public void test_prepareRequest_reflects_order_date_changed_after_being_set() {
+		Date orderDate = new Date(TestingTool.DefaultTestDate.getTime());
+		CreateOrderBuilder order = createOrder().setOrderDate(orderDate);
+		InvoicePayment payment = order.useInvoicePayment();
+		SveaRequest<SveaCreateOrder> request = payment.prepareRequest();
+
+		orderDate.setTime(orderDate.getTime() + 24 * 60 * 60 * 1000L);
+		assertNotSame(request, payment.prepareRequest());
+	}
+
+	@Test
+	public void test_prepareRequest_reflects_changes_made_using_builder() {
+		CreateOrderBuilder order = createOrder();
+		InvoicePayment payment = order.useInvoicePayment();
+		String xml = payment.getXML();
+
+		order.setClientOrderNumber("changed-123");
+		assertTrue(payment.getXML().contains("changed-123"));
+		assertEquals(1, payment.prepareRequest().request.CreateOrderInformation.OrderRows.size());
+
+		order.addOrderRow(TestingTool.createExVatBasedOrderRow("2"));
+		assertEquals(2, payment.prepareRequest().request.CreateOrderInformation.OrderRows.size());
+		assertTrue(payment.getXML().length() > xml.length());
+	}
+
+	@Test
+	public void test_prepareRequest_reflects_rows_swapped_in_row_list() {
+		CreateOrderBuilder order = createOrder();
+		InvoicePayment payment = order.useInvoicePayment();
+		assertEquals("1", payment.prepareRequest().request.CreateOrderInformation.OrderRows.get(0).ArticleNumber);
+		double total = payment.getRequestTotals().get("total_incvat");
+
+		order.getOrderRows().set(0, TestingTool.createExVatBasedOrderRow("swapped").setAmountExVat(200.00));
+
+		assertEquals("swapped", payment.prepareRequest().request.CreateOrderInformation.OrderRows.get(0).ArticleNumber);
+		assertTrue(payment.getXML().contains("swapped"));
+		assertEquals(2 * total, payment.getRequestTotals().get("total_incvat"), 0.001);
+	}
+
+	@Test
+	public void test_prepareRequest_reflects_rows_and_customer_changed_after_being_added() {
+		OrderRowBuilder<?> row = TestingTool.createExVatBasedOrderRow("1");
+		IndividualCustomer customer = WebPayItem.individualCustomer().setNationalIdNumber(TestingTool.DefaultTestIndividualNationalIdNumber);
+		InvoicePayment payment = WebPay.createOrder(SveaConfig.getDefaultConfig())
+				.addOrderRow(row)
+				.addCustomerDetails(customer)
+				.setCountryCode(TestingTool.DefaultTestCountryCode)
+				.setOrderDate(TestingTool.DefaultTestDate)
+				.useInvoicePayment();
+		String xml = payment.getXML();
+		assertEquals(2.0, payment.prepareRequest().request.CreateOrderInformation.OrderRows.get(0).NumberOfUnits, 0.001);
+
+		row.setQuantity(3.0);
+		customer.setNationalIdNumber("194609052222");
+
+		assertEquals(3.0, payment.prepareRequest().request.CreateOrderInformation.OrderRows.get(0).NumberOfUnits, 0.001);
+		assertFalse(payment.getXML().equals(xml));
+		assertTrue(payment.getXML().contains("194609052222"));
+	}
+}
@@ -0,0 +1,203 @@
+package se.sveaekonomi.webpay.integration.webservice.svea_soap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.Test;
+
+import se.sveaekonomi.webpay.integration.WebPayAdmin;
+import se.sveaekonomi.webpay.integration.WebPayItem;
+import se.sveaekonomi.webpay.integration.config.SveaConfig;
+import se.sveaekonomi.webpay.integration.order.row.NumberedOrderRowBuilder;
+import se.sveaekonomi.webpay.integration.order.row.OrderRowBuilder;
+import se.sveaekonomi.webpay.integration.util.constant.COUNTRYCODE;
+import se.sveaekonomi.webpay.integration.util.constant.DISTRIBUTIONTYPE;
+import se.sveaekonomi.webpay.integration.util.constant.ORDERROWSTATUS;
+
+public class SoapEnvelopeWriterTest {
+
+	// markup, quotes, line breaks, control characters and a supplementary character
+	private static final String SPECIAL = "\u00c4rta & <b>\"q\" 'x'\r\n\t\u0001\u0085 \ud83d\ude00 >";
+
+	private static String toString( SOAPMessage message ) throws SOAPException, IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		message.writeTo(os);
+		return os.toString("UTF-8");
+	}
+
+	/// envelopes are identical to those built using SAAJ SOAPElements before the writer was introduced
+	@Test
+	public void test_getOrders_envelope_is_unchanged() throws Exception {
+		SOAPMessage message = WebPayAdmin.queryOrder(SveaConfig.getDefaultConfig())
+			.setOrderIds( Arrays.asList(1L, 2L) )
+			.setCountryCode( COUNTRYCODE.SE )
+			.queryInvoiceOrders()
+			.prepareRequest()
+			.get(0)
+		;
+		assertEquals(
+			"<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:dat=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:tem=\"http://tempuri.org/\">" +
+			"<SOAP-ENV:Header/><SOAP-ENV:Body><tem:GetOrders><tem:request><dat:Authentication>" +
+			"<dat:Password>sverigetest</dat:Password><dat:Username>sverigetest</dat:Username></dat:Authentication>" +
+			"<dat:OrdersToRetrieve><dat:GetOrderInformation><dat:ClientId>79021</dat:ClientId>" +
+			"<dat:OrderType>Invoice</dat:OrderType><dat:SveaOrderId>1</dat:SveaOrderId></dat:GetOrderInformation>" +
+			"<dat:GetOrderInformation><dat:ClientId>79021</dat:ClientId><dat:OrderType>Invoice</dat:OrderType>" +
+			"<dat:SveaOrderId>2</dat:SveaOrderId></dat:GetOrderInformation></dat:OrdersToRetrieve></tem:request>" +
+			"</tem:GetOrders></SOAP-ENV:Body></SOAP-ENV:Envelope>",
+			toString(message)
+		);
+		assertEquals( "http://tempuri.org/IAdminService/GetOrders", message.getMimeHeaders().getHeader("SOAPAction")[0] );
+	}
+
+	@Test
+	public void test_cancelOrderRows_envelope_is_unchanged() throws Exception {
+		SOAPMessage message = WebPayAdmin.cancelOrderRows(SveaConfig.getDefaultConfig())
+			.setOrderId( 5L )
+			.setCountryCode( COUNTRYCODE.SE )
+			.setRowToCancel( 1 )
+			.setRowToCancel( 3 )
+			.cancelInvoiceOrderRows()
+			.prepareRequest()
+		;
+		assertEquals(
+			"<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:arr=\"http://schemas.microsoft.com/2003/10/Serialization/Arrays\" xmlns:dat=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:tem=\"http://tempuri.org/\">" +
+			"<SOAP-ENV:Header/><SOAP-ENV:Body><tem:CancelOrderRows><tem:request><dat:Authentication>" +
+			"<dat:Password>sverigetest</dat:Password><dat:Username>sverigetest</dat:Username></dat:Authentication>" +
+			"<dat:ClientId>79021</dat:ClientId><dat:OrderRowNumbers><arr:long>1</arr:long><arr:long>3</arr:long>" +
+			"</dat:OrderRowNumbers><dat:OrderType>Invoice</dat:OrderType><dat:SveaOrderId>5</dat:SveaOrderId></tem:request>" +
+			"</tem:CancelOrderRows></SOAP-ENV:Body></SOAP-ENV:Envelope>",
+			toString(message)
+		);
+	}
+
+	@Test
+	public void test_creditOrderRows_envelope_is_unchanged() throws Exception {
+		OrderRowBuilder<?> row = WebPayItem.orderRow()
+			.setArticleNumber( "A1" + SPECIAL )
+			.setName( SPECIAL )
+			.setDescription( "desc" )
+			.setAmountExVat( 100.00 )
+			.setVatPercent( 25 )
+			.setQuantity( 2.0 )
+			.setUnit( "st" )
+			.setDiscountPercent( 1.0 )
+		;
+		SOAPMessage message = WebPayAdmin.creditOrderRows(SveaConfig.getDefaultConfig())
+			.setInvoiceId( 8L )
+			.setInvoiceDistributionType( DISTRIBUTIONTYPE.Post )
+			.setCountryCode( COUNTRYCODE.SE )
+			.setRowToCredit( 1 )
+			.addCreditOrderRow( row )
+			.creditInvoiceOrderRows()
+			.prepareRequest()
+		;
+		assertEquals(
+			"<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:arr=\"http://schemas.microsoft.com/2003/10/Serialization/Arrays\" xmlns:dat=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:dat1=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\" xmlns:tem=\"http://tempuri.org/\">" +
+			"<SOAP-ENV:Header/><SOAP-ENV:Body><tem:CreditInvoiceRows><tem:request><dat:Authentication>" +
+			"<dat:Password>sverigetest</dat:Password><dat:Username>sverigetest</dat:Username></dat:Authentication>" +
+			"<dat:ClientId>79021</dat:ClientId><dat:InvoiceDistributionType>Post</dat:InvoiceDistributionType>" +
+			"<dat:InvoiceId>8</dat:InvoiceId><dat:NewCreditInvoiceRows><dat1:OrderRow>" +
+			"<dat1:ArticleNumber>A1\u00c4rta &amp; &lt;b&gt;\"q\" 'x'&#13;\n\t&#1;&#133; &#128512; &gt;</dat1:ArticleNumber>" +
+			"<dat1:Description>\u00c4rta &amp; &lt;b&gt;\"q\" 'x'&#13;\n\t&#1;&#133; &#128512; &gt;: desc</dat1:Description>" +
+			"<dat1:DiscountPercent>1.0</dat1:DiscountPercent><dat1:NumberOfUnits>2.0</dat1:NumberOfUnits>" +
+			"<dat1:PriceIncludingVat>false</dat1:PriceIncludingVat><dat1:PricePerUnit>100.0</dat1:PricePerUnit>" +
+			"<dat1:Unit>st</dat1:Unit><dat1:VatPercent>25.0</dat1:VatPercent></dat1:OrderRow></dat:NewCreditInvoiceRows>" +
+			"<dat:RowNumbers><arr:long>1</arr:long></dat:RowNumbers></tem:request></tem:CreditInvoiceRows></SOAP-ENV:Body>" +
+			"</SOAP-ENV:Envelope>",
+			toString(message)
+		);
+	}
+
+	@Test
+	public void test_updateOrderRows_envelope_is_unchanged() throws Exception {
+		NumberedOrderRowBuilder row = WebPayItem.numberedOrderRow()
+			.setRowNumber( 1 )
+			.setStatus( ORDERROWSTATUS.NOTDELIVERED )
+			.setInvoiceId( 9L )
+		;
+		row.setArticleNumber( "N" + SPECIAL )
+			.setName( "n" )
+			.setDescription( SPECIAL )
+			.setAmountIncVat( 125.0 )
+			.setAmountExVat( 100.0 )
+			.setQuantity( 1.0 )
+		;
+		SOAPMessage message = WebPayAdmin.updateOrderRows(SveaConfig.getDefaultConfig())
+			.setOrderId( 7L )
+			.setCountryCode( COUNTRYCODE.SE )
+			.addUpdateOrderRow( row )
+			.updateInvoiceOrderRows()
+			.prepareRequest( false )
+		;
+		assertEquals(
+			"<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:dat=\"http://schemas.datacontract.org/2004/07/DataObjects.Admin.Service\" xmlns:dat1=\"http://schemas.datacontract.org/2004/07/DataObjects.Webservice\" xmlns:tem=\"http://tempuri.org/\">" +
+			"<SOAP-ENV:Header/><SOAP-ENV:Body><tem:UpdateOrderRows><tem:request><dat:Authentication>" +
+			"<dat:Password>sverigetest</dat:Password><dat:Username>sverigetest</dat:Username></dat:Authentication>" +
+			"<dat:ClientId>79021</dat:ClientId><dat:OrderType>Invoice</dat:OrderType><dat:SveaOrderId>7</dat:SveaOrderId>" +
+			"<dat:UpdatedOrderRows><dat:NumberedOrderRow>" +
+			"<dat1:ArticleNumber>N\u00c4rta &amp; &lt;b&gt;\"q\" 'x'&#13;\n\t&#1;&#133; &#128512; &gt;</dat1:ArticleNumber>" +
+			"<dat1:Description>n: \u00c4rta &amp; &lt;b&gt;\"q\" 'x'&#13;\n\t&#1;&#133; &#128512; &gt;</dat1:Description>" +
+			"<dat1:DiscountPercent>0.0</dat1:DiscountPercent><dat1:NumberOfUnits>1.0</dat1:NumberOfUnits>" +
+			"<dat1:PriceIncludingVat>true</dat1:PriceIncludingVat><dat1:PricePerUnit>125.0</dat1:PricePerUnit>" +
+			"<dat1:Unit>null</dat1:Unit><dat1:VatPercent>25.0</dat1:VatPercent><dat:CreditInvoiceId/>" +
+			"<dat:InvoiceId>9</dat:InvoiceId><dat:RowNumber>1</dat:RowNumber><dat:Status>NotDelivered</dat:Status>" +
+			"</dat:NumberedOrderRow></dat:UpdatedOrderRows></tem:request></tem:UpdateOrderRows></SOAP-ENV:Body>" +
+			"</SOAP-ENV:Envelope>",
+			toString(message)
+		);
+	}
+
+	@Test
+	public void test_webservice_envelope_is_identical_to_makeSoapMessage() throws Exception {
+		SveaSoapBuilder soapBuilder = new SveaSoapBuilder();
+		String xml = "<web:request><web:Auth><web:ClientNumber>79021</web:ClientNumber></web:Auth><web:Name>\u00c4rta &amp; br\u00f6d</web:Name></web:request>";
+
+		assertArrayEquals(
+			soapBuilder.makeSoapMessage("CreateOrderEu", xml).getBytes("UTF-8"),
+			SoapEnvelopeWriter.toByteArray( soapBuilder.makeSoapContent("CreateOrderEu", xml) )
+		);
+	}
+
+	@Test
+	public void test_text_is_escaped_as_by_saaj() throws Exception {
+		final String[] texts = {
+			"plain", "", SPECIAL, "&&<<>>", "\u007f\u009f\u00a0\u00ff\u20ac\uffff", "\u000b\u000c\u001f", "\ud800\udc00\udbff\udfff"
+		};
+
+		SOAPMessage message = MessageFactory.newInstance().createMessage();
+		SOAPElement textsElement = message.getSOAPPart().getEnvelope().getBody().addChildElement("Texts", "tem", "http://tempuri.org/");
+		for( String text : texts ) {
+			textsElement.addChildElement("Text", "tem").addTextNode(text);
+		}
+		message.saveChanges();
+
+		byte[] written = SoapEnvelopeWriter.toByteArray( new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				writer.startEnvelope("SOAP-ENV");
+				writer.startElement("tem", "Texts");
+				for( String text : texts ) {
+					writer.element("tem", "Text", text);
+				}
+				writer.endEnvelope();
+			}
+		});
+
+		// SAAJ declares the namespace on the element it was added to, compare the Texts element content
+		String expected = toString(message);
+		String actual = new String(written, "UTF-8");
+		assertEquals(
+			expected.substring( expected.indexOf("<tem:Text>") ),
+			actual.substring( actual.indexOf("<tem:Text>") )
+		);
+	}
+}
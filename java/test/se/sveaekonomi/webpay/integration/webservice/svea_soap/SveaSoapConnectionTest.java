@@ -0,0 +1,123 @@
+package se.sveaekonomi.webpay.integration.webservice.svea_soap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import se.sveaekonomi.webpay.integration.util.request.SveaHttpClient;
+
+public class SveaSoapConnectionTest {
+
+	private HttpServer server;
+	private SveaHttpClient client;
+	private final AtomicReference<String> receivedSoapAction = new AtomicReference<String>();
+	private final AtomicReference<String> receivedContentType = new AtomicReference<String>();
+	private final AtomicReference<byte[]> receivedBody = new AtomicReference<byte[]>();
+	private volatile int responseStatus = 200;
+
+	private static final String RESPONSE =
+		"<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>" +
+		"<GetOrdersResponse xmlns=\"http://tempuri.org/\"><GetOrdersResult><ResultCode>0</ResultCode></GetOrdersResult></GetOrdersResponse>" +
+		"</soap:Body></soap:Envelope>";
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				receivedSoapAction.set( exchange.getRequestHeaders().getFirst("SOAPAction") );
+				receivedContentType.set( exchange.getRequestHeaders().getFirst("Content-Type") );
+				InputStream in = exchange.getRequestBody();
+				ByteArrayOutputStream received = new ByteArrayOutputStream();
+				for( int b = in.read(); b != -1; b = in.read() ) {
+					received.write(b);
+				}
+				receivedBody.set( received.toByteArray() );
+				byte[] body = RESPONSE.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(responseStatus, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		client = new SveaHttpClient().setMaxConnectionsPerRoute(1).setConnectionRequestTimeout(2000);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.close();
+		server.stop(0);
+	}
+
+	private URL getEndpoint() throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/AdminService.svc/backward");
+	}
+
+	@Test
+	public void test_call_sends_mime_headers_and_parses_response() throws Exception {
+		SveaSoapConnection connection = new SveaSoapConnection(client);
+
+		// the same connection instance is reused for several calls
+		for( int i = 0; i < 3; i++ ) {
+			SOAPMessage request = MessageFactory.newInstance().createMessage();
+			request.getMimeHeaders().addHeader("SOAPAction", "http://tempuri.org/IAdminService/GetOrders");
+
+			SOAPMessage response = connection.call(request, getEndpoint());
+
+			assertEquals( "http://tempuri.org/IAdminService/GetOrders", receivedSoapAction.get() );
+			assertEquals( "0", response.getSOAPBody().getElementsByTagName("ResultCode").item(0).getTextContent() );
+		}
+	}
+
+	@Test
+	public void test_call_parses_soap_fault_responses() throws Exception {
+		responseStatus = 500;
+		SOAPMessage response = new SveaSoapConnection(client).call(MessageFactory.newInstance().createMessage(), getEndpoint());
+		assertTrue( response.getSOAPBody() != null );
+	}
+
+	@Test
+	public void test_streamed_call_sends_envelope_written_by_content() throws Exception {
+		SoapEnvelopeWriter.Content content = new SoapEnvelopeWriter.Content() {
+			@Override
+			public void writeTo( SoapEnvelopeWriter writer ) throws IOException {
+				writer.startEnvelope("SOAP-ENV", "tem", "http://tempuri.org/");
+				writer.startElement("tem", "GetOrders");
+				writer.element("tem", "request", "Ärta & bröd");
+				writer.endEnvelope();
+			}
+		};
+		MimeHeaders headers = new MimeHeaders();
+		headers.addHeader("SOAPAction", "http://tempuri.org/IAdminService/GetOrders");
+
+		SOAPMessage response = new SveaSoapConnection(client).call(content, headers, getEndpoint());
+
+		assertArrayEquals( SoapEnvelopeWriter.toByteArray(content), receivedBody.get() );
+		assertEquals( "http://tempuri.org/IAdminService/GetOrders", receivedSoapAction.get() );
+		assertEquals( "text/xml; charset=utf-8", receivedContentType.get() );
+		assertEquals( "0", response.getSOAPBody().getElementsByTagName("ResultCode").item(0).getTextContent() );
+	}
+}